@@ -16,7 +16,6 @@ package com.amazonaws.services.autoscaling;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import com.amazonaws.AmazonClientException;
@@ -26,6 +25,7 @@ import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.internal.ClientExecutors;
 
 import com.amazonaws.services.autoscaling.model.*;
 
@@ -94,7 +94,7 @@ public class AmazonAutoScalingAsyncClient extends AmazonAutoScalingClient
      */
     @Deprecated
     public AmazonAutoScalingAsyncClient(ClientConfiguration clientConfiguration) {
-        this(new DefaultAWSCredentialsProviderChain(), clientConfiguration, Executors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
+        this(new DefaultAWSCredentialsProviderChain(), clientConfiguration, ClientExecutors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
     }
 
     /**
@@ -112,7 +112,7 @@ public class AmazonAutoScalingAsyncClient extends AmazonAutoScalingClient
      *                       when authenticating with AWS services.
      */
     public AmazonAutoScalingAsyncClient(AWSCredentials awsCredentials) {
-        this(awsCredentials, Executors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
+        this(awsCredentials, ClientExecutors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
     }
 
     /**
@@ -179,7 +179,7 @@ public class AmazonAutoScalingAsyncClient extends AmazonAutoScalingClient
      *            to authenticate requests with AWS services.
      */
     public AmazonAutoScalingAsyncClient(AWSCredentialsProvider awsCredentialsProvider) {
-        this(awsCredentialsProvider, Executors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
+        this(awsCredentialsProvider, ClientExecutors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
     }
 
     /**
@@ -222,7 +222,7 @@ public class AmazonAutoScalingAsyncClient extends AmazonAutoScalingClient
      */
     public AmazonAutoScalingAsyncClient(AWSCredentialsProvider awsCredentialsProvider,
                 ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, Executors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
+        this(awsCredentialsProvider, clientConfiguration, ClientExecutors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
     }
 
     /**
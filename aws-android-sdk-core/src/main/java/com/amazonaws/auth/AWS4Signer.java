@@ -19,6 +19,7 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.Request;
 import com.amazonaws.util.AwsHostNameUtils;
 import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.ContentInputStream;
 import com.amazonaws.util.DateUtils;
 import com.amazonaws.util.HttpUtils;
 
@@ -31,7 +32,9 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Signer implementation that signs requests with the AWS4 signing protocol.
@@ -89,6 +92,23 @@ public class AWS4Signer extends AbstractAWSSigner
 
     protected static final Log log = LogFactory.getLog(AWS4Signer.class);
 
+    /** Max number of derived signing keys kept by all AWS4 signers. */
+    private static final int MAX_SIGNER_KEY_CACHE_SIZE = 300;
+
+    /**
+     * Derived signing keys, keyed by secret key, region and service, in least
+     * recently used order. Access must be synchronized on the map.
+     */
+    private static final Map<String, SignerKey> SIGNER_KEY_CACHE =
+            new LinkedHashMap<String, SignerKey>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SignerKey> eldest) {
+                    return size() > MAX_SIGNER_KEY_CACHE_SIZE;
+                }
+            };
+
     @Override
     public void sign(Request<?> request, AWSCredentials credentials) {
         // annonymous credentials, don't sign
@@ -288,16 +308,43 @@ public class AWS4Signer extends AbstractAWSSigner
         String stringToSign = getStringToSign(algorithm, timeStamp, scope,
                 getCanonicalRequest(request, contentSha256));
 
+        byte[] kSigning = newSigningKey(sanitizedCredentials, dateStamp, regionName,
+                serviceName);
+
+        byte[] signature = sign(stringToSign.getBytes(), kSigning, SigningAlgorithm.HmacSHA256);
+        return new HeaderSigningResult(timeStamp, scope, kSigning, signature);
+    }
+
+    /**
+     * Returns the signing key for the given credentials and scope. The key
+     * only changes when the date stamp does, so derived keys are cached and
+     * reused for the rest of the day.
+     */
+    private byte[] newSigningKey(AWSCredentials credentials, String dateStamp,
+            String regionName, String serviceName) {
+        final String cacheKey = credentials.getAWSSecretKey() + "-" + regionName + "-"
+                + serviceName;
+        SignerKey signerKey;
+        synchronized (SIGNER_KEY_CACHE) {
+            signerKey = SIGNER_KEY_CACHE.get(cacheKey);
+        }
+        if (signerKey != null && signerKey.isValidForDate(dateStamp)) {
+            return signerKey.getSigningKey();
+        }
+
         // AWS4 uses a series of derived keys, formed by hashing different
         // pieces of data
-        byte[] kSecret = ("AWS4" + sanitizedCredentials.getAWSSecretKey()).getBytes();
+        byte[] kSecret = ("AWS4" + credentials.getAWSSecretKey()).getBytes();
         byte[] kDate = sign(dateStamp, kSecret, SigningAlgorithm.HmacSHA256);
         byte[] kRegion = sign(regionName, kDate, SigningAlgorithm.HmacSHA256);
         byte[] kService = sign(serviceName, kRegion, SigningAlgorithm.HmacSHA256);
         byte[] kSigning = sign(TERMINATOR, kService, SigningAlgorithm.HmacSHA256);
 
-        byte[] signature = sign(stringToSign.getBytes(), kSigning, SigningAlgorithm.HmacSHA256);
-        return new HeaderSigningResult(timeStamp, scope, kSigning, signature);
+        // A key derived for an earlier day is replaced here as well
+        synchronized (SIGNER_KEY_CACHE) {
+            SIGNER_KEY_CACHE.put(cacheKey, new SignerKey(dateStamp, kSigning));
+        }
+        return kSigning;
     }
 
     protected final String getTimeStamp(long dateMilli) {
@@ -341,6 +388,18 @@ public class AWS4Signer extends AbstractAWSSigner
      * relating to content-encoding and content-length.)
      */
     protected String calculateContentHash(Request<?> request) {
+        InputStream content = request.getContent();
+        if (content instanceof ContentInputStream) {
+            // hashed while the content was marshalled, valid as long as none
+            // of it has been consumed yet
+            ContentInputStream contentStream = (ContentInputStream) content;
+            byte[] contentSha256 = contentStream.getContentSha256();
+            if (contentSha256 != null
+                    && contentStream.available() == contentStream.getContentLength()) {
+                return BinaryUtils.toHex(contentSha256);
+            }
+        }
+
         InputStream payloadStream = getBinaryRequestPayloadStream(request);
         payloadStream.mark(-1);
         String contentSha256 = BinaryUtils.toHex(hash(payloadStream));
@@ -398,6 +457,27 @@ public class AWS4Signer extends AbstractAWSSigner
         }
     }
 
+    /**
+     * A derived signing key together with the date stamp it was derived for.
+     */
+    static final class SignerKey {
+        private final String dateStamp;
+        private final byte[] signingKey;
+
+        SignerKey(String dateStamp, byte[] signingKey) {
+            this.dateStamp = dateStamp;
+            this.signingKey = signingKey;
+        }
+
+        boolean isValidForDate(String dateStamp) {
+            return this.dateStamp.equals(dateStamp);
+        }
+
+        byte[] getSigningKey() {
+            return signingKey;
+        }
+    }
+
     @Override
     public void presignRequest(Request<?> request, AWSCredentials credentials,
             Date expiration) {
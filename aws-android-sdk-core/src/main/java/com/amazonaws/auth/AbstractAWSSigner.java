@@ -31,6 +31,7 @@ import java.io.InputStream;
 import java.net.URI;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
@@ -49,6 +50,23 @@ import javax.crypto.spec.SecretKeySpec;
  */
 public abstract class AbstractAWSSigner implements Signer {
 
+    /**
+     * SHA-256 digest reused by each thread when hashing strings and byte
+     * arrays, since looking up a MessageDigest is comparatively expensive.
+     */
+    private static final ThreadLocal<MessageDigest> SHA256_MESSAGE_DIGEST =
+            new ThreadLocal<MessageDigest>() {
+                @Override
+                protected MessageDigest initialValue() {
+                    try {
+                        return MessageDigest.getInstance("SHA-256");
+                    } catch (NoSuchAlgorithmException e) {
+                        throw new AmazonClientException(
+                                "Unable to get SHA256 Function: " + e.getMessage(), e);
+                    }
+                }
+            };
+
     /**
      * Computes an RFC 2104-compliant HMAC signature and returns the result as a
      * Base64 encoded string.
@@ -88,7 +106,7 @@ public abstract class AbstractAWSSigner implements Signer {
     protected byte[] sign(byte[] data, byte[] key, SigningAlgorithm algorithm)
             throws AmazonClientException {
         try {
-            Mac mac = Mac.getInstance(algorithm.toString());
+            Mac mac = algorithm.getMac();
             mac.init(new SecretKeySpec(key, algorithm.toString()));
             return mac.doFinal(data);
         } catch (Exception e) {
@@ -107,7 +125,7 @@ public abstract class AbstractAWSSigner implements Signer {
      */
     public byte[] hash(String text) throws AmazonClientException {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            MessageDigest md = getMessageDigestInstance();
             md.update(text.getBytes(UTF8));
             return md.digest();
         } catch (Exception e) {
@@ -140,7 +158,7 @@ public abstract class AbstractAWSSigner implements Signer {
      */
     public byte[] hash(byte[] data) throws AmazonClientException {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            MessageDigest md = getMessageDigestInstance();
             md.update(data);
             return md.digest();
         } catch (Exception e) {
@@ -149,6 +167,16 @@ public abstract class AbstractAWSSigner implements Signer {
         }
     }
 
+    /**
+     * Returns the re-usable thread local version of MessageDigest, reset and
+     * ready for use.
+     */
+    private static MessageDigest getMessageDigestInstance() {
+        MessageDigest messageDigest = SHA256_MESSAGE_DIGEST.get();
+        messageDigest.reset();
+        return messageDigest;
+    }
+
     /**
      * Examines the specified query string parameters and returns a
      * canonicalized form.
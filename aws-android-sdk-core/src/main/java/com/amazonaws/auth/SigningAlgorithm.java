@@ -15,9 +15,45 @@
 
 package com.amazonaws.auth;
 
+import com.amazonaws.AmazonClientException;
+
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+
 public enum SigningAlgorithm {
 
     HmacSHA1,
     HmacSHA256;
 
+    /**
+     * Mac instances are expensive to look up but can't be shared between
+     * threads, so each thread keeps one per algorithm.
+     */
+    private final ThreadLocal<Mac> macReference;
+
+    private SigningAlgorithm() {
+        final String algorithmName = this.toString();
+        macReference = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    return Mac.getInstance(algorithmName);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new AmazonClientException("Unable to fetch Mac instance for Algorithm "
+                            + algorithmName + ": " + e.getMessage(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the thread local reference for the crypto algorithm. Callers
+     * must initialize it with a key before use.
+     *
+     * @return the Mac instance of the current thread for this algorithm
+     */
+    public Mac getMac() {
+        return macReference.get();
+    }
 }
@@ -348,6 +348,9 @@ public class AmazonHttpClient {
                 }
 
                 retriedException = null;
+                if (awsRequestMetrics.isEnabled() && httpClient instanceof ApacheHttpClient) {
+                    ((ApacheHttpClient) httpClient).captureConnectionPoolMetrics(awsRequestMetrics);
+                }
                 awsRequestMetrics.startEvent(Field.HttpRequestTime);
                 try {
                     httpResponse = httpClient.execute(httpRequest);
@@ -16,6 +16,8 @@
 package com.amazonaws.http;
 
 import com.amazonaws.ClientConfiguration;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.AWSRequestMetrics.Field;
 
 import org.apache.http.Header;
 import org.apache.http.client.methods.HttpDelete;
@@ -31,6 +33,7 @@ import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
 
@@ -39,15 +42,25 @@ import java.io.InputStream;
 import java.util.Map;
 
 /**
- * An implementation of {@link HttpClient} backed by Apache HttpClient.
+ * An implementation of {@link HttpClient} backed by Apache HttpClient. Unlike
+ * {@link UrlHttpClient}, connections are kept alive in a pool owned by this
+ * client. The pool holds up to {@link ClientConfiguration#getMaxConnections()}
+ * connections per host, and idle connections are closed by the
+ * {@link IdleConnectionReaper} when {@link ClientConfiguration#useReaper()} is
+ * enabled.
  */
 public class ApacheHttpClient implements HttpClient {
 
     private final org.apache.http.client.HttpClient httpClient;
+    private final ThreadSafeClientConnManager connectionManager;
 
     public ApacheHttpClient(ClientConfiguration config) {
         HttpClientFactory httpClientFactory = new HttpClientFactory();
-        httpClient = httpClientFactory.createHttpClient(config);
+        HttpParams httpClientParams = httpClientFactory.createHttpParams(config);
+        connectionManager = ConnectionManagerFactory
+                .createThreadSafeClientConnManager(config, httpClientParams);
+        httpClient = httpClientFactory.createHttpClient(config, connectionManager,
+                httpClientParams);
         // disable retry
         ((AbstractHttpClient) httpClient)
                 .setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
@@ -83,9 +96,28 @@ public class ApacheHttpClient implements HttpClient {
 
     @Override
     public void shutdown() {
+        IdleConnectionReaper.removeConnectionManager(connectionManager);
         httpClient.getConnectionManager().shutdown();
     }
 
+    /**
+     * Captures the current state of the connection pool into the given
+     * request metrics.
+     *
+     * @param awsRequestMetrics metrics of the request about to be executed
+     */
+    void captureConnectionPoolMetrics(AWSRequestMetrics awsRequestMetrics) {
+        if (connectionManager instanceof MeteredConnectionManager) {
+            MeteredConnectionManager pool = (MeteredConnectionManager) connectionManager;
+            awsRequestMetrics.setCounter(Field.HttpClientPoolAvailableCount,
+                    pool.getAvailableCount());
+            awsRequestMetrics.setCounter(Field.HttpClientPoolLeasedCount,
+                    pool.getLeasedCount());
+            awsRequestMetrics.setCounter(Field.HttpClientPoolPendingCount,
+                    pool.getPendingCount());
+        }
+    }
+
     private HttpParams params = null;
 
     private HttpUriRequest createHttpRequest(HttpRequest request) {
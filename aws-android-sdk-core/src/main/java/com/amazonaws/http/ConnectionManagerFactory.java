@@ -45,7 +45,7 @@ class ConnectionManagerFactory {
         registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
         registry.register(new Scheme("https", sslSocketFactory, 443));
 
-        ThreadSafeClientConnManager connectionManager = new ThreadSafeClientConnManager(
+        ThreadSafeClientConnManager connectionManager = new MeteredConnectionManager(
                 httpClientParams, registry);
         if (config.useReaper()) {
             IdleConnectionReaper.registerConnectionManager(connectionManager);
@@ -69,6 +69,20 @@ class HttpClientFactory {
      * @return The new, configured HttpClient.
      */
     public HttpClient createHttpClient(ClientConfiguration config) {
+        HttpParams httpClientParams = createHttpParams(config);
+        ThreadSafeClientConnManager connectionManager = ConnectionManagerFactory
+                .createThreadSafeClientConnManager(config, httpClientParams);
+        return createHttpClient(config, connectionManager, httpClientParams);
+    }
+
+    /**
+     * Creates the HTTP client parameters, such as timeouts and socket buffer
+     * sizes, from the specified AWS ClientConfiguration.
+     *
+     * @param config Client configuration options.
+     * @return The new HTTP client parameters.
+     */
+    HttpParams createHttpParams(ClientConfiguration config) {
         /* Set HTTP client parameters */
         HttpParams httpClientParams = new BasicHttpParams();
         HttpConnectionParams.setConnectionTimeout(httpClientParams, config.getConnectionTimeout());
@@ -82,9 +96,22 @@ class HttpClientFactory {
             HttpConnectionParams.setSocketBufferSize(httpClientParams,
                     Math.max(socketSendBufferSizeHint, socketReceiveBufferSizeHint));
         }
+        return httpClientParams;
+    }
 
-        ThreadSafeClientConnManager connectionManager = ConnectionManagerFactory
-                .createThreadSafeClientConnManager(config, httpClientParams);
+    /**
+     * Creates a new HttpClient object on top of the given connection manager,
+     * so that callers can keep a reference to the pool they hand out.
+     *
+     * @param config Client configuration options (ex: proxy settings,
+     *            connection limits, etc).
+     * @param connectionManager the connection pool shared by the HttpClient.
+     * @param httpClientParams parameters created by
+     *            {@link #createHttpParams(ClientConfiguration)}.
+     * @return The new, configured HttpClient.
+     */
+    HttpClient createHttpClient(ClientConfiguration config,
+            ThreadSafeClientConnManager connectionManager, HttpParams httpClientParams) {
         SdkHttpClient httpClient = new SdkHttpClient(connectionManager, httpClientParams);
         httpClient.setHttpRequestRetryHandler(HttpRequestNoRetryHandler.Singleton);
         httpClient.setRedirectHandler(new LocationHeaderNotRequiredRedirectHandler());
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpParams;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ThreadSafeClientConnManager} that keeps track of how many pooled
+ * connections are leased and how many connection requests are waiting for a
+ * free connection. Apache HttpClient 4.0 doesn't expose pool statistics, so
+ * they are counted here and reported as
+ * {@link com.amazonaws.util.AWSRequestMetrics.Field#HttpClientPoolAvailableCount},
+ * {@link com.amazonaws.util.AWSRequestMetrics.Field#HttpClientPoolLeasedCount}
+ * and
+ * {@link com.amazonaws.util.AWSRequestMetrics.Field#HttpClientPoolPendingCount}
+ * .
+ */
+class MeteredConnectionManager extends ThreadSafeClientConnManager {
+
+    private final AtomicInteger leased = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public MeteredConnectionManager(HttpParams params, SchemeRegistry schreg) {
+        super(params, schreg);
+    }
+
+    @Override
+    public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ClientConnectionRequest request = super.requestConnection(route, state);
+        return new ClientConnectionRequest() {
+            @Override
+            public ManagedClientConnection getConnection(long timeout, TimeUnit tunit)
+                    throws InterruptedException, ConnectionPoolTimeoutException {
+                pending.incrementAndGet();
+                try {
+                    ManagedClientConnection conn = request.getConnection(timeout, tunit);
+                    leased.incrementAndGet();
+                    return conn;
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+
+            @Override
+            public void abortRequest() {
+                request.abortRequest();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(ManagedClientConnection conn, long validDuration,
+            TimeUnit timeUnit) {
+        try {
+            super.releaseConnection(conn, validDuration, timeUnit);
+        } finally {
+            // connections leased before a shutdown are still released after
+            // it, and the count never goes below 0 if one is released twice
+            int n;
+            do {
+                n = leased.get();
+            } while (n > 0 && !leased.compareAndSet(n, n - 1));
+        }
+    }
+
+    /**
+     * @return the number of connections currently executing requests.
+     */
+    public int getLeasedCount() {
+        return leased.get();
+    }
+
+    /**
+     * @return the number of requests blocked waiting for a free connection.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return the number of idle persistent connections kept in the pool.
+     */
+    public int getAvailableCount() {
+        return Math.max(0, getConnectionsInPool() - leased.get());
+    }
+}
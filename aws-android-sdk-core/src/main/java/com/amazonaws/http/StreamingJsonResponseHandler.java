@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.ResponseMetadata;
+import com.amazonaws.transform.JsonUnmarshallerContext;
+import com.amazonaws.transform.Unmarshaller;
+import com.amazonaws.util.CRC32ChecksumCalculatingInputStream;
+import com.amazonaws.util.StringUtils;
+import com.amazonaws.util.json.AwsJsonReader;
+import com.amazonaws.util.json.JsonUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Response handler which, unlike {@link JsonResponseHandler}, doesn't read the
+ * whole response before returning. The items of a list member of the response
+ * are unmarshalled one at a time as they are read from the connection through
+ * a {@link StreamingJsonResult}, so only one item is held in memory at a time
+ * and the caller can process the items while the rest of the response is
+ * still being downloaded. The connection is left open until the result has
+ * been read to the end or closed.
+ *
+ * @param <T> The type of the result, unmarshalled from the other members of
+ *            the response.
+ * @param <I> The type of the items of the list member.
+ */
+public class StreamingJsonResponseHandler<T, I> implements
+        HttpResponseHandler<AmazonWebServiceResponse<StreamingJsonResult<T, I>>> {
+
+    /** Shared logger for profiling information */
+    private static final Log log = LogFactory.getLog("com.amazonaws.request");
+
+    private final String listMemberName;
+    private final Unmarshaller<I, JsonUnmarshallerContext> itemUnmarshaller;
+    private final Unmarshaller<T, JsonUnmarshallerContext> resultUnmarshaller;
+
+    /**
+     * @param listMemberName The name of the member of the response whose
+     *            items are streamed.
+     * @param itemUnmarshaller The unmarshaller of the items of the list
+     *            member.
+     * @param resultUnmarshaller The unmarshaller of the whole response, which
+     *            is handed the other members of the response once all the
+     *            items have been read. The list member of the result it
+     *            returns is left null.
+     */
+    public StreamingJsonResponseHandler(String listMemberName,
+            Unmarshaller<I, JsonUnmarshallerContext> itemUnmarshaller,
+            Unmarshaller<T, JsonUnmarshallerContext> resultUnmarshaller) {
+        this.listMemberName = listMemberName;
+        this.itemUnmarshaller = itemUnmarshaller;
+        this.resultUnmarshaller = resultUnmarshaller;
+    }
+
+    /**
+     * @see com.amazonaws.http.HttpResponseHandler#handle(com.amazonaws.http.HttpResponse)
+     */
+    @Override
+    public AmazonWebServiceResponse<StreamingJsonResult<T, I>> handle(HttpResponse response)
+            throws Exception {
+        log.trace("Streaming service response JSON");
+
+        String CRC32Checksum = response.getHeaders().get("x-amz-crc32");
+        CRC32ChecksumCalculatingInputStream crc32ChecksumInputStream = null;
+
+        InputStream content = response.getRawContent();
+        if (content == null) {
+            // An empty input stream to avoid NPE
+            content = new ByteArrayInputStream("{}".getBytes(StringUtils.UTF8));
+        }
+
+        if (CRC32Checksum != null) {
+            crc32ChecksumInputStream = new CRC32ChecksumCalculatingInputStream(content);
+            content = crc32ChecksumInputStream;
+        }
+        if ("gzip".equals(response.getHeaders().get("Content-Encoding"))) {
+            content = new GZIPInputStream(content);
+        }
+
+        AwsJsonReader jsonReader = JsonUtils.getJsonReader(new InputStreamReader(content,
+                StringUtils.UTF8));
+
+        StreamingJsonResult<T, I> result = new StreamingJsonResult<T, I>(
+                new JsonUnmarshallerContext(jsonReader, response), listMemberName,
+                itemUnmarshaller, resultUnmarshaller, crc32ChecksumInputStream,
+                CRC32Checksum == null ? null : Long.valueOf(CRC32Checksum));
+        try {
+            result.start();
+        } catch (Exception e) {
+            result.close();
+            throw e;
+        }
+
+        AmazonWebServiceResponse<StreamingJsonResult<T, I>> awsResponse =
+                new AmazonWebServiceResponse<StreamingJsonResult<T, I>>();
+        awsResponse.setResult(result);
+
+        Map<String, String> metadata = new HashMap<String, String>();
+        metadata.put(ResponseMetadata.AWS_REQUEST_ID,
+                response.getHeaders().get("x-amzn-RequestId"));
+        awsResponse.setResponseMetadata(new ResponseMetadata(metadata));
+
+        return awsResponse;
+    }
+
+    /**
+     * The connection is released by the {@link StreamingJsonResult} once it
+     * has been read to the end or closed.
+     *
+     * @see com.amazonaws.http.HttpResponseHandler#needsConnectionLeftOpen()
+     */
+    @Override
+    public boolean needsConnectionLeftOpen() {
+        return true;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.internal.CRC32MismatchException;
+import com.amazonaws.transform.JsonUnmarshallerContext;
+import com.amazonaws.transform.Unmarshaller;
+import com.amazonaws.util.CRC32ChecksumCalculatingInputStream;
+import com.amazonaws.util.json.AbstractAwsJsonReader;
+import com.amazonaws.util.json.AwsJsonReader;
+import com.amazonaws.util.json.AwsJsonToken;
+import com.amazonaws.util.json.AwsJsonWriter;
+import com.amazonaws.util.json.JsonUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The items of the list member of a response, read from the connection as the
+ * iterator advances, as returned by a {@link StreamingJsonResponseHandler}.
+ * The rest of the response is available from {@link #getResult()} once all
+ * the items have been read. The response checksum, if any, is verified when
+ * the end of the response is reached.
+ * <p>
+ * The connection is released when the end of the response is reached, when
+ * reading it fails, or when the result is closed. Callers which stop before
+ * the end must call {@link #close()}. This class is not thread safe.
+ *
+ * @param <T> The type of the result.
+ * @param <I> The type of the items.
+ */
+public class StreamingJsonResult<T, I> implements Iterator<I>, Closeable {
+
+    private static final Log log = LogFactory.getLog(StreamingJsonResult.class);
+
+    private enum State {
+        /** Reading the items. */
+        ITEMS,
+        /** All the response was read and unmarshalled. */
+        DONE,
+        /** Closed before the end of the response, or reading it failed. */
+        CLOSED
+    }
+
+    private final JsonUnmarshallerContext context;
+    private final AwsJsonReader reader;
+    private final String listMemberName;
+    private final Unmarshaller<I, JsonUnmarshallerContext> itemUnmarshaller;
+    private final Unmarshaller<T, JsonUnmarshallerContext> resultUnmarshaller;
+    private final CRC32ChecksumCalculatingInputStream crc32ChecksumInputStream;
+    private final Long serverSideCRC;
+
+    /**
+     * The members of the response other than the list, copied while reading
+     * past them. They are small compared to the list and are unmarshalled
+     * together at the end.
+     */
+    private final StringWriter otherMembers = new StringWriter();
+    private final AwsJsonWriter otherMembersWriter = JsonUtils.getJsonWriter(otherMembers);
+
+    private State state = State.ITEMS;
+    private boolean inList;
+    private T result;
+
+    StreamingJsonResult(JsonUnmarshallerContext context, String listMemberName,
+            Unmarshaller<I, JsonUnmarshallerContext> itemUnmarshaller,
+            Unmarshaller<T, JsonUnmarshallerContext> resultUnmarshaller,
+            CRC32ChecksumCalculatingInputStream crc32ChecksumInputStream, Long serverSideCRC) {
+        this.context = context;
+        this.reader = context.getReader();
+        this.listMemberName = listMemberName;
+        this.itemUnmarshaller = itemUnmarshaller;
+        this.resultUnmarshaller = resultUnmarshaller;
+        this.crc32ChecksumInputStream = crc32ChecksumInputStream;
+        this.serverSideCRC = serverSideCRC;
+    }
+
+    /**
+     * Reads the response up to the first item of the list.
+     */
+    void start() throws Exception {
+        reader.beginObject();
+        otherMembersWriter.beginObject();
+        readOtherMembers();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (state != State.ITEMS) {
+            return false;
+        }
+        try {
+            if (inList && reader.hasNext()) {
+                return true;
+            }
+            if (inList) {
+                reader.endArray();
+                inList = false;
+                readOtherMembers();
+            }
+            return state == State.ITEMS;
+        } catch (Exception e) {
+            throw fail(e);
+        }
+    }
+
+    @Override
+    public I next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return itemUnmarshaller.unmarshall(context);
+        } catch (Exception e) {
+            throw fail(e);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the result unmarshalled from the members of the response other
+     * than the list, whose list member is null.
+     *
+     * @return the result.
+     * @throws IllegalStateException if the items have not all been read.
+     */
+    public T getResult() {
+        if (state != State.DONE) {
+            throw new IllegalStateException("The items of the response have not all been read");
+        }
+        return result;
+    }
+
+    /**
+     * Releases the connection without reading the rest of the response. Does
+     * nothing once the end of the response has been reached.
+     */
+    @Override
+    public void close() {
+        if (state == State.ITEMS) {
+            state = State.CLOSED;
+            closeReader();
+        }
+    }
+
+    /**
+     * Copies the members of the response until the list begins or the
+     * response ends.
+     */
+    private void readOtherMembers() throws Exception {
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(listMemberName) && reader.peek() != AwsJsonToken.VALUE_NULL) {
+                reader.beginArray();
+                inList = true;
+                return;
+            }
+            otherMembersWriter.name(name);
+            copyValue(reader, otherMembersWriter);
+        }
+        reader.endObject();
+        otherMembersWriter.endObject();
+        otherMembersWriter.flush();
+        finish();
+    }
+
+    private void finish() throws Exception {
+        if (crc32ChecksumInputStream != null) {
+            // the checksum covers anything after the closing brace too
+            byte[] buffer = new byte[1024];
+            while (crc32ChecksumInputStream.read(buffer, 0, buffer.length) != -1) {
+                // discard
+            }
+            if (crc32ChecksumInputStream.getCRC32Checksum() != serverSideCRC) {
+                throw new CRC32MismatchException(
+                        "Client calculated crc32 checksum didn't match that calculated by server side");
+            }
+        }
+        closeReader();
+
+        AwsJsonReader otherMembersReader = JsonUtils.getJsonReader(new StringReader(
+                otherMembers.toString()));
+        result = resultUnmarshaller.unmarshall(new JsonUnmarshallerContext(otherMembersReader,
+                context.getHttpResponse()));
+        state = State.DONE;
+    }
+
+    private AmazonClientException fail(Exception e) {
+        state = State.CLOSED;
+        closeReader();
+        if (e instanceof AmazonClientException) {
+            return (AmazonClientException) e;
+        }
+        return new AmazonClientException("Unable to unmarshall response: " + e.getMessage(), e);
+    }
+
+    private void closeReader() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.warn("Error closing json parser", e);
+        }
+    }
+
+    private static void copyValue(AwsJsonReader reader, AwsJsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    copyValue(reader, writer);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copyValue(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case VALUE_BOOLEAN:
+                writer.value(AbstractAwsJsonReader.nextBoolean(reader));
+                break;
+            case VALUE_NUMBER:
+                // keeps the number as it was written
+                writer.value(new BigDecimal(reader.nextString()));
+                break;
+            case VALUE_NULL:
+                reader.skipValue();
+                writer.value();
+                break;
+            default:
+                writer.value(reader.nextString());
+                break;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.internal;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory of the executors backing the asynchronous service clients.
+ * <p>
+ * Requests made through an async client are still executed by a blocking
+ * HTTP client, so every request in flight occupies one thread. The executors
+ * created here at least don't keep threads around once the client goes idle:
+ * a thread that hasn't picked up a request for {@link #KEEP_ALIVE_SECONDS}
+ * terminates and is recreated on demand.
+ */
+public final class ClientExecutors {
+
+    /** How long an idle worker thread is kept before it terminates. */
+    static final long KEEP_ALIVE_SECONDS = 60;
+
+    private ClientExecutors() {
+    }
+
+    /**
+     * Creates a thread pool that runs at most the given number of requests
+     * concurrently and queues the rest. Unlike
+     * {@link java.util.concurrent.Executors#newFixedThreadPool(int)}, its
+     * threads time out when idle.
+     *
+     * @param nThreads the max number of concurrent requests
+     * @return a new executor service
+     */
+    public static ExecutorService newFixedThreadPool(int nThreads) {
+        return newFixedThreadPool(nThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    static ExecutorService newFixedThreadPool(int nThreads, long keepAlive, TimeUnit unit) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(nThreads, nThreads,
+                keepAlive, unit, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
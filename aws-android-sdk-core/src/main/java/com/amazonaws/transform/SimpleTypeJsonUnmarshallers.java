@@ -17,16 +17,31 @@ package com.amazonaws.transform;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.util.Base64;
+import com.amazonaws.util.json.AbstractAwsJsonReader;
+import com.amazonaws.util.json.AwsJsonReader;
+import com.amazonaws.util.json.AwsJsonToken;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
-import java.text.NumberFormat;
-import java.text.ParseException;
 import java.util.Date;
-import java.util.Locale;
 
 public class SimpleTypeJsonUnmarshallers {
+    /**
+     * Consumes the next value if it is null, so the numeric and boolean
+     * unmarshallers can read the other values without going through a String.
+     *
+     * @return true if the value was null
+     */
+    private static boolean nextNull(AwsJsonReader reader) throws IOException {
+        if (reader.peek() == AwsJsonToken.VALUE_NULL) {
+            reader.skipValue();
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Unmarshaller for String values.
      */
@@ -53,8 +68,8 @@ public class SimpleTypeJsonUnmarshallers {
             Unmarshaller<Double, JsonUnmarshallerContext> {
         @Override
         public Double unmarshall(JsonUnmarshallerContext unmarshallerContext) throws Exception {
-            String doubleString = unmarshallerContext.getReader().nextString();
-            return (doubleString == null) ? null : Double.parseDouble(doubleString);
+            AwsJsonReader reader = unmarshallerContext.getReader();
+            return nextNull(reader) ? null : AbstractAwsJsonReader.nextDouble(reader);
         }
 
         private static DoubleJsonUnmarshaller instance;
@@ -73,8 +88,8 @@ public class SimpleTypeJsonUnmarshallers {
             Unmarshaller<Integer, JsonUnmarshallerContext> {
         @Override
         public Integer unmarshall(JsonUnmarshallerContext unmarshallerContext) throws Exception {
-            String intString = unmarshallerContext.getReader().nextString();
-            return (intString == null) ? null : Integer.parseInt(intString);
+            AwsJsonReader reader = unmarshallerContext.getReader();
+            return nextNull(reader) ? null : AbstractAwsJsonReader.nextInt(reader);
         }
 
         private static IntegerJsonUnmarshaller instance;
@@ -127,8 +142,8 @@ public class SimpleTypeJsonUnmarshallers {
             Unmarshaller<Boolean, JsonUnmarshallerContext> {
         @Override
         public Boolean unmarshall(JsonUnmarshallerContext unmarshallerContext) throws Exception {
-            String booleanString = unmarshallerContext.getReader().nextString();
-            return (booleanString == null) ? null : Boolean.parseBoolean(booleanString);
+            AwsJsonReader reader = unmarshallerContext.getReader();
+            return nextNull(reader) ? null : AbstractAwsJsonReader.nextBoolean(reader);
         }
 
         private static BooleanJsonUnmarshaller instance;
@@ -166,8 +181,8 @@ public class SimpleTypeJsonUnmarshallers {
     public static class LongJsonUnmarshaller implements Unmarshaller<Long, JsonUnmarshallerContext> {
         @Override
         public Long unmarshall(JsonUnmarshallerContext unmarshallerContext) throws Exception {
-            String longString = unmarshallerContext.getReader().nextString();
-            return (longString == null) ? null : Long.parseLong(longString);
+            AwsJsonReader reader = unmarshallerContext.getReader();
+            return nextNull(reader) ? null : AbstractAwsJsonReader.nextLong(reader);
         }
 
         private static LongJsonUnmarshaller instance;
@@ -199,22 +214,26 @@ public class SimpleTypeJsonUnmarshallers {
     }
 
     /**
-     * Unmarshaller for Date values - JSON dates come in as epoch seconds.
+     * Unmarshaller for Date values - JSON dates come in as epoch seconds, with
+     * a fraction of milliseconds.
      */
     public static class DateJsonUnmarshaller implements Unmarshaller<Date, JsonUnmarshallerContext> {
         @Override
         public Date unmarshall(JsonUnmarshallerContext unmarshallerContext) throws Exception {
-            String dateString = unmarshallerContext.getReader().nextString();
-            if (dateString == null)
-                return null;
-
+            AwsJsonReader reader = unmarshallerContext.getReader();
             try {
-                Number number = NumberFormat.getInstance(new Locale("en")).parse(dateString);
-                return new Date(number.longValue() * 1000);
-            } catch (ParseException e) {
-                String errorMessage = "Unable to parse date '" + dateString + "':  "
-                        + e.getMessage();
-                throw new AmazonClientException(errorMessage, e);
+                if (nextNull(reader))
+                    return null;
+                return new Date(Math.round(AbstractAwsJsonReader.nextDouble(reader) * 1000));
+            } catch (NumberFormatException e) {
+                throw new AmazonClientException("Unable to parse date:  " + e.getMessage(), e);
+            } catch (IllegalStateException e) {
+                // Gson, the value is not a number
+                throw new AmazonClientException("Unable to parse date:  " + e.getMessage(), e);
+            } catch (IOException e) {
+                // Jackson's JsonParseException, the value is not a number.
+                // Jackson is optional so it is caught as an IOException.
+                throw new AmazonClientException("Unable to parse date:  " + e.getMessage(), e);
             }
         }
 
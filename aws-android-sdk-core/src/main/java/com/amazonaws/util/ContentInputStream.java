@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * Request content produced by a {@link ContentOutputStream}. Like any
+ * {@link ByteArrayInputStream} it supports mark and reset, so it can be
+ * re-sent on retries, and it additionally carries the SHA-256 hash of the
+ * whole content when it is known.
+ */
+public class ContentInputStream extends ByteArrayInputStream {
+
+    private final byte[] contentSha256;
+
+    /**
+     * @param buf the content buffer, which is not copied.
+     * @param length the number of bytes of content in the buffer.
+     * @param contentSha256 the SHA-256 hash of the content, or null if it
+     *            isn't known.
+     */
+    public ContentInputStream(byte[] buf, int length, byte[] contentSha256) {
+        super(buf, 0, length);
+        this.contentSha256 = contentSha256;
+    }
+
+    /**
+     * @return the total number of bytes of content, regardless of how many
+     *         have been read.
+     */
+    public int getContentLength() {
+        return count;
+    }
+
+    /**
+     * @return the SHA-256 hash of the entire content, or null if it isn't
+     *         known.
+     */
+    public byte[] getContentSha256() {
+        if (contentSha256 == null) {
+            return null;
+        }
+        return contentSha256.clone();
+    }
+}
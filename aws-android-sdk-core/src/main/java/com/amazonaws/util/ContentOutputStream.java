@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A {@link ByteArrayOutputStream} that marshallers write request content
+ * into. The written bytes are handed to the request as a
+ * {@link ContentInputStream} without being copied, and their SHA-256 hash is
+ * computed as they are written so that the signer doesn't have to read the
+ * content a second time.
+ */
+public class ContentOutputStream extends ByteArrayOutputStream {
+
+    /** Running SHA-256 of the content, or null if SHA-256 is unavailable. */
+    private MessageDigest sha256;
+
+    public ContentOutputStream() {
+        super();
+        initDigest();
+    }
+
+    public ContentOutputStream(int size) {
+        super(size);
+        initDigest();
+    }
+
+    private void initDigest() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // the signer hashes the content itself
+            sha256 = null;
+        }
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        super.write(b);
+        if (sha256 != null) {
+            sha256.update((byte) b);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        super.write(b, off, len);
+        if (sha256 != null) {
+            sha256.update(b, off, len);
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        if (sha256 != null) {
+            sha256.reset();
+        }
+    }
+
+    /**
+     * Returns an input stream over the content written so far. The stream
+     * shares this stream's buffer, so nothing must be written after calling
+     * this method.
+     *
+     * @return a repeatable input stream of {@link #size()} bytes.
+     */
+    public synchronized ContentInputStream toInputStream() {
+        byte[] contentSha256 = null;
+        if (sha256 != null) {
+            contentSha256 = sha256.digest();
+            sha256 = null;
+        }
+        return new ContentInputStream(buf, count, contentSha256);
+    }
+}
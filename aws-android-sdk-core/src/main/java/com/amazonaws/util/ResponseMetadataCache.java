@@ -17,16 +17,26 @@ package com.amazonaws.util;
 
 import com.amazonaws.ResponseMetadata;
 
-import java.util.LinkedHashMap;
-import java.util.Map.Entry;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Cache of response metadata for recently executed requests for diagnostic
  * purposes. This cache has a max size and as entries are added, the oldest
  * entry is aged out once the max size has been reached.
+ * <p>
+ * The cache is safe for concurrent use; lookups don't take any lock. Entries
+ * are keyed by the identity of the request object, and don't prevent it from
+ * being garbage collected.
  */
 public class ResponseMetadataCache {
-    private final InternalCache internalCache;
+    private final int maxEntries;
+    private final Map<IdentityKey, ResponseMetadata> internalCache;
+    /** Keys in the order they were added, oldest first. */
+    private final Queue<IdentityKey> insertionOrder;
 
     /**
      * Creates a new cache that will contain, at most the specified number of
@@ -35,7 +45,9 @@ public class ResponseMetadataCache {
      * @param maxEntries The maximum size of this cache.
      */
     public ResponseMetadataCache(int maxEntries) {
-        internalCache = new InternalCache(maxEntries);
+        this.maxEntries = maxEntries;
+        internalCache = new ConcurrentHashMap<IdentityKey, ResponseMetadata>(maxEntries);
+        insertionOrder = new ConcurrentLinkedQueue<IdentityKey>();
     }
 
     /**
@@ -45,10 +57,20 @@ public class ResponseMetadataCache {
      * @param obj The key by which to store the metadata.
      * @param metadata The metadata for this entry.
      */
-    public synchronized void add(Object obj, ResponseMetadata metadata) {
-        if (obj == null)
+    public void add(Object obj, ResponseMetadata metadata) {
+        if (obj == null || metadata == null)
             return;
-        internalCache.put(System.identityHashCode(obj), metadata);
+        IdentityKey key = new IdentityKey(obj);
+        if (internalCache.put(key, metadata) == null) {
+            insertionOrder.add(key);
+        }
+        while (internalCache.size() > maxEntries) {
+            IdentityKey eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            internalCache.remove(eldest);
+        }
     }
 
     /**
@@ -60,29 +82,40 @@ public class ResponseMetadataCache {
      *         otherwise null if no metadata is associated with that object.
      */
     public ResponseMetadata get(Object obj) {
-        // System.identityHashCode isn't guaranteed to be unique
-        // on all platforms, but should be reasonable enough to use
-        // for a few requests at a time. We can always easily move
-        // to our own unique IDs if needed.
-        return internalCache.get(System.identityHashCode(obj));
+        if (obj == null)
+            return null;
+        return internalCache.get(new IdentityKey(obj));
     }
 
     /**
-     * Simple implementation of LinkedHashMap that overrides the
-     * <code>removeEldestEntry</code> method to turn LinkedHashMap into a
-     * LRU(ish) cache that automatically evicts old entries.
+     * Key that matches only the very object it was created for.
+     * {@link System#identityHashCode(Object)} alone isn't unique, so it is
+     * only used as the hash code.
      */
-    private static final class InternalCache extends LinkedHashMap<Integer, ResponseMetadata> {
-        private int maxSize;
+    private static final class IdentityKey {
+        private final WeakReference<Object> reference;
+        private final int hashCode;
 
-        public InternalCache(int maxSize) {
-            super(maxSize);
-            this.maxSize = maxSize;
+        IdentityKey(Object obj) {
+            reference = new WeakReference<Object>(obj);
+            hashCode = System.identityHashCode(obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
         }
 
         @Override
-        protected boolean removeEldestEntry(Entry eldest) {
-            return size() > maxSize;
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof IdentityKey)) {
+                return false;
+            }
+            Object referent = reference.get();
+            return referent != null && referent == ((IdentityKey) other).reference.get();
         }
     }
 }
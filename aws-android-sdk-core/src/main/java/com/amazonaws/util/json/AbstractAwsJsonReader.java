@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import java.io.IOException;
+
+/**
+ * A base class of {@link AwsJsonReader} which reads numbers and booleans
+ * without going through a {@link String} when the underlying parser can. The
+ * default implementations parse {@link #nextString()}.
+ * <p>
+ * The static methods read the typed values from any {@link AwsJsonReader},
+ * natively from the readers extending this class.
+ */
+public abstract class AbstractAwsJsonReader implements AwsJsonReader {
+
+    /**
+     * Gets the next value as a boolean. A {@link AwsJsonToken#VALUE_STRING}
+     * is parsed like {@link Boolean#parseBoolean(String)}. The value must not
+     * be {@link AwsJsonToken#VALUE_NULL}, which can be checked with
+     * {@link #peek()}.
+     *
+     * @return the next value as a boolean
+     * @throws IOException
+     */
+    public boolean nextBoolean() throws IOException {
+        return Boolean.parseBoolean(nextString());
+    }
+
+    /**
+     * Gets the next value as an int. A {@link AwsJsonToken#VALUE_STRING} is
+     * parsed like {@link Integer#parseInt(String)}. The value must not be
+     * {@link AwsJsonToken#VALUE_NULL}, which can be checked with
+     * {@link #peek()}.
+     *
+     * @return the next value as an int
+     * @throws IOException
+     */
+    public int nextInt() throws IOException {
+        return Integer.parseInt(nextString());
+    }
+
+    /**
+     * Gets the next value as a long. A {@link AwsJsonToken#VALUE_STRING} is
+     * parsed like {@link Long#parseLong(String)}. The value must not be
+     * {@link AwsJsonToken#VALUE_NULL}, which can be checked with
+     * {@link #peek()}.
+     *
+     * @return the next value as a long
+     * @throws IOException
+     */
+    public long nextLong() throws IOException {
+        return Long.parseLong(nextString());
+    }
+
+    /**
+     * Gets the next value as a double. A {@link AwsJsonToken#VALUE_STRING} is
+     * parsed like {@link Double#parseDouble(String)}. The value must not be
+     * {@link AwsJsonToken#VALUE_NULL}, which can be checked with
+     * {@link #peek()}.
+     *
+     * @return the next value as a double
+     * @throws IOException
+     */
+    public double nextDouble() throws IOException {
+        return Double.parseDouble(nextString());
+    }
+
+    /**
+     * Reads the next value of the reader as a boolean.
+     *
+     * @see #nextBoolean()
+     */
+    public static boolean nextBoolean(AwsJsonReader reader) throws IOException {
+        if (reader instanceof AbstractAwsJsonReader) {
+            return ((AbstractAwsJsonReader) reader).nextBoolean();
+        }
+        return Boolean.parseBoolean(reader.nextString());
+    }
+
+    /**
+     * Reads the next value of the reader as an int.
+     *
+     * @see #nextInt()
+     */
+    public static int nextInt(AwsJsonReader reader) throws IOException {
+        if (reader instanceof AbstractAwsJsonReader) {
+            return ((AbstractAwsJsonReader) reader).nextInt();
+        }
+        return Integer.parseInt(reader.nextString());
+    }
+
+    /**
+     * Reads the next value of the reader as a long.
+     *
+     * @see #nextLong()
+     */
+    public static long nextLong(AwsJsonReader reader) throws IOException {
+        if (reader instanceof AbstractAwsJsonReader) {
+            return ((AbstractAwsJsonReader) reader).nextLong();
+        }
+        return Long.parseLong(reader.nextString());
+    }
+
+    /**
+     * Reads the next value of the reader as a double.
+     *
+     * @see #nextDouble()
+     */
+    public static double nextDouble(AwsJsonReader reader) throws IOException {
+        if (reader instanceof AbstractAwsJsonReader) {
+            return ((AbstractAwsJsonReader) reader).nextDouble();
+        }
+        return Double.parseDouble(reader.nextString());
+    }
+}
@@ -43,7 +43,7 @@ final class GsonFactory implements AwsJsonFactory {
         return new GsonWriter(out);
     }
 
-    private static final class GsonReader implements AwsJsonReader {
+    private static final class GsonReader extends AbstractAwsJsonReader {
         private final JsonReader reader;
 
         public GsonReader(Reader in) {
@@ -100,6 +100,38 @@ final class GsonFactory implements AwsJsonFactory {
             return reader.nextString();
         }
 
+        @Override
+        public boolean nextBoolean() throws IOException {
+            if (JsonToken.STRING.equals(reader.peek())) {
+                return Boolean.parseBoolean(reader.nextString());
+            }
+            return reader.nextBoolean();
+        }
+
+        @Override
+        public int nextInt() throws IOException {
+            if (JsonToken.STRING.equals(reader.peek())) {
+                return Integer.parseInt(reader.nextString());
+            }
+            return reader.nextInt();
+        }
+
+        @Override
+        public long nextLong() throws IOException {
+            if (JsonToken.STRING.equals(reader.peek())) {
+                return Long.parseLong(reader.nextString());
+            }
+            return reader.nextLong();
+        }
+
+        @Override
+        public double nextDouble() throws IOException {
+            if (JsonToken.STRING.equals(reader.peek())) {
+                return Double.parseDouble(reader.nextString());
+            }
+            return reader.nextDouble();
+        }
+
         @Override
         public void skipValue() throws IOException {
             reader.skipValue();
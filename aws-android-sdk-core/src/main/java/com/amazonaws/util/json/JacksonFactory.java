@@ -46,7 +46,7 @@ final class JacksonFactory implements AwsJsonFactory {
         return new JacksonWriter(factory, out);
     }
 
-    private static final class JacksonReader implements AwsJsonReader {
+    private static final class JacksonReader extends AbstractAwsJsonReader {
 
         private JsonParser reader;
         private JsonToken nextToken = null;
@@ -115,6 +115,52 @@ final class JacksonFactory implements AwsJsonFactory {
             return s;
         }
 
+        @Override
+        public boolean nextBoolean() throws IOException {
+            nextToken();
+            boolean b;
+            if (JsonToken.VALUE_TRUE == nextToken) {
+                b = true;
+            } else if (JsonToken.VALUE_FALSE == nextToken) {
+                b = false;
+            } else {
+                b = Boolean.parseBoolean(reader.getText());
+            }
+            clearToken();
+            return b;
+        }
+
+        @Override
+        public int nextInt() throws IOException {
+            nextToken();
+            int i = JsonToken.VALUE_NUMBER_INT == nextToken
+                    ? reader.getIntValue()
+                    : Integer.parseInt(reader.getText());
+            clearToken();
+            return i;
+        }
+
+        @Override
+        public long nextLong() throws IOException {
+            nextToken();
+            long l = JsonToken.VALUE_NUMBER_INT == nextToken
+                    ? reader.getLongValue()
+                    : Long.parseLong(reader.getText());
+            clearToken();
+            return l;
+        }
+
+        @Override
+        public double nextDouble() throws IOException {
+            nextToken();
+            double d = JsonToken.VALUE_NUMBER_INT == nextToken
+                    || JsonToken.VALUE_NUMBER_FLOAT == nextToken
+                    ? reader.getDoubleValue()
+                    : Double.parseDouble(reader.getText());
+            clearToken();
+            return d;
+        }
+
         @Override
         public AwsJsonToken peek() throws IOException {
             nextToken();
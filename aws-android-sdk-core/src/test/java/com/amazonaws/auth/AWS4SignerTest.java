@@ -22,6 +22,8 @@ import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.DefaultRequest;
 import com.amazonaws.Request;
+import com.amazonaws.util.ContentOutputStream;
+import com.amazonaws.util.StringUtils;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -79,6 +81,67 @@ public class AWS4SignerTest {
                 request.getHeaders().get("Authorization"));
     }
 
+    @Test
+    public void testSigningKeyIsDerivedPerCredentialsAndDay() throws Exception {
+        final String EXPECTED_AUTHORIZATION_HEADER =
+                "AWS4-HMAC-SHA256 Credential=access/19810216/us-east-1/demo/aws4_request, SignedHeaders=host;x-amz-archive-description;x-amz-date, Signature=77fe7c02927966018667f21d1dc3dfad9057e58401cbb9ed64f1b7868288e35a";
+
+        Calendar c = new GregorianCalendar();
+        c.set(1981, 1, 16, 6, 30, 0);
+        c.setTimeZone(TimeZone.getTimeZone("UTC"));
+        signer.overrideDate(c.getTime());
+
+        Request<?> request = generateBasicRequest();
+        signer.sign(request, new BasicAWSCredentials("access", "secret"));
+        assertEquals(EXPECTED_AUTHORIZATION_HEADER, request.getHeaders().get("Authorization"));
+
+        // A different secret key must not pick up the cached signing key
+        request = generateBasicRequest();
+        signer.sign(request, new BasicAWSCredentials("access", "other-secret"));
+        assertFalse(EXPECTED_AUTHORIZATION_HEADER.equals(
+                request.getHeaders().get("Authorization")));
+
+        // Neither must the next day
+        c.add(Calendar.DATE, 1);
+        signer.overrideDate(c.getTime());
+        request = generateBasicRequest();
+        signer.sign(request, new BasicAWSCredentials("access", "secret"));
+        String nextDay = request.getHeaders().get("Authorization");
+        assertTrue(nextDay.contains("Credential=access/19810217/us-east-1/demo/aws4_request"));
+        // Other signers share the derived keys
+        AWS4Signer other = new AWS4Signer();
+        other.overrideDate(c.getTime());
+        request = generateBasicRequest();
+        other.sign(request, new BasicAWSCredentials("access", "secret"));
+        assertEquals(nextDay, request.getHeaders().get("Authorization"));
+
+        // Going back to the first day derives the original key again
+        c.add(Calendar.DATE, -1);
+        signer.overrideDate(c.getTime());
+        request = generateBasicRequest();
+        signer.sign(request, new BasicAWSCredentials("access", "secret"));
+        assertEquals(EXPECTED_AUTHORIZATION_HEADER, request.getHeaders().get("Authorization"));
+    }
+
+    @Test
+    public void testSigningPrehashedContent() throws Exception {
+        final String EXPECTED_AUTHORIZATION_HEADER =
+                "AWS4-HMAC-SHA256 Credential=access/19810216/us-east-1/demo/aws4_request, SignedHeaders=host;x-amz-archive-description;x-amz-date, Signature=77fe7c02927966018667f21d1dc3dfad9057e58401cbb9ed64f1b7868288e35a";
+
+        Calendar c = new GregorianCalendar();
+        c.set(1981, 1, 16, 6, 30, 0);
+        c.setTimeZone(TimeZone.getTimeZone("UTC"));
+        signer.overrideDate(c.getTime());
+
+        ContentOutputStream contentStream = new ContentOutputStream();
+        contentStream.write("{\"TableName\": \"foo\"}".getBytes(StringUtils.UTF8));
+        Request<?> request = generateBasicRequest();
+        request.setContent(contentStream.toInputStream());
+
+        signer.sign(request, new BasicAWSCredentials("access", "secret"));
+        assertEquals(EXPECTED_AUTHORIZATION_HEADER, request.getHeaders().get("Authorization"));
+    }
+
     @Test
     public void testCorrectHeadersAreSigned() {
         // Make sure neccesary headers are signed
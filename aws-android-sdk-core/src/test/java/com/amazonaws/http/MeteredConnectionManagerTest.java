@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertEquals;
+
+import com.amazonaws.ClientConfiguration;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class MeteredConnectionManagerTest {
+
+    private MeteredConnectionManager manager;
+    private final HttpRoute route = new HttpRoute(new HttpHost("localhost", 80));
+
+    @Before
+    public void setup() {
+        ClientConfiguration config = new ClientConfiguration()
+                .withMaxConnections(2)
+                .withReaper(false);
+        HttpParams params = new BasicHttpParams();
+        manager = (MeteredConnectionManager) ConnectionManagerFactory
+                .createThreadSafeClientConnManager(config, params);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testLeaseAndRelease() throws Exception {
+        assertEquals(0, manager.getLeasedCount());
+        assertEquals(0, manager.getAvailableCount());
+
+        ManagedClientConnection c1 = manager.requestConnection(route, null)
+                .getConnection(1, TimeUnit.SECONDS);
+        ManagedClientConnection c2 = manager.requestConnection(route, null)
+                .getConnection(1, TimeUnit.SECONDS);
+        assertEquals(2, manager.getLeasedCount());
+        assertEquals(0, manager.getAvailableCount());
+        assertEquals(0, manager.getPendingCount());
+
+        c1.markReusable();
+        manager.releaseConnection(c1, 1, TimeUnit.MINUTES);
+        assertEquals(1, manager.getLeasedCount());
+
+        manager.releaseConnection(c2, 1, TimeUnit.MINUTES);
+        assertEquals(0, manager.getLeasedCount());
+    }
+
+    @Test
+    public void testReleaseAfterShutdown() throws Exception {
+        ManagedClientConnection c1 = manager.requestConnection(route, null)
+                .getConnection(1, TimeUnit.SECONDS);
+        ManagedClientConnection c2 = manager.requestConnection(route, null)
+                .getConnection(1, TimeUnit.SECONDS);
+
+        manager.shutdown();
+        assertEquals(2, manager.getLeasedCount());
+        manager.releaseConnection(c1, 1, TimeUnit.MINUTES);
+        assertEquals(1, manager.getLeasedCount());
+        manager.releaseConnection(c2, 1, TimeUnit.MINUTES);
+        assertEquals(0, manager.getLeasedCount());
+
+        // released twice
+        manager.releaseConnection(c2, 1, TimeUnit.MINUTES);
+        assertEquals(0, manager.getLeasedCount());
+    }
+
+    @Test
+    public void testPendingWhenPoolExhausted() throws Exception {
+        ManagedClientConnection c1 = manager.requestConnection(route, null)
+                .getConnection(1, TimeUnit.SECONDS);
+        ManagedClientConnection c2 = manager.requestConnection(route, null)
+                .getConnection(1, TimeUnit.SECONDS);
+
+        final ManagedClientConnection[] waited = new ManagedClientConnection[1];
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    waited[0] = manager.requestConnection(route, null)
+                            .getConnection(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    // assertion below fails
+                }
+            }
+        };
+        waiter.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (manager.getPendingCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, manager.getPendingCount());
+
+        manager.releaseConnection(c1, 1, TimeUnit.MINUTES);
+        waiter.join(5000);
+        assertEquals(0, manager.getPendingCount());
+        assertEquals(2, manager.getLeasedCount());
+
+        manager.releaseConnection(c2, 1, TimeUnit.MINUTES);
+        manager.releaseConnection(waited[0], 1, TimeUnit.MINUTES);
+        assertEquals(0, manager.getLeasedCount());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.internal.CRC32MismatchException;
+import com.amazonaws.transform.JsonUnmarshallerContext;
+import com.amazonaws.transform.MapUnmarshaller;
+import com.amazonaws.transform.SimpleTypeJsonUnmarshallers.StringJsonUnmarshaller;
+import com.amazonaws.transform.Unmarshaller;
+import com.amazonaws.util.StringUtils;
+import com.amazonaws.util.json.AbstractAwsJsonReader;
+import com.amazonaws.util.json.AwsJsonReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+public class StreamingJsonResponseHandlerTest {
+
+    private static final String JSON = "{\"Count\": 3, \"Last\": {\"k\": \"c\"}, "
+            + "\"Items\": [\"a\", \"b\", \"c\"], \"Scanned\": [1.50, true, null]} ";
+
+    private final Unmarshaller<Map<String, String>, JsonUnmarshallerContext> resultUnmarshaller =
+            new Unmarshaller<Map<String, String>, JsonUnmarshallerContext>() {
+                @Override
+                public Map<String, String> unmarshall(JsonUnmarshallerContext context)
+                        throws Exception {
+                    Map<String, String> result = new HashMap<String, String>();
+                    AwsJsonReader reader = context.getReader();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if (name.equals("Count")) {
+                            result.put(name, String.valueOf(AbstractAwsJsonReader.nextInt(reader)));
+                        } else if (name.equals("Last")) {
+                            result.put(name, new MapUnmarshaller<String>(StringJsonUnmarshaller
+                                    .getInstance()).unmarshall(context).toString());
+                        } else if (name.equals("Scanned")) {
+                            reader.beginArray();
+                            StringBuilder values = new StringBuilder();
+                            values.append(AbstractAwsJsonReader.nextDouble(reader)).append(',');
+                            values.append(AbstractAwsJsonReader.nextBoolean(reader)).append(',');
+                            values.append(StringJsonUnmarshaller.getInstance()
+                                    .unmarshall(context));
+                            reader.endArray();
+                            result.put(name, values.toString());
+                        } else {
+                            result.put(name, "unexpected");
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    return result;
+                }
+            };
+
+    private final StreamingJsonResponseHandler<Map<String, String>, String> handler =
+            new StreamingJsonResponseHandler<Map<String, String>, String>("Items",
+                    StringJsonUnmarshaller.getInstance(), resultUnmarshaller);
+
+    private static HttpResponse response(Long crc32, ByteArrayInputStream content) {
+        HttpResponse.Builder builder = new HttpResponse.Builder().statusCode(200)
+                .statusText("OK").content(content);
+        if (crc32 != null) {
+            builder.header("x-amz-crc32", String.valueOf(crc32));
+        }
+        return builder.build();
+    }
+
+    private static long crc32(String json) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(json.getBytes(StringUtils.UTF8));
+        return crc32.getValue();
+    }
+
+    @Test
+    public void testStreamsItemsAndUnmarshallsOtherMembers() throws Exception {
+        StreamingJsonResult<Map<String, String>, String> result = handler.handle(
+                response(crc32(JSON),
+                        new ByteArrayInputStream(JSON.getBytes(StringUtils.UTF8))))
+                .getResult();
+        assertTrue(handler.needsConnectionLeftOpen());
+
+        assertEquals("a", result.next());
+        try {
+            result.getResult();
+            fail("result available before the items were read");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(result.hasNext());
+        assertEquals("b", result.next());
+        assertEquals("c", result.next());
+        assertFalse(result.hasNext());
+
+        Map<String, String> members = result.getResult();
+        assertEquals(3, members.size());
+        assertEquals("3", members.get("Count"));
+        assertEquals("{k=c}", members.get("Last"));
+        assertEquals("1.5,true,null", members.get("Scanned"));
+    }
+
+    @Test
+    public void testNullOrMissingList() throws Exception {
+        String json = "{\"Items\": null, \"Count\": 0}";
+        StreamingJsonResult<Map<String, String>, String> result = handler.handle(
+                response(null, new ByteArrayInputStream(json.getBytes(StringUtils.UTF8))))
+                .getResult();
+        assertFalse(result.hasNext());
+        assertEquals("0", result.getResult().get("Count"));
+
+        json = "{\"Count\": 0, \"Items\": []}";
+        result = handler.handle(
+                response(null, new ByteArrayInputStream(json.getBytes(StringUtils.UTF8))))
+                .getResult();
+        assertFalse(result.hasNext());
+        assertEquals("0", result.getResult().get("Count"));
+    }
+
+    @Test
+    public void testChecksumVerifiedAtEndOfStream() throws Exception {
+        StreamingJsonResult<Map<String, String>, String> result = handler.handle(
+                response(crc32(JSON) + 1,
+                        new ByteArrayInputStream(JSON.getBytes(StringUtils.UTF8))))
+                .getResult();
+        assertEquals("a", result.next());
+        assertEquals("b", result.next());
+        assertEquals("c", result.next());
+        try {
+            result.hasNext();
+            fail("checksum mismatch not detected");
+        } catch (AmazonClientException e) {
+            assertTrue(e.getCause() instanceof CRC32MismatchException);
+        }
+        assertFalse(result.hasNext());
+    }
+
+    @Test
+    public void testCloseReleasesConnection() throws Exception {
+        final boolean[] closed = new boolean[1];
+        ByteArrayInputStream content = new ByteArrayInputStream(JSON.getBytes(StringUtils.UTF8)) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        };
+        StreamingJsonResult<Map<String, String>, String> result = handler.handle(
+                response(null, content)).getResult();
+        assertEquals("a", result.next());
+        assertFalse(closed[0]);
+
+        result.close();
+        assertTrue(closed[0]);
+        assertFalse(result.hasNext());
+        try {
+            result.getResult();
+            fail("result available after closing");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
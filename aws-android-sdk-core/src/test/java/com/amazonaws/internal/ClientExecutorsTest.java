@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClientExecutorsTest {
+
+    private ExecutorService executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConfiguration() {
+        executor = ClientExecutors.newFixedThreadPool(3);
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        assertEquals(3, pool.getCorePoolSize());
+        assertEquals(3, pool.getMaximumPoolSize());
+        assertTrue(pool.allowsCoreThreadTimeOut());
+        assertEquals(ClientExecutors.KEEP_ALIVE_SECONDS,
+                pool.getKeepAliveTime(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPoolSizeIsKept() throws InterruptedException {
+        executor = ClientExecutors.newFixedThreadPool(3);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    int max;
+                    while (current > (max = maxRunning.get())
+                            && !maxRunning.compareAndSet(max, current)) {
+                        // retry
+                    }
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // the rest were queued rather than run on more threads
+        assertTrue("ran " + maxRunning.get() + " at once", maxRunning.get() <= 3);
+        assertEquals(3, ((ThreadPoolExecutor) executor).getLargestPoolSize());
+    }
+
+    @Test
+    public void testIdleThreadsTimeOut() throws InterruptedException {
+        executor = ClientExecutors.newFixedThreadPool(3, 100, TimeUnit.MILLISECONDS);
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        final CountDownLatch started = new CountDownLatch(3);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(3, pool.getPoolSize());
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getPoolSize() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, pool.getPoolSize());
+
+        // and are started again on demand
+        final CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+}
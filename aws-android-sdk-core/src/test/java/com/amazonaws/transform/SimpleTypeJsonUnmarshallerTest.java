@@ -16,19 +16,27 @@
 package com.amazonaws.transform;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.transform.JsonUnmarshallerContext;
 import com.amazonaws.transform.SimpleTypeJsonUnmarshallers;
 import com.amazonaws.util.Base64;
 import com.amazonaws.util.json.AwsJsonReader;
 import com.amazonaws.util.json.AwsJsonWriter;
 import com.amazonaws.util.json.JsonUtils;
+import com.amazonaws.util.json.JsonUtils.JsonEngine;
 
 import org.junit.Test;
 
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
@@ -36,6 +44,113 @@ import java.util.Date;
 
 public class SimpleTypeJsonUnmarshallerTest {
 
+    @Test
+    public void testNumericAndBooleanValuesWithBothEngines() throws Exception {
+        String json = "{\"long\":1234567890123,\"quotedInt\":\"42\",\"double\":1.5,"
+                + "\"bool\":true,\"quotedBool\":\"true\",\"null\":null,"
+                + "\"date\":1451606400.123}";
+        try {
+            for (JsonEngine engine : JsonEngine.values()) {
+                JsonUtils.setJsonEngine(engine);
+                JsonUnmarshallerContext context = new JsonUnmarshallerContext(
+                        JsonUtils.getJsonReader(new StringReader(json)));
+                context.getReader().beginObject();
+
+                context.getReader().nextName();
+                assertEquals(Long.valueOf(1234567890123L),
+                        SimpleTypeJsonUnmarshallers.LongJsonUnmarshaller.getInstance()
+                                .unmarshall(context));
+                context.getReader().nextName();
+                assertEquals(Integer.valueOf(42),
+                        SimpleTypeJsonUnmarshallers.IntegerJsonUnmarshaller.getInstance()
+                                .unmarshall(context));
+                context.getReader().nextName();
+                assertEquals(Double.valueOf(1.5),
+                        SimpleTypeJsonUnmarshallers.DoubleJsonUnmarshaller.getInstance()
+                                .unmarshall(context));
+                context.getReader().nextName();
+                assertEquals(Boolean.TRUE,
+                        SimpleTypeJsonUnmarshallers.BooleanJsonUnmarshaller.getInstance()
+                                .unmarshall(context));
+                context.getReader().nextName();
+                assertEquals(Boolean.TRUE,
+                        SimpleTypeJsonUnmarshallers.BooleanJsonUnmarshaller.getInstance()
+                                .unmarshall(context));
+                context.getReader().nextName();
+                assertNull(SimpleTypeJsonUnmarshallers.LongJsonUnmarshaller.getInstance()
+                        .unmarshall(context));
+                context.getReader().nextName();
+                assertEquals(1451606400123L,
+                        SimpleTypeJsonUnmarshallers.DateJsonUnmarshaller.getInstance()
+                                .unmarshall(context).getTime());
+
+                context.getReader().endObject();
+            }
+        } finally {
+            JsonUtils.setJsonEngine(JsonEngine.Gson);
+        }
+    }
+
+    @Test
+    public void testDateNotANumberWithBothEngines() throws Exception {
+        String[] values = {
+                "\"abc\"", "true", "{}", "[1]"
+        };
+        try {
+            for (JsonEngine engine : JsonEngine.values()) {
+                JsonUtils.setJsonEngine(engine);
+                for (String value : values) {
+                    JsonUnmarshallerContext context = new JsonUnmarshallerContext(
+                            JsonUtils.getJsonReader(new StringReader("{\"date\":" + value + "}")));
+                    context.getReader().beginObject();
+                    context.getReader().nextName();
+                    try {
+                        SimpleTypeJsonUnmarshallers.DateJsonUnmarshaller.getInstance()
+                                .unmarshall(context);
+                        fail(engine + " parsed " + value + " as a date");
+                    } catch (AmazonClientException e) {
+                        // expected
+                    }
+                }
+            }
+        } finally {
+            JsonUtils.setJsonEngine(JsonEngine.Gson);
+        }
+    }
+
+    @Test
+    public void testReaderNotExtendingBaseClass() throws Exception {
+        // hides the typed reads of the underlying reader
+        final AwsJsonReader reader = JsonUtils.getJsonReader(new StringReader(
+                "{\"int\":42,\"bool\":true,\"date\":1451606400.5}"));
+        AwsJsonReader plain = (AwsJsonReader) Proxy.newProxyInstance(
+                AwsJsonReader.class.getClassLoader(), new Class<?>[] {
+                    AwsJsonReader.class
+                }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        try {
+                            return method.invoke(reader, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+        JsonUnmarshallerContext context = new JsonUnmarshallerContext(plain);
+        plain.beginObject();
+        plain.nextName();
+        assertEquals(Integer.valueOf(42), SimpleTypeJsonUnmarshallers.IntegerJsonUnmarshaller
+                .getInstance().unmarshall(context));
+        plain.nextName();
+        assertEquals(Boolean.TRUE, SimpleTypeJsonUnmarshallers.BooleanJsonUnmarshaller
+                .getInstance().unmarshall(context));
+        plain.nextName();
+        assertEquals(1451606400500L, SimpleTypeJsonUnmarshallers.DateJsonUnmarshaller
+                .getInstance().unmarshall(context).getTime());
+        plain.endObject();
+    }
+
     @Test
     public void testBigDecimalJsonUnmarshaller() throws Exception {
         BigDecimal bd = new BigDecimal("1.5");
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.util.json.AwsJsonWriter;
+import com.amazonaws.util.json.JsonUtils;
+
+import org.junit.Test;
+
+import java.io.OutputStreamWriter;
+import java.security.MessageDigest;
+
+public class ContentOutputStreamTest {
+
+    @Test
+    public void testJsonContent() throws Exception {
+        ContentOutputStream contentStream = new ContentOutputStream();
+        AwsJsonWriter jsonWriter = JsonUtils.getJsonWriter(new OutputStreamWriter(
+                contentStream, StringUtils.UTF8));
+        jsonWriter.beginObject();
+        jsonWriter.name("TableName").value("täble");
+        jsonWriter.endObject();
+        jsonWriter.close();
+
+        byte[] expected = "{\"TableName\":\"täble\"}".getBytes(StringUtils.UTF8);
+        ContentInputStream content = contentStream.toInputStream();
+        assertEquals(expected.length, contentStream.size());
+        assertEquals(expected.length, content.getContentLength());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(expected),
+                content.getContentSha256());
+
+        assertTrue(content.markSupported());
+        content.mark(-1);
+        assertArrayEquals(expected, IOUtils.toByteArray(content));
+        content.reset();
+        assertArrayEquals(expected, IOUtils.toByteArray(content));
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        ContentOutputStream contentStream = new ContentOutputStream(4);
+        contentStream.write("discarded".getBytes(StringUtils.UTF8));
+        contentStream.reset();
+        byte[] expected = "kept".getBytes(StringUtils.UTF8);
+        contentStream.write(expected);
+        contentStream.write('!');
+
+        ContentInputStream content = contentStream.toInputStream();
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(expected);
+        md.update((byte) '!');
+        assertArrayEquals(md.digest(), content.getContentSha256());
+        assertEquals("kept!", IOUtils.toString(content));
+    }
+}
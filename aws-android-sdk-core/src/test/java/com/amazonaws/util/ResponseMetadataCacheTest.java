@@ -16,6 +16,7 @@
 package com.amazonaws.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import com.amazonaws.AmazonWebServiceRequest;
@@ -23,8 +24,11 @@ import com.amazonaws.ResponseMetadata;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /** Tests for the response metadata cache class. */
 public class ResponseMetadataCacheTest {
@@ -61,9 +65,73 @@ public class ResponseMetadataCacheTest {
         assertEquals(metadata4, cache.get(key4));
     }
 
+    /** Tests that keys only match the object they were added for. */
+    @Test
+    public void testIdentityKeys() {
+        ResponseMetadataCache cache = new ResponseMetadataCache(3);
+        AmazonWebServiceRequest key = new EqualsAllRequest();
+        ResponseMetadata metadata = newResponseMetadata();
+
+        cache.add(key, metadata);
+        assertEquals(metadata, cache.get(key));
+        assertNull(cache.get(new EqualsAllRequest()));
+        assertNull(cache.get(null));
+    }
+
+    /** Tests that concurrent writers keep the cache within its bound. */
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        final ResponseMetadataCache cache = new ResponseMetadataCache(10);
+        final List<AmazonWebServiceRequest> lastKeys = new CopyOnWriteArrayList<AmazonWebServiceRequest>();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    AmazonWebServiceRequest key = null;
+                    for (int j = 0; j < 1000; j++) {
+                        key = new TestRequest();
+                        cache.add(key, newResponseMetadata());
+                    }
+                    lastKeys.add(key);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Ten newer entries must push out everything added concurrently
+        List<AmazonWebServiceRequest> newKeys = new ArrayList<AmazonWebServiceRequest>();
+        for (int i = 0; i < 10; i++) {
+            AmazonWebServiceRequest key = new TestRequest();
+            cache.add(key, newResponseMetadata());
+            newKeys.add(key);
+        }
+        for (AmazonWebServiceRequest key : newKeys) {
+            assertNotNull(cache.get(key));
+        }
+        for (AmazonWebServiceRequest key : lastKeys) {
+            assertNull(cache.get(key));
+        }
+    }
+
     private class TestRequest extends AmazonWebServiceRequest {
     }
 
+    private class EqualsAllRequest extends AmazonWebServiceRequest {
+        @Override
+        public boolean equals(Object obj) {
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+    }
+
     private ResponseMetadata newResponseMetadata() {
         HashMap<String, String> metadata = new HashMap<String, String>();
         metadata.put("foo", "bar-" + new Random().nextLong());
@@ -270,7 +270,7 @@ public final class ConversionSchemas {
 
             for (Method getter : reflector.getRelevantGetters(clazz)) {
                 Object getterResult =
-                        ReflectionUtils.safeInvoke(getter, object);
+                        reflector.getAccessor(getter).get(object);
 
                 if (getterResult != null) {
                     AttributeValue value = convert(getter, getterResult);
@@ -434,7 +434,7 @@ public final class ConversionSchemas {
                     getUnmarshaller(getter, setter);
 
             Object unmarshalled = unmarshall(unmarshaller, setter, value);
-            ReflectionUtils.safeInvoke(setter, target, unmarshalled);
+            reflector.getAccessor(getter).set(target, unmarshalled);
         }
 
         private ArgumentUnmarshaller getUnmarshaller(
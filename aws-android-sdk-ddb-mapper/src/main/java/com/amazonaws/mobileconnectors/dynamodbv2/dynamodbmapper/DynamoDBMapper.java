@@ -19,7 +19,9 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.BatchWriteRetryStrategy;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.ConsistentReads;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.DefaultBatchWriteRetryStrategy;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.SaveBehavior;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBTableSchemaParser.TableIndexesInfo;
@@ -69,6 +71,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -76,6 +79,13 @@ import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Object mapper for domain-object interaction with DynamoDB.
@@ -185,6 +195,8 @@ public class DynamoDBMapper {
 
     /** The max number of items allowed in a BatchWrite request */
     static final int MAX_ITEMS_PER_BATCH = 25;
+    /** The max number of keys allowed in a BatchGet request */
+    static final int MAX_KEYS_PER_BATCH_GET = 100;
     /**
      * This retry count is applicable only when every batch get item request
      * results in no data retrieved from server and the un processed keys is
@@ -321,6 +333,25 @@ public class DynamoDBMapper {
         }
     }
 
+    /**
+     * Registers the factory of the accessors of the properties declared by a
+     * class, so this mapper reads and writes them through these accessors
+     * instead of calling the getters and setters through reflection.
+     * Properties the factory has no accessor for are still accessed through
+     * reflection. Other mappers aren't affected.
+     *
+     * @param clazz The class declaring the getters of the properties.
+     * @param factory The factory, or null to access the properties of the
+     *            class through reflection.
+     * @throws IllegalStateException if this mapper already accessed the
+     *             properties of the class, as it keeps their accessors.
+     *             Register the factory before the class is first mapped.
+     */
+    public void registerPropertyAccessorFactory(Class<?> clazz,
+            DynamoDBPropertyAccessor.Factory factory) {
+        reflector.registerAccessorFactory(clazz, factory);
+    }
+
     /**
      * Loads an object with the hash key given and a configuration override.
      * This configuration overrides the default provided at object construction.
@@ -425,7 +456,7 @@ public class DynamoDBMapper {
         Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
         for (Method keyGetter : reflector.getPrimaryKeyGetters(clazz)) {
             Object getterResult =
-                    ReflectionUtils.safeInvoke(keyGetter, keyObject);
+                    reflector.getAccessor(keyGetter).get(keyObject);
 
             AttributeValue keyAttributeValue =
                     converter.convert(keyGetter, getterResult);
@@ -490,7 +521,7 @@ public class DynamoDBMapper {
                                     + ". Use load(Object) for tables with more than a single hash and range key.");
                 }
                 seenHashKey = true;
-                ReflectionUtils.safeInvoke(reflector.getSetter(getter), keyObject, hashKey);
+                reflector.getAccessor(getter).set(keyObject, hashKey);
             } else if (ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBRangeKey.class)) {
                 if (seenRangeKey) {
                     throw new DynamoDBMappingException(
@@ -501,7 +532,7 @@ public class DynamoDBMapper {
                                     + ". Use load(Object) for tables with more than a single hash and range key.");
                 }
                 seenRangeKey = true;
-                ReflectionUtils.safeInvoke(reflector.getSetter(getter), keyObject, rangeKey);
+                reflector.getAccessor(getter).set(keyObject, rangeKey);
             }
         }
         if (!seenHashKey) {
@@ -541,7 +572,7 @@ public class DynamoDBMapper {
                             getter, DynamoDBIndexHashKey.class)) {
 
                 Object getterReturnResult =
-                        ReflectionUtils.safeInvoke(getter, obj);
+                        reflector.getAccessor(getter).get(obj);
 
                 if (getterReturnResult != null) {
                     conditions.put(
@@ -708,7 +739,7 @@ public class DynamoDBMapper {
          */
         boolean hashKeyGetterFound = false;
         for (Method method : keyGetters) {
-            Object getterResult = ReflectionUtils.safeInvoke(method, object);
+            Object getterResult = reflector.getAccessor(method).get(object);
             if (getterResult == null && reflector.isAssignableKey(method)) {
                 forcePut = true;
             }
@@ -990,7 +1021,7 @@ public class DynamoDBMapper {
              * First handle keys
              */
             for (Method method : keyGetters) {
-                Object getterResult = ReflectionUtils.safeInvoke(method, object);
+                Object getterResult = reflector.getAccessor(method).get(object);
                 String attributeName = reflector.getAttributeName(method);
 
                 if (getterResult == null && reflector.isAssignableKey(method)) {
@@ -1027,7 +1058,7 @@ public class DynamoDBMapper {
                 if (keyGetters.contains(method))
                     continue;
 
-                Object getterResult = ReflectionUtils.safeInvoke(method, object);
+                Object getterResult = reflector.getAccessor(method).get(object);
                 String attributeName = reflector.getAttributeName(method);
 
                 /*
@@ -1304,7 +1335,7 @@ public class DynamoDBMapper {
             for (Method method : reflector.getRelevantGetters(clazz)) {
 
                 if (reflector.isVersionAttributeGetter(method)) {
-                    Object getterResult = ReflectionUtils.safeInvoke(method, object);
+                    Object getterResult = reflector.getAccessor(method).get(object);
                     String attributeName = reflector.getAttributeName(method);
 
                     ExpectedAttributeValue expected = new ExpectedAttributeValue();
@@ -1457,12 +1488,16 @@ public class DynamoDBMapper {
      *            version checks are performed</b>, as required by the
      *            {@link AmazonDynamoDB#batchWriteItem(BatchWriteItemRequest)}
      *            API.
-     * @param config Only {@link DynamoDBMapperConfig#getTableNameOverride()} is
-     *            considered; if specified, all objects in the two parameter
-     *            lists will be considered to belong to the given table
-     *            override. In particular, this method <b>always acts as if
+     * @param config Only {@link DynamoDBMapperConfig#getTableNameOverride()},
+     *            the batch write retry strategy, the batch executor and the max
+     *            number of concurrent batches are considered; if a table name
+     *            override is specified, all objects in the two parameter lists
+     *            will be considered to belong to the given table override. In
+     *            particular, this method <b>always acts as if
      *            SaveBehavior.CLOBBER was specified</b> regardless of the value
-     *            of the config parameter.
+     *            of the config parameter. When a batch executor is set, the
+     *            batches are sent on it, at most
+     *            {@link DynamoDBMapperConfig#getMaxConcurrentBatches()} at once.
      * @return A list of failed batches which includes the unprocessed items and
      *         the exceptions causing the failure.
      */
@@ -1486,7 +1521,7 @@ public class DynamoDBMapper {
             // Look at every getter and construct a value object for it
             for (Method method : reflector.getRelevantGetters(clazz)) {
                 Object getterResult =
-                        ReflectionUtils.safeInvoke(method, toWrite);
+                        reflector.getAccessor(method).get(toWrite);
 
                 String attributeName = reflector.getAttributeName(method);
 
@@ -1531,7 +1566,9 @@ public class DynamoDBMapper {
                     new WriteRequest().withDeleteRequest(new DeleteRequest().withKey(key)));
         }
 
-        // Break into chunks of 25 items and make service requests to DynamoDB
+        // Break into chunks of 25 items
+        List<Map<String, List<WriteRequest>>> batches =
+                new ArrayList<Map<String, List<WriteRequest>>>();
         while (!requestItems.isEmpty()) {
 
             HashMap<String, List<WriteRequest>> batch =
@@ -1561,20 +1598,38 @@ public class DynamoDBMapper {
                 }
             }
 
-            List<FailedBatch> failedBatches = writeOneBatch(batch);
-            if (failedBatches != null) {
-                totalFailedBatches.addAll(failedBatches);
-
-                // If contains throttling exception, we do a backoff
-                if (containsThrottlingException(failedBatches)) {
-                    try {
-                        Thread.sleep(1000 * 2);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new AmazonClientException(e.getMessage(), e);
+            batches.add(batch);
+        }
+
+        // Make service requests to DynamoDB
+        final BatchWriteRetryStrategy retryStrategy = getBatchWriteRetryStrategy(config);
+        // Number of batches throttled in a row, shared by the batches in flight
+        final AtomicInteger consecutiveThrottles = new AtomicInteger();
+        List<Callable<List<FailedBatch>>> tasks =
+                new ArrayList<Callable<List<FailedBatch>>>(batches.size());
+        for (final Map<String, List<WriteRequest>> batch : batches) {
+            tasks.add(new Callable<List<FailedBatch>>() {
+                @Override
+                public List<FailedBatch> call() {
+                    // If the table is being throttled, we do a backoff
+                    int throttles = consecutiveThrottles.get();
+                    if (throttles > 0) {
+                        pause(retryStrategy.getDelayBeforeRetryUnprocessedItems(
+                                Collections.unmodifiableMap(batch), throttles));
+                    }
+
+                    List<FailedBatch> failedBatches = writeOneBatch(batch, retryStrategy);
+                    if (containsThrottlingException(failedBatches)) {
+                        consecutiveThrottles.incrementAndGet();
+                    } else {
+                        consecutiveThrottles.set(0);
                     }
+                    return failedBatches;
                 }
-            }
+            });
+        }
+        for (List<FailedBatch> failedBatches : runBatches(tasks, config)) {
+            totalFailedBatches.addAll(failedBatches);
         }
 
         // Once the entire batch is processed, update assigned keys in memory
@@ -1591,11 +1646,16 @@ public class DynamoDBMapper {
      * beyond 1M).
      */
     List<FailedBatch> writeOneBatch(Map<String, List<WriteRequest>> batch) {
+        return writeOneBatch(batch, DefaultBatchWriteRetryStrategy.INSTANCE);
+    }
+
+    private List<FailedBatch> writeOneBatch(Map<String, List<WriteRequest>> batch,
+            BatchWriteRetryStrategy retryStrategy) {
 
         List<FailedBatch> failedBatches = new LinkedList<FailedBatch>();
         Map<String, List<WriteRequest>> firstHalfBatch = new HashMap<String, List<WriteRequest>>();
         Map<String, List<WriteRequest>> secondHalfBatch = new HashMap<String, List<WriteRequest>>();
-        FailedBatch failedBatch = callUntilCompletion(batch);
+        FailedBatch failedBatch = callUntilCompletion(batch, retryStrategy);
 
         if (failedBatch != null) {
             // If the exception is request entity too large, we divide the batch
@@ -1613,8 +1673,8 @@ public class DynamoDBMapper {
                     failedBatches.add(failedBatch);
                 } else {
                     divideBatch(batch, firstHalfBatch, secondHalfBatch);
-                    failedBatches.addAll(writeOneBatch(firstHalfBatch));
-                    failedBatches.addAll(writeOneBatch(secondHalfBatch));
+                    failedBatches.addAll(writeOneBatch(firstHalfBatch, retryStrategy));
+                    failedBatches.addAll(writeOneBatch(secondHalfBatch, retryStrategy));
                 }
 
             } else {
@@ -1678,12 +1738,15 @@ public class DynamoDBMapper {
     }
 
     /**
-     * Continue trying to process the batch until it finishes or an exception
-     * occurs.
+     * Continue trying to process the batch until it finishes, an exception
+     * occurs or the retry strategy gives up on the unprocessed items.
      */
 
-    private FailedBatch callUntilCompletion(Map<String, List<WriteRequest>> batch) {
+    private FailedBatch callUntilCompletion(Map<String, List<WriteRequest>> batch,
+            BatchWriteRetryStrategy retryStrategy) {
         BatchWriteItemResult result = null;
+        int maxRetries = retryStrategy.getMaxRetryOnUnprocessedItems(
+                Collections.unmodifiableMap(batch));
         int retries = 0;
         FailedBatch failedBatch = null;
         while (true) {
@@ -1696,17 +1759,85 @@ public class DynamoDBMapper {
                 failedBatch.setException(e);
                 return failedBatch;
             }
-            retries++;
             batch = result.getUnprocessedItems();
-            if (batch.size() > 0) {
-                pauseExponentially(retries);
-            } else {
+            if (batch == null || batch.isEmpty()) {
                 break;
             }
+            if (maxRetries >= 0 && retries >= maxRetries) {
+                failedBatch = new FailedBatch();
+                failedBatch.setUnprocessedItems(batch);
+                failedBatch.setException(new AmazonClientException(
+                        "Items left unprocessed after " + retries + " retries"));
+                return failedBatch;
+            }
+            retries++;
+            pause(retryStrategy.getDelayBeforeRetryUnprocessedItems(
+                    Collections.unmodifiableMap(batch), retries));
         }
         return failedBatch;
     }
 
+    /**
+     * Runs the tasks of a batch operation and returns their results, in the
+     * order they complete. The tasks run on the batch executor of the config,
+     * at most max concurrent batches at once, or one after the other on the
+     * calling thread when the config has no batch executor.
+     */
+    private <T> List<T> runBatches(List<Callable<T>> tasks, DynamoDBMapperConfig config) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        Executor executor = config.getBatchExecutor();
+        if (executor == null || tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new AmazonClientException(e.getMessage(), e);
+                }
+            }
+            return results;
+        }
+
+        Integer maxConcurrentBatches = config.getMaxConcurrentBatches();
+        int maxRunning = (maxConcurrentBatches == null || maxConcurrentBatches < 1)
+                ? 1 : maxConcurrentBatches;
+        CompletionService<T> completionService = new ExecutorCompletionService<T>(executor);
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        Iterator<Callable<T>> pending = tasks.iterator();
+        int running = 0;
+        try {
+            while (pending.hasNext() || running > 0) {
+                while (running < maxRunning && pending.hasNext()) {
+                    futures.add(completionService.submit(pending.next()));
+                    running++;
+                }
+                results.add(completionService.take().get());
+                running--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new AmazonClientException(cause.getMessage(), cause);
+        } finally {
+            // Stop the batches still running if one of them failed
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private BatchWriteRetryStrategy getBatchWriteRetryStrategy(DynamoDBMapperConfig config) {
+        BatchWriteRetryStrategy retryStrategy = config.getBatchWriteRetryStrategy();
+        return retryStrategy == null ? DefaultBatchWriteRetryStrategy.INSTANCE : retryStrategy;
+    }
+
     /**
      * Retrieves multiple items from multiple tables using their primary keys.
      *
@@ -1736,52 +1867,138 @@ public class DynamoDBMapper {
      *         mapping that table.
      */
     public Map<String, List<Object>> batchLoad(List<Object> itemsToGet, DynamoDBMapperConfig config) {
-        config = mergeConfig(config);
-        boolean consistentReads = (config.getConsistentReads() == ConsistentReads.CONSISTENT);
+        final Map<String, List<Object>> resultSet = new HashMap<String, List<Object>>();
+        batchLoad(itemsToGet, config, new BatchLoadHandler() {
+            @Override
+            public void onItemsLoaded(String tableName, List<Object> items) {
+                List<Object> objects = resultSet.get(tableName);
+                if (objects == null) {
+                    objects = new LinkedList<Object>();
+                    resultSet.put(tableName, objects);
+                }
+                objects.addAll(items);
+            }
+        });
+        return resultSet;
+    }
+
+    /**
+     * Retrieves multiple items from multiple tables using their primary keys,
+     * handing the loaded objects to the handler as each response arrives.
+     *
+     * @see DynamoDBMapper#batchLoad(List, DynamoDBMapperConfig,
+     *      BatchLoadHandler)
+     */
+    public void batchLoad(List<Object> itemsToGet, BatchLoadHandler handler) {
+        batchLoad(itemsToGet, this.config, handler);
+    }
 
+    /**
+     * Retrieves multiple items from multiple tables using their primary keys,
+     * handing the loaded objects to the handler as each response arrives
+     * instead of returning them all at the end.
+     * <p>
+     * The keys are sent in requests of up to 100 keys. When the config has a
+     * batch executor, the requests are sent on it, at most
+     * {@link DynamoDBMapperConfig#getMaxConcurrentBatches()} at once. Once a
+     * table returns unprocessed keys, which it does when its provisioned
+     * throughput is exceeded, the requests to that table back off until it
+     * processes all the keys of a request again.
+     *
+     * @param itemsToGet Key objects, corresponding to the class to fetch, with
+     *            their primary key values set.
+     * @param config Only {@link DynamoDBMapperConfig#getTableNameOverride()},
+     *            {@link DynamoDBMapperConfig#getConsistentReads()}, the batch
+     *            executor and the max number of concurrent batches are
+     *            considered.
+     * @param handler Receives the loaded objects. It is called by one thread
+     *            at a time, but not always the calling thread when the config
+     *            has a batch executor, and all its calls are done when this
+     *            method returns.
+     */
+    public void batchLoad(List<Object> itemsToGet, DynamoDBMapperConfig config,
+            final BatchLoadHandler handler) {
         if (itemsToGet == null || itemsToGet.isEmpty()) {
-            return new HashMap<String, List<Object>>();
+            return;
         }
 
-        Map<String, KeysAndAttributes> requestItems = new HashMap<String, KeysAndAttributes>();
-        Map<String, Class<?>> classesByTableName = new HashMap<String, Class<?>>();
-        Map<String, List<Object>> resultSet = new HashMap<String, List<Object>>();
-        int count = 0;
+        final DynamoDBMapperConfig batchConfig = mergeConfig(config);
+        boolean consistentReads = (batchConfig.getConsistentReads() == ConsistentReads.CONSISTENT);
+        final ItemConverter converter = getConverter(batchConfig);
 
-        ItemConverter converter = getConverter(config);
+        final Map<String, Class<?>> classesByTableName = new HashMap<String, Class<?>>();
+        Map<String, List<Map<String, AttributeValue>>> keysByTableName =
+                new LinkedHashMap<String, List<Map<String, AttributeValue>>>();
 
         for (Object keyObject : itemsToGet) {
             Class<?> clazz = keyObject.getClass();
 
-            String tableName = getTableName(clazz, keyObject, config);
+            String tableName = getTableName(clazz, keyObject, batchConfig);
             classesByTableName.put(tableName, clazz);
 
-            if (!requestItems.containsKey(tableName)) {
-
-                requestItems.put(
-                        tableName,
-                        new KeysAndAttributes().withConsistentRead(consistentReads).withKeys(
-                                new LinkedList<Map<String, AttributeValue>>()));
+            if (!keysByTableName.containsKey(tableName)) {
+                keysByTableName.put(tableName, new LinkedList<Map<String, AttributeValue>>());
             }
 
-            requestItems.get(tableName).getKeys().add(
-                    getKey(converter, keyObject));
+            keysByTableName.get(tableName).add(getKey(converter, keyObject));
+        }
+
+        // Break into requests of the maximum number of keys which can be
+        // handled in a single batchGet, filled one table after the other so
+        // most requests only read from one table
+        List<Map<String, KeysAndAttributes>> batches = new ArrayList<Map<String, KeysAndAttributes>>();
+        Map<String, KeysAndAttributes> requestItems = new HashMap<String, KeysAndAttributes>();
+        int count = 0;
+        for (Entry<String, List<Map<String, AttributeValue>>> tableKeys : keysByTableName
+                .entrySet()) {
+            for (Map<String, AttributeValue> key : tableKeys.getValue()) {
+                if (!requestItems.containsKey(tableKeys.getKey())) {
+                    requestItems.put(
+                            tableKeys.getKey(),
+                            new KeysAndAttributes().withConsistentRead(consistentReads).withKeys(
+                                    new LinkedList<Map<String, AttributeValue>>()));
+                }
 
-            // Reach the maximum number which can be handled in a single
-            // batchGet
-            if (++count == 100) {
-                processBatchGetRequest(classesByTableName, requestItems, resultSet, config,
-                        converter);
-                requestItems.clear();
-                count = 0;
+                requestItems.get(tableKeys.getKey()).getKeys().add(key);
+
+                if (++count == MAX_KEYS_PER_BATCH_GET) {
+                    batches.add(requestItems);
+                    requestItems = new HashMap<String, KeysAndAttributes>();
+                    count = 0;
+                }
             }
         }
 
         if (count > 0) {
-            processBatchGetRequest(classesByTableName, requestItems, resultSet, config, converter);
+            batches.add(requestItems);
         }
 
-        return resultSet;
+        // Number of requests to each table in a row which left keys
+        // unprocessed, shared by the requests in flight
+        final Map<String, AtomicInteger> throttlesByTableName = new HashMap<String, AtomicInteger>();
+        for (String tableName : keysByTableName.keySet()) {
+            throttlesByTableName.put(tableName, new AtomicInteger());
+        }
+
+        final BatchLoadHandler serialHandler = new BatchLoadHandler() {
+            @Override
+            public synchronized void onItemsLoaded(String tableName, List<Object> items) {
+                handler.onItemsLoaded(tableName, items);
+            }
+        };
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(batches.size());
+        for (final Map<String, KeysAndAttributes> batch : batches) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    processBatchGetRequest(classesByTableName, batch, throttlesByTableName,
+                            serialHandler, batchConfig, converter);
+                    return null;
+                }
+            });
+        }
+        runBatches(tasks, batchConfig);
     }
 
     /**
@@ -1841,10 +2058,22 @@ public class DynamoDBMapper {
     private void processBatchGetRequest(
             final Map<String, Class<?>> classesByTableName,
             final Map<String, KeysAndAttributes> requestItems,
-            final Map<String, List<Object>> resultSet,
+            final Map<String, AtomicInteger> throttlesByTableName,
+            final BatchLoadHandler handler,
             final DynamoDBMapperConfig config,
             final ItemConverter converter) {
 
+        // Back off while the tables are throttled instead of sending more
+        // requests to them
+        int throttles = 0;
+        for (String tableName : requestItems.keySet()) {
+            AtomicInteger tableThrottles = throttlesByTableName.get(tableName);
+            if (tableThrottles != null) {
+                throttles = Math.max(throttles, tableThrottles.get());
+            }
+        }
+        pauseExponentially(throttles);
+
         BatchGetItemResult batchGetItemResult = null;
         BatchGetItemRequest batchGetItemRequest = new BatchGetItemRequest()
                 .withRequestMetricCollector(config.getRequestMetricCollector());
@@ -1870,25 +2099,35 @@ public class DynamoDBMapper {
             batchGetItemResult = db.batchGetItem(
                     applyBatchOperationUserAgent(batchGetItemRequest));
 
+            Map<String, KeysAndAttributes> unprocessedKeys = batchGetItemResult
+                    .getUnprocessedKeys();
+            for (String tableName : batchGetItemRequest.getRequestItems().keySet()) {
+                AtomicInteger tableThrottles = throttlesByTableName.get(tableName);
+                if (tableThrottles == null) {
+                    continue;
+                }
+                if (unprocessedKeys != null && unprocessedKeys.containsKey(tableName)) {
+                    tableThrottles.incrementAndGet();
+                } else {
+                    tableThrottles.set(0);
+                }
+            }
+
             Map<String, List<Map<String, AttributeValue>>> responses = batchGetItemResult
                     .getResponses();
             for (String tableName : responses.keySet()) {
-                List<Object> objects = null;
-                if (resultSet.get(tableName) != null) {
-                    objects = resultSet.get(tableName);
-                } else {
-                    objects = new LinkedList<Object>();
-                }
+                List<Map<String, AttributeValue>> items = responses.get(tableName);
+                List<Object> objects = new ArrayList<Object>(items.size());
 
                 Class<?> clazz = classesByTableName.get(tableName);
 
-                for (Map<String, AttributeValue> item : responses.get(tableName)) {
+                for (Map<String, AttributeValue> item : items) {
                     AttributeTransformer.Parameters<?> parameters =
                             toParameters(item, clazz, tableName, config);
                     objects.add(privateMarshallIntoObject(converter, parameters));
                 }
 
-                resultSet.put(tableName, objects);
+                handler.onItemsLoaded(tableName, objects);
             }
             // To see whether there are unprocessed keys.
         } while (batchGetItemResult.getUnprocessedKeys() != null
@@ -1918,7 +2157,7 @@ public class DynamoDBMapper {
         public void apply() {
             Method setter = reflector.getSetter(method);
             Object pojo = converter.unconvert(method, setter, newValue);
-            ReflectionUtils.safeInvoke(setter, target, pojo);
+            reflector.getAccessor(method).set(target, pojo);
         }
     }
 
@@ -2914,7 +3153,10 @@ public class DynamoDBMapper {
         long scaleFactor = 500 + random.nextInt(100);
         delay = (long) (Math.pow(2, retries) * scaleFactor);
         delay = Math.min(delay, MAX_BACKOFF_IN_MILLISECONDS);
+        pause(delay);
+    }
 
+    private void pause(long delay) {
         try {
             Thread.sleep(delay);
         } catch (InterruptedException e) {
@@ -2986,6 +3228,23 @@ public class DynamoDBMapper {
         return request;
     }
 
+    /**
+     * Receives the objects loaded by
+     * {@link DynamoDBMapper#batchLoad(List, DynamoDBMapperConfig, BatchLoadHandler)}
+     * as the responses arrive.
+     */
+    public static interface BatchLoadHandler {
+
+        /**
+         * Called with the objects of a table returned by one BatchGetItem
+         * response.
+         *
+         * @param tableName the name of the table the objects were loaded from
+         * @param items the loaded objects, all of the class mapped to the table
+         */
+        public void onItemsLoaded(String tableName, List<Object> items);
+    }
+
     /**
      * The return type of batchWrite, batchDelete and batchSave. It contains the
      * information about the unprocessed items and the exception causing the
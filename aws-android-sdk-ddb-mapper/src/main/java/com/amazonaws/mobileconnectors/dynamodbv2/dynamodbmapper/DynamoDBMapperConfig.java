@@ -16,6 +16,12 @@
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
 
 /**
  * Immutable configuration object for service call behavior. An instance of this
@@ -52,6 +58,9 @@ public class DynamoDBMapperConfig {
         private PaginationLoadingStrategy paginationLoadingStrategy;
         private RequestMetricCollector requestMetricCollector;
         private ConversionSchema conversionSchema;
+        private BatchWriteRetryStrategy batchWriteRetryStrategy;
+        private Executor batchExecutor;
+        private Integer maxConcurrentBatches;
 
         /**
          * Creates a new builder initialized with the {@link #DEFAULT} values.
@@ -65,6 +74,9 @@ public class DynamoDBMapperConfig {
             paginationLoadingStrategy = DEFAULT.getPaginationLoadingStrategy();
             requestMetricCollector = DEFAULT.getRequestMetricCollector();
             conversionSchema = DEFAULT.getConversionSchema();
+            batchWriteRetryStrategy = DEFAULT.getBatchWriteRetryStrategy();
+            batchExecutor = DEFAULT.getBatchExecutor();
+            maxConcurrentBatches = DEFAULT.getMaxConcurrentBatches();
         }
 
         /**
@@ -255,6 +267,77 @@ public class DynamoDBMapperConfig {
             return this;
         }
 
+        /**
+         * @return the current batch write retry strategy
+         */
+        public BatchWriteRetryStrategy getBatchWriteRetryStrategy() {
+            return batchWriteRetryStrategy;
+        }
+
+        /**
+         * @param value the new batch write retry strategy
+         */
+        public void setBatchWriteRetryStrategy(BatchWriteRetryStrategy value) {
+            batchWriteRetryStrategy = value;
+        }
+
+        /**
+         * @param value the new batch write retry strategy
+         * @return this builder
+         */
+        public Builder withBatchWriteRetryStrategy(BatchWriteRetryStrategy value) {
+            setBatchWriteRetryStrategy(value);
+            return this;
+        }
+
+        /**
+         * @return the current batch executor
+         */
+        public Executor getBatchExecutor() {
+            return batchExecutor;
+        }
+
+        /**
+         * @param value the new batch executor, or null to send the batches
+         *            one after the other on the calling thread
+         */
+        public void setBatchExecutor(Executor value) {
+            batchExecutor = value;
+        }
+
+        /**
+         * @param value the new batch executor, or null to send the batches
+         *            one after the other on the calling thread
+         * @return this builder
+         */
+        public Builder withBatchExecutor(Executor value) {
+            setBatchExecutor(value);
+            return this;
+        }
+
+        /**
+         * @return the current max number of batches in flight at once
+         */
+        public Integer getMaxConcurrentBatches() {
+            return maxConcurrentBatches;
+        }
+
+        /**
+         * @param value the new max number of batches in flight at once
+         */
+        public void setMaxConcurrentBatches(Integer value) {
+            maxConcurrentBatches = value;
+        }
+
+        /**
+         * @param value the new max number of batches in flight at once
+         * @return this builder
+         */
+        public Builder withMaxConcurrentBatches(Integer value) {
+            setMaxConcurrentBatches(value);
+            return this;
+        }
+
         /**
          * Builds a new {@code DynamoDBMapperConfig} object.
          *
@@ -269,7 +352,10 @@ public class DynamoDBMapperConfig {
                     objectTableNameResolver,
                     paginationLoadingStrategy,
                     requestMetricCollector,
-                    conversionSchema);
+                    conversionSchema,
+                    batchWriteRetryStrategy,
+                    batchExecutor,
+                    maxConcurrentBatches);
         }
     }
 
@@ -503,6 +589,72 @@ public class DynamoDBMapperConfig {
         }
     }
 
+    /**
+     * Strategy used by {@link DynamoDBMapper#batchWrite(List, List)} to retry
+     * the items DynamoDB returns as unprocessed, which it does when a table is
+     * throttled or the request is too large to process at once.
+     */
+    public static interface BatchWriteRetryStrategy {
+
+        /**
+         * Returns the max number of times the unprocessed items of a batch are
+         * retried before the batch is returned as a failed batch.
+         *
+         * @param batchWriteItemInput the items of the batch, by table name
+         * @return the max number of retries, or a negative number to retry
+         *         until all the items are processed
+         */
+        public int getMaxRetryOnUnprocessedItems(
+                Map<String, List<WriteRequest>> batchWriteItemInput);
+
+        /**
+         * Returns the time to wait before retrying the unprocessed items of a
+         * batch. Also used to back off before sending a batch while the table
+         * is being throttled, with the number of batches throttled in a row.
+         *
+         * @param unprocessedItems the items to retry, by table name
+         * @param retriesAttempted the number of retries attempted so far
+         * @return the delay in milliseconds
+         */
+        public long getDelayBeforeRetryUnprocessedItems(
+                Map<String, List<WriteRequest>> unprocessedItems,
+                int retriesAttempted);
+    }
+
+    /**
+     * Default implementation of {@link BatchWriteRetryStrategy}, which retries
+     * the unprocessed items until they are all processed, with an exponential
+     * backoff capped at three seconds. Half of each delay is randomized so the
+     * batches throttled at the same time don't all retry at the same time.
+     */
+    public static class DefaultBatchWriteRetryStrategy implements BatchWriteRetryStrategy {
+
+        public static final DefaultBatchWriteRetryStrategy INSTANCE = new DefaultBatchWriteRetryStrategy();
+
+        private static final long BASE_DELAY_IN_MILLISECONDS = 100;
+        private static final long MAX_DELAY_IN_MILLISECONDS = 1000 * 3;
+        /** Beyond this many retries the delay is always the max delay. */
+        private static final int MAX_EXPONENT = 10;
+
+        private final Random random = new Random();
+
+        @Override
+        public int getMaxRetryOnUnprocessedItems(
+                Map<String, List<WriteRequest>> batchWriteItemInput) {
+            return -1;
+        }
+
+        @Override
+        public long getDelayBeforeRetryUnprocessedItems(
+                Map<String, List<WriteRequest>> unprocessedItems,
+                int retriesAttempted) {
+            int exponent = Math.min(Math.max(retriesAttempted, 0), MAX_EXPONENT);
+            long cap = Math.min(MAX_DELAY_IN_MILLISECONDS,
+                    BASE_DELAY_IN_MILLISECONDS << exponent);
+            return cap / 2 + random.nextInt((int) (cap / 2) + 1);
+        }
+    }
+
     private final SaveBehavior saveBehavior;
     private final ConsistentReads consistentReads;
     private final TableNameOverride tableNameOverride;
@@ -511,6 +663,9 @@ public class DynamoDBMapperConfig {
     private final PaginationLoadingStrategy paginationLoadingStrategy;
     private final RequestMetricCollector requestMetricCollector;
     private final ConversionSchema conversionSchema;
+    private final BatchWriteRetryStrategy batchWriteRetryStrategy;
+    private final Executor batchExecutor;
+    private final Integer maxConcurrentBatches;
 
     /**
      * Legacy constructor, using default PaginationLoadingStrategy
@@ -591,6 +746,32 @@ public class DynamoDBMapperConfig {
             RequestMetricCollector requestMetricCollector,
             ConversionSchema conversionSchema) {
 
+        this(saveBehavior,
+                consistentReads,
+                tableNameOverride,
+                tableNameResolver,
+                objectTableNameResolver,
+                paginationLoadingStrategy,
+                requestMetricCollector,
+                conversionSchema,
+                null,
+                null,
+                null);
+    }
+
+    private DynamoDBMapperConfig(
+            SaveBehavior saveBehavior,
+            ConsistentReads consistentReads,
+            TableNameOverride tableNameOverride,
+            TableNameResolver tableNameResolver,
+            ObjectTableNameResolver objectTableNameResolver,
+            PaginationLoadingStrategy paginationLoadingStrategy,
+            RequestMetricCollector requestMetricCollector,
+            ConversionSchema conversionSchema,
+            BatchWriteRetryStrategy batchWriteRetryStrategy,
+            Executor batchExecutor,
+            Integer maxConcurrentBatches) {
+
         this.saveBehavior = saveBehavior;
         this.consistentReads = consistentReads;
         this.tableNameOverride = tableNameOverride;
@@ -599,6 +780,9 @@ public class DynamoDBMapperConfig {
         this.paginationLoadingStrategy = paginationLoadingStrategy;
         this.requestMetricCollector = requestMetricCollector;
         this.conversionSchema = conversionSchema;
+        this.batchWriteRetryStrategy = batchWriteRetryStrategy;
+        this.batchExecutor = batchExecutor;
+        this.maxConcurrentBatches = maxConcurrentBatches;
     }
 
     /**
@@ -699,6 +883,9 @@ public class DynamoDBMapperConfig {
                     defaults.getPaginationLoadingStrategy();
             this.requestMetricCollector = defaults.getRequestMetricCollector();
             this.conversionSchema = defaults.getConversionSchema();
+            this.batchWriteRetryStrategy = defaults.getBatchWriteRetryStrategy();
+            this.batchExecutor = defaults.getBatchExecutor();
+            this.maxConcurrentBatches = defaults.getMaxConcurrentBatches();
 
         } else {
 
@@ -736,6 +923,19 @@ public class DynamoDBMapperConfig {
                     ? defaults.getConversionSchema()
                     : overrides.getConversionSchema();
 
+            this.batchWriteRetryStrategy =
+                    (overrides.getBatchWriteRetryStrategy() == null)
+                            ? defaults.getBatchWriteRetryStrategy()
+                            : overrides.getBatchWriteRetryStrategy();
+
+            this.batchExecutor = (overrides.getBatchExecutor() == null)
+                    ? defaults.getBatchExecutor()
+                    : overrides.getBatchExecutor();
+
+            this.maxConcurrentBatches = (overrides.getMaxConcurrentBatches() == null)
+                    ? defaults.getMaxConcurrentBatches()
+                    : overrides.getMaxConcurrentBatches();
+
         }
     }
 
@@ -812,9 +1012,35 @@ public class DynamoDBMapperConfig {
         return conversionSchema;
     }
 
+    /**
+     * Returns the strategy used to retry the unprocessed items of batch
+     * writes, or null if not specified.
+     */
+    public BatchWriteRetryStrategy getBatchWriteRetryStrategy() {
+        return batchWriteRetryStrategy;
+    }
+
+    /**
+     * Returns the executor the batches of batch operations are sent on, or
+     * null to send them one after the other on the calling thread.
+     */
+    public Executor getBatchExecutor() {
+        return batchExecutor;
+    }
+
+    /**
+     * Returns the max number of batches of a batch operation sent at once
+     * when a batch executor is set, or null if not specified.
+     */
+    public Integer getMaxConcurrentBatches() {
+        return maxConcurrentBatches;
+    }
+
     /**
      * Default configuration uses UPDATE behavior for saves and EVENTUALly
      * consistent reads, with no table name override and lazy-loading strategy.
+     * Batches are sent one after the other on the calling thread, up to four
+     * at once when given a batch executor.
      */
     public static final DynamoDBMapperConfig DEFAULT = new DynamoDBMapperConfig(
             SaveBehavior.UPDATE,
@@ -824,5 +1050,8 @@ public class DynamoDBMapperConfig {
             null, // ObjectTableNameResolver
             PaginationLoadingStrategy.LAZY_LOADING,
             null, // RequestMetricCollector
-            ConversionSchemas.DEFAULT);
+            ConversionSchemas.DEFAULT,
+            DefaultBatchWriteRetryStrategy.INSTANCE,
+            null, // BatchExecutor
+            4); // MaxConcurrentBatches
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2011-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reads and writes a mapped property of the objects of a class. By default the
+ * {@link DynamoDBMapper} calls the getter and setter of the property through
+ * reflection. A class can provide accessors which call them directly instead,
+ * written by hand or generated, by registering a {@link Factory} with each
+ * mapper through
+ * {@link DynamoDBMapper#registerPropertyAccessorFactory(Class, Factory)}.
+ */
+public interface DynamoDBPropertyAccessor {
+
+    /**
+     * Creates the accessors of the properties of a class.
+     */
+    interface Factory {
+        /**
+         * @param getter the getter of a mapped property, declared by the class
+         *            the factory is registered for.
+         * @return the accessor of the property, or null to access the
+         *         property through reflection.
+         */
+        DynamoDBPropertyAccessor newAccessor(Method getter);
+    }
+
+    /**
+     * Returns the value of the property of an object.
+     */
+    Object get(Object object);
+
+    /**
+     * Sets the value of the property of an object.
+     */
+    void set(Object object, Object value);
+}
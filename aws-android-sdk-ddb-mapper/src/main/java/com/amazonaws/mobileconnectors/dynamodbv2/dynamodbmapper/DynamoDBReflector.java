@@ -16,14 +16,16 @@
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Reflection assistant for {@link DynamoDBMapper}
@@ -31,44 +33,212 @@ import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 class DynamoDBReflector {
 
     /*
-     * Several caches for performance. Collectively, they can make this class
-     * over twice as fast.
+     * Caches for performance. What is known of a class, and of each of its
+     * getters, is computed once and kept in an immutable model. Lookups don't
+     * lock: if two threads compute the same model at the same time, the first
+     * one stored wins.
      */
-    private final Map<Class<?>, Collection<Method>> getterCache = new HashMap<Class<?>, Collection<Method>>();
-    private final Map<Class<?>, Method> primaryHashKeyGetterCache = new HashMap<Class<?>, Method>();
-    private final Map<Class<?>, Method> primaryRangeKeyGetterCache = new HashMap<Class<?>, Method>();
+    private final ConcurrentMap<Class<?>, TableModel> tableModelCache =
+            new ConcurrentHashMap<Class<?>, TableModel>();
 
     /*
      * All caches keyed by a Method use the getter for a particular mapped
      * property
      */
-    private final Map<Method, Method> setterCache = new HashMap<Method, Method>();
+    private final ConcurrentMap<Method, GetterModel> getterModelCache =
+            new ConcurrentHashMap<Method, GetterModel>();
 
-    private final Map<Method, String> attributeNameCache = new HashMap<Method, String>();
+    private final ConcurrentMap<Method, Method> setterCache = new ConcurrentHashMap<Method, Method>();
 
-    private final Map<Method, Boolean> versionAttributeGetterCache = new HashMap<Method, Boolean>();
-    private final Map<Method, Boolean> autoGeneratedKeyGetterCache = new HashMap<Method, Boolean>();
+    /*
+     * Accessor factories registered for the mapped classes, by class, and the
+     * classes whose getters already have an accessor. Guarded by this.
+     */
+    private final Map<Class<?>, DynamoDBPropertyAccessor.Factory> accessorFactories =
+            new HashMap<Class<?>, DynamoDBPropertyAccessor.Factory>();
+    private final Set<Class<?>> classesWithAccessors = new HashSet<Class<?>>();
+
+    /**
+     * Registers the factory of the property accessors of a class.
+     *
+     * @throws IllegalStateException if accessors were already created for
+     *             getters of the class, as they are kept
+     */
+    synchronized void registerAccessorFactory(Class<?> clazz,
+            DynamoDBPropertyAccessor.Factory factory) {
+        if (classesWithAccessors.contains(clazz)) {
+            throw new IllegalStateException("The properties of " + clazz
+                    + " were already accessed, register its accessor factory before"
+                    + " mapping it");
+        }
+        if (factory == null) {
+            accessorFactories.remove(clazz);
+        } else {
+            accessorFactories.put(clazz, factory);
+        }
+    }
 
-    private final ReentrantReadWriteLock readWriteLockAttrName = new ReentrantReadWriteLock();
-    private final ReadLock readLockAttrName = readWriteLockAttrName.readLock();
-    private final WriteLock writeLockAttrName = readWriteLockAttrName.writeLock();
+    /**
+     * Returns the accessor factory registered for a class, if any. No factory
+     * can be registered for the class afterwards.
+     */
+    private synchronized DynamoDBPropertyAccessor.Factory getAccessorFactory(Class<?> clazz) {
+        classesWithAccessors.add(clazz);
+        return accessorFactories.get(clazz);
+    }
+
+    /**
+     * The relevant getters and key getters of a class.
+     */
+    static final class TableModel {
+        final List<Method> getters;
+        final List<Method> keyGetters;
+        /** null if the class has no hash key */
+        final Method hashKeyGetter;
+        /** null if the class has no range key */
+        final Method rangeKeyGetter;
+
+        TableModel(Class<?> clazz) {
+            List<Method> relevantGetters = findRelevantGetters(clazz);
+            List<Method> primaryKeyGetters = new ArrayList<Method>();
+            Method hashKey = null;
+            Method rangeKey = null;
+            for (Method getter : relevantGetters) {
+                boolean isHashKey = ReflectionUtils.getterOrFieldHasAnnotation(getter,
+                        DynamoDBHashKey.class);
+                boolean isRangeKey = ReflectionUtils.getterOrFieldHasAnnotation(getter,
+                        DynamoDBRangeKey.class);
+                if (isHashKey || isRangeKey) {
+                    primaryKeyGetters.add(getter);
+                }
+                if (isHashKey && hashKey == null) {
+                    hashKey = getter;
+                }
+                if (isRangeKey && rangeKey == null) {
+                    rangeKey = getter;
+                }
+            }
+            getters = Collections.unmodifiableList(relevantGetters);
+            keyGetters = Collections.unmodifiableList(primaryKeyGetters);
+            hashKeyGetter = hashKey;
+            rangeKeyGetter = rangeKey;
+        }
+    }
+
+    /**
+     * The attribute name, flags and accessor of a getter.
+     */
+    static final class GetterModel {
+        final String attributeName;
+        final boolean versionAttribute;
+        final boolean assignableKey;
+        final DynamoDBPropertyAccessor accessor;
+
+        GetterModel(DynamoDBReflector reflector, Method getter) {
+            DynamoDBPropertyAccessor.Factory factory =
+                    reflector.getAccessorFactory(getter.getDeclaringClass());
+            DynamoDBPropertyAccessor propertyAccessor =
+                    factory == null ? null : factory.newAccessor(getter);
+            accessor = propertyAccessor != null ? propertyAccessor
+                    : new ReflectionAccessor(reflector, getter);
+            attributeName = findAttributeName(getter);
+            versionAttribute = getter.getName().startsWith("get")
+                    && getter.getParameterTypes().length == 0
+                    && ReflectionUtils.getterOrFieldHasAnnotation(getter,
+                            DynamoDBVersionAttribute.class);
+            assignableKey = ReflectionUtils.getterOrFieldHasAnnotation(getter,
+                    DynamoDBAutoGeneratedKey.class)
+                    && (ReflectionUtils.getterOrFieldHasAnnotation(getter,
+                            DynamoDBHashKey.class) ||
+                    ReflectionUtils.getterOrFieldHasAnnotation(getter,
+                            DynamoDBRangeKey.class));
+        }
+    }
+
+    /**
+     * Accesses a property by calling its getter and setter through
+     * reflection. Access checks are suppressed once, when allowed, instead of
+     * on every call.
+     */
+    static final class ReflectionAccessor implements DynamoDBPropertyAccessor {
+        private static final Object[] NO_ARGUMENTS = new Object[0];
+
+        private final DynamoDBReflector reflector;
+        private final Method getter;
+        /** Looked up on first use, as properties that are only read need none */
+        private volatile Method setter;
+
+        ReflectionAccessor(DynamoDBReflector reflector, Method getter) {
+            this.reflector = reflector;
+            this.getter = getter;
+            makeAccessible(getter);
+        }
+
+        @Override
+        public Object get(Object object) {
+            return ReflectionUtils.safeInvoke(getter, object, NO_ARGUMENTS);
+        }
+
+        @Override
+        public void set(Object object, Object value) {
+            Method m = setter;
+            if (m == null) {
+                m = reflector.getSetter(getter);
+                makeAccessible(m);
+                setter = m;
+            }
+            ReflectionUtils.safeInvoke(m, object, value);
+        }
+
+        private static void makeAccessible(Method method) {
+            try {
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                // checked on every call then
+            }
+        }
+    }
+
+    /**
+     * Returns the model of the class given.
+     */
+    TableModel getTableModel(Class<?> clazz) {
+        TableModel model = tableModelCache.get(clazz);
+        if (model == null) {
+            model = new TableModel(clazz);
+            TableModel existing = tableModelCache.putIfAbsent(clazz, model);
+            if (existing != null) {
+                model = existing;
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Returns the model of the getter given.
+     */
+    GetterModel getGetterModel(Method getter) {
+        GetterModel model = getterModelCache.get(getter);
+        if (model == null) {
+            model = new GetterModel(this, getter);
+            GetterModel existing = getterModelCache.putIfAbsent(getter, model);
+            if (existing != null) {
+                model = existing;
+            }
+        }
+        return model;
+    }
 
     /**
      * Returns the set of getter methods which are relevant when marshalling or
      * unmarshalling an object.
      */
     Collection<Method> getRelevantGetters(Class<?> clazz) {
-        synchronized (getterCache) {
-            if (!getterCache.containsKey(clazz)) {
-                List<Method> relevantGetters = findRelevantGetters(clazz);
-                getterCache.put(clazz, relevantGetters);
-            }
-            return getterCache.get(clazz);
-        }
+        return getTableModel(clazz).getters;
     }
 
     static List<Method> findRelevantGetters(Class<?> clazz) {
-        List<Method> relevantGetters = new LinkedList<Method>();
+        List<Method> relevantGetters = new ArrayList<Method>();
         for (Method m : clazz.getMethods()) {
             if (isRelevantGetter(m)) {
                 relevantGetters.add(m);
@@ -100,38 +270,15 @@ class DynamoDBReflector {
      * given, or null if the class doesn't have one.
      */
     <T> Method getPrimaryRangeKeyGetter(Class<T> clazz) {
-        synchronized (primaryRangeKeyGetterCache) {
-            if (!primaryRangeKeyGetterCache.containsKey(clazz)) {
-                Method rangeKeyMethod = null;
-                for (Method method : getRelevantGetters(clazz)) {
-                    if (method.getParameterTypes().length == 0
-                            && ReflectionUtils.getterOrFieldHasAnnotation(method,
-                                    DynamoDBRangeKey.class)) {
-                        rangeKeyMethod = method;
-                        break;
-                    }
-                }
-                primaryRangeKeyGetterCache.put(clazz, rangeKeyMethod);
-            }
-            return primaryRangeKeyGetterCache.get(clazz);
-        }
+        return getTableModel(clazz).rangeKeyGetter;
     }
 
     /**
      * Returns all annotated {@link DynamoDBHashKey} and
-     * {@link DynamoDBRangeKey} getters for the class given, throwing an
-     * exception if there isn't one. TODO: caching
+     * {@link DynamoDBRangeKey} getters for the class given.
      */
     <T> Collection<Method> getPrimaryKeyGetters(Class<T> clazz) {
-        List<Method> keyGetters = new LinkedList<Method>();
-        for (Method getter : getRelevantGetters(clazz)) {
-            if (ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBHashKey.class)
-                    || ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBRangeKey.class)) {
-                keyGetters.add(getter);
-            }
-        }
-
-        return keyGetters;
+        return getTableModel(clazz).keyGetters;
     }
 
     /**
@@ -139,21 +286,7 @@ class DynamoDBReflector {
      * throwing an exception if there isn't one.
      */
     <T> Method getPrimaryHashKeyGetter(Class<T> clazz) {
-        Method hashKeyMethod;
-        synchronized (primaryHashKeyGetterCache) {
-            if (!primaryHashKeyGetterCache.containsKey(clazz)) {
-                for (Method method : getRelevantGetters(clazz)) {
-                    if (method.getParameterTypes().length == 0
-                            && ReflectionUtils.getterOrFieldHasAnnotation(method,
-                                    DynamoDBHashKey.class)) {
-                        primaryHashKeyGetterCache.put(clazz, method);
-                        break;
-                    }
-                }
-            }
-            hashKeyMethod = primaryHashKeyGetterCache.get(clazz);
-        }
-
+        Method hashKeyMethod = getTableModel(clazz).hashKeyGetter;
         if (hashKeyMethod == null) {
             throw new DynamoDBMappingException(
                     "Public, zero-parameter hash key property must be annotated with "
@@ -178,71 +311,63 @@ class DynamoDBReflector {
      * Returns the attribute name corresponding to the given getter method.
      */
     String getAttributeName(Method getter) {
+        return getGetterModel(getter).attributeName;
+    }
+
+    private static String findAttributeName(Method getter) {
         String attributeName;
-        readLockAttrName.lock();
-        try {
-            attributeName = attributeNameCache.get(getter);
-        } finally {
-            readLockAttrName.unlock();
-        }
-        if (attributeName != null)
-            return attributeName;
         DynamoDBHashKey hashKeyAnnotation = ReflectionUtils.getAnnotationFromGetterOrField(getter,
                 DynamoDBHashKey.class);
         if (hashKeyAnnotation != null) {
             attributeName = hashKeyAnnotation.attributeName();
             if (attributeName != null && attributeName.length() > 0)
-                return cacheAttributeName(getter, attributeName);
+                return attributeName;
         }
         DynamoDBIndexHashKey indexHashKey = ReflectionUtils.getAnnotationFromGetterOrField(getter,
                 DynamoDBIndexHashKey.class);
         if (indexHashKey != null) {
             attributeName = indexHashKey.attributeName();
             if (attributeName != null && attributeName.length() > 0)
-                return cacheAttributeName(getter, attributeName);
+                return attributeName;
         }
         DynamoDBRangeKey rangeKey = ReflectionUtils.getAnnotationFromGetterOrField(getter,
                 DynamoDBRangeKey.class);
         if (rangeKey != null) {
             attributeName = rangeKey.attributeName();
             if (attributeName != null && attributeName.length() > 0)
-                return cacheAttributeName(getter, attributeName);
+                return attributeName;
         }
         DynamoDBIndexRangeKey indexRangeKey = ReflectionUtils.getAnnotationFromGetterOrField(
                 getter, DynamoDBIndexRangeKey.class);
         if (indexRangeKey != null) {
             attributeName = indexRangeKey.attributeName();
             if (attributeName != null && attributeName.length() > 0)
-                return cacheAttributeName(getter, attributeName);
+                return attributeName;
         }
         DynamoDBAttribute attribute = ReflectionUtils.getAnnotationFromGetterOrField(getter,
                 DynamoDBAttribute.class);
         if (attribute != null) {
             attributeName = attribute.attributeName();
             if (attributeName != null && attributeName.length() > 0)
-                return cacheAttributeName(getter, attributeName);
+                return attributeName;
         }
         DynamoDBVersionAttribute version = ReflectionUtils.getAnnotationFromGetterOrField(getter,
                 DynamoDBVersionAttribute.class);
         if (version != null) {
             attributeName = version.attributeName();
             if (attributeName != null && attributeName.length() > 0)
-                return cacheAttributeName(getter, attributeName);
+                return attributeName;
         }
         // Default to the camel-cased field name of the getter method, inferred
         // according to the Java naming convention.
-        attributeName = ReflectionUtils.getFieldNameByGetter(getter, true);
-        return cacheAttributeName(getter, attributeName);
+        return ReflectionUtils.getFieldNameByGetter(getter, true);
     }
 
-    private String cacheAttributeName(Method getter, String attributeName) {
-        writeLockAttrName.lock();
-        try {
-            attributeNameCache.put(getter, attributeName);
-        } finally {
-            writeLockAttrName.unlock();
-        }
-        return attributeName;
+    /**
+     * Returns the accessor of the property of the getter given.
+     */
+    DynamoDBPropertyAccessor getAccessor(Method getter) {
+        return getGetterModel(getter).accessor;
     }
 
     /**
@@ -250,27 +375,25 @@ class DynamoDBReflector {
      * setter exists.
      */
     Method getSetter(Method getter) {
-        synchronized (setterCache) {
-            if (!setterCache.containsKey(getter)) {
-                String fieldName = ReflectionUtils.getFieldNameByGetter(getter, false);
-                String setterName = "set" + fieldName;
-                Method setter = null;
-                try {
-                    setter = getter.getDeclaringClass().getMethod(setterName,
-                            getter.getReturnType());
-                } catch (NoSuchMethodException e) {
-                    throw new DynamoDBMappingException(
-                            "Expected a public, one-argument method called " + setterName
-                                    + " on class " + getter.getDeclaringClass(), e);
-                } catch (SecurityException e) {
-                    throw new DynamoDBMappingException(
-                            "No access to public, one-argument method called " + setterName
-                                    + " on class " + getter.getDeclaringClass(), e);
-                }
-                setterCache.put(getter, setter);
+        Method setter = setterCache.get(getter);
+        if (setter == null) {
+            String fieldName = ReflectionUtils.getFieldNameByGetter(getter, false);
+            String setterName = "set" + fieldName;
+            try {
+                setter = getter.getDeclaringClass().getMethod(setterName,
+                        getter.getReturnType());
+            } catch (NoSuchMethodException e) {
+                throw new DynamoDBMappingException(
+                        "Expected a public, one-argument method called " + setterName
+                                + " on class " + getter.getDeclaringClass(), e);
+            } catch (SecurityException e) {
+                throw new DynamoDBMappingException(
+                        "No access to public, one-argument method called " + setterName
+                                + " on class " + getter.getDeclaringClass(), e);
             }
-            return setterCache.get(getter);
+            setterCache.putIfAbsent(getter, setter);
         }
+        return setter;
     }
 
     /**
@@ -278,36 +401,14 @@ class DynamoDBReflector {
      * version attribute.
      */
     boolean isVersionAttributeGetter(Method getter) {
-        synchronized (versionAttributeGetterCache) {
-            if (!versionAttributeGetterCache.containsKey(getter)) {
-                versionAttributeGetterCache.put(
-                        getter,
-                        getter.getName().startsWith("get")
-                                && getter.getParameterTypes().length == 0
-                                && ReflectionUtils.getterOrFieldHasAnnotation(getter,
-                                        DynamoDBVersionAttribute.class));
-            }
-            return versionAttributeGetterCache.get(getter);
-        }
+        return getGetterModel(getter).versionAttribute;
     }
 
     /**
      * Returns whether the method given is an assignable key getter.
      */
     boolean isAssignableKey(Method getter) {
-        synchronized (autoGeneratedKeyGetterCache) {
-            if (!autoGeneratedKeyGetterCache.containsKey(getter)) {
-                autoGeneratedKeyGetterCache.put(
-                        getter,
-                        ReflectionUtils.getterOrFieldHasAnnotation(getter,
-                                DynamoDBAutoGeneratedKey.class)
-                                && (ReflectionUtils.getterOrFieldHasAnnotation(getter,
-                                        DynamoDBHashKey.class) ||
-                                ReflectionUtils.getterOrFieldHasAnnotation(getter,
-                                        DynamoDBRangeKey.class)));
-            }
-            return autoGeneratedKeyGetterCache.get(getter);
-        }
+        return getGetterModel(getter).assignableKey;
     }
 
     /**
@@ -25,8 +25,10 @@ import static org.junit.Assert.fail;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.HashKeyAutoGenerated;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.BatchLoadHandler;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatch;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.SaveObjectHandler;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.BatchWriteRetryStrategy;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
@@ -45,13 +47,18 @@ import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import org.easymock.Capture;
 import org.easymock.CaptureType;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class DynamoDBMapperTest {
 
@@ -67,6 +74,102 @@ public class DynamoDBMapperTest {
         mapper = new DynamoDBMapper(mockClient);
     }
 
+    @DynamoDBTable(tableName = "accessorTable")
+    public static class AccessorClass {
+        private String id;
+        private String value;
+
+        @DynamoDBHashKey
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+
+    /** Creates accessors for the value property only, and logs their use */
+    private static DynamoDBPropertyAccessor.Factory valueAccessorFactory(
+            final List<String> accessed) {
+        return new DynamoDBPropertyAccessor.Factory() {
+            @Override
+            public DynamoDBPropertyAccessor newAccessor(Method getter) {
+                if (!getter.getName().equals("getValue")) {
+                    // id goes through reflection
+                    return null;
+                }
+                return new DynamoDBPropertyAccessor() {
+                    @Override
+                    public Object get(Object object) {
+                        accessed.add("get");
+                        return ((AccessorClass) object).getValue();
+                    }
+
+                    @Override
+                    public void set(Object object, Object value) {
+                        accessed.add("set");
+                        ((AccessorClass) object).setValue((String) value);
+                    }
+                };
+            }
+        };
+    }
+
+    private static Map<String, AttributeValue> accessorItem() {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue("key"));
+        item.put("value", new AttributeValue("some value"));
+        return item;
+    }
+
+    @Test
+    public void testRegisteredPropertyAccessorIsUsed() throws Exception {
+        List<String> accessed = new ArrayList<String>();
+        DynamoDBMapper accessorMapper = new DynamoDBMapper(mockClient);
+        accessorMapper.registerPropertyAccessorFactory(AccessorClass.class,
+                valueAccessorFactory(accessed));
+
+        AccessorClass object = accessorMapper.marshallIntoObject(AccessorClass.class,
+                accessorItem());
+        assertEquals("key", object.getId());
+        assertEquals("some value", object.getValue());
+        assertEquals(Arrays.asList("set"), accessed);
+
+        // other mappers access the properties through reflection
+        object = mapper.marshallIntoObject(AccessorClass.class, accessorItem());
+        assertEquals("some value", object.getValue());
+        assertEquals(Arrays.asList("set"), accessed);
+    }
+
+    @Test
+    public void testPropertyAccessorFactoryRegisteredTooLate() {
+        mapper.marshallIntoObject(AccessorClass.class, accessorItem());
+        List<String> accessed = new ArrayList<String>();
+        try {
+            mapper.registerPropertyAccessorFactory(AccessorClass.class,
+                    valueAccessorFactory(accessed));
+            fail("registered after the accessors were created");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // a new mapper can still have one
+        DynamoDBMapper accessorMapper = new DynamoDBMapper(mockClient);
+        accessorMapper.registerPropertyAccessorFactory(AccessorClass.class,
+                valueAccessorFactory(accessed));
+        accessorMapper.marshallIntoObject(AccessorClass.class, accessorItem());
+        assertEquals(Arrays.asList("set"), accessed);
+    }
+
     @Test
     public void testCreateKeyObjectTest() {
         IndexRangeKeyClass keyClass = mapper.createKeyObject(IndexRangeKeyClass.class,
@@ -160,6 +263,119 @@ public class DynamoDBMapperTest {
         EasyMock.verify(mockClient);
     }
 
+    @Test
+    public void testParallelBatchWriteGivesUpOnUnprocessedItems() throws Exception {
+        List<Object> objectsToWrite = new ArrayList<Object>();
+        for (int i = 0; i < 60; i++) {
+            objectsToWrite.add(new MockTwoValuePlusVersionClass("Key" + i, "Value" + i, null));
+        }
+
+        EasyMock.reset(mockClient);
+        // Leave every item unprocessed
+        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+                .andAnswer(new IAnswer<BatchWriteItemResult>() {
+                    @Override
+                    public BatchWriteItemResult answer() {
+                        BatchWriteItemRequest request =
+                                (BatchWriteItemRequest) EasyMock.getCurrentArguments()[0];
+                        return new BatchWriteItemResult()
+                                .withUnprocessedItems(request.getRequestItems());
+                    }
+                }).times(6);
+        EasyMock.replay(mockClient);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            DynamoDBMapperConfig batchConfig = new DynamoDBMapperConfig.Builder()
+                    .withBatchExecutor(executor)
+                    .withBatchWriteRetryStrategy(new BatchWriteRetryStrategy() {
+                        @Override
+                        public int getMaxRetryOnUnprocessedItems(
+                                Map<String, List<WriteRequest>> batchWriteItemInput) {
+                            return 1;
+                        }
+
+                        @Override
+                        public long getDelayBeforeRetryUnprocessedItems(
+                                Map<String, List<WriteRequest>> unprocessedItems,
+                                int retriesAttempted) {
+                            return 0;
+                        }
+                    })
+                    .build();
+            List<FailedBatch> failedBatches = mapper.batchWrite(objectsToWrite,
+                    new ArrayList<Object>(), batchConfig);
+
+            // Batches of 25, 25 and 10 items, each sent once and retried once
+            assertEquals(3, failedBatches.size());
+            int unprocessedItems = 0;
+            for (FailedBatch failedBatch : failedBatches) {
+                assertNotNull(failedBatch.getException());
+                for (List<WriteRequest> requests : failedBatch.getUnprocessedItems().values()) {
+                    unprocessedItems += requests.size();
+                }
+            }
+            assertEquals(60, unprocessedItems);
+            EasyMock.verify(mockClient);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelBatchLoadStreamsChunkedRequests() throws Exception {
+        List<Object> itemsToGet = new ArrayList<Object>();
+        for (int i = 0; i < 250; i++) {
+            itemsToGet.add(new MockTwoValuePlusVersionClass("Key" + i, null, null));
+        }
+
+        EasyMock.reset(mockClient);
+        // Return every requested key
+        EasyMock.expect(mockClient.batchGetItem(anyObject(BatchGetItemRequest.class)))
+                .andAnswer(new IAnswer<BatchGetItemResult>() {
+                    @Override
+                    public BatchGetItemResult answer() {
+                        BatchGetItemRequest request =
+                                (BatchGetItemRequest) EasyMock.getCurrentArguments()[0];
+                        Map<String, List<Map<String, AttributeValue>>> responses =
+                                new HashMap<String, List<Map<String, AttributeValue>>>();
+                        for (Map.Entry<String, KeysAndAttributes> entry : request
+                                .getRequestItems().entrySet()) {
+                            assertTrue(entry.getValue().getKeys().size() <= 100);
+                            responses.put(entry.getKey(), entry.getValue().getKeys());
+                        }
+                        return new BatchGetItemResult().withResponses(responses);
+                    }
+                }).times(3);
+        EasyMock.replay(mockClient);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            DynamoDBMapperConfig batchConfig = new DynamoDBMapperConfig.Builder()
+                    .withBatchExecutor(executor)
+                    .build();
+            final List<Object> loaded = new ArrayList<Object>();
+            final List<String> tableNames = new ArrayList<String>();
+            mapper.batchLoad(itemsToGet, batchConfig, new BatchLoadHandler() {
+                @Override
+                public void onItemsLoaded(String tableName, List<Object> items) {
+                    tableNames.add(tableName);
+                    loaded.addAll(items);
+                }
+            });
+
+            EasyMock.verify(mockClient);
+            // One call per response, of 100, 100 and 50 items
+            assertEquals(3, tableNames.size());
+            assertEquals(250, loaded.size());
+            for (Object object : loaded) {
+                assertEquals(MockTwoValuePlusVersionClass.class, object.getClass());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testBatchLoadRetiresForUnprocessedItems() {
         List<Object> itemsToGet = new ArrayList<Object>();
@@ -16,6 +16,7 @@
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -415,6 +416,36 @@ public class PojoReflectionTest {
                 reflector.getPrimaryRangeKeyName(TablePojoSubclass.class));
     }
 
+    @Test
+    public void testTableModelIsShared() throws Exception {
+        final DynamoDBReflector freshReflector = new DynamoDBReflector();
+        final DynamoDBReflector.TableModel[] models = new DynamoDBReflector.TableModel[8];
+        Thread[] threads = new Thread[models.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    models[index] = freshReflector.getTableModel(TablePojoSubclass.class);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (DynamoDBReflector.TableModel model : models) {
+            assertSame(models[0], model);
+        }
+
+        assertEquals(2, freshReflector.getPrimaryKeyGetters(TablePojoSubclass.class).size());
+        assertSame(freshReflector.getPrimaryKeyGetters(TablePojoSubclass.class),
+                freshReflector.getPrimaryKeyGetters(TablePojoSubclass.class));
+        Method hashKeyGetter = freshReflector.getPrimaryHashKeyGetter(TablePojoSubclass.class);
+        assertSame(freshReflector.getGetterModel(hashKeyGetter),
+                freshReflector.getGetterModel(hashKeyGetter));
+    }
+
     @DynamoDBTable(tableName = "table")
     private static class BaseTablePojo {
         @DynamoDBHashKey
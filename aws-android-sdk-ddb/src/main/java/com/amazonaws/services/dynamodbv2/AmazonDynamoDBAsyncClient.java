@@ -16,7 +16,6 @@ package com.amazonaws.services.dynamodbv2;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import com.amazonaws.AmazonClientException;
@@ -26,6 +25,7 @@ import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.internal.ClientExecutors;
 
 import com.amazonaws.services.dynamodbv2.model.*;
 
@@ -248,7 +248,7 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     @Deprecated
     public AmazonDynamoDBAsyncClient(ClientConfiguration clientConfiguration) {
-        this(new DefaultAWSCredentialsProviderChain(), clientConfiguration, Executors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
+        this(new DefaultAWSCredentialsProviderChain(), clientConfiguration, ClientExecutors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
     }
 
     /**
@@ -266,7 +266,7 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      *                       when authenticating with AWS services.
      */
     public AmazonDynamoDBAsyncClient(AWSCredentials awsCredentials) {
-        this(awsCredentials, Executors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
+        this(awsCredentials, ClientExecutors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
     }
 
     /**
@@ -333,7 +333,7 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      *            to authenticate requests with AWS services.
      */
     public AmazonDynamoDBAsyncClient(AWSCredentialsProvider awsCredentialsProvider) {
-        this(awsCredentialsProvider, Executors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
+        this(awsCredentialsProvider, ClientExecutors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
     }
 
     /**
@@ -376,7 +376,7 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public AmazonDynamoDBAsyncClient(AWSCredentialsProvider awsCredentialsProvider,
                 ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, Executors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
+        this(awsCredentialsProvider, clientConfiguration, ClientExecutors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
     }
 
     /**
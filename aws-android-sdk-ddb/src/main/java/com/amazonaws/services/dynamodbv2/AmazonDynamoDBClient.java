@@ -487,6 +487,57 @@ public class AmazonDynamoDBClient extends AmazonWebServiceClient implements Amaz
         }
     }
 
+    /**
+     * <p>
+     * Performs the Scan operation like {@link #scan(ScanRequest)}, but
+     * returns the items as they are read from the response instead of once
+     * the whole response has been read, so only one item is held in
+     * memory at a time. The rest of the response is available from
+     * {@link StreamingJsonResult#getResult()} once all the items have been
+     * read. The connection stays open until then; callers which stop earlier
+     * must call {@link StreamingJsonResult#close()}.
+     * </p>
+     *
+     * @param scanRequest Container for the necessary parameters to execute
+     *           the Scan service method on AmazonDynamoDBv2.
+     * 
+     * @return The items of the response, followed by the rest of the
+     *         response.
+     *
+     * @throws AmazonClientException
+     *             If any internal errors are encountered inside the client while
+     *             attempting to make the request or handle the response.  For example
+     *             if a network connection is not available.
+     * @throws AmazonServiceException
+     *             If an error response is returned by AmazonDynamoDBv2 indicating
+     *             either a problem with the data in the request, or a server side issue.
+     */
+    public StreamingJsonResult<ScanResult, java.util.Map<String,AttributeValue>> scanItems(ScanRequest scanRequest) {
+        ExecutionContext executionContext = createExecutionContext(scanRequest);
+        AWSRequestMetrics awsRequestMetrics = executionContext.getAwsRequestMetrics();
+        awsRequestMetrics.startEvent(Field.ClientExecuteTime);
+        Request<ScanRequest> request = null;
+        Response<StreamingJsonResult<ScanResult, java.util.Map<String,AttributeValue>>> response = null;
+        try {
+            awsRequestMetrics.startEvent(Field.RequestMarshallTime);
+            try {
+                request = new ScanRequestMarshaller().marshall(scanRequest);
+                // Binds the request metrics to the current request.
+                request.setAWSRequestMetrics(awsRequestMetrics);
+            } finally {
+                awsRequestMetrics.endEvent(Field.RequestMarshallTime);
+            }
+            StreamingJsonResponseHandler<ScanResult, java.util.Map<String,AttributeValue>> responseHandler = new StreamingJsonResponseHandler<ScanResult, java.util.Map<String,AttributeValue>>(
+                    "Items", new MapUnmarshaller<AttributeValue>(AttributeValueJsonUnmarshaller.getInstance()), new ScanResultJsonUnmarshaller());
+
+            response = invoke(request, responseHandler, executionContext);
+            
+        return response.getAwsResponse();
+        } finally {
+            endClientExecution(awsRequestMetrics, request, response, LOGGING_AWS_REQUEST_METRIC);
+        }
+    }
+
     /**
      * <p>
      * Modifies the provisioned throughput settings, global secondary
@@ -1306,6 +1357,57 @@ public class AmazonDynamoDBClient extends AmazonWebServiceClient implements Amaz
         }
     }
 
+    /**
+     * <p>
+     * Performs the Query operation like {@link #query(QueryRequest)}, but
+     * returns the items as they are read from the response instead of once
+     * the whole response has been read, so only one item is held in
+     * memory at a time. The rest of the response is available from
+     * {@link StreamingJsonResult#getResult()} once all the items have been
+     * read. The connection stays open until then; callers which stop earlier
+     * must call {@link StreamingJsonResult#close()}.
+     * </p>
+     *
+     * @param queryRequest Container for the necessary parameters to execute
+     *           the Query service method on AmazonDynamoDBv2.
+     * 
+     * @return The items of the response, followed by the rest of the
+     *         response.
+     *
+     * @throws AmazonClientException
+     *             If any internal errors are encountered inside the client while
+     *             attempting to make the request or handle the response.  For example
+     *             if a network connection is not available.
+     * @throws AmazonServiceException
+     *             If an error response is returned by AmazonDynamoDBv2 indicating
+     *             either a problem with the data in the request, or a server side issue.
+     */
+    public StreamingJsonResult<QueryResult, java.util.Map<String,AttributeValue>> queryItems(QueryRequest queryRequest) {
+        ExecutionContext executionContext = createExecutionContext(queryRequest);
+        AWSRequestMetrics awsRequestMetrics = executionContext.getAwsRequestMetrics();
+        awsRequestMetrics.startEvent(Field.ClientExecuteTime);
+        Request<QueryRequest> request = null;
+        Response<StreamingJsonResult<QueryResult, java.util.Map<String,AttributeValue>>> response = null;
+        try {
+            awsRequestMetrics.startEvent(Field.RequestMarshallTime);
+            try {
+                request = new QueryRequestMarshaller().marshall(queryRequest);
+                // Binds the request metrics to the current request.
+                request.setAWSRequestMetrics(awsRequestMetrics);
+            } finally {
+                awsRequestMetrics.endEvent(Field.RequestMarshallTime);
+            }
+            StreamingJsonResponseHandler<QueryResult, java.util.Map<String,AttributeValue>> responseHandler = new StreamingJsonResponseHandler<QueryResult, java.util.Map<String,AttributeValue>>(
+                    "Items", new MapUnmarshaller<AttributeValue>(AttributeValueJsonUnmarshaller.getInstance()), new QueryResultJsonUnmarshaller());
+
+            response = invoke(request, responseHandler, executionContext);
+            
+        return response.getAwsResponse();
+        } finally {
+            endClientExecution(awsRequestMetrics, request, response, LOGGING_AWS_REQUEST_METRIC);
+        }
+    }
+
     /**
      * <p>
      * Creates a new item, or replaces an old item with a new item. If an
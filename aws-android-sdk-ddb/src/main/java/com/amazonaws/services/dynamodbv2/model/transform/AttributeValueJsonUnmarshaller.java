@@ -35,41 +35,44 @@ public class AttributeValueJsonUnmarshaller implements Unmarshaller<AttributeVal
         reader.beginObject();
         while (reader.hasNext()) {
             String name = reader.nextName();
-            
-            if (name.equals("S")) {
-                attributeValue.setS(StringJsonUnmarshaller.getInstance().unmarshall(context));
-            } else 
-            if (name.equals("N")) {
-                attributeValue.setN(StringJsonUnmarshaller.getInstance().unmarshall(context));
-            } else 
-            if (name.equals("B")) {
-                attributeValue.setB(ByteBufferJsonUnmarshaller.getInstance().unmarshall(context));
-            } else 
-            if (name.equals("SS")) {
-                attributeValue.setSS(new ListUnmarshaller<String>(StringJsonUnmarshaller.getInstance()).unmarshall(context));
-            } else 
-            if (name.equals("NS")) {
-                attributeValue.setNS(new ListUnmarshaller<String>(StringJsonUnmarshaller.getInstance()).unmarshall(context));
-            } else 
-            if (name.equals("BS")) {
-                attributeValue.setBS(new ListUnmarshaller<java.nio.ByteBuffer>(ByteBufferJsonUnmarshaller.getInstance()).unmarshall(context));
-            } else 
-            if (name.equals("M")) {
-                attributeValue.setM(new MapUnmarshaller<AttributeValue>(AttributeValueJsonUnmarshaller.getInstance()).unmarshall(context));
-            } else 
-            if (name.equals("L")) {
-                attributeValue.setL(new ListUnmarshaller<AttributeValue>(AttributeValueJsonUnmarshaller.getInstance()).unmarshall(context));
-            } else 
-            if (name.equals("NULL")) {
-                attributeValue.setNULL(BooleanJsonUnmarshaller.getInstance().unmarshall(context));
-            } else 
-            if (name.equals("BOOL")) {
-                attributeValue.setBOOL(BooleanJsonUnmarshaller.getInstance().unmarshall(context));
-            } else 
-            {
-                reader.skipValue();
+
+            // Switch on the name instead of comparing it to each field in turn,
+            // as every attribute of every item goes through here
+            switch (name) {
+                case "S":
+                    attributeValue.setS(StringJsonUnmarshaller.getInstance().unmarshall(context));
+                    break;
+                case "N":
+                    attributeValue.setN(StringJsonUnmarshaller.getInstance().unmarshall(context));
+                    break;
+                case "B":
+                    attributeValue.setB(ByteBufferJsonUnmarshaller.getInstance().unmarshall(context));
+                    break;
+                case "SS":
+                    attributeValue.setSS(new ListUnmarshaller<String>(StringJsonUnmarshaller.getInstance()).unmarshall(context));
+                    break;
+                case "NS":
+                    attributeValue.setNS(new ListUnmarshaller<String>(StringJsonUnmarshaller.getInstance()).unmarshall(context));
+                    break;
+                case "BS":
+                    attributeValue.setBS(new ListUnmarshaller<java.nio.ByteBuffer>(ByteBufferJsonUnmarshaller.getInstance()).unmarshall(context));
+                    break;
+                case "M":
+                    attributeValue.setM(new MapUnmarshaller<AttributeValue>(AttributeValueJsonUnmarshaller.getInstance()).unmarshall(context));
+                    break;
+                case "L":
+                    attributeValue.setL(new ListUnmarshaller<AttributeValue>(AttributeValueJsonUnmarshaller.getInstance()).unmarshall(context));
+                    break;
+                case "NULL":
+                    attributeValue.setNULL(BooleanJsonUnmarshaller.getInstance().unmarshall(context));
+                    break;
+                case "BOOL":
+                    attributeValue.setBOOL(BooleanJsonUnmarshaller.getInstance().unmarshall(context));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
-            
         }
         reader.endObject();
         
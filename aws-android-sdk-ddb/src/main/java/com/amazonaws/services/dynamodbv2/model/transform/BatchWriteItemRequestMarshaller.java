@@ -18,7 +18,6 @@ import static com.amazonaws.util.StringUtils.UTF8;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStreamWriter;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Map;
 import java.util.List;
@@ -31,7 +30,7 @@ import com.amazonaws.services.dynamodbv2.model.*;
 import com.amazonaws.transform.Marshaller;
 import com.amazonaws.util.BinaryUtils;
 import com.amazonaws.util.StringUtils;
-import com.amazonaws.util.StringInputStream;
+import com.amazonaws.util.ContentOutputStream;
 import com.amazonaws.util.json.AwsJsonWriter;
 import com.amazonaws.util.json.JsonUtils;
 
@@ -53,8 +52,8 @@ public class BatchWriteItemRequestMarshaller implements Marshaller<Request<Batch
         request.setResourcePath("");
         
         try {
-            StringWriter stringWriter = new StringWriter();
-            AwsJsonWriter jsonWriter = JsonUtils.getJsonWriter(stringWriter);
+            ContentOutputStream contentStream = new ContentOutputStream();
+            AwsJsonWriter jsonWriter = JsonUtils.getJsonWriter(new OutputStreamWriter(contentStream, UTF8));
 
             jsonWriter.beginObject();
             
@@ -127,10 +126,8 @@ public class BatchWriteItemRequestMarshaller implements Marshaller<Request<Batch
             jsonWriter.endObject();
 
             jsonWriter.close();
-            String snippet = stringWriter.toString();
-            byte[] content = snippet.getBytes(UTF8);
-            request.setContent(new StringInputStream(snippet));
-            request.addHeader("Content-Length", Integer.toString(content.length));
+            request.setContent(contentStream.toInputStream());
+            request.addHeader("Content-Length", Integer.toString(contentStream.size()));
             request.addHeader("Content-Type", "application/x-amz-json-1.0");
         } catch(Throwable t) {
             throw new AmazonClientException("Unable to marshall request to JSON: " + t.getMessage(), t);
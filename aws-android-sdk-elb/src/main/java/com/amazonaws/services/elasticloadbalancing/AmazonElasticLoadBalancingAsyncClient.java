@@ -16,7 +16,6 @@ package com.amazonaws.services.elasticloadbalancing;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import com.amazonaws.AmazonClientException;
@@ -26,6 +25,7 @@ import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.internal.ClientExecutors;
 
 import com.amazonaws.services.elasticloadbalancing.model.*;
 
@@ -108,7 +108,7 @@ public class AmazonElasticLoadBalancingAsyncClient extends AmazonElasticLoadBala
      */
     @Deprecated
     public AmazonElasticLoadBalancingAsyncClient(ClientConfiguration clientConfiguration) {
-        this(new DefaultAWSCredentialsProviderChain(), clientConfiguration, Executors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
+        this(new DefaultAWSCredentialsProviderChain(), clientConfiguration, ClientExecutors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
     }
 
     /**
@@ -126,7 +126,7 @@ public class AmazonElasticLoadBalancingAsyncClient extends AmazonElasticLoadBala
      *                       when authenticating with AWS services.
      */
     public AmazonElasticLoadBalancingAsyncClient(AWSCredentials awsCredentials) {
-        this(awsCredentials, Executors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
+        this(awsCredentials, ClientExecutors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
     }
 
     /**
@@ -193,7 +193,7 @@ public class AmazonElasticLoadBalancingAsyncClient extends AmazonElasticLoadBala
      *            to authenticate requests with AWS services.
      */
     public AmazonElasticLoadBalancingAsyncClient(AWSCredentialsProvider awsCredentialsProvider) {
-        this(awsCredentialsProvider, Executors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
+        this(awsCredentialsProvider, ClientExecutors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE));
     }
 
     /**
@@ -236,7 +236,7 @@ public class AmazonElasticLoadBalancingAsyncClient extends AmazonElasticLoadBala
      */
     public AmazonElasticLoadBalancingAsyncClient(AWSCredentialsProvider awsCredentialsProvider,
                 ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, Executors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
+        this(awsCredentialsProvider, clientConfiguration, ClientExecutors.newFixedThreadPool(clientConfiguration.getMaxConnections()));
     }
 
     /**
@@ -33,6 +33,8 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.io.File;
+import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -42,6 +44,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.SocketFactory;
 
@@ -57,8 +63,12 @@ public class AWSIotMqttManager {
     private static final Integer ANDROID_API_LEVEL_16 = 16;
     /** Conversion seconds to milliseconds. */
     private static final Integer MILLIS_IN_ONE_SECOND = 1000;
-    /** Constant for milliseconds between queue publishes. */
-    private static final Long MILLIS_BETWEEN_QUEUE_PUBLISHES = 100L;
+    /** Max number of messages the Paho client has awaiting delivery. */
+    private static final Integer PAHO_MAX_INFLIGHT = 10;
+    /** How long the drain waits before checking the connection again. */
+    private static final Long MILLIS_BETWEEN_DRAIN_CHECKS = 1000L;
+    /** How long the drain waits when the Paho client has too many messages in flight. */
+    private static final Long MILLIS_BEFORE_DRAIN_RETRY = 100L;
     /** Constant for log prefix. */
     private static final String LOG_TAG = AWSIotMqttManager.class.getCanonicalName();
 
@@ -74,6 +84,13 @@ public class AWSIotMqttManager {
     public static final Boolean DEFAULT_OFFLINE_PUBLISH_QUEUE_ENABLED = true;
     /** Default value for offline publish queue bound. */
     public static final Integer DEFAULT_OFFLINE_PUBLISH_QUEUE_BOUND = 100;
+    /** Default value for offline publish queue overflow policy. */
+    public static final AWSIotMqttOfflineQueueOverflowPolicy DEFAULT_OFFLINE_PUBLISH_QUEUE_OVERFLOW_POLICY =
+            AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST;
+    /** Default value for offline publish queue drain rate (messages per second). */
+    public static final Integer DEFAULT_OFFLINE_PUBLISH_QUEUE_DRAIN_RATE = 50;
+    /** Default value for offline publish queue max QoS 1 messages in flight. */
+    public static final Integer DEFAULT_OFFLINE_PUBLISH_QUEUE_MAX_INFLIGHT = 5;
 
     /** The underlying Paho Java MQTT client. */
     private MqttAsyncClient mqttClient;
@@ -89,11 +106,19 @@ public class AWSIotMqttManager {
      * to proved per-topic message arrived callbacks.
      */
     private Map<String, AWSIotMqttTopic> topicListeners;
+    /** MQTT subscriptions by topic filter level. Used to dispatch messages. */
+    private final TopicTrie topicTrie = new TopicTrie();
+    /**
+     * Executor the message arrived callbacks are called on, null to call them
+     * on the MQTT client thread.
+     */
+    private Executor messageCallbackExecutor;
     /**
      * Queue for messages attempted to publish while MQTT client was offline.
-     * Republished upon reconnect.
+     * Republished upon reconnect. Replaced by setOfflinePublishQueueFile() while
+     * the queue may be drained.
      */
-    private List<AWSIotMqttQueueMessage> mqttMessageQueue;
+    private volatile OfflinePublishQueue mqttMessageQueue;
     /** KeepAlive interval specified by the user. */
     private int userKeepAlive;
     /** Are we automatically reconnecting upon (non-user) disconnect? */
@@ -108,6 +133,24 @@ public class AWSIotMqttManager {
     private boolean offlinePublishQueueEnabled;
     /** Offline publish queue bound. */
     private Integer offlinePublishQueueBound;
+    /** What to do with messages published while the offline queue is full. */
+    private AWSIotMqttOfflineQueueOverflowPolicy offlinePublishQueueOverflowPolicy;
+    /** File the offline publish queue is kept in, null if kept in memory. */
+    private File offlinePublishQueueFile;
+    /** Max rate at which the offline publish queue is drained. */
+    private int offlinePublishQueueDrainRate;
+    /** Max number of QoS 1 messages from the offline queue in flight. */
+    private int offlinePublishQueueMaxInflight;
+    /** Is a thread draining the offline publish queue? */
+    private final AtomicBoolean draining = new AtomicBoolean();
+    /**
+     * Delivery tokens of the QoS 1 messages drained from the offline queue that
+     * are not delivered yet, and their queue entries. Also guards drainWindow.
+     */
+    private final Map<IMqttDeliveryToken, OfflinePublishQueue.Entry> drainTokens =
+            new HashMap<IMqttDeliveryToken, OfflinePublishQueue.Entry>();
+    /** Permits for QoS 1 messages of the offline queue to be in flight. */
+    private Semaphore drainWindow;
     /** Was this disconnect requested by the user? */
     private boolean userDisconnect;
     /** Do we need to resubscribe upon reconnecting? */
@@ -216,7 +259,8 @@ public class AWSIotMqttManager {
 
     /**
      * Set the bound for the number of messages queued while offline. Note: When
-     * full queue will act as FIFO and shed oldest messages.
+     * full queue will act as set by the overflow policy, and shed oldest
+     * messages by default.
      * 
      * @param bound max number of messages to queue while offline. Negative or 0
      *            values ignored.
@@ -228,6 +272,139 @@ public class AWSIotMqttManager {
         offlinePublishQueueBound = bound;
     }
 
+    /**
+     * Get what the offline message queue does with messages published while
+     * it is full.
+     *
+     * @return the overflow policy of the offline message queue.
+     */
+    public AWSIotMqttOfflineQueueOverflowPolicy getOfflinePublishQueueOverflowPolicy() {
+        return offlinePublishQueueOverflowPolicy;
+    }
+
+    /**
+     * Set what the offline message queue does with messages published while
+     * it is full.
+     *
+     * @param policy the overflow policy of the offline message queue.
+     */
+    public void setOfflinePublishQueueOverflowPolicy(AWSIotMqttOfflineQueueOverflowPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Offline queue overflow policy cannot be null");
+        }
+        offlinePublishQueueOverflowPolicy = policy;
+    }
+
+    /**
+     * Get the max rate at which messages queued while offline are published
+     * once the client is connected again.
+     *
+     * @return max number of messages published per second.
+     */
+    public int getOfflinePublishQueueDrainRate() {
+        return offlinePublishQueueDrainRate;
+    }
+
+    /**
+     * Set the max rate at which messages queued while offline are published
+     * once the client is connected again.
+     *
+     * @param messagesPerSecond max number of messages published per second.
+     */
+    public void setOfflinePublishQueueDrainRate(int messagesPerSecond) {
+        if (messagesPerSecond <= 0) {
+            throw new IllegalArgumentException("Offline queue drain rate must be > 0");
+        }
+        offlinePublishQueueDrainRate = messagesPerSecond;
+    }
+
+    /**
+     * Get the max number of QoS 1 messages from the offline queue awaiting
+     * delivery at a time.
+     *
+     * @return max number of QoS 1 messages in flight.
+     */
+    public int getOfflinePublishQueueMaxInflight() {
+        return offlinePublishQueueMaxInflight;
+    }
+
+    /**
+     * Set the max number of QoS 1 messages from the offline queue awaiting
+     * delivery at a time. The MQTT client allows at most 10 messages in
+     * flight, including the messages published directly.
+     *
+     * @param maxInflight max number of QoS 1 messages in flight, from 1 to 10.
+     */
+    public void setOfflinePublishQueueMaxInflight(int maxInflight) {
+        if (maxInflight <= 0 || maxInflight > PAHO_MAX_INFLIGHT) {
+            throw new IllegalArgumentException("Offline queue max inflight must be between 1 and "
+                    + PAHO_MAX_INFLIGHT);
+        }
+        offlinePublishQueueMaxInflight = maxInflight;
+    }
+
+    /**
+     * Get the file the offline message queue is kept in.
+     *
+     * @return the file of the offline message queue, null if the queue is kept
+     *         in memory.
+     */
+    public File getOfflinePublishQueueFile() {
+        return offlinePublishQueueFile;
+    }
+
+    /**
+     * Keep the messages queued while offline in a file, so they are published
+     * even if the application is restarted before the client connects again.
+     * Messages left in the file by a previous run are queued first, followed
+     * by those already in the queue. Use a file in the private storage of the
+     * application, such as {@code new File(context.getFilesDir(), "iot_queue")}
+     * , and a different file for each manager.
+     *
+     * @param file the file to keep the offline message queue in, or null to
+     *            keep the queue in memory.
+     */
+    public synchronized void setOfflinePublishQueueFile(File file) {
+        OfflinePublishQueue queue;
+        if (file == null) {
+            queue = new OfflinePublishQueue();
+        } else {
+            try {
+                queue = new OfflinePublishQueue(new OfflinePublishQueueFile(file));
+            } catch (IOException e) {
+                throw new AmazonClientException("Error opening the offline publish queue file.", e);
+            }
+        }
+        // the old queue looks empty to a drain once its messages are moved,
+        // and forwards the messages published meanwhile
+        mqttMessageQueue.transferTo(queue, offlinePublishQueueBound);
+        mqttMessageQueue = queue;
+        offlinePublishQueueFile = file;
+    }
+
+    /**
+     * Get the executor the message arrived callbacks are called on.
+     *
+     * @return the executor, null if callbacks are called on the MQTT client
+     *         thread.
+     */
+    public Executor getMessageCallbackExecutor() {
+        return messageCallbackExecutor;
+    }
+
+    /**
+     * Set the executor the message arrived callbacks are called on. By default
+     * callbacks are called on the MQTT client thread, which doesn't process
+     * other messages until the callback returns. With an executor of several
+     * threads, callbacks may be called concurrently and out of order.
+     *
+     * @param executor the executor, or null to call callbacks on the MQTT
+     *            client thread.
+     */
+    public void setMessageCallbackExecutor(Executor executor) {
+        messageCallbackExecutor = executor;
+    }
+
     /**
      * Get the MQTT keep alive time.
      * 
@@ -265,7 +442,7 @@ public class AWSIotMqttManager {
      * 
      * @return offline message queue.
      */
-    List<AWSIotMqttQueueMessage> getMqttMessageQueue() {
+    OfflinePublishQueue getMqttMessageQueue() {
         return mqttMessageQueue;
     }
 
@@ -300,6 +477,9 @@ public class AWSIotMqttManager {
         userKeepAlive = DEFAULT_KEEP_ALIVE_SECONDS;
         offlinePublishQueueEnabled = DEFAULT_OFFLINE_PUBLISH_QUEUE_ENABLED;
         offlinePublishQueueBound = DEFAULT_OFFLINE_PUBLISH_QUEUE_BOUND;
+        offlinePublishQueueOverflowPolicy = DEFAULT_OFFLINE_PUBLISH_QUEUE_OVERFLOW_POLICY;
+        offlinePublishQueueDrainRate = DEFAULT_OFFLINE_PUBLISH_QUEUE_DRAIN_RATE;
+        offlinePublishQueueMaxInflight = DEFAULT_OFFLINE_PUBLISH_QUEUE_MAX_INFLIGHT;
 
         String mqttBrokerURL = String.format("ssl://%s.iot.%s.%s:8883", accountEndpointPrefix,
                 region.getName(), region.getDomain());
@@ -311,7 +491,7 @@ public class AWSIotMqttManager {
         }
 
         topicListeners = new HashMap<String, AWSIotMqttTopic>();
-        mqttMessageQueue = new ArrayList<AWSIotMqttQueueMessage>();
+        mqttMessageQueue = new OfflinePublishQueue();
     }
 
     /**
@@ -387,7 +567,7 @@ public class AWSIotMqttManager {
         options.setKeepAliveInterval(userKeepAlive);
 
         topicListeners.clear();
-        mqttMessageQueue.clear();
+        topicTrie.clear();
 
         setupCallbackForMqttClient();
 
@@ -594,6 +774,7 @@ public class AWSIotMqttManager {
             }
             AWSIotMqttTopic topicModel = new AWSIotMqttTopic(topic, qos, callback);
             topicListeners.put(topic, topicModel);
+            topicTrie.put(topicModel);
         }
     }
 
@@ -615,6 +796,7 @@ public class AWSIotMqttManager {
                 throw new AmazonClientException("Client error while unsubscribing.", e);
             }
             topicListeners.remove(topic);
+            topicTrie.remove(topic);
         }
     }
 
@@ -706,42 +888,130 @@ public class AWSIotMqttManager {
         message.setTopic(topic);
         message.setMessage(data);
 
-        if (mqttMessageQueue.size() >= offlinePublishQueueBound) {
-            mqttMessageQueue.remove(0);
+        if (!mqttMessageQueue.offer(message, offlinePublishQueueBound,
+                offlinePublishQueueOverflowPolicy)) {
+            Log.w(LOG_TAG, "Offline publish queue is full, dropping message.");
         }
-
-        mqttMessageQueue.add(message);
     }
 
     /**
      * Publish messages from the message queue. Called to handle publishing
      * messages accumulated in the message queue when the client was unable to
-     * publish.
+     * publish. The queue is drained on a background thread, at no more than
+     * the drain rate and with no more than the max inflight QoS 1 messages
+     * awaiting delivery.
      */
     void publishMessagesFromQueue() {
-        if (mqttMessageQueue != null && mqttMessageQueue.size() > 0) {
-            final AWSIotMqttQueueMessage message = mqttMessageQueue.get(0);
-            if (message != null && isReadyToPublish()) {
+        if (!mqttMessageQueue.canTake() || !draining.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (drainTokens) {
+            drainWindow = new Semaphore(offlinePublishQueueMaxInflight - drainTokens.size());
+        }
+        Thread drainThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainQueue();
+            }
+        }, "AWSIotMqttManager-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Publishes the messages of the message queue until it is empty or the
+     * client is offline. The queue is read again for each message, as it may
+     * be replaced by another one. A message is removed from the queue once
+     * published for QoS 0, and once delivered for QoS 1.
+     */
+    void drainQueue() {
+        final TokenBucket rateLimiter = new TokenBucket(offlinePublishQueueDrainRate,
+                offlinePublishQueueDrainRate);
+        try {
+            while (isReadyToPublish()) {
+                rateLimiter.acquire();
+                OfflinePublishQueue.Entry entry = mqttMessageQueue.take();
+                if (entry == null) {
+                    break;
+                }
+                boolean published = false;
                 try {
-                    mqttClient.publish(message.getTopic(), message.getMessage(), message.getQos()
-                            .asInt(), false);
-                    mqttMessageQueue.remove(0);
+                    published = publishFromQueue(entry);
+                    if (!published) {
+                        break;
+                    }
                 } catch (MqttException e) {
+                    if (e.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT) {
+                        // messages published directly are taking up the window
+                        Thread.sleep(MILLIS_BEFORE_DRAIN_RETRY);
+                        continue;
+                    }
                     Log.e(LOG_TAG, "Error while publishing from offline message queue.", e);
+                    break;
+                } finally {
+                    if (!published) {
+                        entry.release();
+                    }
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            draining.set(false);
+        }
 
-            (new Handler(Looper.getMainLooper())).postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    if (mqttMessageQueue.size() > 0) {
-                        if (isReadyToPublish()) {
-                            publishMessagesFromQueue();
-                        }
-                    }
+        // messages may have been queued as the drain stopped
+        if (isReadyToPublish() && mqttMessageQueue.canTake()) {
+            publishMessagesFromQueue();
+        }
+    }
+
+    /**
+     * Publishes a message of the message queue, waiting for room in the
+     * window of QoS 1 messages in flight if needed. A QoS 0 message is done
+     * once published, a QoS 1 message once its delivery completes.
+     *
+     * @param entry the queue entry of the message.
+     * @return true if the message is published, false if the client went
+     *         offline.
+     * @throws MqttException if the client failed to publish the message.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private boolean publishFromQueue(OfflinePublishQueue.Entry entry) throws MqttException,
+            InterruptedException {
+        AWSIotMqttQueueMessage message = entry.getMessage();
+        boolean tracked = message.getQos() == AWSIotMqttQos.QOS1;
+        Semaphore window;
+        synchronized (drainTokens) {
+            window = drainWindow;
+        }
+        if (tracked) {
+            while (!window.tryAcquire(MILLIS_BETWEEN_DRAIN_CHECKS, TimeUnit.MILLISECONDS)) {
+                if (!isReadyToPublish()) {
+                    return false;
+                }
+            }
+        }
+        try {
+            // hold the lock so the delivery can't complete before the token
+            // is tracked
+            synchronized (drainTokens) {
+                IMqttDeliveryToken token = mqttClient.publish(message.getTopic(),
+                        message.getMessage(), message.getQos().asInt(), false);
+                if (tracked) {
+                    drainTokens.put(token, entry);
                 }
-            }, MILLIS_BETWEEN_QUEUE_PUBLISHES);
+            }
+        } catch (MqttException e) {
+            if (tracked) {
+                window.release();
+            }
+            throw e;
+        }
+        if (!tracked) {
+            entry.done();
         }
+        return true;
     }
 
     /**
@@ -754,6 +1024,15 @@ public class AWSIotMqttManager {
         mqttClient.setCallback(new MqttCallback() {
             @Override
             public void connectionLost(Throwable cause) {
+                // the messages in flight won't be delivered, they are
+                // published again from the queue
+                synchronized (drainTokens) {
+                    if (drainWindow != null) {
+                        drainWindow.release(drainTokens.size());
+                    }
+                    drainTokens.clear();
+                }
+                mqttMessageQueue.rewind();
                 if (!userDisconnect && autoReconnect) {
                     if (userStatusCallback != null) {
                         userStatusCallback.onStatusChanged(
@@ -772,24 +1051,43 @@ public class AWSIotMqttManager {
             }
 
             @Override
-            public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
-                byte[] data = mqttMessage.getPayload();
-
-                for (String topicKey : topicListeners.keySet()) {
-                    if (isTopicMatch(topicKey, topic)) {
-                        AWSIotMqttTopic topicModel = topicListeners.get(topicKey);
-                        if (topicModel != null) {
-                            if (topicModel.getCallback() != null) {
-                                topicModel.getCallback().onMessageArrived(topic, data);
+            public void messageArrived(final String topic, MqttMessage mqttMessage)
+                    throws Exception {
+                final byte[] data = mqttMessage.getPayload();
+
+                List<AWSIotMqttTopic> matches = new ArrayList<AWSIotMqttTopic>();
+                topicTrie.match(topic, matches);
+                Executor executor = messageCallbackExecutor;
+                for (AWSIotMqttTopic topicModel : matches) {
+                    final AWSIotMqttNewMessageCallback callback = topicModel.getCallback();
+                    if (callback == null) {
+                        continue;
+                    }
+                    if (executor == null) {
+                        callback.onMessageArrived(topic, data);
+                    } else {
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onMessageArrived(topic, data);
                             }
-                        }
+                        });
                     }
                 }
             }
 
             @Override
             public void deliveryComplete(IMqttDeliveryToken token) {
-
+                OfflinePublishQueue.Entry entry;
+                synchronized (drainTokens) {
+                    entry = drainTokens.remove(token);
+                    if (entry != null) {
+                        drainWindow.release();
+                    }
+                }
+                if (entry != null) {
+                    entry.done();
+                }
             }
         });
     }
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+/**
+ * What the offline publish queue does with a message published while it is
+ * full.
+ */
+public enum AWSIotMqttOfflineQueueOverflowPolicy {
+    /** Shed the oldest message in the queue to make room. */
+    DROP_OLDEST,
+    /** Drop the message being published. */
+    DROP_NEWEST,
+    /**
+     * Block the publishing thread until the queue has room, which is once the
+     * client is connected again. Only use this when publishing from a
+     * background thread.
+     */
+    BLOCK;
+}
@@ -0,0 +1,392 @@
+/**
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import com.amazonaws.AmazonClientException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Bounded queue of the messages published while the client is offline. The
+ * messages are kept in memory, or in an {@link OfflinePublishQueueFile} so
+ * they survive a restart of the application. Messages are published by a
+ * thread and drained by another, so all methods are synchronized.
+ * <p>
+ * The messages are published from the queue by {@link #take()}, which hands
+ * them out in order but leaves them in the queue until they are
+ * {@link Entry#done() done}. A message published but not delivered yet is
+ * kept, so it is published again after a restart.
+ * <p>
+ * Once its messages are moved to another queue by
+ * {@link #transferTo(OfflinePublishQueue, int)}, the queue looks empty to
+ * its consumer and messages offered to it are queued in the other queue.
+ */
+class OfflinePublishQueue {
+
+    /** Where the messages are kept. */
+    interface Storage {
+        void add(AWSIotMqttQueueMessage message) throws IOException;
+
+        AWSIotMqttQueueMessage peek() throws IOException;
+
+        /** @return the message at the given position from the oldest, or null. */
+        AWSIotMqttQueueMessage get(int index) throws IOException;
+
+        void remove() throws IOException;
+
+        int size();
+
+        void clear() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    /** Keeps the messages in memory. */
+    static class MemoryStorage implements Storage {
+        private final ArrayDeque<AWSIotMqttQueueMessage> messages = new ArrayDeque<AWSIotMqttQueueMessage>();
+
+        @Override
+        public void add(AWSIotMqttQueueMessage message) {
+            messages.addLast(message);
+        }
+
+        @Override
+        public AWSIotMqttQueueMessage peek() {
+            return messages.peekFirst();
+        }
+
+        @Override
+        public AWSIotMqttQueueMessage get(int index) {
+            // only the first few messages are read this way
+            Iterator<AWSIotMqttQueueMessage> it = messages.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                AWSIotMqttQueueMessage message = it.next();
+                if (i == index) {
+                    return message;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void remove() {
+            messages.pollFirst();
+        }
+
+        @Override
+        public int size() {
+            return messages.size();
+        }
+
+        @Override
+        public void clear() {
+            messages.clear();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A message handed out by {@link OfflinePublishQueue#take()}, which stays
+     * in the queue until it is done.
+     */
+    final class Entry {
+        private final AWSIotMqttQueueMessage message;
+        private final long sequence;
+
+        private Entry(AWSIotMqttQueueMessage message, long sequence) {
+            this.message = message;
+            this.sequence = sequence;
+        }
+
+        /**
+         * @return the message.
+         */
+        AWSIotMqttQueueMessage getMessage() {
+            return message;
+        }
+
+        /**
+         * Removes the message from the queue, once it is delivered. The
+         * messages before it are removed first.
+         */
+        void done() {
+            OfflinePublishQueue.this.done(sequence);
+        }
+
+        /**
+         * Hands the message out again, as it couldn't be published.
+         */
+        void release() {
+            OfflinePublishQueue.this.release(sequence);
+        }
+    }
+
+    private final Storage storage;
+    /** The queue the messages were moved to, null while this one is used. */
+    private OfflinePublishQueue movedTo;
+    /**
+     * Sequence number of the oldest message. The messages that follow it have
+     * the next numbers.
+     */
+    private long headSequence;
+    /** Number of messages handed out by take(), from the oldest. */
+    private int taken;
+    /** Sequence numbers of the messages done, but not removed yet. */
+    private final Set<Long> done = new HashSet<Long>();
+
+    /**
+     * Creates a queue that keeps its messages in memory.
+     */
+    OfflinePublishQueue() {
+        this(new MemoryStorage());
+    }
+
+    /**
+     * Creates a queue that keeps its messages in the given storage.
+     *
+     * @param storage where the messages are kept.
+     */
+    OfflinePublishQueue(Storage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Adds a message to the end of the queue.
+     *
+     * @param message the message.
+     * @param bound max number of messages in the queue.
+     * @param overflowPolicy what to do when the queue is full.
+     * @return true if the message was queued, false if it was dropped.
+     */
+    boolean offer(AWSIotMqttQueueMessage message, int bound,
+            AWSIotMqttOfflineQueueOverflowPolicy overflowPolicy) {
+        OfflinePublishQueue target;
+        synchronized (this) {
+            try {
+                while (movedTo == null && storage.size() >= bound) {
+                    switch (overflowPolicy) {
+                        case DROP_NEWEST:
+                            return false;
+                        case BLOCK:
+                            wait();
+                            break;
+                        default:
+                            removeOldest();
+                            break;
+                    }
+                }
+                if (movedTo == null) {
+                    storage.add(message);
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (IOException e) {
+                throw new AmazonClientException("Error writing to the offline publish queue.", e);
+            }
+            target = movedTo;
+        }
+        return target.offer(message, bound, overflowPolicy);
+    }
+
+    /**
+     * @return the oldest message, or null if the queue is empty.
+     */
+    synchronized AWSIotMqttQueueMessage peek() {
+        if (movedTo != null) {
+            return null;
+        }
+        try {
+            return read(0);
+        } catch (IOException e) {
+            throw new AmazonClientException("Error reading the offline publish queue.", e);
+        }
+    }
+
+    /**
+     * Removes the oldest message, if any.
+     */
+    synchronized void remove() {
+        if (movedTo != null || storage.size() == 0) {
+            return;
+        }
+        try {
+            removeOldest();
+        } catch (IOException e) {
+            throw new AmazonClientException("Error writing to the offline publish queue.", e);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Hands out the oldest message not handed out yet. The message stays in
+     * the queue until it is done.
+     *
+     * @return the message, or null if all the messages were handed out.
+     */
+    synchronized Entry take() {
+        if (movedTo != null) {
+            return null;
+        }
+        try {
+            if (!canTake()) {
+                return null;
+            }
+            AWSIotMqttQueueMessage message = read(taken);
+            if (message == null) {
+                return null;
+            }
+            Entry entry = new Entry(message, headSequence + taken);
+            taken++;
+            return entry;
+        } catch (IOException e) {
+            throw new AmazonClientException("Error reading the offline publish queue.", e);
+        }
+    }
+
+    /**
+     * @return true if {@link #take()} has a message to hand out.
+     */
+    synchronized boolean canTake() {
+        if (movedTo != null) {
+            return false;
+        }
+        while (taken < storage.size() && done.contains(headSequence + taken)) {
+            taken++;
+        }
+        return taken < storage.size();
+    }
+
+    /**
+     * Hands out the messages which are not done again, from the oldest. Called
+     * when the messages handed out won't be delivered.
+     */
+    synchronized void rewind() {
+        taken = 0;
+    }
+
+    private synchronized void done(long sequence) {
+        if (movedTo != null || sequence < headSequence
+                || sequence >= headSequence + storage.size()) {
+            // removed or moved meanwhile
+            return;
+        }
+        done.add(sequence);
+        try {
+            while (done.contains(headSequence)) {
+                removeOldest();
+            }
+        } catch (IOException e) {
+            throw new AmazonClientException("Error writing to the offline publish queue.", e);
+        }
+        notifyAll();
+    }
+
+    private synchronized void release(long sequence) {
+        if (movedTo == null && sequence == headSequence + taken - 1) {
+            taken--;
+        }
+    }
+
+    /**
+     * Reads the message at the given position from the oldest.
+     */
+    private AWSIotMqttQueueMessage read(int index) throws IOException {
+        int size = storage.size();
+        AWSIotMqttQueueMessage message = storage.get(index);
+        if (message == null && storage.size() < size) {
+            // the storage dropped its corrupted messages
+            forget(size);
+        }
+        return message;
+    }
+
+    private void removeOldest() throws IOException {
+        storage.remove();
+        done.remove(headSequence);
+        headSequence++;
+        if (taken > 0) {
+            taken--;
+        }
+    }
+
+    /**
+     * Forgets the given number of messages removed from the storage at once,
+     * so the entries handed out for them are ignored.
+     */
+    private void forget(int count) {
+        headSequence += count;
+        taken = 0;
+        done.clear();
+    }
+
+    /**
+     * @return the number of messages in the queue.
+     */
+    synchronized int size() {
+        return movedTo == null ? storage.size() : 0;
+    }
+
+    /**
+     * Removes all the messages.
+     */
+    synchronized void clear() {
+        if (movedTo != null) {
+            return;
+        }
+        try {
+            int size = storage.size();
+            storage.clear();
+            forget(size);
+        } catch (IOException e) {
+            throw new AmazonClientException("Error writing to the offline publish queue.", e);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Moves the messages of this queue to the end of another queue, then
+     * releases the storage of this queue. Must be called once at most.
+     *
+     * @param to the queue to move the messages to.
+     * @param bound max number of messages in the other queue.
+     */
+    synchronized void transferTo(OfflinePublishQueue to, int bound) {
+        AWSIotMqttQueueMessage message;
+        while ((message = peek()) != null) {
+            if (!done.contains(headSequence)) {
+                to.offer(message, bound, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+            }
+            remove();
+        }
+        movedTo = to;
+        // producers waiting for room offer to the other queue
+        notifyAll();
+        try {
+            storage.close();
+        } catch (IOException e) {
+            throw new AmazonClientException("Error closing the offline publish queue.", e);
+        }
+    }
+}
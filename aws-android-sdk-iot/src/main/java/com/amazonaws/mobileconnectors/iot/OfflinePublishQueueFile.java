@@ -0,0 +1,332 @@
+/**
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import android.util.Log;
+
+import com.amazonaws.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the offline publish queue in a file, so queued messages survive a
+ * restart of the application. Messages are appended to the end of the file and
+ * removed by moving the head offset stored in the file header, so adding and
+ * removing a message are both O(1). The consumed part of the file is reclaimed
+ * once the queue is empty, or by copying the remaining messages to a new file
+ * which replaces this one once the consumed part is larger than what is left.
+ * <p>
+ * The file starts with a 4 byte magic and the 8 byte head offset, followed by
+ * entries. An entry is a 4 byte length, a payload of that length and the CRC32
+ * of the payload. The payload is the QoS ({@code byte}), the topic
+ * ({@code short length, UTF-8 bytes}) and the message data. An entry cut short
+ * by a crash, or which doesn't match its CRC, ends the queue.
+ */
+class OfflinePublishQueueFile implements OfflinePublishQueue.Storage {
+
+    /** Constant for log prefix. */
+    private static final String LOG_TAG = OfflinePublishQueueFile.class.getCanonicalName();
+
+    private static final byte[] MAGIC = {
+            0, 'I', 'Q', 1
+    };
+    /** Length of the header: the magic and the head offset. */
+    private static final int HEADER_SIZE = MAGIC.length + 8;
+    /** Bytes of an entry besides the payload: the length and the CRC. */
+    private static final int ENTRY_OVERHEAD = 8;
+    /** Entries larger than this can only be corrupted data. */
+    private static final int MAX_PAYLOAD_SIZE = 1024 * 1024;
+    /** The consumed part of the file is only reclaimed past this size. */
+    private static final long COMPACT_THRESHOLD = 64 * 1024L;
+
+    private final File path;
+    private RandomAccessFile file;
+    private final CRC32 crc = new CRC32();
+
+    /** Offset of the oldest entry. */
+    private long head;
+    /** Offset where the next entry is appended. */
+    private long tail;
+    /** Number of entries between head and tail. */
+    private int count;
+
+    /** The oldest message once read, and the length of its entry. */
+    private AWSIotMqttQueueMessage headMessage;
+    private int headEntrySize;
+
+    /**
+     * Opens the queue file, creating it if needed. The messages queued in the
+     * file are kept.
+     *
+     * @param path the queue file.
+     * @throws IOException if the file can't be opened.
+     */
+    OfflinePublishQueueFile(File path) throws IOException {
+        this.path = path;
+        file = new RandomAccessFile(path, "rw");
+        try {
+            open();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void open() throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        if (file.length() >= HEADER_SIZE) {
+            file.seek(0);
+            file.readFully(magic);
+        }
+        if (!Arrays.equals(magic, MAGIC)) {
+            if (file.length() > 0) {
+                Log.w(LOG_TAG, "Offline publish queue file is not valid, starting over.");
+            }
+            reset();
+            return;
+        }
+        head = file.readLong();
+        if (head < HEADER_SIZE || head > file.length()) {
+            Log.w(LOG_TAG, "Offline publish queue head offset is not valid, starting over.");
+            reset();
+            return;
+        }
+
+        // count the entries, and drop whatever follows the last valid one
+        tail = head;
+        while (true) {
+            byte[] payload = readEntry(tail);
+            if (payload == null) {
+                break;
+            }
+            tail += ENTRY_OVERHEAD + payload.length;
+            ++count;
+        }
+        if (tail < file.length()) {
+            Log.w(LOG_TAG, "Dropping " + (file.length() - tail)
+                    + " bytes at the end of the offline publish queue file.");
+            file.setLength(tail);
+        }
+    }
+
+    /**
+     * Reads the payload of the entry at the given offset.
+     *
+     * @return the payload, or null if there is no valid entry at the offset.
+     */
+    private byte[] readEntry(long offset) throws IOException {
+        if (offset + ENTRY_OVERHEAD > file.length()) {
+            return null;
+        }
+        file.seek(offset);
+        int size = file.readInt();
+        if (size <= 0 || size > MAX_PAYLOAD_SIZE
+                || offset + ENTRY_OVERHEAD + size > file.length()) {
+            return null;
+        }
+        byte[] payload = new byte[size];
+        file.readFully(payload);
+        int checksum = file.readInt();
+        crc.reset();
+        crc.update(payload, 0, size);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        return payload;
+    }
+
+    @Override
+    public void add(AWSIotMqttQueueMessage message) throws IOException {
+        byte[] topic = message.getTopic().getBytes(StringUtils.UTF8);
+        if (topic.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Topic is too long");
+        }
+        byte[] data = message.getMessage();
+        int size = 3 + topic.length + data.length;
+        if (size > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Message is too large to be queued");
+        }
+
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_OVERHEAD + size);
+        entry.putInt(size);
+        entry.put((byte) message.getQos().asInt());
+        entry.putShort((short) topic.length);
+        entry.put(topic);
+        entry.put(data);
+        crc.reset();
+        crc.update(entry.array(), 4, size);
+        entry.putInt((int) crc.getValue());
+
+        file.seek(tail);
+        file.write(entry.array());
+        tail += entry.capacity();
+        ++count;
+    }
+
+    @Override
+    public AWSIotMqttQueueMessage peek() throws IOException {
+        if (count == 0) {
+            return null;
+        }
+        if (headMessage == null) {
+            byte[] payload = readEntry(head);
+            if (payload == null) {
+                corrupted();
+                return null;
+            }
+            headMessage = toMessage(payload);
+            headEntrySize = ENTRY_OVERHEAD + payload.length;
+        }
+        return headMessage;
+    }
+
+    @Override
+    public AWSIotMqttQueueMessage get(int index) throws IOException {
+        if (index == 0) {
+            return peek();
+        }
+        if (index >= count) {
+            return null;
+        }
+        // skips the entries before, which were all read when queued
+        long offset = head;
+        for (int i = 0; i < index; i++) {
+            file.seek(offset);
+            offset += ENTRY_OVERHEAD + file.readInt();
+        }
+        byte[] payload = readEntry(offset);
+        if (payload == null) {
+            corrupted();
+            return null;
+        }
+        return toMessage(payload);
+    }
+
+    private static AWSIotMqttQueueMessage toMessage(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        AWSIotMqttQos qos = buffer.get() == 0 ? AWSIotMqttQos.QOS0 : AWSIotMqttQos.QOS1;
+        byte[] topic = new byte[buffer.getShort()];
+        buffer.get(topic);
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new AWSIotMqttQueueMessage(new String(topic, StringUtils.UTF8), data, qos);
+    }
+
+    private void corrupted() throws IOException {
+        // the file was modified behind our back
+        Log.e(LOG_TAG, "Offline publish queue file is corrupted, dropping " + count
+                + " messages.");
+        clear();
+    }
+
+    @Override
+    public void remove() throws IOException {
+        if (peek() == null) {
+            return;
+        }
+        head += headEntrySize;
+        --count;
+        headMessage = null;
+
+        if (count == 0) {
+            reset();
+        } else if (head - HEADER_SIZE > COMPACT_THRESHOLD && head - HEADER_SIZE >= tail - head) {
+            compact();
+        } else {
+            writeHead();
+        }
+    }
+
+    /**
+     * Copies the entries left to a new file which then replaces the queue
+     * file. Until the rename the queue file is left as it was, so a crash
+     * replays at most the messages removed since the last head update. The
+     * new file is synced before it replaces the queue file.
+     */
+    private void compact() throws IOException {
+        File compacted = new File(path.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+        try {
+            out.setLength(0);
+            out.write(MAGIC);
+            out.writeLong(HEADER_SIZE);
+            byte[] buffer = new byte[8 * 1024];
+            long from = head;
+            while (from < tail) {
+                int length = (int) Math.min(buffer.length, tail - from);
+                file.seek(from);
+                file.readFully(buffer, 0, length);
+                out.write(buffer, 0, length);
+                from += length;
+            }
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        file.close();
+        boolean renamed = compacted.renameTo(path);
+        file = new RandomAccessFile(path, "rw");
+        if (renamed) {
+            tail = HEADER_SIZE + tail - head;
+            head = HEADER_SIZE;
+        } else {
+            Log.w(LOG_TAG, "Unable to compact the offline publish queue file.");
+            if (!compacted.delete()) {
+                Log.w(LOG_TAG, "Unable to delete " + compacted);
+            }
+            writeHead();
+            file.getFD().sync();
+        }
+    }
+
+    private void writeHead() throws IOException {
+        file.seek(MAGIC.length);
+        file.writeLong(head);
+    }
+
+    /** Empties the file. */
+    private void reset() throws IOException {
+        file.setLength(0);
+        file.seek(0);
+        file.write(MAGIC);
+        file.writeLong(HEADER_SIZE);
+        head = HEADER_SIZE;
+        tail = HEADER_SIZE;
+        count = 0;
+        headMessage = null;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public void clear() throws IOException {
+        reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Tokens are added at a steady rate up to the
+ * capacity of the bucket, so bursts of up to the capacity are let through
+ * after an idle period while the average rate stays at the given rate.
+ */
+class TokenBucket {
+
+    private static final long NANOS_IN_ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /** Nanoseconds it takes to add a token. */
+    private final long nanosPerToken;
+    /** Max number of tokens in the bucket. */
+    private final int capacity;
+    /** Tokens in the bucket as of lastRefillNanos. */
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param tokensPerSecond rate at which tokens are added.
+     * @param capacity max number of tokens in the bucket.
+     */
+    TokenBucket(int tokensPerSecond, int capacity) {
+        if (tokensPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be > 0");
+        }
+        this.nanosPerToken = NANOS_IN_ONE_SECOND / tokensPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    synchronized void acquire() throws InterruptedException {
+        refill();
+        while (tokens < 1) {
+            long waitNanos = (long) Math.ceil((1 - tokens) * nanosPerToken);
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            refill();
+        }
+        --tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (double) (now - lastRefillNanos) / nanosPerToken);
+        lastRefillNanos = now;
+    }
+}
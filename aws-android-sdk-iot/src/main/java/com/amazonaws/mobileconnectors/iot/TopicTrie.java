@@ -0,0 +1,135 @@
+/**
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Subscriptions indexed by topic filter level, so the subscriptions matching a
+ * topic are found by walking the levels of the topic once instead of matching
+ * the topic against every filter. At each level the exact level, the single
+ * level wildcard ({@code +}) and the multi level wildcard ({@code #}) are
+ * followed. Matches the same topics as
+ * {@link AWSIotMqttManager#isTopicMatch(String, String)}.
+ */
+class TopicTrie {
+
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+
+    /** A level of the topic filters. */
+    private static class Node {
+        /** The next levels, by name. */
+        final Map<String, Node> children = new HashMap<String, Node>();
+        /**
+         * The subscriptions of the filters ending at this level, by filter.
+         * Several filters end at the same level when they only differ by
+         * trailing separators, as the levels are split like
+         * {@code isTopicMatch} does.
+         */
+        final Map<String, AWSIotMqttTopic> subscriptions = new HashMap<String, AWSIotMqttTopic>(2);
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Adds a subscription, replacing the one to the same topic filter.
+     *
+     * @param subscription the subscription.
+     */
+    synchronized void put(AWSIotMqttTopic subscription) {
+        Node node = root;
+        for (String level : subscription.getTopic().split("/")) {
+            Node child = node.children.get(level);
+            if (child == null) {
+                child = new Node();
+                node.children.put(level, child);
+            }
+            node = child;
+        }
+        node.subscriptions.put(subscription.getTopic(), subscription);
+    }
+
+    /**
+     * Removes the subscription to a topic filter, if any.
+     *
+     * @param topicFilter the topic filter.
+     */
+    synchronized void remove(String topicFilter) {
+        remove(root, topicFilter, topicFilter.split("/"), 0);
+    }
+
+    /**
+     * @return true if the node is left empty and can be removed.
+     */
+    private boolean remove(Node node, String topicFilter, String[] levels, int depth) {
+        if (depth == levels.length) {
+            node.subscriptions.remove(topicFilter);
+        } else {
+            Node child = node.children.get(levels[depth]);
+            if (child != null && remove(child, topicFilter, levels, depth + 1)) {
+                node.children.remove(levels[depth]);
+            }
+        }
+        return node.subscriptions.isEmpty() && node.children.isEmpty();
+    }
+
+    /**
+     * Removes all the subscriptions.
+     */
+    synchronized void clear() {
+        root.children.clear();
+        root.subscriptions.clear();
+    }
+
+    /**
+     * Finds the subscriptions whose topic filter matches a topic.
+     *
+     * @param topic the topic a message was published on (no wildcards).
+     * @param matches the list the matching subscriptions are added to.
+     */
+    synchronized void match(String topic, List<AWSIotMqttTopic> matches) {
+        match(root, topic.split("/"), 0, matches);
+    }
+
+    private void match(Node node, String[] levels, int depth, List<AWSIotMqttTopic> matches) {
+        if (depth == levels.length) {
+            matches.addAll(node.subscriptions.values());
+            return;
+        }
+
+        // # matches this level and all that follow
+        Node child = node.children.get(MULTI_LEVEL_WILDCARD);
+        if (child != null) {
+            matches.addAll(child.subscriptions.values());
+        }
+
+        child = node.children.get(SINGLE_LEVEL_WILDCARD);
+        if (child != null) {
+            match(child, levels, depth + 1, matches);
+        }
+
+        if (!SINGLE_LEVEL_WILDCARD.equals(levels[depth])
+                && !MULTI_LEVEL_WILDCARD.equals(levels[depth])) {
+            child = node.children.get(levels[depth]);
+            if (child != null) {
+                match(child, levels, depth + 1, matches);
+            }
+        }
+    }
+}
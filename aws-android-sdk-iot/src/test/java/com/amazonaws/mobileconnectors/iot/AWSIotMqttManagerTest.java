@@ -0,0 +1,175 @@
+/**
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.util.StringUtils;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class AWSIotMqttManagerTest {
+
+    private AWSIotMqttManager manager;
+    private MqttAsyncClient client;
+    private MqttCallback callback;
+    private final AtomicBoolean connected = new AtomicBoolean();
+    /** Topics and delivery tokens of the published messages, in order */
+    private final List<String> published = Collections.synchronizedList(new ArrayList<String>());
+    private final List<IMqttDeliveryToken> tokens = Collections
+            .synchronizedList(new ArrayList<IMqttDeliveryToken>());
+
+    @Before
+    public void setup() throws Exception {
+        manager = new AWSIotMqttManager("client", Region.getRegion(Regions.US_EAST_1),
+                "prefix");
+        manager.setAutoReconnect(false);
+        manager.setOfflinePublishQueueDrainRate(1000);
+        manager.setOfflinePublishQueueMaxInflight(2);
+
+        client = mock(MqttAsyncClient.class);
+        when(client.isConnected()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return connected.get();
+            }
+        });
+        when(client.publish(anyString(), any(byte[].class), anyInt(), anyBoolean())).thenAnswer(
+                new Answer<IMqttDeliveryToken>() {
+                    @Override
+                    public IMqttDeliveryToken answer(InvocationOnMock invocation) {
+                        IMqttDeliveryToken token = mock(IMqttDeliveryToken.class);
+                        synchronized (published) {
+                            published.add((String) invocation.getArguments()[0]);
+                            tokens.add(token);
+                        }
+                        return token;
+                    }
+                });
+        manager.setMqttClient(client);
+        manager.setupCallbackForMqttClient();
+        ArgumentCaptor<MqttCallback> captor = ArgumentCaptor.forClass(MqttCallback.class);
+        verify(client).setCallback(captor.capture());
+        callback = captor.getValue();
+    }
+
+    private void queue(String topic, AWSIotMqttQos qos) {
+        manager.putMessageInQueue("data".getBytes(StringUtils.UTF8), topic, qos);
+    }
+
+    /** Waits for the given number of publish calls, and a bit for more */
+    private void awaitPublished(int count) throws Exception {
+        verify(client, timeout(5000).times(count)).publish(anyString(), any(byte[].class),
+                anyInt(), anyBoolean());
+        Thread.sleep(100);
+    }
+
+    @Test
+    public void testDrainWindow() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            queue("t" + i, AWSIotMqttQos.QOS1);
+        }
+        connected.set(true);
+        manager.publishMessagesFromQueue();
+
+        // only two messages in flight, which stay queued until delivered
+        awaitPublished(2);
+        assertEquals(2, published.size());
+        assertEquals(5, manager.getMqttMessageQueue().size());
+
+        callback.deliveryComplete(tokens.get(0));
+        awaitPublished(3);
+        assertEquals(3, published.size());
+        assertEquals(4, manager.getMqttMessageQueue().size());
+
+        // the oldest message is removed once it is delivered too
+        callback.deliveryComplete(tokens.get(2));
+        awaitPublished(4);
+        assertEquals(4, manager.getMqttMessageQueue().size());
+        callback.deliveryComplete(tokens.get(1));
+        awaitPublished(5);
+        assertEquals(2, manager.getMqttMessageQueue().size());
+
+        callback.deliveryComplete(tokens.get(3));
+        callback.deliveryComplete(tokens.get(4));
+        assertEquals(0, manager.getMqttMessageQueue().size());
+        assertEquals("[t0, t1, t2, t3, t4]", published.toString());
+    }
+
+    @Test
+    public void testQos0IsRemovedOncePublished() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            queue("t" + i, AWSIotMqttQos.QOS0);
+        }
+        connected.set(true);
+        manager.publishMessagesFromQueue();
+
+        // not limited by the window
+        awaitPublished(5);
+        assertEquals(0, manager.getMqttMessageQueue().size());
+    }
+
+    @Test
+    public void testUndeliveredMessagesArePublishedAgain() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            queue("t" + i, AWSIotMqttQos.QOS1);
+        }
+        connected.set(true);
+        manager.publishMessagesFromQueue();
+        awaitPublished(2);
+        callback.deliveryComplete(tokens.get(1));
+        awaitPublished(3);
+        assertEquals(3, manager.getMqttMessageQueue().size());
+
+        // t0 and t2 are lost with the connection, t1 was delivered
+        connected.set(false);
+        callback.connectionLost(new Exception("lost"));
+        // a late delivery of a message lost with the connection is ignored
+        callback.deliveryComplete(tokens.get(0));
+        assertEquals(3, manager.getMqttMessageQueue().size());
+
+        connected.set(true);
+        manager.publishMessagesFromQueue();
+        awaitPublished(5);
+        assertEquals("[t0, t1, t2, t0, t2]", published.toString());
+        callback.deliveryComplete(tokens.get(3));
+        assertEquals(1, manager.getMqttMessageQueue().size());
+        callback.deliveryComplete(tokens.get(4));
+        assertEquals(0, manager.getMqttMessageQueue().size());
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.util.StringUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class OfflinePublishQueueFileTest {
+
+    private static final File TEST_DIRECTORY = new File("OfflinePublishQueueFileTest");
+    private static final File QUEUE_FILE = new File(TEST_DIRECTORY, "queue");
+    /** Length of the file header. */
+    private static final int HEADER_SIZE = 12;
+
+    private OfflinePublishQueueFile queue;
+
+    @Before
+    public void setup() throws IOException {
+        TEST_DIRECTORY.mkdir();
+        queue = new OfflinePublishQueueFile(QUEUE_FILE);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        queue.close();
+        for (File f : TEST_DIRECTORY.listFiles()) {
+            f.delete();
+        }
+        TEST_DIRECTORY.delete();
+    }
+
+    private static AWSIotMqttQueueMessage message(String topic, String data, AWSIotMqttQos qos) {
+        return new AWSIotMqttQueueMessage(topic, data.getBytes(StringUtils.UTF8), qos);
+    }
+
+    private static void assertMessage(String topic, String data, AWSIotMqttQos qos,
+            AWSIotMqttQueueMessage message) {
+        assertEquals(topic, message.getTopic());
+        assertEquals(data, new String(message.getMessage(), StringUtils.UTF8));
+        assertEquals(qos, message.getQos());
+    }
+
+    /** Topics of the same length, so the entries are too. */
+    private static String topic(int i) {
+        return String.format("t%03d", i);
+    }
+
+    private void reopen() throws IOException {
+        queue.close();
+        queue = new OfflinePublishQueueFile(QUEUE_FILE);
+    }
+
+    @Test
+    public void testFileFormat() throws IOException {
+        assertEquals(HEADER_SIZE, QUEUE_FILE.length());
+        queue.add(message("a/b", "hi", AWSIotMqttQos.QOS1));
+
+        RandomAccessFile file = new RandomAccessFile(QUEUE_FILE, "r");
+        try {
+            byte[] magic = new byte[4];
+            file.readFully(magic);
+            assertArrayEquals(new byte[] {
+                    0, 'I', 'Q', 1
+            }, magic);
+            assertEquals("head", HEADER_SIZE, file.readLong());
+
+            assertEquals("payload size", 8, file.readInt());
+            byte[] payload = new byte[8];
+            file.readFully(payload);
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            assertEquals("qos", 1, buffer.get());
+            assertEquals("topic length", 3, buffer.getShort());
+            assertEquals('a', buffer.get());
+            assertEquals('/', buffer.get());
+            assertEquals('b', buffer.get());
+            assertEquals('h', buffer.get());
+            assertEquals('i', buffer.get());
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            assertEquals("crc", (int) crc.getValue(), file.readInt());
+            assertEquals(file.length(), file.getFilePointer());
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testMessagesSurviveReopen() throws IOException {
+        queue.add(message("t1", "m1", AWSIotMqttQos.QOS0));
+        queue.add(message("t\u00e9/2", "m2", AWSIotMqttQos.QOS1));
+        queue.add(message("t3", "", AWSIotMqttQos.QOS0));
+        assertMessage("t1", "m1", AWSIotMqttQos.QOS0, queue.peek());
+        queue.remove();
+
+        reopen();
+        assertEquals(2, queue.size());
+        assertMessage("t\u00e9/2", "m2", AWSIotMqttQos.QOS1, queue.peek());
+        queue.remove();
+        assertMessage("t3", "", AWSIotMqttQos.QOS0, queue.peek());
+        queue.remove();
+        assertNull(queue.peek());
+        assertEquals(0, queue.size());
+
+        // the file is emptied with the queue
+        assertEquals(HEADER_SIZE, QUEUE_FILE.length());
+        reopen();
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        queue.add(message("t1", "m1", AWSIotMqttQos.QOS0));
+        queue.add(message("t2", "m2", AWSIotMqttQos.QOS1));
+        queue.add(message("t3", "m3", AWSIotMqttQos.QOS0));
+        queue.remove();
+
+        assertMessage("t2", "m2", AWSIotMqttQos.QOS1, queue.get(0));
+        assertMessage("t3", "m3", AWSIotMqttQos.QOS0, queue.get(1));
+        assertNull(queue.get(2));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testTruncatedEntryIsDropped() throws IOException {
+        queue.add(message("t1", "m1", AWSIotMqttQos.QOS0));
+        queue.add(message("t2", "m2", AWSIotMqttQos.QOS0));
+        queue.close();
+        long length = QUEUE_FILE.length();
+        truncate(length - 3);
+
+        queue = new OfflinePublishQueueFile(QUEUE_FILE);
+        assertEquals(1, queue.size());
+        assertEquals("partial entry dropped", (length - HEADER_SIZE) / 2 + HEADER_SIZE,
+                QUEUE_FILE.length());
+        queue.add(message("t3", "m3", AWSIotMqttQos.QOS0));
+
+        reopen();
+        assertEquals(2, queue.size());
+        assertMessage("t1", "m1", AWSIotMqttQos.QOS0, queue.peek());
+        queue.remove();
+        assertMessage("t3", "m3", AWSIotMqttQos.QOS0, queue.peek());
+    }
+
+    @Test
+    public void testCorruptedEntryEndsQueue() throws IOException {
+        queue.add(message("t1", "m1", AWSIotMqttQos.QOS0));
+        queue.add(message("t2", "m2", AWSIotMqttQos.QOS0));
+        queue.add(message("t3", "m3", AWSIotMqttQos.QOS0));
+        queue.close();
+
+        // flips the last data byte of the second entry, which fails its CRC
+        long entrySize = (QUEUE_FILE.length() - HEADER_SIZE) / 3;
+        RandomAccessFile file = new RandomAccessFile(QUEUE_FILE, "rw");
+        try {
+            long offset = HEADER_SIZE + 2 * entrySize - 5;
+            file.seek(offset);
+            int b = file.read();
+            file.seek(offset);
+            file.write(b ^ 1);
+        } finally {
+            file.close();
+        }
+
+        queue = new OfflinePublishQueueFile(QUEUE_FILE);
+        assertEquals(1, queue.size());
+        assertEquals(HEADER_SIZE + entrySize, QUEUE_FILE.length());
+        assertMessage("t1", "m1", AWSIotMqttQos.QOS0, queue.peek());
+    }
+
+    @Test
+    public void testInvalidFileStartsOver() throws IOException {
+        queue.close();
+        RandomAccessFile file = new RandomAccessFile(QUEUE_FILE, "rw");
+        try {
+            file.setLength(0);
+            file.writeBytes("not a queue file");
+        } finally {
+            file.close();
+        }
+
+        queue = new OfflinePublishQueueFile(QUEUE_FILE);
+        assertEquals(0, queue.size());
+        assertEquals(HEADER_SIZE, QUEUE_FILE.length());
+        queue.add(message("t1", "m1", AWSIotMqttQos.QOS1));
+        reopen();
+        assertMessage("t1", "m1", AWSIotMqttQos.QOS1, queue.peek());
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'x');
+        String data = new String(chars);
+        int total = 100;
+        for (int i = 0; i < total; i++) {
+            queue.add(message(topic(i), data, AWSIotMqttQos.QOS1));
+        }
+        long entrySize = (QUEUE_FILE.length() - HEADER_SIZE) / total;
+        long fullLength = QUEUE_FILE.length();
+
+        // the consumed part is reclaimed once past 64KB and the rest
+        int removed = 0;
+        while (QUEUE_FILE.length() == fullLength) {
+            assertMessage(topic(removed), data, AWSIotMqttQos.QOS1, queue.peek());
+            queue.remove();
+            removed++;
+        }
+        assertTrue("compacted after " + removed, removed * entrySize > 64 * 1024);
+        assertTrue("compacted after " + removed, removed >= total - removed);
+        assertEquals(HEADER_SIZE + (total - removed) * entrySize, QUEUE_FILE.length());
+        assertFalse(new File(TEST_DIRECTORY, "queue.tmp").exists());
+        assertEquals(total - removed, queue.size());
+
+        // appends after the compacted entries
+        queue.add(message(topic(total), data, AWSIotMqttQos.QOS0));
+        reopen();
+        assertEquals(total - removed + 1, queue.size());
+        for (int i = removed; i < total; i++) {
+            assertMessage(topic(i), data, AWSIotMqttQos.QOS1, queue.peek());
+            queue.remove();
+        }
+        assertMessage(topic(total), data, AWSIotMqttQos.QOS0, queue.peek());
+    }
+
+    private static void truncate(long length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(QUEUE_FILE, "rw");
+        try {
+            file.setLength(length);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class OfflinePublishQueueTest {
+
+    private static AWSIotMqttQueueMessage message(String topic) {
+        return new AWSIotMqttQueueMessage(topic, "data".getBytes(StringUtils.UTF8),
+                AWSIotMqttQos.QOS0);
+    }
+
+    @Test
+    public void testDropOldest() {
+        OfflinePublishQueue queue = new OfflinePublishQueue();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(message("t" + i), 2,
+                    AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST));
+        }
+        assertEquals(2, queue.size());
+        assertEquals("t1", queue.peek().getTopic());
+        queue.remove();
+        assertEquals("t2", queue.peek().getTopic());
+        queue.remove();
+        assertNull(queue.peek());
+    }
+
+    @Test
+    public void testDropNewest() {
+        OfflinePublishQueue queue = new OfflinePublishQueue();
+        assertTrue(queue.offer(message("t0"), 1,
+                AWSIotMqttOfflineQueueOverflowPolicy.DROP_NEWEST));
+        assertFalse(queue.offer(message("t1"), 1,
+                AWSIotMqttOfflineQueueOverflowPolicy.DROP_NEWEST));
+        assertEquals(1, queue.size());
+        assertEquals("t0", queue.peek().getTopic());
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        final OfflinePublishQueue queue = new OfflinePublishQueue();
+        queue.offer(message("t0"), 1, AWSIotMqttOfflineQueueOverflowPolicy.BLOCK);
+
+        final AtomicBoolean offered = new AtomicBoolean();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                offered.set(queue.offer(message("t1"), 1,
+                        AWSIotMqttOfflineQueueOverflowPolicy.BLOCK));
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue("waits for room", producer.isAlive());
+
+        queue.remove();
+        producer.join(5000);
+        assertTrue(offered.get());
+        assertEquals("t1", queue.peek().getTopic());
+    }
+
+    @Test
+    public void testTransferTo() {
+        OfflinePublishQueue from = new OfflinePublishQueue();
+        OfflinePublishQueue to = new OfflinePublishQueue();
+        to.offer(message("t0"), 10, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+        from.offer(message("t1"), 10, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+        from.offer(message("t2"), 10, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+
+        from.transferTo(to, 10);
+        assertEquals(3, to.size());
+
+        // the old queue looks empty and forwards what it is offered
+        assertEquals(0, from.size());
+        assertNull(from.peek());
+        from.remove();
+        assertTrue(from.offer(message("t3"), 10,
+                AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST));
+        for (int i = 0; i < 4; i++) {
+            assertEquals("t" + i, to.peek().getTopic());
+            to.remove();
+        }
+        assertNull(to.peek());
+    }
+
+    @Test
+    public void testTransferToWhileBlocked() throws InterruptedException {
+        final OfflinePublishQueue from = new OfflinePublishQueue();
+        OfflinePublishQueue to = new OfflinePublishQueue();
+        from.offer(message("t1"), 1, AWSIotMqttOfflineQueueOverflowPolicy.BLOCK);
+
+        Thread blocked = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                from.offer(message("t2"), 1, AWSIotMqttOfflineQueueOverflowPolicy.BLOCK);
+            }
+        });
+        blocked.start();
+        blocked.join(200);
+        assertTrue("waits for room", blocked.isAlive());
+
+        // the producer waits for room in the new queue instead
+        from.transferTo(to, 1);
+        blocked.join(200);
+        assertTrue("waits for room", blocked.isAlive());
+        assertEquals("t1", to.peek().getTopic());
+        to.remove();
+        blocked.join(5000);
+        assertFalse(blocked.isAlive());
+        assertEquals(1, to.size());
+        assertEquals("t2", to.peek().getTopic());
+    }
+
+    @Test
+    public void testTakeKeepsMessagesUntilDone() {
+        OfflinePublishQueue queue = new OfflinePublishQueue();
+        for (int i = 0; i < 4; i++) {
+            queue.offer(message("t" + i), 10, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+        }
+        OfflinePublishQueue.Entry e0 = queue.take();
+        OfflinePublishQueue.Entry e1 = queue.take();
+        OfflinePublishQueue.Entry e2 = queue.take();
+        assertEquals("t0", e0.getMessage().getTopic());
+        assertEquals("t1", e1.getMessage().getTopic());
+        assertEquals("t2", e2.getMessage().getTopic());
+        assertEquals(4, queue.size());
+
+        // removed in order only
+        e1.done();
+        assertEquals(4, queue.size());
+        e0.done();
+        assertEquals(2, queue.size());
+        assertEquals("t2", queue.peek().getTopic());
+
+        // a message not published is handed out again
+        OfflinePublishQueue.Entry e3 = queue.take();
+        e3.release();
+        assertEquals("t3", queue.take().getMessage().getTopic());
+        assertNull(queue.take());
+        assertFalse(queue.canTake());
+    }
+
+    @Test
+    public void testRewind() {
+        OfflinePublishQueue queue = new OfflinePublishQueue();
+        for (int i = 0; i < 3; i++) {
+            queue.offer(message("t" + i), 10, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+        }
+        queue.take();
+        queue.take().done();
+        queue.take();
+        assertFalse(queue.canTake());
+
+        // the messages not done are handed out again
+        queue.rewind();
+        assertTrue(queue.canTake());
+        assertEquals("t0", queue.take().getMessage().getTopic());
+        OfflinePublishQueue.Entry e2 = queue.take();
+        assertEquals("t2", e2.getMessage().getTopic());
+        assertNull(queue.take());
+        e2.done();
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void testDoneAfterRemoval() {
+        OfflinePublishQueue queue = new OfflinePublishQueue();
+        queue.offer(message("t0"), 2, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+        queue.offer(message("t1"), 2, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+        OfflinePublishQueue.Entry e0 = queue.take();
+
+        // t0 is dropped for t2 while in flight
+        queue.offer(message("t2"), 2, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+        e0.done();
+        assertEquals(2, queue.size());
+        assertEquals("t1", queue.take().getMessage().getTopic());
+
+        // so are the entries handed out before a clear
+        OfflinePublishQueue.Entry e2 = queue.take();
+        queue.clear();
+        queue.offer(message("t3"), 2, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+        e2.done();
+        assertEquals(1, queue.size());
+        assertEquals("t3", queue.take().getMessage().getTopic());
+    }
+
+    @Test
+    public void testTransferSkipsDoneMessages() {
+        OfflinePublishQueue from = new OfflinePublishQueue();
+        OfflinePublishQueue to = new OfflinePublishQueue();
+        for (int i = 0; i < 3; i++) {
+            from.offer(message("t" + i), 10, AWSIotMqttOfflineQueueOverflowPolicy.DROP_OLDEST);
+        }
+        OfflinePublishQueue.Entry e0 = from.take();
+        from.take().done();
+        OfflinePublishQueue.Entry e2 = from.take();
+
+        // the messages in flight are moved, and published again from there
+        from.transferTo(to, 10);
+        assertEquals(2, to.size());
+        assertNull(from.take());
+        e0.done();
+        e2.release();
+        assertEquals(2, to.size());
+        assertEquals("t0", to.take().getMessage().getTopic());
+        assertEquals("t2", to.take().getMessage().getTopic());
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new TokenBucket(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new TokenBucket(1, 0);
+    }
+
+    @Test
+    public void testBurstThenRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(50, 10);
+
+        // a full bucket lets a burst of its capacity through
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            bucket.acquire();
+        }
+        long burstMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("burst took " + burstMillis + " ms", burstMillis < 100);
+
+        // then one token every 20 ms
+        start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            bucket.acquire();
+        }
+        long rateMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("10 tokens took " + rateMillis + " ms", rateMillis >= 180);
+        assertTrue("10 tokens took " + rateMillis + " ms", rateMillis < 1000);
+    }
+
+    @Test
+    public void testRefillIsCappedAtCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 2);
+        // idle for long enough to add 20 tokens
+        Thread.sleep(200);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 7; i++) {
+            bucket.acquire();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 2 from the bucket, then 5 at 10 ms each
+        assertTrue("7 tokens took " + millis + " ms", millis >= 45);
+    }
+}
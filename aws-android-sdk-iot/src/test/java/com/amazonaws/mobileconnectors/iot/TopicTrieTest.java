@@ -0,0 +1,137 @@
+/**
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class TopicTrieTest {
+
+    /** Wildcards at the root, in the middle and at the end of filters */
+    private static final List<String> FILTERS = Arrays.asList(
+            "#", "+", "+/#", "+/+", "+/b", "+/b/c", "+/+/+",
+            "a", "a/", "a/#", "a/+", "a/b", "a/b/", "a/b/c", "a/+/c", "a/+/#",
+            "a/b/#", "a/b/c/#", "a/+/+/d", "b/#", "b/+/c", "x/y/z");
+
+    private static final List<String> TOPICS = Arrays.asList(
+            "a", "a/", "b", "x", "a/b", "a/c", "b/b", "a/b/", "a/b/c", "a/x/c", "b/b/c",
+            "a/b/d", "a/b/c/d", "a/x/y/d", "x/y/z", "x/y/z/w", "a//c", "/b", "/", "+",
+            "a/+", "a/#");
+
+    private static TopicTrie trie(Iterable<String> filters) {
+        TopicTrie trie = new TopicTrie();
+        for (String filter : filters) {
+            trie.put(new AWSIotMqttTopic(filter, AWSIotMqttQos.QOS0, null));
+        }
+        return trie;
+    }
+
+    private static Set<String> match(TopicTrie trie, String topic) {
+        List<AWSIotMqttTopic> matches = new ArrayList<AWSIotMqttTopic>();
+        trie.match(topic, matches);
+        Set<String> filters = new TreeSet<String>();
+        for (AWSIotMqttTopic match : matches) {
+            filters.add(match.getTopic());
+        }
+        assertEquals("a filter matched twice: " + matches, filters.size(), matches.size());
+        return filters;
+    }
+
+    private static Set<String> expected(Iterable<String> filters, String topic) {
+        Set<String> expected = new TreeSet<String>();
+        for (String filter : filters) {
+            if (AWSIotMqttManager.isTopicMatch(filter, topic)) {
+                expected.add(filter);
+            }
+        }
+        return expected;
+    }
+
+    private static void assertMatchesLikeIsTopicMatch(TopicTrie trie, List<String> filters) {
+        for (String topic : TOPICS) {
+            assertEquals("topic " + topic, expected(filters, topic), match(trie, topic));
+        }
+    }
+
+    @Test
+    public void testMatch() {
+        TopicTrie trie = trie(Arrays.asList("#", "+/b", "a/+/c", "a/b/#"));
+        assertEquals(new TreeSet<String>(Arrays.asList("#", "+/b")), match(trie, "a/b"));
+        assertEquals(new TreeSet<String>(Arrays.asList("#", "a/+/c", "a/b/#")),
+                match(trie, "a/b/c"));
+        assertEquals(new TreeSet<String>(Arrays.asList("#", "a/b/#")), match(trie, "a/b/c/d"));
+        assertEquals(new TreeSet<String>(Arrays.asList("#")), match(trie, "c"));
+    }
+
+    @Test
+    public void testMatchesLikeIsTopicMatch() {
+        assertMatchesLikeIsTopicMatch(trie(FILTERS), FILTERS);
+    }
+
+    @Test
+    public void testPutReplaces() {
+        TopicTrie trie = trie(Arrays.asList("a/+"));
+        AWSIotMqttTopic replacement = new AWSIotMqttTopic("a/+", AWSIotMqttQos.QOS1, null);
+        trie.put(replacement);
+        List<AWSIotMqttTopic> matches = new ArrayList<AWSIotMqttTopic>();
+        trie.match("a/b", matches);
+        assertEquals(1, matches.size());
+        assertEquals(AWSIotMqttQos.QOS1, matches.get(0).getQos());
+    }
+
+    @Test
+    public void testRemove() {
+        List<String> filters = new ArrayList<String>(FILTERS);
+        TopicTrie trie = trie(filters);
+
+        // filters ending above, below and at the same level as others
+        for (String filter : Arrays.asList("a", "a/b/c/#", "a/b/", "#", "+/+", "a/+/#")) {
+            trie.remove(filter);
+            filters.remove(filter);
+            assertMatchesLikeIsTopicMatch(trie, filters);
+        }
+
+        // unknown filters are ignored
+        trie.remove("a/b/c/d");
+        trie.remove("q/#");
+        assertMatchesLikeIsTopicMatch(trie, filters);
+
+        // removing everything leaves an empty trie that can be reused
+        for (String filter : new ArrayList<String>(filters)) {
+            trie.remove(filter);
+            filters.remove(filter);
+            assertMatchesLikeIsTopicMatch(trie, filters);
+        }
+        trie.put(new AWSIotMqttTopic("a/#", AWSIotMqttQos.QOS0, null));
+        assertEquals(new TreeSet<String>(Arrays.asList("a/#")), match(trie, "a/b"));
+    }
+
+    @Test
+    public void testClear() {
+        TopicTrie trie = trie(FILTERS);
+        trie.clear();
+        for (String topic : TOPICS) {
+            assertEquals(0, match(trie, topic).size());
+        }
+    }
+}
@@ -23,7 +23,15 @@ import com.amazonaws.util.StringUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * An abstract class for Amazon Kinesis recorders. It manages local file store
@@ -42,6 +50,11 @@ public abstract class AbstractKinesisRecorder {
      * Maximum size in bytes of records in PutRecordBatch.
      */
     private static final int MAX_BATCH_RECORDS_SIZE_BYTES = 512 * 1024;
+    /**
+     * Number of batches in a row in which no record goes through before
+     * submitAllRecords() gives up.
+     */
+    private static final int MAX_RETRY = 3;
 
     /**
      * The configurable options for Kinesis Recorder, includes the
@@ -94,7 +107,7 @@ public abstract class AbstractKinesisRecorder {
      */
     public void saveRecord(byte[] data, String streamName) {
         try {
-            recordStore.put(FileRecordParser.asString(streamName, data));
+            recordStore.put(streamName, data);
         } catch (IOException e) {
             throw new AmazonClientException("Error saving record", e);
         }
@@ -108,6 +121,12 @@ public abstract class AbstractKinesisRecorder {
      * invalid) will be deleted. Note: Since KinesisRecorder uses synchronous
      * methods to make calls to Amazon Kinesis, do not call submitAll() on the
      * main thread of your application.
+     * <p>
+     * Batches are sent on a background thread while the next batch is read, up
+     * to {@link KinesisRecorderConfig#getMaxConcurrentBatchesPerStream()}
+     * batches per stream at a time. Records are only deleted once the batches
+     * before them are done too, so nothing is lost if the submission stops
+     * halfway.
      *
      * @throws AmazonClientException Thrown if there was an unrecoverable error
      *             during submission. Note: If the request appears to be
@@ -115,64 +134,227 @@ public abstract class AbstractKinesisRecorder {
      *             to be valid, it will be kept.
      */
     public synchronized void submitAllRecords() {
-        RecordSender sender = getRecordSender();
         RecordIterator iterator = recordStore.iterator();
-        List<byte[]> data = new ArrayList<byte[]>(MAX_RECORDS_PER_BATCH);
-        int retry = 0;
-        int count = 0;
+        BatchPipeline pipeline = new BatchPipeline(getRecordSender(), iterator);
         try {
-            while (iterator.hasNext() && retry < 3) {
-                String streamName = nextBatch(iterator, data, MAX_RECORDS_PER_BATCH,
-                        MAX_BATCH_RECORDS_SIZE_BYTES);
+            while (pipeline.error == null && pipeline.retry < MAX_RETRY) {
+                if (!iterator.hasNext()) {
+                    if (pipeline.inFlight.isEmpty()) {
+                        break;
+                    }
+                    // failed records of the batches in flight may be saved
+                    // again, so look again once the oldest one is done
+                    pipeline.completeOldest();
+                    continue;
+                }
+                List<byte[]> data = new ArrayList<byte[]>(MAX_RECORDS_PER_BATCH);
+                List<String> partitionKeys = new ArrayList<String>(MAX_RECORDS_PER_BATCH);
+                String streamName = nextBatch(iterator, data, partitionKeys,
+                        MAX_RECORDS_PER_BATCH, MAX_BATCH_RECORDS_SIZE_BYTES);
                 if (streamName == null || data.isEmpty()) {
                     break;
                 }
-
-                try {
-                    iterator.removeReadRecords();
-                } catch (IOException e) {
-                    throw new AmazonClientException("Failed to removed records.", e);
+                while (pipeline.error == null
+                        && pipeline.countInFlight(streamName) >= getMaxConcurrentBatches()) {
+                    pipeline.completeOldest();
                 }
-
-                try {
-                    List<byte[]> failures = sender.sendBatch(streamName, data);
-                    int successCount = data.size() - failures.size();
-                    count += successCount;
-                    if (successCount == 0) {
-                        // no record went through, increase retry count.
-                        retry++;
-                    }
-                    if (!failures.isEmpty()) {
-                        for (byte[] bytes : failures) {
-                            saveRecord(bytes, streamName);
-                        }
-                    }
-                } catch (AmazonClientException ace) {
-                    if (sender.isRecoverable(ace)) {
-                        for (byte[] bytes : data) {
-                            saveRecord(bytes, streamName);
-                        }
-                        Log.e(TAG,
-                                "ServiceException in submit all, the values of the data inside the requests appears valid.  The request will be kept",
-                                ace);
-                    } else {
-                        // We have reason to believe the values in the request
-                        // is invalid and cannot be sent or recovered.
-                        Log.e(TAG,
-                                "ServiceException in submit all, the last request is presumed to be the cause and will be dropped",
-                                ace);
-                    }
-                    throw ace;
+                if (pipeline.error != null) {
+                    // the batch just read stays in the store
+                    break;
                 }
+                pipeline.submit(streamName, data, partitionKeys, iterator.getPosition());
+            }
+            while (!pipeline.inFlight.isEmpty()) {
+                pipeline.completeOldest();
             }
         } finally {
-            Log.d(TAG, String.format("submitAllRecords sent %d records", count));
+            pipeline.close();
+            Log.d(TAG, String.format("submitAllRecords sent %d records", pipeline.count));
             try {
                 iterator.close();
             } catch (IOException e) {
                 throw new AmazonClientException("Failed to close record file", e);
             }
         }
+        if (pipeline.error != null) {
+            throw pipeline.error;
+        }
+    }
+
+    private int getMaxConcurrentBatches() {
+        return config == null ? 1 : config.getMaxConcurrentBatchesPerStream();
+    }
+
+    /**
+     * Saves a record of a batch again, with its partition key. The record
+     * was checked when it was first saved.
+     */
+    private void saveRecord(byte[] data, String streamName, String partitionKey) {
+        try {
+            recordStore.put(streamName, partitionKey, data);
+        } catch (IOException e) {
+            throw new AmazonClientException("Error saving record", e);
+        }
+    }
+
+    /**
+     * A batch being sent by the send executor.
+     */
+    private static final class Batch {
+        final String streamName;
+        final List<byte[]> data;
+        /** The partition keys of the records, null where the sender picks one **/
+        final List<String> partitionKeys;
+        /** The store position right after the last record of the batch **/
+        final FileRecordStore.Position end;
+        Future<List<byte[]>> result;
+
+        Batch(String streamName, List<byte[]> data, List<String> partitionKeys,
+                FileRecordStore.Position end) {
+            this.streamName = streamName;
+            this.data = data;
+            this.partitionKeys = partitionKeys;
+            this.end = end;
+        }
+
+        /**
+         * Saves records of the batch again. The senders return the failed
+         * records of the batch themselves, so they are matched by identity.
+         */
+        void saveAgain(AbstractKinesisRecorder recorder, List<byte[]> records) {
+            Map<byte[], String> keys = new IdentityHashMap<byte[], String>(data.size());
+            for (int i = 0; i < data.size(); i++) {
+                keys.put(data.get(i), partitionKeys.get(i));
+            }
+            for (byte[] bytes : records) {
+                recorder.saveRecord(bytes, streamName, keys.get(bytes));
+            }
+        }
+    }
+
+    /**
+     * The batches of one submitAllRecords() call that are in flight. They are
+     * completed in the order they were read, which keeps the cursor of the
+     * store from moving past a batch that isn't done yet.
+     */
+    private final class BatchPipeline {
+        final RecordSender sender;
+        final RecordIterator iterator;
+        final LinkedList<Batch> inFlight = new LinkedList<Batch>();
+        /** Sends the batches, created on first use and shut down by close() **/
+        ExecutorService sendExecutor;
+        int retry;
+        int count;
+        /** The first error, which ends the submission **/
+        AmazonClientException error;
+
+        BatchPipeline(RecordSender sender, RecordIterator iterator) {
+            this.sender = sender;
+            this.iterator = iterator;
+        }
+
+        int countInFlight(String streamName) {
+            int n = 0;
+            for (Batch batch : inFlight) {
+                if (batch.streamName.equals(streamName)) {
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        void submit(final String streamName, final List<byte[]> data,
+                List<String> partitionKeys, FileRecordStore.Position end) {
+            if (sendExecutor == null) {
+                sendExecutor = Executors.newCachedThreadPool();
+            }
+            Batch batch = new Batch(streamName, data, partitionKeys, end);
+            batch.result = sendExecutor.submit(new Callable<List<byte[]>>() {
+                @Override
+                public List<byte[]> call() {
+                    return sender.sendBatch(streamName, data);
+                }
+            });
+            inFlight.add(batch);
+        }
+
+        /**
+         * Waits for the oldest batch, saves its failed records again and
+         * removes it from the store.
+         */
+        void completeOldest() {
+            Batch batch = inFlight.removeFirst();
+            List<byte[]> failures = null;
+            AmazonClientException exception = null;
+            try {
+                failures = waitFor(batch);
+            } catch (AmazonClientException ace) {
+                exception = ace;
+            }
+
+            // remove the batch before saving records of it again, so a store
+            // emptied by the batch can start over in a new segment
+            try {
+                iterator.removeRecordsBefore(batch.end);
+            } catch (IOException e) {
+                throw new AmazonClientException("Failed to removed records.", e);
+            }
+
+            if (exception == null) {
+                int successCount = batch.data.size() - failures.size();
+                count += successCount;
+                if (successCount == 0) {
+                    // no record went through, increase retry count.
+                    retry++;
+                }
+                batch.saveAgain(AbstractKinesisRecorder.this, failures);
+            } else if (sender.isRecoverable(exception)) {
+                batch.saveAgain(AbstractKinesisRecorder.this, batch.data);
+                Log.e(TAG,
+                        "ServiceException in submit all, the values of the data inside the requests appears valid.  The request will be kept",
+                        exception);
+            } else {
+                // We have reason to believe the values in the request
+                // is invalid and cannot be sent or recovered.
+                Log.e(TAG,
+                        "ServiceException in submit all, the last request is presumed to be the cause and will be dropped",
+                        exception);
+            }
+            if (exception != null && error == null) {
+                error = exception;
+            }
+        }
+
+        private List<byte[]> waitFor(Batch batch) {
+            try {
+                return batch.result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Interrupted while sending records", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw (Error) cause;
+            }
+        }
+
+        /**
+         * Cancels the batches still in flight, which is only the case when
+         * the submission failed unexpectedly, and shuts down the send
+         * executor. The records of the cancelled batches stay in the store.
+         */
+        void close() {
+            for (Batch batch : inFlight) {
+                batch.result.cancel(true);
+            }
+            inFlight.clear();
+            if (sendExecutor != null) {
+                sendExecutor.shutdown();
+                sendExecutor = null;
+            }
+        }
     }
 
     /**
@@ -188,32 +370,37 @@ public abstract class AbstractKinesisRecorder {
      */
     protected String nextBatch(RecordIterator iterator, List<byte[]> data, int maxCount,
             int maxSize) {
+        return nextBatch(iterator, data, null, maxCount, maxSize);
+    }
+
+    /**
+     * Reads a batch of records like
+     * {@link #nextBatch(RecordIterator, List, int, int)}, and their partition
+     * keys into partitionKeys if it isn't null.
+     */
+    private String nextBatch(RecordIterator iterator, List<byte[]> data,
+            List<String> partitionKeys, int maxCount, int maxSize) {
         data.clear();
+        if (partitionKeys != null) {
+            partitionKeys.clear();
+        }
 
         String lastStreamName = null;
         int size = 0;
         int count = 0;
-        FileRecordParser frp = new FileRecordParser();
         while (iterator.hasNext() && count < maxCount && size < maxSize) {
-            String line = iterator.peek();
-            if (line == null || line.isEmpty()) {
-                continue;
-            }
-            // parse a line. Skip in case of corrupted data
-            try {
-                frp.parse(line);
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to read line. Skip.", e);
-                continue;
-            }
+            FileRecord record = iterator.peek();
 
             // check whether it belongs to previous batch
-            if (lastStreamName == null || lastStreamName.equals(frp.streamName)) {
-                data.add(frp.bytes);
+            if (lastStreamName == null || lastStreamName.equals(record.streamName)) {
+                data.add(record.data);
+                if (partitionKeys != null) {
+                    partitionKeys.add(record.partitionKey);
+                }
                 // update counter
                 count++;
-                size += frp.bytes.length;
-                lastStreamName = frp.streamName;
+                size += record.data.length;
+                lastStreamName = record.streamName;
                 iterator.next();
             } else {
                 break;
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+/**
+ * A Kinesis record as it's kept in the {@link FileRecordStore}.
+ */
+class FileRecord {
+    final String streamName;
+    /** The partition key, or null if the sender picks one **/
+    final String partitionKey;
+    final byte[] data;
+
+    FileRecord(String streamName, String partitionKey, byte[] data) {
+        this.streamName = streamName;
+        this.partitionKey = partitionKey;
+        this.data = data;
+    }
+}
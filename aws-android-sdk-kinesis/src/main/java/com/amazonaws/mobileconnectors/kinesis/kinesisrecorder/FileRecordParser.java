@@ -18,7 +18,8 @@ package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 import com.amazonaws.util.Base64;
 
 /**
- * A parser for Kinesis records. It has a helper method to serialize a Kinesis
+ * A parser for Kinesis records saved as text lines by earlier versions of the
+ * {@link FileRecordStore}. It has a helper method to serialize a Kinesis
  * record. The serialized data can be read via {@link #parse(String)}. It's not
  * thread safe.
  */
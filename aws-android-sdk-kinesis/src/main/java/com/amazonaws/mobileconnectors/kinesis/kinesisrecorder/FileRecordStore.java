@@ -18,252 +18,937 @@ package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 import android.util.Log;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.KinesisRecorderConfig.FsyncPolicy;
+import com.amazonaws.util.StringUtils;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
 /**
  * The FileRecordStore is responsible for recording Kinesis PutRecordRequests to
- * the Android disk. Currently it stores each request as a JSON object
- * representing it's properties. One request per line.
+ * the Android disk. Records are appended to a log made of numbered segment
+ * files ({@code <name>.<sequence>}). A new segment is started once the current
+ * one reaches the segment size. How far the log has been consumed is kept in a
+ * small cursor file ({@code <name>.cursor}), and a segment is deleted as a
+ * whole once the cursor has moved past it, so removing sent records never
+ * rewrites the records that are left.
+ * <p>
+ * A segment starts with a 4 byte header followed by entries. An entry is a
+ * 4 byte length, a payload of that length and the CRC32 of the payload. The
+ * first byte of the payload is the entry type:
+ * <ul>
+ * <li>a stream entry ({@code short id, name}) gives a stream name an id, which
+ * is valid to the end of the segment.</li>
+ * <li>a record entry ({@code short streamId, short keyLength, key, data}) is a
+ * Kinesis record. An empty key means the sender picks the partition key.</li>
+ * </ul>
+ * Segments written by earlier versions hold one record per line, either as
+ * {@code streamName,base64Data} or as JSON. They are converted when the store
+ * is opened.
  */
 class FileRecordStore {
     private static final String TAG = "FileRecordStore";
-    private final ReentrantLock accessLock = new ReentrantLock(true);
 
-    /** The file the requests are stored in **/
-    private File recordFile;
+    /** Default size after which a new segment is started **/
+    static final long DEFAULT_SEGMENT_SIZE = 256 * 1024L;
+
+    /** Starts every segment. The 0 can't start a line of the text format **/
+    private static final byte[] SEGMENT_HEADER = {
+            0, 'K', 'R', 1
+    };
+    private static final byte STREAM_ENTRY = 0;
+    private static final byte RECORD_ENTRY = 1;
+    /** Bytes of an entry besides the payload: the length and the CRC **/
+    private static final int ENTRY_OVERHEAD = 8;
+    /** Entries larger than this can only be corrupted data **/
+    private static final int MAX_PAYLOAD_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_STREAMS_PER_SEGMENT = Short.MAX_VALUE;
+
+    private static final String CURSOR_SUFFIX = ".cursor";
+    private static final byte NEW_LINE = '\n';
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final ReentrantLock accessLock = new ReentrantLock(true);
 
     /** The FileManager used for interacting with the FS **/
-    private FileManager fileManager;
+    private final FileManager fileManager;
+
+    private final String recordFileName;
+    private final long maxStorageSize;
+    private final long segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final CRC32 crc = new CRC32();
+
+    /** The directory the segments and the cursor are stored in **/
+    private File recordsDir;
+
+    /** Sequence number of the oldest segment **/
+    private long headSegment;
+    /** Sequence number of the segment records are appended to **/
+    private long activeSegment;
+    /** Length of the active segment **/
+    private long activeSegmentSize;
+    /** Ids of the streams defined in the active segment **/
+    private final Map<String, Integer> activeStreamIds = new HashMap<String, Integer>();
+    /** Total length of all segments **/
+    private long totalSize;
 
-    private String recordFileName;
-    private long maxStorageSize;
+    /** Position of the first record that hasn't been removed **/
+    private long cursorSegment;
+    private long cursorOffset;
+
+    /** Open channel of the active segment, kept open between puts **/
+    private FileChannel writeChannel;
 
     /**
      * Creates the FileRecordStore
      *
-     * @param recorderDirectory The directory (which the FileRecordStore is only
+     * @param workDirectory The directory (which the FileRecordStore is only
      *            used for the KinesisRecorder) to use to store requests in
      * @param recordFileName Name of the record file
      * @param maxStorageSize Maximum storage size in bytes
      */
     public FileRecordStore(File workDirectory, String recordFileName, long maxStorageSize) {
+        this(workDirectory, recordFileName, maxStorageSize, FsyncPolicy.NEVER,
+                DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates the FileRecordStore
+     *
+     * @param workDirectory The directory (which the FileRecordStore is only
+     *            used for the KinesisRecorder) to use to store requests in
+     * @param recordFileName Name of the record file
+     * @param maxStorageSize Maximum storage size in bytes
+     * @param fsyncPolicy When records are forced to the storage device
+     */
+    public FileRecordStore(File workDirectory, String recordFileName, long maxStorageSize,
+            FsyncPolicy fsyncPolicy) {
+        this(workDirectory, recordFileName, maxStorageSize, fsyncPolicy, DEFAULT_SEGMENT_SIZE);
+    }
+
+    FileRecordStore(File workDirectory, String recordFileName, long maxStorageSize,
+            FsyncPolicy fsyncPolicy, long segmentSize) {
         this.fileManager = new FileManager(workDirectory);
         this.recordFileName = recordFileName;
         this.maxStorageSize = maxStorageSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.segmentSize = segmentSize;
         try {
-            tryCreateRecordsFile();
+            open();
         } catch (IOException ioe) {
             throw new AmazonClientException("Failed to create fire store", ioe);
         }
     }
 
-    public boolean put(final String record) throws IOException {
-        boolean success = false;
-        BufferedWriter writer = null;
+    /**
+     * Appends a record to the store.
+     *
+     * @param streamName the stream the record is sent to
+     * @param data the data of the record
+     * @return true if the record is saved, false if there is no room for it
+     */
+    public boolean put(final String streamName, final byte[] data) throws IOException {
+        return put(streamName, null, data);
+    }
+
+    /**
+     * Appends a record to the store.
+     *
+     * @param streamName the stream the record is sent to
+     * @param partitionKey the partition key of the record, or null
+     * @param data the data of the record
+     * @return true if the record is saved, false if there is no room for it
+     */
+    public boolean put(final String streamName, final String partitionKey, final byte[] data)
+            throws IOException {
+        byte[] name = streamName.getBytes(StringUtils.UTF8);
+        byte[] key = partitionKey == null ? new byte[0] : partitionKey.getBytes(StringUtils.UTF8);
+        if (name.length > Short.MAX_VALUE || key.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Stream name or partition key is too long");
+        }
+        int streamEntrySize = ENTRY_OVERHEAD + 3 + name.length;
+        int recordEntrySize = ENTRY_OVERHEAD + 5 + key.length + data.length;
+
         accessLock.lock();
         try {
-            writer = tryInitializeWriter();
-            if (recordFile.length() + record.getBytes().length <= maxStorageSize) {
-                writer.write(record);
-                writer.newLine();
-                writer.flush();
-                success = true;
+            Integer streamId = activeStreamIds.get(streamName);
+            int size = recordEntrySize + (streamId == null ? streamEntrySize : 0);
+            if (activeSegmentSize > 0 && (activeSegmentSize + size > segmentSize
+                    || streamId == null && activeStreamIds.size() >= MAX_STREAMS_PER_SEGMENT)) {
+                rollSegment();
+                streamId = null;
+                size = recordEntrySize + streamEntrySize;
             }
-        } finally {
-            if (writer != null) {
-                writer.close();
+            if (activeSegmentSize == 0) {
+                size += SEGMENT_HEADER.length;
+            }
+            if (totalSize + size > maxStorageSize) {
+                return false;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            if (activeSegmentSize == 0) {
+                buffer.put(SEGMENT_HEADER);
+            }
+            if (streamId == null) {
+                streamId = activeStreamIds.size();
+                int start = startEntry(buffer, STREAM_ENTRY);
+                buffer.putShort(streamId.shortValue());
+                buffer.put(name);
+                finishEntry(buffer, start);
             }
+            int start = startEntry(buffer, RECORD_ENTRY);
+            buffer.putShort(streamId.shortValue());
+            buffer.putShort((short) key.length);
+            buffer.put(key);
+            buffer.put(data);
+            finishEntry(buffer, start);
+            buffer.flip();
+
+            FileChannel channel = tryOpenWriteChannel();
+            long position = activeSegmentSize;
+            try {
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            } catch (IOException e) {
+                // drop whatever made it to the file, so that the next entry
+                // starts at the right place
+                closeWriteChannel();
+                truncate(segmentFile(activeSegment), activeSegmentSize);
+                throw e;
+            }
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                channel.force(false);
+            }
+            activeStreamIds.put(streamName, streamId);
+            activeSegmentSize += size;
+            totalSize += size;
+            return true;
+        } finally {
             accessLock.unlock();
         }
+    }
 
-        return success;
+    private int startEntry(ByteBuffer buffer, byte type) {
+        int start = buffer.position();
+        // the length is filled in by finishEntry
+        buffer.putInt(0);
+        buffer.put(type);
+        return start;
     }
 
+    private void finishEntry(ByteBuffer buffer, int start) {
+        int length = buffer.position() - start - 4;
+        buffer.putInt(start, length);
+        crc.reset();
+        crc.update(buffer.array(), start + 4, length);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Returns the number of bytes the record files take on disk.
+     */
     public long getFileSize() {
-        return recordFile == null ? 0 : recordFile.length();
+        accessLock.lock();
+        try {
+            return totalSize;
+        } finally {
+            accessLock.unlock();
+        }
     }
 
-    private void tryCreateRecordsFile() throws IOException {
-        if (recordFile != null && recordFile.exists()) {
-            return;
+    /**
+     * Closes the file the records are appended to. It's reopened by the next
+     * put.
+     */
+    public void close() throws IOException {
+        accessLock.lock();
+        try {
+            closeWriteChannel();
+        } finally {
+            accessLock.unlock();
         }
+    }
 
-        synchronized (this) {
-            if (recordFile != null && recordFile.exists()) {
-                return;
+    /**
+     * Loads the segments and the cursor from disk, cleaning up after an
+     * interrupted write or removal.
+     */
+    private void open() throws IOException {
+        recordsDir = fileManager.createDirectory(Constants.RECORDS_DIRECTORY);
+        if (recordsDir == null) {
+            throw new IOException("Failed to create records directory");
+        }
+
+        long first = Long.MAX_VALUE;
+        long last = -1;
+        for (File file : fileManager.listFilesInDirectory(recordsDir)) {
+            long sequence = parseSegmentSequence(file.getName());
+            if (sequence >= 0) {
+                first = Math.min(first, sequence);
+                last = Math.max(last, sequence);
             }
+        }
 
-            File recordDir = fileManager.createDirectory(
-                    Constants.RECORDS_DIRECTORY);
-            recordFile = fileManager.createFile(new File(
-                    recordDir, recordFileName));
+        // records written before the store was segmented become the first
+        // segment
+        File unsegmentedFile = new File(recordsDir, recordFileName);
+        if (unsegmentedFile.isFile()) {
+            if (last < 0 && unsegmentedFile.renameTo(segmentFile(0))) {
+                first = last = 0;
+            } else {
+                Log.w(TAG, "Ignoring records file " + unsegmentedFile);
+            }
         }
-    }
 
-    private BufferedWriter tryInitializeWriter() throws IOException {
-        BufferedWriter writer = null;
-        tryCreateRecordsFile();
-        OutputStream stream = fileManager.newOutputStream(recordFile, true);
-        writer = new BufferedWriter(new OutputStreamWriter(stream));
+        readCursor();
+        if (last < 0 || cursorSegment > last) {
+            // nothing is stored, or everything stored was removed
+            headSegment = activeSegment = cursorSegment;
+            cursorOffset = 0;
+        } else {
+            if (cursorSegment < first) {
+                // the cursor was lost or points at a removed segment
+                cursorSegment = first;
+                cursorOffset = 0;
+            }
+            headSegment = cursorSegment;
+            activeSegment = last;
+        }
 
-        return writer;
-    }
+        // finish a removal that was interrupted after the cursor was saved
+        deleteSegmentsBefore(headSegment);
 
-    private File deleteAllRecords() throws IOException {
-        File recordsDir = fileManager.createDirectory(
-                Constants.RECORDS_DIRECTORY);
+        if (isTextSegment(segmentFile(headSegment))) {
+            convertTextSegments();
+        } else {
+            fileManager.createFile(segmentFile(activeSegment));
+            activeSegmentSize = recoverActiveSegment(segmentFile(activeSegment));
+        }
 
-        recordFile.delete();
+        totalSize = 0;
+        for (long sequence = headSegment; sequence <= activeSegment; sequence++) {
+            totalSize += segmentFile(sequence).length();
+        }
+        if (cursorSegment == activeSegment && cursorOffset > activeSegmentSize) {
+            cursorOffset = activeSegmentSize;
+        }
+    }
 
-        recordFile = fileManager.createFile(new File(
-                recordsDir, recordFileName));
-        return recordFile;
+    private void deleteSegmentsBefore(long sequence) {
+        for (File file : fileManager.listFilesInDirectory(recordsDir)) {
+            long s = parseSegmentSequence(file.getName());
+            if (s >= 0 && s < sequence) {
+                fileManager.deleteFile(file);
+            }
+        }
     }
 
-    private File deleteReadRecords(final int lineNumber) throws IOException {
-        // Write all records after line number to a temporary file
-        File recordsDir = fileManager.createDirectory(
-                Constants.RECORDS_DIRECTORY);
+    private boolean isTextSegment(File file) throws IOException {
+        if (!file.isFile() || file.length() == 0) {
+            return false;
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            return in.read() != SEGMENT_HEADER[0];
+        } finally {
+            in.close();
+        }
+    }
 
-        File tempRecordsFile = null;
-        File tempFile = new File(
-                recordsDir, recordFileName + ".tmp");
-        if (tempFile.exists()) {
-            if (!tempFile.delete()) {
-                throw new IOException("Failed to delete previous temp file");
+    /**
+     * Reads the entries of the active segment to find the ids of its streams.
+     * Whatever follows the last complete entry is cut off, it's an entry
+     * that was being written when the app was killed.
+     *
+     * @return the new length of the segment
+     */
+    private long recoverActiveSegment(File file) throws IOException {
+        activeStreamIds.clear();
+        long length = file.length();
+        long validLength = 0;
+        if (length >= SEGMENT_HEADER.length) {
+            SegmentReader reader = new SegmentReader(file);
+            try {
+                if (reader.open(0, null)) {
+                    while (reader.next()) {
+                        if (reader.valid && reader.payload[0] == STREAM_ENTRY) {
+                            activeStreamIds.put(streamName(reader.payload),
+                                    (int) streamId(reader.payload));
+                        }
+                    }
+                    validLength = reader.position;
+                }
+            } finally {
+                reader.close();
             }
         }
-        tempRecordsFile = fileManager.createFile(tempFile);
+        if (validLength != length) {
+            truncate(file, validLength);
+        }
+        return validLength;
+    }
 
-        if (tempRecordsFile != null && recordFile.exists() && tempRecordsFile.exists()) {
-            BufferedReader reader = null;
-            PrintWriter writer = null;
-            try {
-                reader = new BufferedReader(new FileReader(recordFile));
-                writer = new PrintWriter(new FileWriter(tempRecordsFile, true));
+    /**
+     * Converts segments of the text format into new segments. The cursor is
+     * moved to the first new segment once all records are copied, so if the
+     * conversion is interrupted it's started over on the next open.
+     */
+    private void convertTextSegments() throws IOException {
+        long lastTextSegment = headSegment;
+        while (lastTextSegment < activeSegment
+                && isTextSegment(segmentFile(lastTextSegment + 1))) {
+            lastTextSegment++;
+        }
+        // anything after the text segments is left by an interrupted
+        // conversion
+        for (long sequence = lastTextSegment + 1; sequence <= activeSegment; sequence++) {
+            fileManager.deleteFile(segmentFile(sequence));
+        }
+        dropPartialLine(segmentFile(lastTextSegment));
 
-                String line = null;
-                int currentLineNumber = 0;
+        long textHead = headSegment;
+        long startOffset = cursorOffset;
+        activeSegment = lastTextSegment + 1;
+        activeSegmentSize = 0;
+        activeStreamIds.clear();
+        totalSize = 0;
+        FileRecordParser frp = new FileRecordParser();
+        for (long sequence = textHead; sequence <= lastTextSegment; sequence++) {
+            InputStream in = new FileInputStream(segmentFile(sequence));
+            try {
+                if (sequence == textHead && startOffset > 0 && in.skip(startOffset) != startOffset) {
+                    continue;
+                }
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+                        StringUtils.UTF8));
+                String line;
                 while ((line = reader.readLine()) != null) {
-                    currentLineNumber++;
-                    if (currentLineNumber > lineNumber) {
-                        writer.println(line);
-                        writer.flush();
+                    try {
+                        if (line.startsWith("{")) {
+                            JSONObject json = new JSONObject(line);
+                            put(JSONRecordAdapter.getStreamName(json),
+                                    JSONRecordAdapter.getPartitionKey(json),
+                                    JSONRecordAdapter.getData(json).array());
+                        } else if (!line.isEmpty()) {
+                            frp.parse(line);
+                            put(frp.streamName, frp.bytes);
+                        }
+                    } catch (JSONException e) {
+                        // skip invalid json
+                        continue;
+                    } catch (IllegalArgumentException e) {
+                        // skip invalid line
+                        continue;
                     }
                 }
             } finally {
-                if (writer != null) {
-                    writer.close();
-                }
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
+                in.close();
+            }
+        }
+        fileManager.createFile(segmentFile(activeSegment));
 
+        cursorSegment = lastTextSegment + 1;
+        cursorOffset = 0;
+        writeCursor();
+        deleteSegmentsBefore(cursorSegment);
+        headSegment = cursorSegment;
+    }
+
+    /**
+     * Truncates a text segment after its last complete line, which removes a
+     * record that was only partially written when the app was killed.
+     */
+    private void dropPartialLine(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = raf.length();
+            long end = length;
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            boolean found = false;
+            while (end > 0 && !found) {
+                int count = (int) Math.min(buffer.length, end);
+                raf.seek(end - count);
+                raf.readFully(buffer, 0, count);
+                for (int i = count - 1; i >= 0; i--) {
+                    if (buffer[i] == NEW_LINE) {
+                        found = true;
+                        break;
                     }
+                    end--;
                 }
+            }
+            if (end != length) {
+                raf.setLength(end);
+            }
+        } finally {
+            raf.close();
+        }
+    }
 
-                if (!recordFile.delete() || !tempRecordsFile.renameTo(recordFile)) {
-                    throw new IOException(
-                            "Failed to delete read records and persist unread records");
-                }
+    private void truncate(File file, long length) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to truncate " + file, e);
+        }
+    }
+
+    private FileChannel tryOpenWriteChannel() throws IOException {
+        if (writeChannel == null) {
+            if (!recordsDir.isDirectory()) {
+                recordsDir = fileManager.createDirectory(Constants.RECORDS_DIRECTORY);
+            }
+            writeChannel = new RandomAccessFile(segmentFile(activeSegment), "rw").getChannel();
+            if (writeChannel.size() != activeSegmentSize) {
+                // the segment was changed behind our back, e.g. deleted. Go on
+                // in a new segment.
+                long size = writeChannel.size();
+                closeWriteChannel();
+                totalSize += size - activeSegmentSize;
+                rollSegment();
+                writeChannel = new RandomAccessFile(segmentFile(activeSegment), "rw")
+                        .getChannel();
+            }
+        }
+        return writeChannel;
+    }
+
+    private void closeWriteChannel() throws IOException {
+        if (writeChannel != null) {
+            try {
+                writeChannel.close();
+            } finally {
+                writeChannel = null;
             }
+        }
+    }
 
-            if (tempFile.exists()) {
-                if (!tempFile.delete()) {
-                    Log.e(TAG, "Failed to delete temp file");
+    /**
+     * Closes the active segment and starts appending to a new one.
+     */
+    private void rollSegment() throws IOException {
+        if (writeChannel != null && fsyncPolicy != FsyncPolicy.NEVER) {
+            writeChannel.force(false);
+        }
+        closeWriteChannel();
+        activeSegment++;
+        activeSegmentSize = 0;
+        activeStreamIds.clear();
+    }
+
+    /**
+     * Moves the cursor to the given position and deletes the segments before
+     * it. If every record has been removed the log starts over in a new,
+     * empty segment.
+     */
+    private void advanceCursor(long segment, long offset) throws IOException {
+        if (segment == activeSegment && offset >= activeSegmentSize) {
+            // all records are removed, nothing in the log is needed
+            rollSegment();
+            segment = activeSegment;
+            offset = 0;
+        }
+        cursorSegment = segment;
+        cursorOffset = offset;
+        writeCursor();
+        while (headSegment < cursorSegment) {
+            File file = segmentFile(headSegment);
+            long length = file.length();
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Failed to delete " + file);
+            }
+            totalSize -= length;
+            headSegment++;
+        }
+    }
+
+    private void deleteAllRecords() throws IOException {
+        closeWriteChannel();
+        for (long sequence = headSegment; sequence <= activeSegment; sequence++) {
+            fileManager.deleteFile(segmentFile(sequence));
+        }
+        activeSegment++;
+        headSegment = activeSegment;
+        activeSegmentSize = 0;
+        activeStreamIds.clear();
+        totalSize = 0;
+        cursorSegment = activeSegment;
+        cursorOffset = 0;
+        writeCursor();
+    }
+
+    private void readCursor() {
+        File cursorFile = new File(recordsDir, recordFileName + CURSOR_SUFFIX);
+        cursorSegment = 0;
+        cursorOffset = 0;
+        if (!cursorFile.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(cursorFile));
+            cursorSegment = in.readLong();
+            cursorOffset = in.readLong();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read records cursor, starting from the oldest record", e);
+            cursorSegment = 0;
+            cursorOffset = 0;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
                 }
             }
         }
-        return recordFile;
     }
 
-    public RecordIterator iterator() {
-        return new RecordIterator();
+    /**
+     * Saves the cursor. It's written to a temp file first and renamed, so an
+     * interrupted write leaves the previous cursor in place.
+     */
+    private void writeCursor() throws IOException {
+        File cursorFile = new File(recordsDir, recordFileName + CURSOR_SUFFIX);
+        File tempFile = new File(recordsDir, recordFileName + CURSOR_SUFFIX + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tempFile);
+        try {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeLong(cursorSegment);
+            out.writeLong(cursorOffset);
+            out.flush();
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                stream.getFD().sync();
+            }
+        } finally {
+            stream.close();
+        }
+        if (!tempFile.renameTo(cursorFile)) {
+            throw new IOException("Failed to save records cursor");
+        }
+    }
 
+    private File segmentFile(long sequence) {
+        return new File(recordsDir, recordFileName + "." + sequence);
     }
 
-    public class RecordIterator implements java.util.Iterator<String> {
-        int linesRead = 0;
-        String nextBuffer = null;
-        BufferedReader reader = null;
-        boolean isEndOfFile = false;
+    /**
+     * Returns the sequence number of a segment file name, or -1 if the file
+     * isn't a segment of this store.
+     */
+    private long parseSegmentSequence(String fileName) {
+        if (!fileName.startsWith(recordFileName + ".")) {
+            return -1;
+        }
+        String suffix = fileName.substring(recordFileName.length() + 1);
+        if (suffix.isEmpty()) {
+            return -1;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (!Character.isDigit(suffix.charAt(i))) {
+                return -1;
+            }
+        }
+        try {
+            return Long.parseLong(suffix);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-        private boolean tryOpenReader() throws FileNotFoundException {
-            if (reader != null) {
+    private static short streamId(byte[] payload) {
+        return ByteBuffer.wrap(payload, 1, 2).getShort();
+    }
+
+    private static String streamName(byte[] payload) {
+        return new String(payload, 3, payload.length - 3, StringUtils.UTF8);
+    }
+
+    /**
+     * Reads the entries of a segment one after another.
+     */
+    private static class SegmentReader {
+        private final FileInputStream stream;
+        private DataInputStream in;
+        private final CRC32 crc = new CRC32();
+
+        /** Position of the next entry **/
+        long position;
+        /** Set if the rest of the segment can't be read **/
+        boolean corrupted;
+        /** Payload of the last entry read **/
+        byte[] payload;
+        /** Whether the payload matches its CRC **/
+        boolean valid;
+
+        SegmentReader(File file) throws IOException {
+            stream = new FileInputStream(file);
+        }
+
+        /**
+         * Checks the segment header and moves to the given position. The
+         * stream entries before the position are put in streamNames.
+         *
+         * @return false if the header is incomplete or not valid
+         */
+        boolean open(long offset, Map<Integer, String> streamNames) throws IOException {
+            seek(0);
+            byte[] header = new byte[SEGMENT_HEADER.length];
+            try {
+                in.readFully(header);
+            } catch (EOFException e) {
+                return false;
+            }
+            if (!Arrays.equals(header, SEGMENT_HEADER)) {
+                corrupted = true;
+                return false;
+            }
+            position = SEGMENT_HEADER.length;
+            try {
+                while (position < offset) {
+                    int length = in.readInt();
+                    if (length < 1 || length > MAX_PAYLOAD_SIZE) {
+                        corrupted = true;
+                        return true;
+                    }
+                    if (in.readByte() == STREAM_ENTRY && streamNames != null) {
+                        byte[] entry = new byte[length];
+                        entry[0] = STREAM_ENTRY;
+                        in.readFully(entry, 1, length - 1);
+                        skipFully(4);
+                        streamNames.put((int) streamId(entry), streamName(entry));
+                    } else {
+                        skipFully(length - 1 + 4);
+                    }
+                    position += length + ENTRY_OVERHEAD;
+                }
+            } catch (EOFException e) {
+                corrupted = true;
+                return true;
+            }
+            if (offset > SEGMENT_HEADER.length && position != offset) {
+                // the offset isn't at the start of an entry
+                corrupted = true;
+            }
+            return true;
+        }
+
+        /**
+         * Reads the next entry.
+         *
+         * @return false at the end of the segment, including when the next
+         *         entry is still being written
+         */
+        boolean next() throws IOException {
+            if (corrupted) {
+                return false;
+            }
+            try {
+                int length = in.readInt();
+                if (length < 1 || length > MAX_PAYLOAD_SIZE) {
+                    corrupted = true;
+                    return false;
+                }
+                byte[] entry = new byte[length];
+                in.readFully(entry);
+                int checksum = in.readInt();
+                crc.reset();
+                crc.update(entry, 0, length);
+                payload = entry;
+                valid = (int) crc.getValue() == checksum;
+                position += length + ENTRY_OVERHEAD;
                 return true;
+            } catch (EOFException e) {
+                // read the entry again once it's complete
+                seek(position);
+                return false;
             }
+        }
 
-            if (!isEndOfFile) {
-                InputStreamReader streamReader = null;
-                streamReader = new InputStreamReader(fileManager.newInputStream(recordFile));
+        private void seek(long offset) throws IOException {
+            stream.getChannel().position(offset);
+            in = new DataInputStream(new BufferedInputStream(stream, READ_BUFFER_SIZE));
+        }
 
-                if (streamReader != null) {
-                    reader = new BufferedReader(streamReader);
-                    return true;
+        private void skipFully(int count) throws IOException {
+            while (count > 0) {
+                int skipped = in.skipBytes(count);
+                if (skipped <= 0) {
+                    throw new EOFException();
                 }
+                count -= skipped;
+            }
+        }
+
+        void close() throws IOException {
+            stream.close();
+        }
+    }
+
+    /**
+     * A position in the store, right after a record.
+     */
+    static final class Position {
+        final long segment;
+        final long offset;
+
+        Position(long segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    public RecordIterator iterator() {
+        accessLock.lock();
+        try {
+            return new RecordIterator(cursorSegment, cursorOffset);
+        } finally {
+            accessLock.unlock();
+        }
+    }
+
+    /**
+     * Iterates the records from the cursor onwards. Records are read straight
+     * from the segments, so records put while iterating are returned too.
+     */
+    public class RecordIterator implements java.util.Iterator<FileRecord> {
+        /** Position after the last record returned by next() **/
+        private long segment;
+        private long offset;
+
+        /** Reader of the segment being read **/
+        private SegmentReader reader;
+        private long readSegment;
+        /** Stream names by id of the segment being read **/
+        private final Map<Integer, String> streamNames = new HashMap<Integer, String>();
+
+        private FileRecord nextBuffer = null;
+        /** Position after the buffered record **/
+        private long nextSegment;
+        private long nextOffset;
+
+        RecordIterator(long segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        /**
+         * Opens the segment at the current position.
+         *
+         * @return false if the segment has no entries yet
+         */
+        private boolean tryOpenReader() throws IOException {
+            if (segment < headSegment) {
+                // the records were removed, e.g. by removeAllRecords()
+                segment = cursorSegment;
+                offset = cursorOffset;
+            }
+            readSegment = segment;
+            File file = segmentFile(readSegment);
+            if (!file.isFile() || file.length() < SEGMENT_HEADER.length) {
+                return false;
+            }
+            streamNames.clear();
+            reader = new SegmentReader(file);
+            if (!reader.open(offset, streamNames) && !reader.corrupted) {
+                tryCloseReader();
+                return false;
+            }
+            if (reader.corrupted) {
+                Log.w(TAG, "Skipping corrupted records in " + file);
+            }
+            return true;
+        }
+
+        /**
+         * Reads the record after the current position into nextBuffer,
+         * moving on to the next segment at the end of one.
+         */
+        private boolean tryReadNext() throws IOException {
+            if (nextBuffer != null) {
+                return true;
+            }
+            if (reader != null && readSegment != segment) {
+                tryCloseReader();
+            }
+            while (true) {
+                if (reader != null || tryOpenReader()) {
+                    while (reader.next()) {
+                        byte[] payload = reader.payload;
+                        if (!reader.valid) {
+                            continue;
+                        }
+                        if (payload[0] == STREAM_ENTRY) {
+                            streamNames.put((int) streamId(payload), streamName(payload));
+                        } else if (payload[0] == RECORD_ENTRY) {
+                            String streamName = streamNames.get((int) streamId(payload));
+                            if (streamName == null) {
+                                continue;
+                            }
+                            int keyLength = ByteBuffer.wrap(payload, 3, 2).getShort();
+                            String partitionKey = keyLength == 0 ? null : new String(payload,
+                                    5, keyLength, StringUtils.UTF8);
+                            nextBuffer = new FileRecord(streamName, partitionKey,
+                                    Arrays.copyOfRange(payload, 5 + keyLength, payload.length));
+                            nextSegment = readSegment;
+                            nextOffset = reader.position;
+                            return true;
+                        }
+                    }
+                }
+                if (readSegment >= activeSegment) {
+                    return false;
+                }
+                // end of the segment, move on to the next one
+                tryCloseReader();
+                segment = readSegment + 1;
+                offset = 0;
             }
-            return false;
         }
 
         private void tryCloseReader() throws IOException {
             if (reader != null) {
-                reader.close();
-                reader = null;
+                try {
+                    reader.close();
+                } finally {
+                    reader = null;
+                }
             }
         }
 
         @Override
         public boolean hasNext() {
-            boolean hasNext = false;
             accessLock.lock();
             try {
-                // If there is something already buffered then there is a
-                // next
-                if (nextBuffer != null) {
-                    hasNext = true;
-                } else {
-                    if (!tryOpenReader()) {
-                        return hasNext;
-                    }
-                    // Nothing was previously buffered so try to read one
-                    // more line
-                    boolean found = false;
-                    while (!found) {
-                        try {
-                            nextBuffer = reader.readLine();
-                            found = true;
-                        } catch (IOException e) {
-                            nextBuffer = null;
-                            found = true;
-                        }
-                    }
-                    if (nextBuffer != null) {
-                        // There was at least one more line so there is a
-                        // next
-                        hasNext = true;
-                    } else {
-                        // The next line was null so it should be the end of
-                        // the file. Try to close the reader
-                        isEndOfFile = true;
-                        tryCloseReader();
-                    }
-                }
-                return hasNext;
-            } catch (FileNotFoundException fnfe) {
-                throw new AmazonClientException("Cannot find records file", fnfe);
+                return tryReadNext();
             } catch (IOException ioe) {
                 throw new AmazonClientException("IO Error", ioe);
             } finally {
@@ -272,38 +957,17 @@ class FileRecordStore {
         }
 
         @Override
-        public String next() {
-            String next = null;
+        public FileRecord next() {
             accessLock.lock();
             try {
-                if (nextBuffer != null) {
-                    next = nextBuffer;
-                    linesRead++;
-                    nextBuffer = null;
-                } else {
-                    if (!tryOpenReader()) {
-                        return next;
-                    }
-                    boolean found = false;
-                    while (!found) {
-                        try {
-                            next = reader.readLine();
-                            found = true;
-                        } catch (IOException e) {
-                            next = null;
-                            found = true;
-                        }
-                    }
-                    if (next != null) {
-                        linesRead++;
-                    } else {
-                        isEndOfFile = true;
-                        tryCloseReader();
-                    }
+                if (!tryReadNext()) {
+                    return null;
                 }
+                FileRecord next = nextBuffer;
+                nextBuffer = null;
+                segment = nextSegment;
+                offset = nextOffset;
                 return next;
-            } catch (FileNotFoundException e) {
-                throw new AmazonClientException("Cannot find records file", e);
             } catch (IOException ioe) {
                 throw new AmazonClientException("IO Error", ioe);
             } finally {
@@ -311,7 +975,7 @@ class FileRecordStore {
             }
         }
 
-        public String peek() {
+        public FileRecord peek() {
             accessLock.lock();
             try {
                 hasNext();
@@ -327,10 +991,46 @@ class FileRecordStore {
                     "The remove() operation is not supported for this iterator");
         }
 
+        /**
+         * Returns the position after the last record returned by
+         * {@link #next()}.
+         */
+        public Position getPosition() {
+            accessLock.lock();
+            try {
+                return new Position(segment, offset);
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        /**
+         * Removes the records before the given position by moving the cursor
+         * to it. Unlike {@link #removeReadRecords()} the iterator carries on
+         * where it is, so it can read ahead of the records being removed.
+         *
+         * @param position a position returned by {@link #getPosition()}
+         */
+        public void removeRecordsBefore(Position position) throws IOException {
+            accessLock.lock();
+            try {
+                if (position.segment > cursorSegment
+                        || position.segment == cursorSegment && position.offset > cursorOffset) {
+                    advanceCursor(position.segment, position.offset);
+                }
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        /**
+         * Removes the records returned by {@link #next()} so far by moving
+         * the cursor past them.
+         */
         public void removeReadRecords() throws IOException {
             accessLock.lock();
             try {
-                deleteReadRecords(linesRead);
+                removeRecordsBefore(getPosition());
                 resetReader();
             } finally {
                 accessLock.unlock();
@@ -349,9 +1049,9 @@ class FileRecordStore {
 
         private void resetReader() throws IOException {
             tryCloseReader();
-            linesRead = 0;
             nextBuffer = null;
-            isEndOfFile = false;
+            segment = cursorSegment;
+            offset = cursorOffset;
         }
 
         public void close() throws IOException {
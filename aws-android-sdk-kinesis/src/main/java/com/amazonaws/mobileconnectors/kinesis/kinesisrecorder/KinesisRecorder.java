@@ -15,19 +15,24 @@
 
 package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
+import android.util.Log;
+
 import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.kinesis.AmazonKinesis;
 import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.util.StringUtils;
 import com.amazonaws.util.VersionInfoUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.regex.Pattern;
 
 /**
@@ -74,6 +79,8 @@ import java.util.regex.Pattern;
  */
 public class KinesisRecorder extends AbstractKinesisRecorder {
 
+    private static final String TAG = "KinesisRecorder";
+
     /**
      * Name of local file record store.
      */
@@ -140,7 +147,7 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
     public KinesisRecorder(File directory, Regions region,
             AWSCredentialsProvider credentialsProvider, KinesisRecorderConfig config) {
         super(new FileRecordStore(directory, RECORD_FILE_NAME,
-                config.getMaxStorageSize()), config);
+                config.getMaxStorageSize(), config.getFsyncPolicy()), config);
 
         if (directory == null || credentialsProvider == null || region == null || config == null) {
             throw new IllegalArgumentException(
@@ -198,23 +205,31 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
             }
 
             // iterate through all records in the old records file
-            FileRecordStore frs = new FileRecordStore(directory, Constants.RECORDS_FILE_NAME,
-                    Long.MAX_VALUE);
-            RecordIterator iterator = frs.iterator();
-            while (iterator.hasNext()) {
-                try {
-                    JSONObject json = new JSONObject(iterator.next());
-                    saveRecord(JSONRecordAdapter.getData(json).array(),
-                            JSONRecordAdapter.getStreamName(json));
-                } catch (JSONException e) {
-                    // skip invalid json
-                    continue;
-                }
-            }
+            BufferedReader reader = null;
             try {
-                iterator.close();
+                reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(oldRecordsFile), StringUtils.UTF8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        JSONObject json = new JSONObject(line);
+                        saveRecord(JSONRecordAdapter.getData(json).array(),
+                                JSONRecordAdapter.getStreamName(json));
+                    } catch (JSONException e) {
+                        // skip invalid json
+                        continue;
+                    }
+                }
             } catch (IOException e) {
-                // ignore
+                Log.e(TAG, "Failed to read old records file", e);
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
             }
             oldRecordsFile.delete();
         }
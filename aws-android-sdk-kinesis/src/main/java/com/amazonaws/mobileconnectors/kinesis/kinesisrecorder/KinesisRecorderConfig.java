@@ -23,7 +23,27 @@ import com.amazonaws.ClientConfiguration;
  */
 public class KinesisRecorderConfig {
 
+    /**
+     * When the records saved by KinesisRecorder are forced to the storage
+     * device. Records are always handed to the file system as they are saved,
+     * so they survive the app being killed; forcing them to the device also
+     * protects them from a power loss, at the cost of slower saves.
+     */
+    public enum FsyncPolicy {
+        /** Leave it to the file system, this is the default. */
+        NEVER,
+        /**
+         * Force a record file when it's full and a new one is started, and
+         * whenever sent records are removed.
+         */
+        ON_SEGMENT_ROLL,
+        /** Force every record as it's saved. */
+        ALWAYS
+    }
+
     private long maxStorageSize = 1024 * 1024 * 5L;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.NEVER;
+    private int maxConcurrentBatchesPerStream = 1;
     private ClientConfiguration clientConfiguration;
 
     /**
@@ -56,6 +76,8 @@ public class KinesisRecorderConfig {
      */
     public KinesisRecorderConfig(KinesisRecorderConfig other) {
         this.maxStorageSize = other.getMaxStorageSize();
+        this.fsyncPolicy = other.getFsyncPolicy();
+        this.maxConcurrentBatchesPerStream = other.getMaxConcurrentBatchesPerStream();
         this.clientConfiguration = new ClientConfiguration(other.getClientConfiguration());
     }
 
@@ -79,6 +101,55 @@ public class KinesisRecorderConfig {
         return this.maxStorageSize;
     }
 
+    /**
+     * Sets when saved records are forced to the storage device. The default is
+     * {@link FsyncPolicy#NEVER}.
+     *
+     * @param fsyncPolicy the fsync policy
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        if (fsyncPolicy == null) {
+            throw new IllegalArgumentException("fsyncPolicy can't be null");
+        }
+        this.fsyncPolicy = fsyncPolicy;
+        return this;
+    }
+
+    /**
+     * @return When saved records are forced to the storage device.
+     */
+    public FsyncPolicy getFsyncPolicy() {
+        return this.fsyncPolicy;
+    }
+
+    /**
+     * Sets how many batches of records of the same stream submitAllRecords()
+     * may send at the same time. With more than one batch in flight records
+     * can reach the stream out of order. The default is 1.
+     *
+     * @param maxConcurrentBatchesPerStream the max number of batches per
+     *            stream being sent at the same time, at least 1
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withMaxConcurrentBatchesPerStream(
+            int maxConcurrentBatchesPerStream) {
+        if (maxConcurrentBatchesPerStream < 1) {
+            throw new IllegalArgumentException(
+                    "maxConcurrentBatchesPerStream must be at least 1");
+        }
+        this.maxConcurrentBatchesPerStream = maxConcurrentBatchesPerStream;
+        return this;
+    }
+
+    /**
+     * @return The max number of batches of the same stream submitAllRecords()
+     *         sends at the same time.
+     */
+    public int getMaxConcurrentBatchesPerStream() {
+        return this.maxConcurrentBatchesPerStream;
+    }
+
     /**
      * Returns the client configuration the Kinesis Recorder will use when
      * making requests to Amazon Kinesis
@@ -1149,6 +1149,57 @@ public class AmazonKinesisClient extends AmazonWebServiceClient implements Amazo
         }
     }
 
+    /**
+     * <p>
+     * Performs the GetRecords operation like {@link #getRecords(GetRecordsRequest)}, but
+     * returns the records as they are read from the response instead of once
+     * the whole response has been read, so only one record is held in
+     * memory at a time. The rest of the response is available from
+     * {@link StreamingJsonResult#getResult()} once all the records have been
+     * read. The connection stays open until then; callers which stop earlier
+     * must call {@link StreamingJsonResult#close()}.
+     * </p>
+     *
+     * @param getRecordsRequest Container for the necessary parameters to execute
+     *           the GetRecords service method on AmazonKinesis.
+     * 
+     * @return The records of the response, followed by the rest of the
+     *         response.
+     *
+     * @throws AmazonClientException
+     *             If any internal errors are encountered inside the client while
+     *             attempting to make the request or handle the response.  For example
+     *             if a network connection is not available.
+     * @throws AmazonServiceException
+     *             If an error response is returned by AmazonKinesis indicating
+     *             either a problem with the data in the request, or a server side issue.
+     */
+    public StreamingJsonResult<GetRecordsResult, Record> getRecordsStream(GetRecordsRequest getRecordsRequest) {
+        ExecutionContext executionContext = createExecutionContext(getRecordsRequest);
+        AWSRequestMetrics awsRequestMetrics = executionContext.getAwsRequestMetrics();
+        awsRequestMetrics.startEvent(Field.ClientExecuteTime);
+        Request<GetRecordsRequest> request = null;
+        Response<StreamingJsonResult<GetRecordsResult, Record>> response = null;
+        try {
+            awsRequestMetrics.startEvent(Field.RequestMarshallTime);
+            try {
+                request = new GetRecordsRequestMarshaller().marshall(getRecordsRequest);
+                // Binds the request metrics to the current request.
+                request.setAWSRequestMetrics(awsRequestMetrics);
+            } finally {
+                awsRequestMetrics.endEvent(Field.RequestMarshallTime);
+            }
+            StreamingJsonResponseHandler<GetRecordsResult, Record> responseHandler = new StreamingJsonResponseHandler<GetRecordsResult, Record>(
+                    "Records", RecordJsonUnmarshaller.getInstance(), new GetRecordsResultJsonUnmarshaller());
+
+            response = invoke(request, responseHandler, executionContext);
+            
+        return response.getAwsResponse();
+        } finally {
+            endClientExecution(awsRequestMetrics, request, response, LOGGING_AWS_REQUEST_METRIC);
+        }
+    }
+
     /**
      * <p>
      * Splits a shard into two new shards in the stream, to increase the
@@ -16,6 +16,7 @@
 package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
@@ -40,6 +41,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
@@ -276,6 +278,72 @@ public class AbstractKinesisRecorderTest {
         assertTrue("records removed", recorder.getDiskBytesUsed() > 0);
     }
 
+    @Test
+    public void testFailedRecordsKeepPartitionKey() throws IOException {
+        recorder.recordStore.put(STREAM_NAME, "key", randomBytes(16));
+        recorder.saveRecord(randomBytes(16), STREAM_NAME);
+        AmazonServiceException ase = new AmazonServiceException("some failures");
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+                .thenThrow(ase);
+        Mockito.when(sender.isRecoverable(ase)).thenReturn(true);
+        try {
+            recorder.submitAllRecords();
+            fail("Should throw exception");
+        } catch (AmazonClientException ace) {
+            assertSame("same exception", ase, ace);
+        }
+
+        RecordIterator iterator = recorder.recordStore.iterator();
+        try {
+            assertEquals("partition key kept", "key", iterator.next().partitionKey);
+            assertNull("no partition key", iterator.next().partitionKey);
+            assertFalse("two records", iterator.hasNext());
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Test
+    public void testSubmitAllRecordsWithConcurrentBatches() throws IOException {
+        KinesisRecorderConfig config = new KinesisRecorderConfig()
+                .withMaxConcurrentBatchesPerStream(2);
+        MockAbstractKinesisRecorder concurrentRecorder = new MockAbstractKinesisRecorder(
+                new FileRecordStore(temp.newFolder(), RECORD_FILE_NAME,
+                        config.getMaxStorageSize()), config);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger sent = new AtomicInteger();
+        concurrentRecorder.setRecordSender(new RecordSender() {
+            @Override
+            public List<byte[]> sendBatch(String streamName, List<byte[]> data) {
+                int n = inFlight.incrementAndGet();
+                maxInFlight.set(Math.max(maxInFlight.get(), n));
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sent.addAndGet(data.size());
+                inFlight.decrementAndGet();
+                return new ArrayList<byte[]>();
+            }
+
+            @Override
+            public boolean isRecoverable(AmazonClientException ace) {
+                return false;
+            }
+        });
+        for (int i = 0; i < 500; i++) {
+            concurrentRecorder.saveRecord(randomBytes(16), STREAM_NAME);
+        }
+
+        concurrentRecorder.submitAllRecords();
+        assertEquals("all records sent", 500, sent.get());
+        assertTrue("at most 2 batches in flight", maxInFlight.get() <= 2);
+        assertEquals("no records after submitAllRecords", 0,
+                concurrentRecorder.getDiskBytesUsed());
+    }
+
     private byte[] randomBytes(int length) {
         byte[] data = new byte[length];
         new Random().nextBytes(data);
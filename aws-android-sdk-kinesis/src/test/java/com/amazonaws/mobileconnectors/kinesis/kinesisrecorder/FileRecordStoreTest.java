@@ -22,18 +22,22 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.KinesisRecorderConfig.FsyncPolicy;
+import com.amazonaws.util.StringUtils;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -44,6 +48,7 @@ public class FileRecordStoreTest {
 
     private static final File TEST_DIRECTORY = new File("FileRecordStoreTest");
     private static final String RECORDER_FILE_NAME = Constants.RECORDS_FILE_NAME;
+    private static final String STREAM_NAME = "stream";
     private static final long MAX_STORAGE_SIZE = 1024 * 1024 * 5L;
 
     @Before
@@ -68,21 +73,20 @@ public class FileRecordStoreTest {
     @Test
     public void testFileRecordStore_putIterateAndRemove() throws IOException {
 
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
                 RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
 
         // Put some events into the store
-        recordStore.put("1");
-        recordStore.put("2");
-        recordStore.put("3");
-        recordStore.put("4");
-        recordStore.put("5");
-        recordStore.put("6");
-        recordStore.put("7");
-        recordStore.put("8");
-        recordStore.put("9");
-        recordStore.put("10");
+        put(recordStore, "1");
+        put(recordStore, "2");
+        put(recordStore, "3");
+        put(recordStore, "4");
+        put(recordStore, "5");
+        put(recordStore, "6");
+        put(recordStore, "7");
+        put(recordStore, "8");
+        put(recordStore, "9");
+        put(recordStore, "10");
 
         // Use the iterator to read through the events in the store
         int counter = 0;
@@ -90,51 +94,51 @@ public class FileRecordStoreTest {
 
         while (iter.hasNext()) {
             counter++;
-            String record = iter.next();
+            String record = text(iter.next());
             assertSame(Integer.valueOf(record), counter);
             // If we read 5 events remove the 5 last read events
             if (counter % 5 == 0) {
                 iter.removeReadRecords();
-                assertSame(getNumberOfLinesInFile(fileManager), (10 - counter));
+                assertSame(getNumberOfRecords(recordStore), (10 - counter));
             }
         }
 
         // Put some events into the store
-        recordStore.put("1");
-        recordStore.put("2");
-        recordStore.put("3");
-        recordStore.put("4");
-        recordStore.put("5");
-        recordStore.put("6");
-        recordStore.put("7");
-        recordStore.put("8");
-        recordStore.put("9");
-        recordStore.put("10");
+        put(recordStore, "1");
+        put(recordStore, "2");
+        put(recordStore, "3");
+        put(recordStore, "4");
+        put(recordStore, "5");
+        put(recordStore, "6");
+        put(recordStore, "7");
+        put(recordStore, "8");
+        put(recordStore, "9");
+        put(recordStore, "10");
         String nextRecord = null;
         counter = 0;
         iter = recordStore.iterator();
-        while ((nextRecord = iter.next()) != null) {
+        while ((nextRecord = text(iter.next())) != null) {
             counter++;
             assertSame(Integer.valueOf(nextRecord), counter);
         }
         iter.removeReadRecords();
-        assertSame(getNumberOfLinesInFile(fileManager), 0);
+        assertSame(getNumberOfRecords(recordStore), 0);
 
         // Try getting a new iterator while the store is empty and verify
         // that hasNext is false
         iter = recordStore.iterator();
         assertFalse(iter.hasNext());
-        assertNull(iter.next());
+        assertNull(text(iter.next()));
 
         // Put another record in the store and try to read it back out with a
         // new iterator.
-        recordStore.put("11");
+        put(recordStore, "11");
         iter = recordStore.iterator();
 
         // Try peeking and the next record more than once and verify it will
         // only show the next record each time
-        assertTrue(iter.peek().equalsIgnoreCase("11"));
-        assertTrue(iter.peek().equalsIgnoreCase("11"));
+        assertTrue(text(iter.peek()).equalsIgnoreCase("11"));
+        assertTrue(text(iter.peek()).equalsIgnoreCase("11"));
 
         // Try calling remove and get an UnsupportedOperationException
         boolean unsupportedCaught = false;
@@ -146,7 +150,7 @@ public class FileRecordStoreTest {
         assertTrue(unsupportedCaught);
 
         while (iter.hasNext()) {
-            String record = iter.next();
+            String record = text(iter.next());
             assertSame(Integer.valueOf(record), 11);
         }
 
@@ -169,7 +173,7 @@ public class FileRecordStoreTest {
 
             fileManager.deleteFile(recordsFile);
             kinesisDirectory.setReadOnly();
-            recordStore.put("2");
+            put(recordStore, "2");
         } finally {
             if (kinesisDirectory != null && kinesisDirectory.exists()) {
 
@@ -182,38 +186,26 @@ public class FileRecordStoreTest {
 
     @Test
     public void testWhenWritingExceedsMaxStorageSize_noMoreRecordsWritten() throws IOException {
-        File recordsDirectory = null;
-        File recordsFile = null;
-
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
                 RECORDER_FILE_NAME, 100L);
 
-        recordsDirectory = fileManager.getDirectory(Constants.RECORDS_DIRECTORY);
-        recordsFile = new File(recordsDirectory, Constants.RECORDS_FILE_NAME);
-
-        for (int i = 0; i < 10; i++) {
-            recordStore.put("ten bytes");
+        // 4 byte header, 17 byte stream entry and 22 bytes per record
+        for (int i = 0; i < 3; i++) {
+            assertTrue(put(recordStore, "ten bytes"));
         }
-        assertSame(recordsFile.length(), 100L);
-
-        recordStore.put("0123456789");
-        assertSame(recordsFile.length(), 100L);
+        assertEquals(87L, recordStore.getFileSize());
 
+        assertFalse(put(recordStore, "ten bytes"));
+        assertEquals(87L, recordStore.getFileSize());
+        assertEquals(3, getNumberOfRecords(recordStore));
     }
 
     @Test
     public void testWhenWritingTooManyConcurrentRecords() throws
             InterruptedException, IOException {
-        File recordsDirectory = null;
-        File recordsFile = null;
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         final FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
                 RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
 
-        recordsDirectory = fileManager.getDirectory(Constants.RECORDS_DIRECTORY);
-        recordsFile = new File(recordsDirectory, Constants.RECORDS_FILE_NAME);
-
         SecureRandom random = new SecureRandom();
 
         // first fill the disk
@@ -225,11 +217,11 @@ public class FileRecordStoreTest {
         final String recordStr = tempRecordStr;
 
         for (int i = 0; i < 30; i++) {
-            recordStore.put(recordStr);
+            put(recordStore, recordStr);
         }
 
-        long initialSize = recordsFile.length();
-        assertTrue(recordsFile.length() <= MAX_STORAGE_SIZE);
+        long initialSize = recordStore.getFileSize();
+        assertTrue(recordStore.getFileSize() <= MAX_STORAGE_SIZE);
 
         final CountDownLatch latch = new CountDownLatch(1);
         ExecutorService threadPool = Executors.newFixedThreadPool(1);
@@ -240,7 +232,7 @@ public class FileRecordStoreTest {
                     for (int i = 0; i < 100; i++) {
                         RecordIterator itr = recordStore.iterator();
                         if (itr.hasNext()) {
-                            String next = itr.next();
+                            String next = text(itr.next());
                             assertEquals(next.length(), recordStr.length());
                             itr.removeReadRecords();
                         }
@@ -257,18 +249,18 @@ public class FileRecordStoreTest {
         });
 
         for (int i = 0; i < 10000; i++) {
-            recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
-            recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
-            recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
+            put(recordStore, recordStr);
+            assertTrue(recordStore.getFileSize() <= initialSize);
+            put(recordStore, recordStr);
+            assertTrue(recordStore.getFileSize() <= initialSize);
+            put(recordStore, recordStr);
+            assertTrue(recordStore.getFileSize() <= initialSize);
             Thread.sleep(1);
         }
 
         latch.await();
-        assertEquals(recordsFile.length(), initialSize);
-        assertTrue(recordsFile.length() < MAX_STORAGE_SIZE);
+        assertEquals(recordStore.getFileSize(), initialSize);
+        assertTrue(recordStore.getFileSize() < MAX_STORAGE_SIZE);
 
     }
 
@@ -292,7 +284,7 @@ public class FileRecordStoreTest {
                         Long eventsWritten = threadWrites.get(Thread.currentThread().getId());
                         eventsWritten = (eventsWritten == null) ? 0L : eventsWritten;
                         threadWrites.put(Thread.currentThread().getId(), ++eventsWritten);
-                        recordStore.put(String.valueOf(Thread.currentThread().getId()));
+                        put(recordStore, String.valueOf(Thread.currentThread().getId()));
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     } finally {
@@ -313,7 +305,7 @@ public class FileRecordStoreTest {
         final Map<Long, Long> actualThreadWrites = new HashMap<Long, Long>();
         RecordIterator iter = recordStore.iterator();
         while (iter.hasNext()) {
-            String next = iter.next();
+            String next = text(iter.next());
             Long id = Long.valueOf(next);
             Long eventsWritten = actualThreadWrites.get(id);
             eventsWritten = (eventsWritten == null) ? 0L : eventsWritten;
@@ -327,28 +319,247 @@ public class FileRecordStoreTest {
 
     }
 
-    private int getNumberOfLinesInFile(final FileManager fileManager) throws NumberFormatException,
-            IOException {
-        BufferedReader reader = getRecordsFileReader(fileManager);
-        int counter = 0;
-        while (reader.readLine() != null) {
-            counter++;
+    @Test
+    public void testRecordsRollOverToNewSegments() throws IOException {
+        // a segment holds the header, a stream entry and two records of 21
+        // bytes
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, FsyncPolicy.NEVER, 63L);
+        File recordsDirectory = new File(TEST_DIRECTORY, Constants.RECORDS_DIRECTORY);
+
+        for (int i = 0; i < 10; i++) {
+            put(recordStore, "record " + i);
         }
-        return counter;
+        assertEquals(315L, recordStore.getFileSize());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(63L, new File(recordsDirectory, RECORDER_FILE_NAME + "." + i).length());
+        }
+
+        // removing three records deletes the first segment only
+        RecordIterator iter = recordStore.iterator();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("record " + i, text(iter.next()));
+        }
+        iter.removeReadRecords();
+        assertFalse(new File(recordsDirectory, RECORDER_FILE_NAME + ".0").exists());
+        assertTrue(new File(recordsDirectory, RECORDER_FILE_NAME + ".1").isFile());
+        assertEquals(252L, recordStore.getFileSize());
+        assertEquals("record 3", text(iter.next()));
+        iter.close();
+
+        // a new iterator starts at the cursor, in the middle of a segment
+        iter = recordStore.iterator();
+        assertEquals("record 3", text(iter.next()));
+        while (iter.hasNext()) {
+            iter.next();
+        }
+        // removing everything deletes all segments
+        iter.removeReadRecords();
+        assertEquals(0L, recordStore.getFileSize());
+        assertEquals(0, getNumberOfRecords(recordStore));
+        put(recordStore, "record 10");
+        assertEquals("record 10", text(recordStore.iterator().next()));
     }
 
-    private BufferedReader getRecordsFileReader(final FileManager fileManager) {
-        InputStreamReader streamReader = null;
-        try {
-            streamReader = new InputStreamReader(
-                    fileManager.newInputStream(Constants.RECORDS_DIRECTORY + File.separator
-                            + Constants.RECORDS_FILE_NAME));
-        } catch (FileNotFoundException e) {
+    @Test
+    public void testCursorIsRestoredOnReopen() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, FsyncPolicy.ALWAYS, 100L);
+        for (int i = 0; i < 5; i++) {
+            put(recordStore, "record " + i);
+        }
+        RecordIterator iter = recordStore.iterator();
+        iter.next();
+        iter.removeReadRecords();
+        iter.close();
+        recordStore.close();
+
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME,
+                MAX_STORAGE_SIZE, FsyncPolicy.ALWAYS, 100L);
+        iter = recordStore.iterator();
+        for (int i = 1; i < 5; i++) {
+            assertEquals("record " + i, text(iter.next()));
+        }
+        assertFalse(iter.hasNext());
+        put(recordStore, "record 5");
+        assertEquals("record 5", text(iter.next()));
+    }
+
+    @Test
+    public void testRemoveRecordsBeforeWhileReadingAhead() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, FsyncPolicy.NEVER, 100L);
+        for (int i = 0; i < 6; i++) {
+            put(recordStore, "record " + i);
+        }
+        RecordIterator iter = recordStore.iterator();
+        iter.next();
+        iter.next();
+        FileRecordStore.Position firstBatch = iter.getPosition();
+        for (int i = 2; i < 5; i++) {
+            assertEquals("record " + i, text(iter.next()));
+        }
+        FileRecordStore.Position secondBatch = iter.getPosition();
+
+        // removing the first batch doesn't move the iterator back
+        iter.removeRecordsBefore(firstBatch);
+        assertEquals(4, getNumberOfRecords(recordStore));
+        assertEquals("record 5", text(iter.peek()));
+
+        // nor does removing every record read so far
+        iter.removeRecordsBefore(secondBatch);
+        iter.removeRecordsBefore(firstBatch);
+        assertEquals(1, getNumberOfRecords(recordStore));
+        assertEquals("record 5", text(iter.next()));
+        assertFalse(iter.hasNext());
+
+        iter.removeRecordsBefore(iter.getPosition());
+        assertEquals(0, getNumberOfRecords(recordStore));
+        put(recordStore, "record 6");
+        assertEquals("record 6", text(iter.next()));
+    }
+
+    @Test
+    public void testRecordFields() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        byte[] data = new byte[] {
+                0, 1, '\n', -1
+        };
+        recordStore.put("stream1", "key", data);
+        recordStore.put("stream2", data);
+        recordStore.put("stream1", data);
+
+        RecordIterator iter = recordStore.iterator();
+        FileRecord record = iter.next();
+        assertEquals("stream1", record.streamName);
+        assertEquals("key", record.partitionKey);
+        assertTrue(Arrays.equals(data, record.data));
+        record = iter.next();
+        assertEquals("stream2", record.streamName);
+        assertNull(record.partitionKey);
+        assertEquals("stream1", iter.next().streamName);
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testPartialRecordIsDroppedOnReopen() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        put(recordStore, "complete");
+        long size = recordStore.getFileSize();
+        recordStore.close();
+
+        File segment = new File(new File(TEST_DIRECTORY, Constants.RECORDS_DIRECTORY),
+                RECORDER_FILE_NAME + ".0");
+        FileOutputStream out = new FileOutputStream(segment, true);
+        out.write(new byte[] {
+                0, 0, 1, 0, 1, 2
+        });
+        out.close();
+
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        assertEquals(size, recordStore.getFileSize());
+        assertEquals(size, segment.length());
+        put(recordStore, "next");
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("complete", text(iter.next()));
+        assertEquals("next", text(iter.next()));
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testCorruptedRecordIsSkipped() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        put(recordStore, "first");
+        long offset = recordStore.getFileSize();
+        put(recordStore, "second");
+        put(recordStore, "third");
+        recordStore.close();
+
+        // flip a byte of the data of the second record
+        File segment = new File(new File(TEST_DIRECTORY, Constants.RECORDS_DIRECTORY),
+                RECORDER_FILE_NAME + ".0");
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.seek(offset + 9);
+        raf.write('S');
+        raf.close();
+
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("first", text(iter.next()));
+        assertEquals("third", text(iter.next()));
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testTextRecordsFileIsConverted() throws IOException {
+        File recordsDirectory = new File(TEST_DIRECTORY, Constants.RECORDS_DIRECTORY);
+        recordsDirectory.mkdirs();
+        PrintWriter writer = new PrintWriter(new File(recordsDirectory, RECORDER_FILE_NAME));
+        writer.println(FileRecordParser.asString(STREAM_NAME, "1".getBytes()));
+        writer.println("invalid line");
+        writer.println(FileRecordParser.asString(STREAM_NAME, "2".getBytes()));
+        writer.close();
+
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        assertFalse(new File(recordsDirectory, RECORDER_FILE_NAME).exists());
+        put(recordStore, "3");
+        RecordIterator iter = recordStore.iterator();
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(String.valueOf(i), text(iter.next()));
         }
+        assertFalse(iter.hasNext());
+    }
 
-        if (streamReader != null) {
-            return new BufferedReader(streamReader);
+    @Test
+    public void testTextSegmentsAreConvertedFromCursor() throws IOException {
+        File recordsDirectory = new File(TEST_DIRECTORY, Constants.RECORDS_DIRECTORY);
+        recordsDirectory.mkdirs();
+        String first = FileRecordParser.asString(STREAM_NAME, "1".getBytes()) + "\n";
+        for (int i = 0; i < 2; i++) {
+            PrintWriter writer = new PrintWriter(new File(recordsDirectory,
+                    RECORDER_FILE_NAME + "." + i));
+            writer.print(i == 0 ? first : "");
+            writer.println(FileRecordParser.asString(STREAM_NAME,
+                    String.valueOf(i + 2).getBytes()));
+            writer.close();
         }
-        return null;
+        // the first record was sent already
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(
+                new File(recordsDirectory, RECORDER_FILE_NAME + ".cursor")));
+        out.writeLong(0);
+        out.writeLong(first.length());
+        out.close();
+
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        assertFalse(new File(recordsDirectory, RECORDER_FILE_NAME + ".0").exists());
+        assertFalse(new File(recordsDirectory, RECORDER_FILE_NAME + ".1").exists());
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("2", text(iter.next()));
+        assertEquals("3", text(iter.next()));
+        assertFalse(iter.hasNext());
+    }
+
+    private boolean put(final FileRecordStore recordStore, final String record)
+            throws IOException {
+        return recordStore.put(STREAM_NAME, record.getBytes(StringUtils.UTF8));
+    }
+
+    private String text(final FileRecord record) {
+        return record == null ? null : new String(record.data, StringUtils.UTF8);
+    }
+
+    private int getNumberOfRecords(final FileRecordStore recordStore) throws IOException {
+        RecordIterator iter = recordStore.iterator();
+        int counter = 0;
+        while (iter.next() != null) {
+            counter++;
+        }
+        iter.close();
+        return counter;
     }
 }
@@ -34,6 +34,7 @@ import org.robolectric.annotation.Config;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.util.Random;
 import java.util.UUID;
@@ -82,8 +83,9 @@ public class KinesisRecorderTest {
     @Test
     public void testUpgrade() throws Exception {
         File directory = temp.newFolder();
-        FileRecordStore recordStore = new FileRecordStore(directory, Constants.RECORDS_FILE_NAME,
-                5 * 1024 * 1024);
+        File recordsDir = new File(directory, Constants.RECORDS_DIRECTORY);
+        recordsDir.mkdirs();
+        PrintWriter writer = new PrintWriter(new File(recordsDir, Constants.RECORDS_FILE_NAME));
         String streamName = "stream";
         int length = 1024;
         JSONRecordAdapter adapter = new JSONRecordAdapter();
@@ -93,19 +95,19 @@ public class KinesisRecorderTest {
             byte[] bytes = randomBytes(length);
             req.setData(ByteBuffer.wrap(bytes));
             req.setPartitionKey(UUID.randomUUID().toString());
-            recordStore.put(adapter.translateFromRecord(req).toString());
+            writer.println(adapter.translateFromRecord(req).toString());
         }
+        writer.close();
 
         recorder = new KinesisRecorder(directory, Regions.US_EAST_1, provider);
         Thread.sleep(1000);
         RecordIterator iterator = recorder.recordStore.iterator();
-        FileRecordParser frp = new FileRecordParser();
         int count = 0;
         while (iterator.hasNext()) {
             count ++;
-            frp.parse(iterator.next());
-            assertEquals("same stream", streamName, frp.streamName);
-            assertEquals("same data length", length, frp.bytes.length);
+            FileRecord record = iterator.next();
+            assertEquals("same stream", streamName, record.streamName);
+            assertEquals("same data length", length, record.data.length);
         }
         assertEquals("has 10 records from upgrade", 10, count);
     }
@@ -37,12 +37,16 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class DefaultDeliveryClient implements DeliveryClient {
@@ -69,7 +73,16 @@ public class DefaultDeliveryClient implements DeliveryClient {
     private final EventStore eventStore;
     private final EventAdapter<JSONObject> eventAdapter;
     private final AtomicLong avgWriteEventTimeMillis = new AtomicLong(25L);
-    private final AtomicLong eventsProcessed = new AtomicLong(0L);
+
+    /**
+     * Events waiting to be written to the event store, at most
+     * MAX_EVENT_OPERATIONS. They are written in batches by a single write task
+     * on the events executor, scheduled when the first of them is enqueued.
+     */
+    private final Queue<InternalEvent> pendingEvents = new ConcurrentLinkedQueue<InternalEvent>();
+    private final AtomicInteger pendingEventCount = new AtomicInteger(0);
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private final AtomicLong droppedEvents = new AtomicLong(0L);
 
     private long lastAttemptTime = 0;
 
@@ -84,11 +97,11 @@ public class DefaultDeliveryClient implements DeliveryClient {
     public static DefaultDeliveryClient newInstance(AnalyticsContext context,
             boolean allowWANDelivery) {
 
-        // create a service that is single threaded and only allows
-        // MAX_OPERATIONS to be enqueued at one time
+        // create a service that is single threaded. The events are bounded
+        // before they reach it, and written by one task at a time, so it
+        // doesn't discard anything
         ExecutorService eventsExService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<Runnable>(
-                        MAX_EVENT_OPERATIONS), new ThreadPoolExecutor.DiscardPolicy());
+                new LinkedBlockingQueue<Runnable>());
         ExecutorService submissionsExService = new ThreadPoolExecutor(1, 1, 0L,
                 TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(
                         MAX_SUBMIT_OPERATIONS), new ThreadPoolExecutor.DiscardPolicy());
@@ -122,48 +135,84 @@ public class DefaultDeliveryClient implements DeliveryClient {
 
     @Override
     public void enqueueEventForDelivery(final InternalEvent event) {
-        final long startEnqueueTimeMillis = System.currentTimeMillis();
-        final long origEventsProcessed = eventsProcessed.get();
-        eventsRunnableQueue.execute(new Runnable() {
-            @Override
-            public void run() {
-                long start = System.currentTimeMillis();
-                try {
-                    boolean eventStored = eventStore.put(eventAdapter.translateFromEvent(event)
-                            .toString());
-                    // log that an event has been recorded
-                    if (eventStored) {
-                        Log.i(TAG, String.format("Event: '%s' recorded to local filestore",
-                                StringUtil.clipString(event.getEventType(), CLIPPED_EVENT_LENGTH,
-                                        true)));
-                        Log.d(TAG, String.format("Time of enqueueEventForDelivery: %d",
-                                System.currentTimeMillis() - start));
-                    } else {
-                        Log.w(TAG, String.format(
-                                "Event: '%s' failed to record to local filestore",
-                                StringUtil.clipString(event.getEventType(), CLIPPED_EVENT_LENGTH,
-                                        true)));
-                    }
-                } catch (EventStoreException e) {
-                    Log.w(TAG,
-                            String.format("Event: '%s' failed to record to local filestore",
-                                    StringUtil.clipString(event.getEventType(),
-                                            CLIPPED_EVENT_LENGTH, true)));
-                } finally {
-                    calculateAndSetAverageWriteEventTime(origEventsProcessed,
-                            startEnqueueTimeMillis);
+        if (pendingEventCount.incrementAndGet() > MAX_EVENT_OPERATIONS) {
+            pendingEventCount.decrementAndGet();
+            long dropped = droppedEvents.incrementAndGet();
+            Log.w(TAG, String.format(
+                    "Event: '%s' dropped, %d events are waiting to be recorded (%d dropped so far)",
+                    StringUtil.clipString(event.getEventType(), CLIPPED_EVENT_LENGTH, true),
+                    MAX_EVENT_OPERATIONS, dropped));
+            return;
+        }
+
+        pendingEvents.add(event);
+        if (writeScheduled.compareAndSet(false, true)) {
+            eventsRunnableQueue.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writePendingEvents();
                 }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of events dropped because too many events were
+     * waiting to be recorded to the local filestore.
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Writes all the pending events to the event store at once.
+     */
+    void writePendingEvents() {
+        // Reset before draining so an event enqueued meanwhile schedules
+        // another write instead of waiting for the next one
+        writeScheduled.set(false);
+
+        long start = System.currentTimeMillis();
+        List<String> events = new ArrayList<String>();
+        InternalEvent event;
+        while ((event = pendingEvents.poll()) != null) {
+            pendingEventCount.decrementAndGet();
+            try {
+                events.add(eventAdapter.translateFromEvent(event).toString());
+            } catch (RuntimeException e) {
+                Log.e(TAG, String.format("Event: '%s' could not be converted to json",
+                        StringUtil.clipString(event.getEventType(), CLIPPED_EVENT_LENGTH, true)),
+                        e);
             }
-        });
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+
+        try {
+            int stored = eventStore.putAll(events);
+            // log that the events have been recorded
+            if (stored == events.size()) {
+                Log.i(TAG, String.format("%d events recorded to local filestore", stored));
+            } else {
+                Log.w(TAG, String.format("%d events failed to record to local filestore",
+                        events.size() - stored));
+            }
+        } catch (EventStoreException e) {
+            Log.w(TAG, String.format("%d events failed to record to local filestore",
+                    events.size()), e);
+        } finally {
+            calculateAndSetAverageWriteEventTime(events.size(), start);
+        }
+        Log.d(TAG, String.format("Time of writePendingEvents: %d",
+                System.currentTimeMillis() - start));
     }
 
-    private void calculateAndSetAverageWriteEventTime(long origEventsProcessed,
-            long enqueueTimeMillis) {
-        long currentEventsProcessed = eventsProcessed.addAndGet(1L);
-        long eventsWrittenDelta = currentEventsProcessed - origEventsProcessed;
-        long durationInMillis = System.currentTimeMillis() - enqueueTimeMillis;
-        double decimalAvg = (double) durationInMillis / (double) eventsWrittenDelta;
-        long avg = (long) Math.ceil(decimalAvg);
+    private void calculateAndSetAverageWriteEventTime(int eventsWritten, long startTimeMillis) {
+        long durationInMillis = System.currentTimeMillis() - startTimeMillis;
+        double decimalAvg = (double) durationInMillis / (double) eventsWritten;
+        // at least 1ms so the submission still waits for the pending writes
+        long avg = Math.max(1L, (long) Math.ceil(decimalAvg));
         avgWriteEventTimeMillis.set(avg);
     }
 
@@ -40,8 +40,7 @@ public class ERSRequestBuilder {
 
     public PutEventsRequest createRecordEventsRequest(JSONArray events, String networkType) {
 
-        String body = events.toString();
-        if (body == null) {
+        if (events == null) {
             return null;
         }
 
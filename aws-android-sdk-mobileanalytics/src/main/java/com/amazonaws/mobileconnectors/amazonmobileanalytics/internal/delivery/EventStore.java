@@ -16,10 +16,18 @@
 package com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.delivery;
 
 import java.util.Iterator;
+import java.util.List;
 
 public interface EventStore {
     public boolean put(final String event) throws EventStoreException;
 
+    /**
+     * Stores the events with a single write to the store.
+     *
+     * @return the number of events stored, the others didn't fit in the store
+     */
+    public int putAll(final List<String> events) throws EventStoreException;
+
     public EventIterator iterator();
 
     public static interface EventIterator extends Iterator<String> {
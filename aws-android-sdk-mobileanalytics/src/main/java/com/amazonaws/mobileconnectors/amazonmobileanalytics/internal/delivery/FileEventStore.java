@@ -20,32 +20,57 @@ import android.util.Log;
 import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.AnalyticsContext;
 import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.system.FileManager;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Stores the events as lines of the events file. Read events aren't removed
+ * from the file right away: the offset of the first unread event is saved in
+ * the cursor file instead, and the read events are compacted out of the file
+ * once they take COMPACTION_THRESHOLD bytes, by the next put.
+ */
 public class FileEventStore implements EventStore {
     private static final String TAG = "FileEventStore";
     static final String EVENTS_DIRECTORY = "events";
     static final String EVENT_FILE_NAME = "eventsFile";
+    static final String EVENT_CURSOR_FILE_NAME = "eventsFile.cursor";
     static final String KEY_MAX_STORAGE_SIZE = "maxStorageSize";
     static final double ERROR_LENGTH_THRESHOLD_PERCENTAGE = 1.1;
     private final ReentrantLock accessLock = new ReentrantLock(true);
 
     static long MAX_STORAGE_SIZE = 1024 * 1024 * 5L;
+    static long COMPACTION_THRESHOLD = 1024 * 256L;
 
     private final AnalyticsContext context;
     private File eventsFile;
+    /**
+     * Kept open between puts and closed when the events file is replaced.
+     * Guarded by accessLock.
+     */
+    private BufferedWriter writer;
+    /**
+     * Offset of the first unread event. Offsets are counted from the start of
+     * the events file as it was when the store was created, so the offsets of
+     * the iterators opened before a compaction stay valid: the position in
+     * the events file is readOffset - compactedBytes. Guarded by accessLock.
+     */
+    private long readOffset;
+    /** Number of bytes compacted out of the events file. */
+    private long compactedBytes;
 
     public static FileEventStore newInstance(final AnalyticsContext context) {
         return new FileEventStore(context);
@@ -53,35 +78,62 @@ public class FileEventStore implements EventStore {
 
     public FileEventStore(final AnalyticsContext context) {
         this.context = context;
-        tryCreateEventsFile();
+        if (tryCreateEventsFile()) {
+            readOffset = readCursor();
+        }
     }
 
     @Override
     public boolean put(final String event) throws EventStoreException {
-        boolean success = false;
-        BufferedWriter writer = null;
+        return putAll(Collections.singletonList(event)) == 1;
+    }
+
+    @Override
+    public int putAll(final List<String> events) throws EventStoreException {
+        int stored = 0;
 
         accessLock.lock();
         try {
-            writer = tryInitializeWriter();
-            if (writer != null) {
-                final long maxStorageSize = context.getConfiguration().optLong(
-                        KEY_MAX_STORAGE_SIZE, MAX_STORAGE_SIZE);
-                if (eventsFile.length() + event.length() <= maxStorageSize) {
+            final long maxStorageSize = context.getConfiguration().optLong(
+                    KEY_MAX_STORAGE_SIZE, MAX_STORAGE_SIZE);
+            long eventsLength = 0;
+            for (String event : events) {
+                eventsLength += event.length() + 1;
+            }
+
+            // Drop the read events once there are enough of them to be worth
+            // the copy, or when they take the room needed for the new events
+            long readBytes = readOffset - compactedBytes;
+            if (readBytes > 0 && eventsFile != null
+                    && (readBytes >= COMPACTION_THRESHOLD
+                    || eventsFile.length() + eventsLength > maxStorageSize)) {
+                compactReadEvents();
+            }
+
+            if (writer == null) {
+                writer = tryInitializeWriter();
+            }
+            // The file length doesn't include what is buffered in the writer
+            long length = eventsFile.length();
+            for (String event : events) {
+                if (length + event.length() <= maxStorageSize) {
                     writer.write(event);
                     writer.newLine();
-                    writer.flush();
-                    success = true;
+                    length += event.length() + 1;
+                    stored++;
                 }
             }
+            // One flush for all the events
+            writer.flush();
         } catch (IOException e) {
-            Log.e(TAG, "Failed to persist the event", e);
+            Log.e(TAG, "Failed to persist the events", e);
+            stored = 0;
+            closeWriter();
         } finally {
-            tryCloseWriter(writer);
             accessLock.unlock();
         }
 
-        return success;
+        return stored;
     }
 
     private boolean tryCreateEventsFile() {
@@ -139,14 +191,135 @@ public class FileEventStore implements EventStore {
         }
     }
 
-    private File deleteReadEvents(final int lineNumber) {
-        // Write all events after line number to a temporary file
+    private void closeWriter() {
+        try {
+            tryCloseWriter(writer);
+        } catch (EventStoreException e) {
+            Log.e(TAG, "Unable to close writer for events file", e);
+        } finally {
+            writer = null;
+        }
+    }
+
+    private File getCursorFile() {
+        FileManager fileManager = context.getSystem().getFileManager();
+        File eventsDir = fileManager.createDirectory(EVENTS_DIRECTORY);
+        return new File(eventsDir, EVENT_CURSOR_FILE_NAME);
+    }
+
+    /**
+     * @return the position of the first unread event saved in the cursor
+     *         file, 0 if there is none.
+     */
+    private long readCursor() {
+        File cursorFile = getCursorFile();
+        if (!cursorFile.exists()) {
+            return 0;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(context.getSystem()
+                    .getFileManager().newInputStream(cursorFile)));
+            String line = reader.readLine();
+            long position = (line == null) ? 0 : Long.parseLong(line.trim());
+            if (position < 0 || position > eventsFile.length() || !isStartOfEvent(position)) {
+                Log.e(TAG, "Ignoring invalid events file cursor");
+                return 0;
+            }
+            return position;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read the events file cursor", e);
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Ignoring invalid events file cursor", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return whether the position is the start of the file or follows the
+     *         end of an event.
+     */
+    private boolean isStartOfEvent(final long position) throws IOException {
+        if (position == 0) {
+            return true;
+        }
+        InputStream in = context.getSystem().getFileManager().newInputStream(eventsFile);
+        try {
+            skipFully(in, position - 1);
+            return in.read() == '\n';
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Saves the position of the first unread event in the cursor file.
+     */
+    private boolean writeCursor() {
+        return writeCursor(readOffset - compactedBytes);
+    }
+
+    /**
+     * Saves the position in the cursor file. The position is written to a
+     * temporary file which then replaces the cursor file, so a crash leaves
+     * either the previous or the new position. If it can't be saved, the read
+     * events are read again after a restart.
+     *
+     * @return whether the position was saved.
+     */
+    private boolean writeCursor(final long position) {
+        File cursorFile = getCursorFile();
+        File tempFile = new File(cursorFile.getParentFile(), EVENT_CURSOR_FILE_NAME + ".tmp");
+        Writer cursorWriter = null;
+        try {
+            OutputStream stream = context.getSystem().getFileManager()
+                    .newOutputStream(tempFile, false);
+            cursorWriter = new OutputStreamWriter(stream);
+            cursorWriter.write(Long.toString(position));
+            cursorWriter.close();
+            cursorWriter = null;
+            if (!tempFile.renameTo(cursorFile)) {
+                Log.e(TAG, "Failed to replace the events file cursor");
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write the events file cursor", e);
+            return false;
+        } finally {
+            if (cursorWriter != null) {
+                try {
+                    cursorWriter.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to close writer for events file cursor", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the unread events to a temporary file which then replaces the
+     * events file.
+     */
+    private void compactReadEvents() {
+        // The events file is about to be replaced
+        closeWriter();
+
         FileManager fileManager = context.getSystem().getFileManager();
         File eventsDir = fileManager.createDirectory(EVENTS_DIRECTORY);
 
+        File tempFile = new File(eventsDir, EVENT_FILE_NAME + ".tmp");
         File tempEventsFile = null;
         try {
-            File tempFile = new File(eventsDir, EVENT_FILE_NAME + ".tmp");
             if (tempFile.exists()) {
                 if (!tempFile.delete()) {
                     Log.e(TAG, "Failed to delete previous temp file");
@@ -157,80 +330,101 @@ public class FileEventStore implements EventStore {
             Log.e(TAG,
                     "An error occurred while attempting to create/open the temporary events file",
                     e);
-            return eventsFile;
+            return;
         }
 
         boolean errorsOccurred = false;
-        if (tempEventsFile != null && eventsFile.exists() && tempEventsFile.exists()) {
-            BufferedReader reader = null;
-            PrintWriter writer = null;
-            try {
-                reader = new BufferedReader(new FileReader(eventsFile));
-                writer = new PrintWriter(new FileWriter(tempEventsFile, true));
-
-                String line = null;
-                int currentLineNumber = 0;
-                while ((line = reader.readLine()) != null) {
-                    currentLineNumber++;
-                    if (currentLineNumber > lineNumber) {
-                        writer.println(line);
-                        writer.flush();
-                    }
-                }
-            } catch (FileNotFoundException e) {
-                errorsOccurred = true;
-                Log.e(TAG, "The events file count not be found", e);
-            } catch (IOException e) {
-                Log.e(TAG, "An error occurred while attempting to delete the read events", e);
-                errorsOccurred = true;
-            } finally {
-                if (writer != null) {
-                    writer.close();
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = fileManager.newInputStream(eventsFile);
+            skipFully(in, readOffset - compactedBytes);
+            out = fileManager.newOutputStream(tempEventsFile, false);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "An error occurred while attempting to compact the read events", e);
+            errorsOccurred = true;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to close the temporary events file", e);
+                    errorsOccurred = true;
                 }
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
+            }
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
 
-                    }
                 }
+            }
+        }
 
-                if (!errorsOccurred) {
-                    if (eventsFile.delete()) {
-                        if (!tempEventsFile.renameTo(eventsFile)) {
-                            Log.e(TAG, "Failed to rename temp file to events file");
-                        }
-                        try {
-                            eventsFile = fileManager
-                                    .createFile(new File(eventsDir, EVENT_FILE_NAME));
-                        } catch (IOException e) {
-                            Log.e(TAG,
-                                    "An error occurred while attempting to create the eventsFile",
-                                    e);
-                        }
-                    } else {
-                        Log.e(TAG, "Failed to delete previous events file");
-                    }
+        // The cursor points into the current events file. It is reset before
+        // the files are swapped, so a crash in between reads the read events
+        // again rather than skipping unread ones of the compacted file.
+        if (!errorsOccurred && writeCursor(0)) {
+            boolean replaced = tempEventsFile.renameTo(eventsFile);
+            if (!replaced && eventsFile.delete()) {
+                // The previous events file is gone either way
+                replaced = true;
+                if (!tempEventsFile.renameTo(eventsFile)) {
+                    Log.e(TAG, "Failed to rename temp file to events file");
                 }
             }
+            if (replaced) {
+                // The events file now starts at the first unread event
+                compactedBytes = readOffset;
+                try {
+                    eventsFile = fileManager.createFile(new File(eventsDir, EVENT_FILE_NAME));
+                } catch (IOException e) {
+                    Log.e(TAG, "An error occurred while attempting to create the eventsFile", e);
+                }
+            } else {
+                Log.e(TAG, "Failed to delete previous events file");
+                writeCursor();
+            }
+        }
+
+        if (tempFile.exists()) {
+            if (!tempFile.delete()) {
+                Log.e(TAG, "Failed to delete temp file");
+            }
+        }
+    }
 
-            File tempFile = new File(eventsDir, EVENT_FILE_NAME + ".tmp");
-            if (tempFile.exists()) {
-                if (!tempFile.delete()) {
-                    Log.e(TAG, "Failed to delete temp file");
+    private static void skipFully(final InputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = in.skip(bytes);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new IOException("Events file is shorter than its cursor");
                 }
+                skipped = 1;
             }
+            bytes -= skipped;
         }
-        return eventsFile;
     }
 
     @Override
     public EventIterator iterator() {
         return new EventIterator() {
-            int linesRead = 0;
+            /** Offset the reader was opened at, or last removed events up to. */
+            long startOffset = 0;
+            /** Bytes of the events returned by next() since startOffset. */
+            long bytesRead = 0;
             String nextBuffer = null;
-            BufferedReader reader = null;
+            long nextBufferBytes = 0;
+            InputStream reader = null;
             boolean isEndOfFile = false;
+            final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+            long lineBytes = 0;
 
             private boolean tryOpenReader() {
                 if (reader != null) {
@@ -238,18 +432,28 @@ public class FileEventStore implements EventStore {
                 }
 
                 if (!isEndOfFile) {
-                    InputStreamReader streamReader = null;
+                    InputStream stream = null;
                     try {
-                        streamReader = new InputStreamReader(context.getSystem().getFileManager()
+                        stream = new BufferedInputStream(context.getSystem().getFileManager()
                                 .newInputStream(eventsFile));
+                        skipFully(stream, readOffset - compactedBytes);
                     } catch (FileNotFoundException e) {
                         Log.e(TAG, "Could not open the events file", e);
-                    }
+                        return false;
+                    } catch (IOException e) {
+                        Log.e(TAG, "Could not skip the read events", e);
+                        try {
+                            stream.close();
+                        } catch (IOException ioe) {
 
-                    if (streamReader != null) {
-                        reader = new BufferedReader(streamReader);
-                        return true;
+                        }
+                        return false;
                     }
+
+                    reader = stream;
+                    startOffset = readOffset;
+                    bytesRead = 0;
+                    return true;
                 }
                 return false;
             }
@@ -266,6 +470,32 @@ public class FileEventStore implements EventStore {
                 }
             }
 
+            /**
+             * Reads the next line, and sets lineBytes to its length in the
+             * file, line separator included.
+             */
+            private String readLine() throws IOException {
+                lineBuffer.reset();
+                lineBytes = 0;
+                int b;
+                while ((b = reader.read()) != -1) {
+                    lineBytes++;
+                    if (b == '\n') {
+                        break;
+                    }
+                    lineBuffer.write(b);
+                }
+                if (lineBytes == 0) {
+                    return null;
+                }
+                int length = lineBuffer.size();
+                byte[] line = lineBuffer.toByteArray();
+                if (length > 0 && line[length - 1] == '\r') {
+                    length--;
+                }
+                return new String(line, 0, length, Charset.defaultCharset());
+            }
+
             @Override
             public boolean hasNext() {
                 boolean hasNext = false;
@@ -281,15 +511,11 @@ public class FileEventStore implements EventStore {
                         }
                         // Nothing was previously buffered so try to read one
                         // more line
-                        boolean found = false;
-                        while (!found) {
-                            try {
-                                nextBuffer = reader.readLine();
-                                found = true;
-                            } catch (IOException e) {
-                                nextBuffer = null;
-                                found = true;
-                            }
+                        try {
+                            nextBuffer = readLine();
+                            nextBufferBytes = lineBytes;
+                        } catch (IOException e) {
+                            nextBuffer = null;
                         }
                         if (nextBuffer != null) {
                             // There was at least one more line so there is a
@@ -315,24 +541,19 @@ public class FileEventStore implements EventStore {
                 try {
                     if (nextBuffer != null) {
                         next = nextBuffer;
-                        linesRead++;
+                        bytesRead += nextBufferBytes;
                         nextBuffer = null;
                     } else {
                         if (!tryOpenReader()) {
                             return next;
                         }
-                        boolean found = false;
-                        while (!found) {
-                            try {
-                                next = reader.readLine();
-                                found = true;
-                            } catch (IOException e) {
-                                next = null;
-                                found = true;
-                            }
+                        try {
+                            next = readLine();
+                        } catch (IOException e) {
+                            next = null;
                         }
                         if (next != null) {
-                            linesRead++;
+                            bytesRead += lineBytes;
                         } else {
                             isEndOfFile = true;
                             tryCloseReader();
@@ -365,18 +586,27 @@ public class FileEventStore implements EventStore {
             public void removeReadEvents() {
                 accessLock.lock();
                 try {
-                    deleteReadEvents(linesRead);
-                    resetReader();
+                    // Only move the cursor, the reader carries on from where
+                    // it is
+                    startOffset += bytesRead;
+                    bytesRead = 0;
+                    if (startOffset > readOffset) {
+                        readOffset = startOffset;
+                    }
+
+                    if (readOffset - compactedBytes >= eventsFile.length()) {
+                        // Every event was read, so the compaction is only
+                        // an empty copy
+                        compactReadEvents();
+                        tryCloseReader();
+                        nextBuffer = null;
+                    } else {
+                        writeCursor();
+                    }
                 } finally {
                     accessLock.unlock();
                 }
             }
-
-            private void resetReader() {
-                tryCloseReader();
-                linesRead = 0;
-                nextBuffer = null;
-            }
         };
     }
 }
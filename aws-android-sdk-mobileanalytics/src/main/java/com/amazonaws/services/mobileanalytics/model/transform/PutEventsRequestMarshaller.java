@@ -34,6 +34,7 @@ import com.amazonaws.transform.Marshaller;
 import com.amazonaws.util.BinaryUtils;
 import com.amazonaws.util.StringUtils;
 import com.amazonaws.util.StringInputStream;
+import com.amazonaws.util.ContentOutputStream;
 import com.amazonaws.util.json.AwsJsonWriter;
 import com.amazonaws.util.json.JsonUtils;
 
@@ -77,8 +78,8 @@ public class PutEventsRequestMarshaller implements Marshaller<Request<PutEventsR
         request.setResourcePath(uriResourcePath);
         
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            GZIPOutputStream gos = new GZIPOutputStream(baos, 8192);
+            ContentOutputStream contentStream = new ContentOutputStream();
+            GZIPOutputStream gos = new GZIPOutputStream(contentStream, 8192);
             Writer writer = new OutputStreamWriter(gos, StringUtils.UTF8);
             AwsJsonWriter jsonWriter = JsonUtils.getJsonWriter(writer);
 
@@ -157,9 +158,8 @@ public class PutEventsRequestMarshaller implements Marshaller<Request<PutEventsR
             gos.finish();
             writer.close();
 
-            byte[] content = baos.toByteArray();
-            request.setContent(new ByteArrayInputStream(content));
-            request.addHeader("Content-Length", Integer.toString(content.length));
+            request.setContent(contentStream.toInputStream());
+            request.addHeader("Content-Length", Integer.toString(contentStream.size()));
             request.addHeader("Content-Type", "application/x-amz-json-1.0");
             request.addHeader("Content-Encoding", "gzip");
         } catch(Throwable t) {
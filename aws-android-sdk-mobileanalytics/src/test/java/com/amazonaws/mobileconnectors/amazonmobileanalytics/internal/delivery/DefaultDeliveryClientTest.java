@@ -135,21 +135,35 @@ public class DefaultDeliveryClientTest extends MobileAnalyticsTestBase {
         target.enqueueEventForDelivery(mockEvent);
         target.enqueueEventForDelivery(mockEvent);
 
+        // a single write task is scheduled for the three events
         ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
-        verify(mockEventExecutor, times(3)).execute(runnableCaptor.capture());
-        assertThat(runnableCaptor.getAllValues().size(), is(3));
-        for (Runnable runnable : runnableCaptor.getAllValues()) {
-            runnable.run();
+        verify(mockEventExecutor, times(1)).execute(runnableCaptor.capture());
+        runnableCaptor.getValue().run();
+
+        // capture the strings that were written to the event store at once
+        ArgumentCaptor<List> putEventsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mockEventStore, times(1)).putAll(putEventsCaptor.capture());
+
+        assertThat(putEventsCaptor.getValue().size(), is(3));
+        for (Object eventString : putEventsCaptor.getValue()) {
+            assertThat((String) eventString, is(expectedJson.toString()));
         }
+    }
 
-        // capture the strings that were written to the event store
-        ArgumentCaptor<String> putEventCaptor = ArgumentCaptor.forClass(String.class);
-        verify(mockEventStore, times(3)).put(putEventCaptor.capture());
+    @Test
+    public void enqueueEventForDelivery_tooManyPendingEvents_eventsDroppedAndCounted()
+            throws JSONException {
 
-        assertThat(putEventCaptor.getAllValues().size(), is(3));
-        for (String eventString : putEventCaptor.getAllValues()) {
-            assertThat(eventString, is(expectedJson.toString()));
+        InternalEvent mockEvent = mock(InternalEvent.class);
+        when(mockEvent.getEventType()).thenReturn("event_type");
+
+        // the write task is never run, so the events stay pending
+        for (int i = 0; i < 1005; i++) {
+            target.enqueueEventForDelivery(mockEvent);
         }
+
+        verify(mockEventExecutor, times(1)).execute(any(Runnable.class));
+        assertThat(target.getDroppedEventCount(), is(5L));
     }
 
     @Test
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.delivery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.MobileAnalyticsTestBase;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.AnalyticsContext;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.configuration.Configuration;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.system.DefaultFileManager;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.system.MockSystem;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.delivery.EventStore.EventIterator;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.utils.AnalyticsContextBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class FileEventStoreTest extends MobileAnalyticsTestBase {
+
+    private static final File ROOT_DIRECTORY = new File(
+            "/tmp/AmazonMobileAnalyticsSDK/tests/FileEventStoreTest");
+
+    private final long defaultCompactionThreshold = FileEventStore.COMPACTION_THRESHOLD;
+    private AnalyticsContext context;
+
+    @Before
+    public void setup() {
+        MockSystem.deleteRecursively(ROOT_DIRECTORY);
+        ROOT_DIRECTORY.mkdirs();
+
+        Configuration mockConfig = mock(Configuration.class);
+        when(mockConfig.optLong(anyString(), anyLong())).thenReturn(
+                FileEventStore.MAX_STORAGE_SIZE);
+        context = new AnalyticsContextBuilder()
+                .withConfiguration(mockConfig)
+                .withFileManager(new DefaultFileManager(ROOT_DIRECTORY))
+                .build();
+    }
+
+    @After
+    public void cleanup() {
+        FileEventStore.COMPACTION_THRESHOLD = defaultCompactionThreshold;
+        MockSystem.deleteRecursively(ROOT_DIRECTORY);
+    }
+
+    @Test
+    public void testReloadAfterRestart() {
+        FileEventStore store = new FileEventStore(context);
+        assertEquals(3, store.putAll(Arrays.asList("e1", "e2", "e3")));
+
+        EventIterator iterator = store.iterator();
+        assertEquals("e1", iterator.next());
+        assertEquals("e2", iterator.next());
+        iterator.removeReadEvents();
+
+        // the read events are skipped by a new store over the same files
+        assertEquals(Arrays.asList("e3"), readAll(new FileEventStore(context)));
+        assertEquals(Arrays.asList("e3"), readAll(store));
+    }
+
+    @Test
+    public void testInvalidCursorIsIgnored() throws IOException {
+        FileEventStore store = new FileEventStore(context);
+        store.putAll(Arrays.asList("e1", "e2"));
+
+        // points inside the first event
+        writeFile(cursorFile(), "1");
+        assertEquals(Arrays.asList("e1", "e2"), readAll(new FileEventStore(context)));
+
+        writeFile(cursorFile(), "100");
+        assertEquals(Arrays.asList("e1", "e2"), readAll(new FileEventStore(context)));
+
+        writeFile(cursorFile(), "not a number");
+        assertEquals(Arrays.asList("e1", "e2"), readAll(new FileEventStore(context)));
+    }
+
+    @Test
+    public void testCompaction() {
+        FileEventStore.COMPACTION_THRESHOLD = 10;
+        FileEventStore store = new FileEventStore(context);
+        store.putAll(Arrays.asList("event1", "event2", "event3"));
+
+        EventIterator iterator = store.iterator();
+        assertEquals("event1", iterator.next());
+        assertEquals("event2", iterator.next());
+        iterator.removeReadEvents();
+        assertEquals(21, eventsFile().length());
+
+        // the read events take the threshold, so the put drops them
+        assertTrue(store.put("event4"));
+        assertEquals(14, eventsFile().length());
+        assertFalse(new File(eventsFile().getParentFile(),
+                FileEventStore.EVENT_FILE_NAME + ".tmp").exists());
+
+        assertEquals(Arrays.asList("event3", "event4"), readAll(store));
+        assertEquals(Arrays.asList("event3", "event4"),
+                readAll(new FileEventStore(context)));
+    }
+
+    @Test
+    public void testCompactionOfAllEvents() {
+        FileEventStore store = new FileEventStore(context);
+        store.putAll(Arrays.asList("e1", "e2"));
+
+        EventIterator iterator = store.iterator();
+        assertEquals(Arrays.asList("e1", "e2"), readAll(iterator));
+        iterator.removeReadEvents();
+        assertEquals(0, eventsFile().length());
+
+        store.put("e3");
+        assertEquals(Arrays.asList("e3"), readAll(store));
+        assertEquals(Arrays.asList("e3"), readAll(new FileEventStore(context)));
+    }
+
+    @Test
+    public void testIteratorOpenAcrossCompaction() {
+        FileEventStore.COMPACTION_THRESHOLD = 1;
+        FileEventStore store = new FileEventStore(context);
+        store.putAll(Arrays.asList("e1", "e2", "e3"));
+
+        EventIterator iterator = store.iterator();
+        assertEquals("e1", iterator.next());
+        iterator.removeReadEvents();
+
+        // compacts e1 out of the file while the iterator is reading it
+        store.put("e4");
+        assertEquals(9, eventsFile().length());
+
+        assertEquals("e2", iterator.next());
+        iterator.removeReadEvents();
+
+        assertEquals(Arrays.asList("e3", "e4"), readAll(store));
+        assertEquals(Arrays.asList("e3", "e4"), readAll(new FileEventStore(context)));
+    }
+
+    private static List<String> readAll(EventStore store) {
+        return readAll(store.iterator());
+    }
+
+    private static List<String> readAll(EventIterator iterator) {
+        List<String> events = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            events.add(iterator.next());
+        }
+        return events;
+    }
+
+    private static File eventsFile() {
+        return new File(new File(ROOT_DIRECTORY, FileEventStore.EVENTS_DIRECTORY),
+                FileEventStore.EVENT_FILE_NAME);
+    }
+
+    private static File cursorFile() {
+        return new File(new File(ROOT_DIRECTORY, FileEventStore.EVENTS_DIRECTORY),
+                FileEventStore.EVENT_CURSOR_FILE_NAME);
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -64,6 +64,18 @@ public final class PersistableDownload extends PersistableTransfer {
      */
     private final String file;
 
+    /**
+     * The size of each part of a multipart download, or -1 if the object is
+     * downloaded with a single request.
+     */
+    private final long partSize;
+
+    /** The ETag of the object the parts of a multipart download belong to. */
+    private final String eTag;
+
+    /** The part numbers of the completed parts of a multipart download. */
+    private final int[] completedParts;
+
     @Deprecated
     public PersistableDownload() {
         this(null, null, null, null, null, false, null);
@@ -77,6 +89,21 @@ public final class PersistableDownload extends PersistableTransfer {
             ResponseHeaderOverrides responseHeaders,
             boolean isRequesterPays,
             String file) {
+        this(bucketName, key, versionId, range, responseHeaders, isRequesterPays, file, -1,
+                null, null);
+    }
+
+    public PersistableDownload(
+            String bucketName,
+            String key,
+            String versionId,
+            long[] range,
+            ResponseHeaderOverrides responseHeaders,
+            boolean isRequesterPays,
+            String file,
+            long partSize,
+            String eTag,
+            int[] completedParts) {
         this.bucketName = bucketName;
         this.key = key;
         this.versionId = versionId;
@@ -84,6 +111,9 @@ public final class PersistableDownload extends PersistableTransfer {
         this.responseHeaders = responseHeaders;
         this.isRequesterPays = isRequesterPays;
         this.file = file;
+        this.partSize = partSize;
+        this.eTag = eTag;
+        this.completedParts = completedParts == null ? null : completedParts.clone();
     }
 
     /**
@@ -136,6 +166,28 @@ public final class PersistableDownload extends PersistableTransfer {
         return file;
     }
 
+    /**
+     * Returns the part size of a multipart download, or -1 if the object is
+     * downloaded with a single request.
+     */
+    long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Returns the ETag of the object being downloaded in parts.
+     */
+    String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Returns the part numbers of the completed parts of a multipart download.
+     */
+    int[] getCompletedParts() {
+        return completedParts == null ? null : completedParts.clone();
+    }
+
     String getPauseType() {
         return pauseType;
     }
@@ -159,6 +211,17 @@ public final class PersistableDownload extends PersistableTransfer {
                 }
                 writer.endArray();
             }
+            if (partSize > 0) {
+                writer.name("partSize").value(partSize)
+                        .name("eTag").value(eTag);
+                writer.name("completedParts").beginArray();
+                if (completedParts != null) {
+                    for (int part : completedParts) {
+                        writer.value(part);
+                    }
+                }
+                writer.endArray();
+            }
             if (responseHeaders != null) {
                 writer.name("responseHeaders").beginObject()
                         .name("contentType").value(responseHeaders.getContentType())
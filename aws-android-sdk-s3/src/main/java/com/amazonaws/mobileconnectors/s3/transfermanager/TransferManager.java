@@ -35,6 +35,7 @@ import com.amazonaws.mobileconnectors.s3.transfermanager.internal.CopyImpl;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.CopyMonitor;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.DownloadImpl;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.DownloadMonitor;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipartDownloadCallable;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipleFileDownloadImpl;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipleFileTransferMonitor;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipleFileUploadImpl;
@@ -73,8 +74,10 @@ import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
@@ -597,6 +600,19 @@ public class TransferManager {
             final File file, final TransferStateChangeListener stateListener,
             final S3ProgressListener s3progressListener,
             final boolean resumeExistingDownload) {
+        return doDownload(getObjectRequest, file, stateListener, s3progressListener,
+                resumeExistingDownload, null);
+    }
+
+    /**
+     * Same as above, but takes the state of a paused download, so that a
+     * paused multipart download only fetches the parts not yet downloaded.
+     */
+    private Download doDownload(final GetObjectRequest getObjectRequest,
+            final File file, final TransferStateChangeListener stateListener,
+            final S3ProgressListener s3progressListener,
+            final boolean resumeExistingDownload,
+            final PersistableDownload persistableDownload) {
 
         appendSingleObjectUserAgent(getObjectRequest);
 
@@ -660,6 +676,48 @@ public class TransferManager {
         long totalBytesToDownload = lastByte - startingByte + 1;
         transferProgress.setTotalBytesToTransfer(totalBytesToDownload);
 
+        if (isDownloadParallelizable(objectMetadata, totalBytesToDownload,
+                resumeExistingDownload, file, persistableDownload)) {
+            long partSize = TransferManagerUtils.calculateOptimalPartSizeForDownload(
+                    totalBytesToDownload, configuration);
+            Set<Integer> completedParts = new HashSet<Integer>();
+            if (persistableDownload != null
+                    && persistableDownload.getPartSize() > 0
+                    && objectMetadata.getETag().equals(persistableDownload.getETag())
+                    && file.length() == totalBytesToDownload) {
+                // resume a paused multipart download of the same object
+                partSize = persistableDownload.getPartSize();
+                int[] parts = persistableDownload.getCompletedParts();
+                if (parts != null) {
+                    for (int part : parts) {
+                        completedParts.add(part);
+                    }
+                }
+                long partCount = (totalBytesToDownload + partSize - 1) / partSize;
+                long bytesCompleted = 0;
+                for (int part : completedParts) {
+                    bytesCompleted += part == partCount
+                            ? totalBytesToDownload - (partCount - 1) * partSize
+                            : partSize;
+                }
+                transferProgress.updateProgress(bytesCompleted);
+            }
+
+            S3Object s3Object = new S3Object();
+            s3Object.setBucketName(getObjectRequest.getBucketName());
+            s3Object.setKey(getObjectRequest.getKey());
+            s3Object.setObjectMetadata(objectMetadata);
+            download.setS3Object(s3Object);
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            Future<?> future = threadPool.submit(new MultipartDownloadCallable(s3, threadPool,
+                    download, getObjectRequest, file, startingByte, lastByte, partSize,
+                    objectMetadata.getETag(), completedParts, latch));
+            download.setMonitor(new DownloadMonitor(download, future));
+            latch.countDown();
+            return download;
+        }
+
         if (resumeExistingDownload) {
             if (file.exists()) {
                 long numberOfBytesRead = file.length();
@@ -744,6 +802,24 @@ public class TransferManager {
         return future;
     }
 
+    /**
+     * Returns whether the download should be split into parts fetched
+     * concurrently. Encrypted objects are decrypted as a stream and a
+     * download paused in the middle of a single stream is resumed as such.
+     */
+    private boolean isDownloadParallelizable(ObjectMetadata objectMetadata,
+            long totalBytesToDownload, boolean resumeExistingDownload, File file,
+            PersistableDownload persistableDownload) {
+        if (s3 instanceof AmazonS3EncryptionClient || objectMetadata.getETag() == null) {
+            return false;
+        }
+        if (resumeExistingDownload && file.exists()
+                && (persistableDownload == null || persistableDownload.getPartSize() <= 0)) {
+            return false;
+        }
+        return totalBytesToDownload >= configuration.getMultipartDownloadThreshold();
+    }
+
     /**
      * Downloads all objects in the virtual directory designated by the
      * keyPrefix given to the destination directory given. All virtual
@@ -1398,7 +1474,7 @@ public class TransferManager {
         request.setResponseHeaders(persistableDownload.getResponseHeaders());
 
         return doDownload(request, new File(persistableDownload.getFile()), null, null,
-                APPEND_MODE);
+                APPEND_MODE, persistableDownload);
     }
 
     /**
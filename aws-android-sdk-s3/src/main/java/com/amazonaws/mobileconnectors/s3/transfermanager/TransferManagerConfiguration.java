@@ -47,6 +47,12 @@ public class TransferManagerConfiguration {
     /** Default minimum size of each part for multi-part copy. */
     private static final long DEFAULT_MINIMUM_COPY_PART_SIZE = 100 * MB;
 
+    /** Default minimum part size for download parts. */
+    private static final long DEFAULT_MINIMUM_DOWNLOAD_PART_SIZE = 5 * MB;
+
+    /** Default size threshold for when to use multipart downloads. */
+    private static final long DEFAULT_MULTIPART_DOWNLOAD_THRESHOLD = 16 * MB;
+
     /**
      * The minimum part size for upload parts. Decreasing the minimum part size
      * will cause multipart uploads to be split into a larger number of smaller
@@ -85,6 +91,19 @@ public class TransferManagerConfiguration {
      */
     private long multipartCopyPartSize = DEFAULT_MINIMUM_COPY_PART_SIZE;
 
+    /**
+     * The minimum part size for download parts. Each part is fetched with its
+     * own ranged GET request.
+     */
+    private long minimumDownloadPartSize = DEFAULT_MINIMUM_DOWNLOAD_PART_SIZE;
+
+    /**
+     * The size threshold, in bytes, for when to use multipart downloads.
+     * Downloads of at least this size are split into byte ranges that are
+     * fetched concurrently, while smaller downloads use a single connection.
+     */
+    private long multipartDownloadThreshold = DEFAULT_MULTIPART_DOWNLOAD_THRESHOLD;
+
     /**
      * Returns the minimum part size for upload parts. Decreasing the minimum
      * part size causes multipart uploads to be split into a larger number of
@@ -192,4 +211,50 @@ public class TransferManagerConfiguration {
     public void setMultipartCopyThreshold(long multipartCopyThreshold) {
         this.multipartCopyThreshold = multipartCopyThreshold;
     }
+
+    /**
+     * Returns the minimum part size for download parts. Decreasing the minimum
+     * part size causes multipart downloads to be split into a larger number of
+     * smaller ranged requests.
+     *
+     * @return The minimum part size for download parts.
+     */
+    public long getMinimumDownloadPartSize() {
+        return minimumDownloadPartSize;
+    }
+
+    /**
+     * Sets the minimum part size for download parts. Decreasing the minimum
+     * part size causes multipart downloads to be split into a larger number of
+     * smaller ranged requests.
+     *
+     * @param minimumDownloadPartSize The minimum part size for download parts.
+     */
+    public void setMinimumDownloadPartSize(long minimumDownloadPartSize) {
+        this.minimumDownloadPartSize = minimumDownloadPartSize;
+    }
+
+    /**
+     * Returns the size threshold in bytes for when to use multipart downloads.
+     * Downloads of at least this size are split into byte ranges that are
+     * fetched concurrently on the transfer manager's thread pool.
+     *
+     * @return The size threshold in bytes for when to use multipart downloads.
+     */
+    public long getMultipartDownloadThreshold() {
+        return multipartDownloadThreshold;
+    }
+
+    /**
+     * Sets the size threshold in bytes for when to use multipart downloads.
+     * Downloads of at least this size are split into byte ranges that are
+     * fetched concurrently on the transfer manager's thread pool. Set it to
+     * {@link Long#MAX_VALUE} to always download with a single connection.
+     *
+     * @param multipartDownloadThreshold The size threshold in bytes for when
+     *            to use multipart downloads.
+     */
+    public void setMultipartDownloadThreshold(long multipartDownloadThreshold) {
+        this.multipartDownloadThreshold = multipartDownloadThreshold;
+    }
 }
@@ -24,9 +24,14 @@ import com.amazonaws.mobileconnectors.s3.transfermanager.exception.PauseExceptio
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DownloadImpl extends AbstractTransfer implements Download {
 
@@ -37,12 +42,46 @@ public class DownloadImpl extends AbstractTransfer implements Download {
      */
     private final PersistableDownload persistableDownload;
 
+    private final GetObjectRequest getObjectRequest;
+    private final File file;
+
+    /**
+     * The part size if the object is downloaded in parts, -1 otherwise.
+     */
+    private volatile long partSize = -1;
+
+    /**
+     * The ETag of the object being downloaded in parts.
+     */
+    private volatile String eTag;
+
+    /**
+     * The part numbers of the parts already written to the file.
+     */
+    private final Set<Integer> completedParts = Collections
+            .newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    /**
+     * The content of the parts being downloaded, aborted when the download is
+     * canceled or paused: a part blocked reading it doesn't notice an
+     * interrupt.
+     */
+    private final Set<S3ObjectInputStream> partContents = Collections
+            .newSetFromMap(new ConcurrentHashMap<S3ObjectInputStream, Boolean>());
+
+    /**
+     * Whether the download was canceled or paused.
+     */
+    private volatile boolean stopped;
+
     public DownloadImpl(String description, TransferProgress transferProgress,
             ProgressListenerChain progressListenerChain, S3Object s3Object,
             TransferStateChangeListener listener,
             GetObjectRequest getObjectRequest, File file) {
         super(description, transferProgress, progressListenerChain, listener);
         this.s3Object = s3Object;
+        this.getObjectRequest = getObjectRequest;
+        this.file = file;
         this.persistableDownload = captureDownloadState(getObjectRequest, file);
         S3ProgressPublisher.publishTransferPersistable(progressListenerChain,
                 persistableDownload);
@@ -87,8 +126,9 @@ public class DownloadImpl extends AbstractTransfer implements Download {
     public synchronized void abort() throws IOException {
 
         this.monitor.getFuture().cancel(true);
+        abortParts();
 
-        if (s3Object != null) {
+        if (s3Object != null && s3Object.getObjectContent() != null) {
             s3Object.getObjectContent().abort();
         }
         setState(TransferState.Canceled);
@@ -102,6 +142,7 @@ public class DownloadImpl extends AbstractTransfer implements Download {
     public synchronized void abortWithoutNotifyingStateChangeListener() throws IOException {
 
         this.monitor.getFuture().cancel(true);
+        abortParts();
 
         synchronized (this) {
             this.state = TransferState.Canceled;
@@ -115,6 +156,78 @@ public class DownloadImpl extends AbstractTransfer implements Download {
         this.s3Object = s3Object;
     }
 
+    /**
+     * Marks this download as a multipart download, so that pausing it
+     * captures which parts are done, and publishes the new resumable state.
+     *
+     * @param partSize the size of each part
+     * @param eTag the ETag of the object being downloaded
+     * @param completedParts the parts completed before, when the download is
+     *            resumed
+     */
+    public void setMultipartState(long partSize, String eTag, Set<Integer> completedParts) {
+        this.partSize = partSize;
+        this.eTag = eTag;
+        this.completedParts.addAll(completedParts);
+        if (persistableDownload != null) {
+            S3ProgressPublisher.publishTransferPersistable(progressListenerChain,
+                    captureMultipartDownloadState());
+        }
+    }
+
+    /**
+     * Records that a part of a multipart download was written to the file.
+     *
+     * @param partNumber the part number
+     */
+    public void partCompleted(int partNumber) {
+        completedParts.add(partNumber);
+    }
+
+    /**
+     * Registers the content of a part being downloaded, so that canceling or
+     * pausing the download aborts it.
+     *
+     * @param content the content of the part
+     * @return false if the download was stopped already, in which case the
+     *         content isn't registered
+     */
+    public boolean addPartContent(S3ObjectInputStream content) {
+        partContents.add(content);
+        if (stopped) {
+            partContents.remove(content);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Unregisters the content of a part once it is read.
+     *
+     * @param content the content of the part
+     */
+    public void removePartContent(S3ObjectInputStream content) {
+        partContents.remove(content);
+    }
+
+    /**
+     * Returns whether the download was canceled or paused, in which case the
+     * content of its parts may have been cut short.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Stops the parts being downloaded, and those yet to start.
+     */
+    private void abortParts() {
+        stopped = true;
+        for (S3ObjectInputStream content : partContents) {
+            content.abort();
+        }
+    }
+
     /**
      * This method is also responsible for firing COMPLETED signal to the
      * listeners.
@@ -145,6 +258,26 @@ public class DownloadImpl extends AbstractTransfer implements Download {
         return null;
     }
 
+    /**
+     * Returns the captured state of a multipart download, including the parts
+     * that don't need to be downloaded again.
+     */
+    private PersistableDownload captureMultipartDownloadState() {
+        Integer[] parts = completedParts.toArray(new Integer[0]);
+        int[] completed = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            completed[i] = parts[i];
+        }
+        Arrays.sort(completed);
+        return new PersistableDownload(
+                getObjectRequest.getBucketName(),
+                getObjectRequest.getKey(), getObjectRequest.getVersionId(),
+                getObjectRequest.getRange(),
+                getObjectRequest.getResponseHeaders(),
+                getObjectRequest.isRequesterPays(), file.getAbsolutePath(),
+                partSize, eTag, completed);
+    }
+
     /*
      * (non-Javadoc)
      * @see com.amazonaws.mobileconnectors.s3.transfermanager.Download#pause()
@@ -154,11 +287,15 @@ public class DownloadImpl extends AbstractTransfer implements Download {
         boolean forceCancel = true;
         TransferState currentState = getState();
         this.monitor.getFuture().cancel(true);
+        abortParts();
 
         if (persistableDownload == null) {
             throw new PauseException(TransferManagerUtils.determinePauseStatus(
                     currentState, forceCancel));
         }
+        if (partSize > 0) {
+            return captureMultipartDownloadState();
+        }
         return persistableDownload;
     }
 }
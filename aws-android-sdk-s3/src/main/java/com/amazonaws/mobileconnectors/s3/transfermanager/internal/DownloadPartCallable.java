@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Downloads one byte range of a multipart download and writes it at the given
+ * position of the destination file, using positional {@link FileChannel}
+ * writes so that all parts can write to the same file concurrently.
+ * <p>
+ * The part content is registered with the download while it is read, so that
+ * canceling or pausing the download aborts the read rather than wait for it.
+ */
+public class DownloadPartCallable implements Callable<Integer> {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final AmazonS3 s3;
+    private final GetObjectRequest request;
+    private final int partNumber;
+    private final File file;
+    private final long position;
+    private final DownloadImpl download;
+
+    /**
+     * @param s3 the client used to fetch the part
+     * @param request a ranged request for the part
+     * @param partNumber the part number
+     * @param file the destination file
+     * @param position the file position of the first byte of the part
+     * @param download the download the part belongs to, notified once the
+     *            part is in the file
+     */
+    public DownloadPartCallable(AmazonS3 s3, GetObjectRequest request, int partNumber,
+            File file, long position, DownloadImpl download) {
+        this.s3 = s3;
+        this.request = request;
+        this.partNumber = partNumber;
+        this.file = file;
+        this.position = position;
+        this.download = download;
+    }
+
+    /**
+     * Returns the part number once the part is written to the file.
+     */
+    @Override
+    public Integer call() throws Exception {
+        S3Object s3Object = s3.getObject(request);
+        if (s3Object == null) {
+            throw new AmazonClientException("Part " + partNumber + " of " + request.getKey()
+                    + " could not be downloaded because the object was modified.");
+        }
+        S3ObjectInputStream in = s3Object.getObjectContent();
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            if (!download.addPartContent(in)) {
+                throw new CancellationException("Download of " + request.getKey()
+                        + " was stopped");
+            }
+            FileChannel channel = raf.getChannel();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer bb = ByteBuffer.wrap(buffer);
+            long offset = position;
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) > 0) {
+                bb.clear().limit(bytesRead);
+                while (bb.hasRemaining()) {
+                    offset += channel.write(bb, offset);
+                }
+            }
+        } catch (Exception e) {
+            // the rest of the content isn't worth reading to reuse the
+            // connection
+            in.abort();
+            throw e;
+        } finally {
+            download.removePartContent(in);
+            try {
+                in.close();
+            } finally {
+                if (raf != null) {
+                    raf.close();
+                }
+            }
+        }
+        // an aborted read may just look like the end of the content
+        if (download.isStopped()) {
+            throw new CancellationException("Download of " + request.getKey()
+                    + " was stopped");
+        }
+        download.partCompleted(partNumber);
+        return partNumber;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer.TransferState;
+import com.amazonaws.mobileconnectors.s3.transfermanager.TransferManager;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Downloads an object, or a range of it, as a number of parts fetched
+ * concurrently on the transfer manager's thread pool. Part N covers the
+ * (N-1)th partSize bytes of the range and is written at the same offset of
+ * the file, which is sized to the whole range up front.
+ * <p>
+ * This callable runs on the same thread pool as its parts, so it never just
+ * waits for a part that hasn't started: it runs such a part itself. That keeps
+ * a pool full of multipart downloads from deadlocking.
+ */
+public class MultipartDownloadCallable implements Callable<Object> {
+    private static final Log log = LogFactory.getLog(MultipartDownloadCallable.class);
+
+    private final AmazonS3 s3;
+    private final ExecutorService threadPool;
+    private final DownloadImpl download;
+    private final GetObjectRequest getObjectRequest;
+    private final File file;
+    private final long startingByte;
+    private final long lastByte;
+    private final long partSize;
+    private final String eTag;
+    private final Set<Integer> completedParts;
+    private final CountDownLatch latch;
+
+    /**
+     * @param s3 the client used to fetch the parts
+     * @param threadPool the thread pool the parts run on
+     * @param download the download to report to
+     * @param getObjectRequest the original request, whose progress listener
+     *            and request options are copied to each part
+     * @param file the destination file
+     * @param startingByte the first byte of the object to download
+     * @param lastByte the last byte of the object to download, inclusive
+     * @param partSize the size of each part
+     * @param eTag the ETag of the object, each part must match it
+     * @param completedParts the parts that are already in the file
+     * @param latch a latch to wait on before starting
+     */
+    public MultipartDownloadCallable(AmazonS3 s3, ExecutorService threadPool,
+            DownloadImpl download, GetObjectRequest getObjectRequest, File file,
+            long startingByte, long lastByte, long partSize, String eTag,
+            Set<Integer> completedParts, CountDownLatch latch) {
+        this.s3 = s3;
+        this.threadPool = threadPool;
+        this.download = download;
+        this.getObjectRequest = getObjectRequest;
+        this.file = file;
+        this.startingByte = startingByte;
+        this.lastByte = lastByte;
+        this.partSize = partSize;
+        this.eTag = eTag;
+        this.completedParts = completedParts;
+        this.latch = latch;
+    }
+
+    @Override
+    public Object call() throws Exception {
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        List<PartTask> tasks = new ArrayList<PartTask>();
+        try {
+            latch.await();
+            download.setState(TransferState.InProgress);
+            download.setMultipartState(partSize, eTag, completedParts);
+
+            long totalBytes = lastByte - startingByte + 1;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                if (raf.length() != totalBytes) {
+                    raf.setLength(totalBytes);
+                }
+            } finally {
+                raf.close();
+            }
+
+            int partCount = (int) ((totalBytes + partSize - 1) / partSize);
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                if (completedParts.contains(partNumber)) {
+                    continue;
+                }
+                long offset = (partNumber - 1) * partSize;
+                long partLastByte = Math.min(startingByte + offset + partSize - 1, lastByte);
+                PartTask task = new PartTask(new DownloadPartCallable(s3,
+                        newPartRequest(startingByte + offset, partLastByte), partNumber,
+                        file, offset, download));
+                tasks.add(task);
+                futures.add(threadPool.submit(task));
+            }
+            log.debug("Downloading " + futures.size() + " of " + partCount + " parts of "
+                    + getObjectRequest.getKey());
+
+            for (int i = 0; i < futures.size(); i++) {
+                if (tasks.get(i).claim()) {
+                    // not started yet, run it here rather than wait for a
+                    // thread
+                    tasks.get(i).part.call();
+                } else {
+                    try {
+                        futures.get(i).get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof Exception) {
+                            throw (Exception) cause;
+                        }
+                        throw (Error) cause;
+                    }
+                }
+            }
+
+            download.setState(TransferState.Completed);
+            return true;
+        } catch (Throwable t) {
+            for (Future<Integer> f : futures) {
+                f.cancel(true);
+            }
+            // Downloads aren't allowed to move from canceled to failed
+            if (download.getState() != TransferState.Canceled) {
+                download.setState(TransferState.Failed);
+            }
+            if (t instanceof Exception)
+                throw (Exception) t;
+            else
+                throw (Error) t;
+        }
+    }
+
+    /**
+     * A part that is run by whichever of a pool thread and this callable gets
+     * to it first.
+     */
+    private static final class PartTask implements Callable<Integer> {
+        private final DownloadPartCallable part;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        PartTask(DownloadPartCallable part) {
+            this.part = part;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            return claim() ? part.call() : null;
+        }
+    }
+
+    /**
+     * Creates the request of a part, which only differs from the original
+     * request in its range and in that it must match the ETag.
+     */
+    private GetObjectRequest newPartRequest(long firstByte, long lastByte) {
+        GetObjectRequest request = new GetObjectRequest(getObjectRequest.getBucketName(),
+                getObjectRequest.getKey(), getObjectRequest.getVersionId())
+                .withRange(firstByte, lastByte)
+                .withMatchingETagConstraint(eTag)
+                .withSSECustomerKey(getObjectRequest.getSSECustomerKey())
+                .withResponseHeaders(getObjectRequest.getResponseHeaders())
+                .withGeneralProgressListener(getObjectRequest.getGeneralProgressListener());
+        request.setRequesterPays(getObjectRequest.isRequesterPays());
+        TransferManager.appendMultipartUserAgent(request);
+        return request;
+    }
+}
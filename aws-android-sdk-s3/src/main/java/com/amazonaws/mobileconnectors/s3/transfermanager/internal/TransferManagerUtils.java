@@ -164,6 +164,21 @@ public class TransferManagerUtils {
                 configuration.getMultipartCopyPartSize());
     }
 
+    /**
+     * Returns the optimal part size for a multipart download of the given
+     * number of bytes: the configured minimum, unless that would make more
+     * than {@link com.amazonaws.services.s3.internal.Constants#MAXIMUM_UPLOAD_PARTS}
+     * parts.
+     */
+    public static long calculateOptimalPartSizeForDownload(long contentLength,
+            TransferManagerConfiguration configuration) {
+        double optimalPartSize = (double) contentLength / (double) MAXIMUM_UPLOAD_PARTS;
+        // round up so we don't create more parts than an upload could have
+        optimalPartSize = Math.ceil(optimalPartSize);
+        return (long) Math.max(optimalPartSize,
+                configuration.getMinimumDownloadPartSize());
+    }
+
     /**
      * Determines the pause status based on the current state of transfer.
      */
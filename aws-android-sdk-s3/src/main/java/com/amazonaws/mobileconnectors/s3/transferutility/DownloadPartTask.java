@@ -0,0 +1,143 @@
+/**
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import android.util.Log;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+
+/**
+ * Downloads one byte range of a multipart download and writes it at the
+ * matching offset of the file. The file is shared by all parts, so the data is
+ * written with positional {@link FileChannel} writes. The number of bytes
+ * written is saved in the part record from time to time so that an
+ * interrupted part resumes where it stopped.
+ */
+class DownloadPartTask implements Callable<Boolean> {
+
+    private final static String TAG = "DownloadPartTask";
+
+    /**
+     * How many bytes are written between two saves of the part progress.
+     */
+    private static final long PROGRESS_SAVE_INTERVAL = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final TransferRecord part;
+    private final GetObjectRequest request;
+    private final AmazonS3 s3;
+    private final TransferDBUtil dbUtil;
+
+    /**
+     * @param part the part record, its bytesCurrent is the number of bytes
+     *            already in the file
+     * @param request a request whose range is the rest of the part
+     * @param s3 Low-level S3 client
+     * @param dbUtil database util
+     */
+    public DownloadPartTask(TransferRecord part, GetObjectRequest request, AmazonS3 s3,
+            TransferDBUtil dbUtil) {
+        this.part = part;
+        this.request = request;
+        this.s3 = s3;
+        this.dbUtil = dbUtil;
+    }
+
+    /*
+     * Runs part download task and returns whether successfully downloaded.
+     */
+    @Override
+    public Boolean call() throws Exception {
+        long bytesCurrent = part.bytesCurrent;
+        long bytesSaved = bytesCurrent;
+        RandomAccessFile raf = null;
+        InputStream in = null;
+        try {
+            S3Object object = s3.getObject(request);
+            if (object == null) {
+                throw new IllegalStateException("Object " + part.key
+                        + " was modified during the download.");
+            }
+            in = object.getObjectContent();
+            raf = new RandomAccessFile(new File(part.file), "rw");
+            FileChannel channel = raf.getChannel();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer bb = ByteBuffer.wrap(buffer);
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) > 0) {
+                bb.clear().limit(bytesRead);
+                long position = part.fileOffset + bytesCurrent;
+                while (bb.hasRemaining()) {
+                    position += channel.write(bb, position);
+                }
+                bytesCurrent += bytesRead;
+                if (bytesCurrent - bytesSaved >= PROGRESS_SAVE_INTERVAL) {
+                    dbUtil.updateBytesTransferred(part.id, bytesCurrent);
+                    bytesSaved = bytesCurrent;
+                }
+            }
+            if (bytesCurrent != part.bytesTotal) {
+                throw new IllegalStateException("Part " + part.partNumber + " ended after "
+                        + bytesCurrent + " of " + part.bytesTotal + " bytes.");
+            }
+            dbUtil.updateBytesTransferred(part.id, bytesCurrent);
+            dbUtil.updateState(part.id, TransferState.PART_COMPLETED);
+            return true;
+        } catch (Exception e) {
+            if (bytesCurrent != bytesSaved) {
+                dbUtil.updateBytesTransferred(part.id, bytesCurrent);
+            }
+            dbUtil.updateState(part.id, TransferState.FAILED);
+            if (e instanceof AbortedException
+                    || e instanceof ClosedByInterruptException
+                    || e.getCause() != null && (e.getCause() instanceof InterruptedIOException
+                    || e.getCause() instanceof InterruptedException)) {
+                // thread interrupted by user
+                return false;
+            }
+            Log.e(TAG, "Encountered error downloading part " + e.getMessage());
+            throw e;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (Exception e) {
+                    Log.d(TAG, "Failed to close object content stream", e);
+                }
+            }
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (Exception e) {
+                    Log.d(TAG, "Failed to close file", e);
+                }
+            }
+        }
+    }
+}
@@ -15,28 +15,52 @@
 
 package com.amazonaws.mobileconnectors.s3.transferutility;
 
+import static com.amazonaws.services.s3.internal.Constants.MB;
+
+import android.content.ContentValues;
 import android.util.Log;
 
 import com.amazonaws.AbortedException;
+import com.amazonaws.event.ProgressListener;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Performs download operation and returns a Boolean value indicating whether
- * the file has been downloaded successfully.
+ * the file has been downloaded successfully. Objects larger than
+ * {@link #MINIMUM_DOWNLOAD_PART_SIZE} are split into byte ranges that are
+ * downloaded concurrently by {@link DownloadPartTask}s. The ranges are saved
+ * as part records, so a resumed download only fetches the missing ones.
  */
 class DownloadTask implements Callable<Boolean> {
 
     private static final String TAG = "DownloadTask";
 
+    /**
+     * The minimum size of a part of a multipart download.
+     */
+    static final long MINIMUM_DOWNLOAD_PART_SIZE = 5 * MB;
+
+    /**
+     * The maximum number of parts of a multipart download.
+     */
+    private static final int MAXIMUM_DOWNLOAD_PARTS = 1000;
+
     private final AmazonS3 s3;
     private final TransferRecord download;
+    private final TransferDBUtil dbUtil;
     private final TransferStatusUpdater updater;
 
     /**
@@ -45,10 +69,14 @@ class DownloadTask implements Callable<Boolean> {
      * @param download A TransferRecord object storing all the information of
      *            the download
      * @param s3 Low-level S3 client
+     * @param dbUtil database util
+     * @param updater status updater
      */
-    public DownloadTask(TransferRecord download, AmazonS3 s3, TransferStatusUpdater updater) {
+    public DownloadTask(TransferRecord download, AmazonS3 s3, TransferDBUtil dbUtil,
+            TransferStatusUpdater updater) {
         this.download = download;
         this.s3 = s3;
+        this.dbUtil = dbUtil;
         this.updater = updater;
     }
 
@@ -67,6 +95,22 @@ class DownloadTask implements Callable<Boolean> {
             TransferUtility.appendTransferServiceUserAgentString(getObjectMetadataRequest);
             ObjectMetadata objectMetadata = s3.getObjectMetadata(getObjectMetadataRequest);
             final long bytesTotal = objectMetadata.getContentLength();
+            final String eTag = objectMetadata.getETag();
+
+            List<TransferRecord> parts = dbUtil.queryPartRecordsOfDownload(download.id);
+            if (!parts.isEmpty()
+                    && (eTag == null || !eTag.equals(download.eTag)
+                    || file.length() != bytesTotal)) {
+                /*
+                 * Either the object has changed or the file isn't the one the
+                 * parts were written to. Nothing downloaded so far can be
+                 * trusted.
+                 */
+                Log.d(TAG, "Restart multipart download " + download.id);
+                dbUtil.deletePartRecords(download.id);
+                parts.clear();
+                file.delete();
+            }
 
             long bytesCurrent = file.length();
             if (bytesCurrent > bytesTotal) {
@@ -74,31 +118,16 @@ class DownloadTask implements Callable<Boolean> {
                         "Unable to determine the range for download operation.");
             }
 
-            final GetObjectRequest getObjectRequest = new GetObjectRequest(download.bucketName,
-                    download.key);
-            TransferUtility.appendTransferServiceUserAgentString(getObjectRequest);
-            if (bytesCurrent > 0) {
-                Log.d(TAG, String.format("Resume transfer %d from %d bytes", download.id, bytesCurrent));
-                getObjectRequest.setRange(bytesCurrent, bytesTotal - 1);
-            }
-
-            updater.updateProgress(download.id, bytesCurrent, bytesTotal);
-            getObjectRequest.setGeneralProgressListener(updater.newProgressListener(download.id,
-                    bytesCurrent, bytesTotal));
-            ObjectMetadata metadata = s3.getObject(getObjectRequest, file);
-            if (metadata == null) {
-                updater.throwError(download.id, new IllegalStateException(
-                        "AmazonS3.getObject returns null"));
-                updater.updateState(download.id, TransferState.FAILED);
-            } else {
-                updater.updateProgress(download.id, bytesTotal, bytesTotal);
-                updater.updateState(download.id, TransferState.COMPLETED);
-                return true;
+            if (parts.isEmpty()) {
+                long partSize = getOptimalPartSize(bytesTotal - bytesCurrent);
+                if (eTag == null || bytesTotal - bytesCurrent <= partSize) {
+                    return downloadInOneRequest(file, bytesCurrent, bytesTotal);
+                }
+                parts = createPartRecords(file, bytesCurrent, bytesTotal, partSize, eTag);
             }
+            return downloadPartsAndWaitForCompletion(file, parts, bytesTotal, eTag);
         } catch (Exception e) {
-            if (e instanceof AbortedException
-                    || e.getCause() != null && (e.getCause() instanceof InterruptedIOException
-                    || e.getCause() instanceof InterruptedException)) {
+            if (isInterruptedByUser(e)) {
                 // thread interrupted by user
                 Log.d(TAG, "Transfer " + download.id + " is interrupted by user");
                 // don't update the state as it's set by caller who interrupted
@@ -111,4 +140,165 @@ class DownloadTask implements Callable<Boolean> {
         }
         return false;
     }
+
+    /**
+     * Downloads the rest of the object in a single request, appending to the
+     * file.
+     */
+    private Boolean downloadInOneRequest(File file, long bytesCurrent, long bytesTotal) {
+        final GetObjectRequest getObjectRequest = new GetObjectRequest(download.bucketName,
+                download.key);
+        TransferUtility.appendTransferServiceUserAgentString(getObjectRequest);
+        if (bytesCurrent > 0) {
+            Log.d(TAG, String.format("Resume transfer %d from %d bytes", download.id, bytesCurrent));
+            getObjectRequest.setRange(bytesCurrent, bytesTotal - 1);
+        }
+
+        updater.updateProgress(download.id, bytesCurrent, bytesTotal);
+        getObjectRequest.setGeneralProgressListener(updater.newProgressListener(download.id,
+                bytesCurrent, bytesTotal));
+        ObjectMetadata metadata = s3.getObject(getObjectRequest, file);
+        if (metadata == null) {
+            updater.throwError(download.id, new IllegalStateException(
+                    "AmazonS3.getObject returns null"));
+            updater.updateState(download.id, TransferState.FAILED);
+            return false;
+        }
+        updater.updateProgress(download.id, bytesTotal, bytesTotal);
+        updater.updateState(download.id, TransferState.COMPLETED);
+        return true;
+    }
+
+    /**
+     * Splits the range [bytesCurrent, bytesTotal) of the object into parts,
+     * saves them and sizes the file so that every part can be written at its
+     * own offset.
+     */
+    private List<TransferRecord> createPartRecords(File file, long bytesCurrent,
+            long bytesTotal, long partSize, String eTag) throws IOException {
+        int partCount = (int) Math.ceil((double) (bytesTotal - bytesCurrent) / partSize);
+        ContentValues[] valuesArray = new ContentValues[partCount];
+        long rangeStart = bytesCurrent;
+        for (int i = 0; i < partCount; i++) {
+            long rangeLast = Math.min(rangeStart + partSize, bytesTotal) - 1;
+            valuesArray[i] = dbUtil.generateContentValuesForMultiPartDownload(
+                    download.bucketName, download.key, file, i + 1, rangeStart, rangeLast,
+                    i == partCount - 1 ? 1 : 0);
+            rangeStart = rangeLast + 1;
+        }
+
+        // the ETag ties the parts to this version of the object
+        download.eTag = eTag;
+        dbUtil.updateETag(download.id, eTag);
+        if (dbUtil.bulkInsertPartRecords(download.id, valuesArray) == 0) {
+            throw new IllegalStateException("Failed to save the parts of download "
+                    + download.id);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(bytesTotal);
+        } finally {
+            raf.close();
+        }
+        return dbUtil.queryPartRecordsOfDownload(download.id);
+    }
+
+    private Boolean downloadPartsAndWaitForCompletion(File file, List<TransferRecord> parts,
+            long bytesTotal, String eTag) throws ExecutionException {
+        long bytesRemaining = 0;
+        List<TransferRecord> pendingParts = new ArrayList<TransferRecord>();
+        for (TransferRecord part : parts) {
+            if (!TransferState.PART_COMPLETED.equals(part.state)) {
+                pendingParts.add(part);
+                bytesRemaining += part.bytesTotal - part.bytesCurrent;
+            }
+        }
+        long bytesAlreadyTransferred = bytesTotal - bytesRemaining;
+        if (bytesAlreadyTransferred > 0) {
+            Log.d(TAG, String.format("Resume transfer %d from %d bytes", download.id,
+                    bytesAlreadyTransferred));
+        }
+        updater.updateProgress(download.id, bytesAlreadyTransferred, bytesTotal);
+
+        ProgressListener transferProgress = updater.newProgressListener(download.id,
+                bytesAlreadyTransferred, bytesTotal);
+        Log.d(TAG, "multipart download " + download.id + " in " + pendingParts.size()
+                + " parts.");
+        ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (TransferRecord part : pendingParts) {
+            GetObjectRequest request = new GetObjectRequest(download.bucketName, download.key)
+                    .withRange(part.rangeStart + part.bytesCurrent, part.rangeLast)
+                    .withMatchingETagConstraint(eTag);
+            TransferUtility.appendMultipartTransferServiceUserAgentString(request);
+            request.setGeneralProgressListener(transferProgress);
+            futures.add(TransferThreadPool.submitTask(new DownloadPartTask(part, request, s3,
+                    dbUtil)));
+        }
+        try {
+            boolean isSuccess = true;
+            /*
+             * Future.get() will block the current thread until the method
+             * returns.
+             */
+            for (Future<Boolean> f : futures) {
+                // DownloadPartTask returns false when it's interrupted by user
+                // and the state is set by caller
+                boolean b = f.get();
+                isSuccess &= b;
+            }
+            if (!isSuccess) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            /*
+             * Future.get() will catch InterruptedException, but it's not a
+             * failure, it may be caused by a pause operation from applications.
+             */
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            // abort by user
+            Log.d(TAG, "Transfer " + download.id + " is interrupted by user");
+            return false;
+        } catch (ExecutionException ee) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            // handle pause, cancel, etc
+            if (ee.getCause() != null && ee.getCause() instanceof Exception) {
+                Exception e = (Exception) ee.getCause();
+                if (isInterruptedByUser(e)) {
+                    // abort by user
+                    Log.d(TAG, "Transfer " + download.id + " is interrupted by user");
+                    // don't update the state as it's set by caller who
+                    // interrupted the transfer
+                    return false;
+                }
+                updater.throwError(download.id, e);
+            }
+            updater.updateState(download.id, TransferState.FAILED);
+            return false;
+        }
+
+        dbUtil.deletePartRecords(download.id);
+        updater.updateProgress(download.id, bytesTotal, bytesTotal);
+        updater.updateState(download.id, TransferState.COMPLETED);
+        return true;
+    }
+
+    /**
+     * Gets the part size so that the given number of bytes is split into at
+     * most {@link #MAXIMUM_DOWNLOAD_PARTS} parts.
+     */
+    private static long getOptimalPartSize(long bytes) {
+        long partSize = (long) Math.ceil((double) bytes / (double) MAXIMUM_DOWNLOAD_PARTS);
+        return Math.max(partSize, MINIMUM_DOWNLOAD_PART_SIZE);
+    }
+
+    private static boolean isInterruptedByUser(Exception e) {
+        return e instanceof AbortedException
+                || e.getCause() != null && (e.getCause() instanceof InterruptedIOException
+                || e.getCause() instanceof InterruptedException);
+    }
 }
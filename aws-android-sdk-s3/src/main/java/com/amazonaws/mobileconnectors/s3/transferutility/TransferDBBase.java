@@ -217,6 +217,10 @@ class TransferDBBase {
                                     + id + " and " + selection, selectionArgs);
                 }
                 break;
+            case TRANSFER_PART:
+                rowsDeleted = db.delete(TransferTable.TABLE_TRANSFER,
+                        TransferTable.COLUMN_MAIN_UPLOAD_ID + "=" + uri.getLastPathSegment(), null);
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
@@ -250,6 +254,23 @@ class TransferDBBase {
                     db.endTransaction();
                 }
                 break;
+            case TRANSFER_PART:
+                int mainTransferId = Integer.parseInt(uri.getLastPathSegment());
+                try {
+                    db.beginTransaction();
+                    for (ContentValues values : valuesArray) {
+                        values.put(TransferTable.COLUMN_MAIN_UPLOAD_ID, mainTransferId);
+                        db.insertOrThrow(TransferTable.TABLE_TRANSFER, null, values);
+                    }
+                    db.setTransactionSuccessful();
+                    mainUploadId = mainTransferId;
+                } catch (Exception e) {
+                    Log.e(TransferDBBase.class.getSimpleName(),
+                            "bulkInsert error : " + e.getMessage());
+                } finally {
+                    db.endTransaction();
+                }
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
@@ -123,6 +123,18 @@ class TransferDBUtil {
         return transferDBBase.bulkInsert(transferDBBase.getContentUri(), valuesArray);
     }
 
+    /**
+     * Inserts the part records of a multipart download at a time. The records
+     * are linked to the given main transfer record.
+     *
+     * @param mainTransferId The id of the main download record.
+     * @param valuesArray An array of values to insert.
+     * @return The mainTransferId if the records were inserted, 0 otherwise.
+     */
+    public int bulkInsertPartRecords(int mainTransferId, ContentValues[] valuesArray) {
+        return transferDBBase.bulkInsert(getPartUri(mainTransferId), valuesArray);
+    }
+
     /**
      * Writes transfer status including transfer state, current transferred
      * bytes and total bytes into database.
@@ -445,6 +457,40 @@ class TransferDBUtil {
         return transferDBBase.delete(getRecordUri(id), null, null);
     }
 
+    /**
+     * Deletes the part records of a multipart transfer.
+     *
+     * @param mainTransferId The id of the main transfer record.
+     * @return Number of rows deleted.
+     */
+    public int deletePartRecords(int mainTransferId) {
+        return transferDBBase.delete(getPartUri(mainTransferId), null, null);
+    }
+
+    /**
+     * Queries the part records of a multipart download, ordered by part
+     * number. Completed parts are included so that the caller can tell how
+     * many bytes have been downloaded already.
+     *
+     * @param mainTransferId The id of the main download record.
+     * @return A list of TransferRecord, one per part.
+     */
+    public List<TransferRecord> queryPartRecordsOfDownload(int mainTransferId) {
+        List<TransferRecord> parts = new ArrayList<TransferRecord>();
+        Cursor c = transferDBBase.query(getPartUri(mainTransferId), null, null, null,
+                TransferTable.COLUMN_PART_NUM);
+        try {
+            while (c.moveToNext()) {
+                TransferRecord part = new TransferRecord(0);
+                part.updateFromDB(c);
+                parts.add(part);
+            }
+        } finally {
+            c.close();
+        }
+        return parts;
+    }
+
     /**
      * Queries all the PartETags of completed parts from the multipart upload
      * specified by the mainUploadId. The list of PartETags is used to complete
@@ -554,6 +600,42 @@ class TransferDBUtil {
         return values;
     }
 
+    /**
+     * Generates a ContentValues object to insert into the database with the
+     * given values for a part of a multipart download. The part covers the
+     * byte range [rangeStart, rangeLast] of the object and is written to the
+     * same offset of the file.
+     *
+     * @param bucket The name of the bucket to download from.
+     * @param key The key of the object to download.
+     * @param file The file to download to.
+     * @param partNumber The part number of this part.
+     * @param rangeStart The first byte of the part.
+     * @param rangeLast The last byte of the part, inclusive.
+     * @param isLastPart Whether this part is the last part of the download.
+     * @return The ContentValues object generated.
+     */
+    public ContentValues generateContentValuesForMultiPartDownload(String bucket,
+            String key, File file, int partNumber, long rangeStart, long rangeLast,
+            int isLastPart) {
+        ContentValues values = new ContentValues();
+        values.put(TransferTable.COLUMN_TYPE, TransferType.DOWNLOAD.toString());
+        values.put(TransferTable.COLUMN_STATE, TransferState.WAITING.toString());
+        values.put(TransferTable.COLUMN_BUCKET_NAME, bucket);
+        values.put(TransferTable.COLUMN_KEY, key);
+        values.put(TransferTable.COLUMN_FILE, file.getAbsolutePath());
+        values.put(TransferTable.COLUMN_BYTES_CURRENT, 0l);
+        values.put(TransferTable.COLUMN_BYTES_TOTAL, rangeLast - rangeStart + 1);
+        values.put(TransferTable.COLUMN_IS_MULTIPART, 1);
+        values.put(TransferTable.COLUMN_PART_NUM, partNumber);
+        values.put(TransferTable.COLUMN_FILE_OFFSET, rangeStart);
+        values.put(TransferTable.COLUMN_DATA_RANGE_START, rangeStart);
+        values.put(TransferTable.COLUMN_DATA_RANGE_LAST, rangeLast);
+        values.put(TransferTable.COLUMN_IS_LAST_PART, isLastPart);
+        values.put(TransferTable.COLUMN_IS_ENCRYPTED, 0);
+        return values;
+    }
+
     /**
      * Adds mappings to a ContentValues object for the data in the passed in
      * ObjectMetadata
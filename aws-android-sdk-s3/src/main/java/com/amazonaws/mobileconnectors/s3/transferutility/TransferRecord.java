@@ -155,7 +155,8 @@ class TransferRecord {
     public boolean start(AmazonS3 s3, TransferDBUtil dbUtil, TransferStatusUpdater updater) {
         if (!isRunning() && checkIsReadyToRun()) {
             if (type.equals(TransferType.DOWNLOAD)) {
-                submittedTask = TransferThreadPool.submitTask(new DownloadTask(this, s3, updater));
+                submittedTask = TransferThreadPool.submitTask(new DownloadTask(this, s3, dbUtil,
+                        updater));
             } else {
                 submittedTask = TransferThreadPool.submitTask(new UploadTask(this, s3, dbUtil,
                         updater));
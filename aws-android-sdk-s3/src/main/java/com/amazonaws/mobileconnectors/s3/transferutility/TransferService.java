@@ -310,8 +310,10 @@ public class TransferService extends Service {
             }
         } else if (INTENT_ACTION_TRANSFER_CANCEL.equals(action)) {
             TransferRecord transfer = updater.getTransfer(id);
-            if (transfer != null) {
-                transfer.cancel(s3, updater);
+            if (transfer != null && transfer.cancel(s3, updater)
+                    && TransferType.DOWNLOAD.equals(transfer.type)) {
+                // the parts were written to the file deleted on cancel
+                dbUtil.deletePartRecords(id);
             }
         } else {
             Log.e(TAG, "Unknown action: " + action);
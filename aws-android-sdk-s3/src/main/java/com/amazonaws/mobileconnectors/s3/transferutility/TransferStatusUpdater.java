@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class that tracks active transfers. It has a static map that holds weak
@@ -325,16 +326,23 @@ class TransferStatusUpdater {
 
         private final TransferRecord transfer;
 
-        public TransferProgressListener(TransferRecord transfer) {
+        /**
+         * The parts of a multipart transfer share the listener and report
+         * their progress concurrently.
+         */
+        private final AtomicLong bytesCurrent;
+
+        public TransferProgressListener(TransferRecord transfer, long bytesCurrent) {
             this.transfer = transfer;
+            this.bytesCurrent = new AtomicLong(bytesCurrent);
         }
 
         @Override
         public void progressChanged(ProgressEvent progressEvent) {
             // TODO: handle retry of upload where progress could be problematic.
             if (progressEvent.getBytesTransferred() > 0) {
-                transfer.bytesCurrent += progressEvent.getBytesTransferred();
-                updateProgress(transfer.id, transfer.bytesCurrent, transfer.bytesTotal);
+                long current = bytesCurrent.addAndGet(progressEvent.getBytesTransferred());
+                updateProgress(transfer.id, current, transfer.bytesTotal);
             }
         }
     }
@@ -354,6 +362,6 @@ class TransferStatusUpdater {
             throw new IllegalArgumentException("transfer " + id + " doesn't exist");
         }
         updateProgress(id, bytesCurrent, bytesTotal);
-        return new TransferProgressListener(transfer);
+        return new TransferProgressListener(transfer, bytesCurrent);
     }
 }
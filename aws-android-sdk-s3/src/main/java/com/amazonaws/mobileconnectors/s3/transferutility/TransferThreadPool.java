@@ -40,7 +40,7 @@ class TransferThreadPool {
 
     public static <T> Future<T> submitTask(Callable<T> c) {
         init();
-        if (c instanceof UploadPartTask) {
+        if (c instanceof UploadPartTask || c instanceof DownloadPartTask) {
             return executorPartTask.submit(c);
         } else {
             return executorMainTask.submit(c);
@@ -375,15 +375,16 @@ public class TransferUtility {
     }
 
     /**
-     * Deletes a transfer record with the given id. It just deletes the record
-     * but does not stop the running thread, so you must cancel the task before
-     * deleting the record.
+     * Deletes a transfer record with the given id, along with the records of
+     * its parts. It just deletes the records but does not stop the running
+     * thread, so you must cancel the task before deleting the record.
      *
      * @param id A transfer id specifying the transfer to be deleted.
      * @return true if at least one record was deleted
      */
     public boolean deleteTransferRecord(int id) {
         cancel(id);
+        dbUtil.deletePartRecords(id);
         return dbUtil.deleteTransferRecords(id) > 0;
     }
 
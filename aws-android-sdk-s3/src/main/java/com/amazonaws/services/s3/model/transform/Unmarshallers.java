@@ -76,8 +76,7 @@ public class Unmarshallers {
             Unmarshaller<ObjectListing, InputStream> {
         @Override
         public ObjectListing unmarshall(InputStream in) throws Exception {
-            return new XmlResponsesSaxParser()
-                    .parseListBucketObjectsResponse(in).getObjectListing();
+            return new XmlResponsesPullParser().parseListBucketObjectsResponse(in);
         }
     }
 
@@ -88,8 +87,7 @@ public class Unmarshallers {
             Unmarshaller<VersionListing, InputStream> {
         @Override
         public VersionListing unmarshall(InputStream in) throws Exception {
-            return new XmlResponsesSaxParser()
-                    .parseListVersionsResponse(in).getListing();
+            return new XmlResponsesPullParser().parseListVersionsResponse(in);
         }
     }
 
@@ -230,8 +228,7 @@ public class Unmarshallers {
             Unmarshaller<MultipartUploadListing, InputStream> {
         @Override
         public MultipartUploadListing unmarshall(InputStream in) throws Exception {
-            return new XmlResponsesSaxParser().parseListMultipartUploadsResponse(in)
-                    .getListMultipartUploadsResult();
+            return new XmlResponsesPullParser().parseListMultipartUploadsResponse(in);
         }
     }
 
@@ -0,0 +1,550 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.model.transform;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.internal.Constants;
+import com.amazonaws.services.s3.internal.ServiceUtils;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.MultipartUploadListing;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.Owner;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.S3VersionSummary;
+import com.amazonaws.services.s3.model.VersionListing;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * XML pull parser for the listing documents returned by S3, which can hold
+ * thousands of entries per page. Unlike {@link XmlResponsesSaxParser}, the
+ * document is parsed as it is read from the connection: carriage returns are
+ * escaped as they go by instead of by copying the whole document, the text
+ * of each element is read in one piece by the parser, and each thread reuses
+ * its parser from one page to the next. The listings parsed are the same as
+ * those of the corresponding {@link XmlResponsesSaxParser} handlers.
+ */
+public class XmlResponsesPullParser {
+    private static final Log log = LogFactory.getLog(XmlResponsesPullParser.class);
+
+    private static final XmlPullParserFactory xmlPullParserFactory;
+    static {
+        try {
+            xmlPullParserFactory = XmlPullParserFactory.newInstance();
+            xmlPullParserFactory.setNamespaceAware(true);
+        } catch (XmlPullParserException xppe) {
+            throw new AmazonClientException("Couldn't initialize XmlPullParserFactory", xppe);
+        }
+    }
+
+    private static final ThreadLocal<XmlPullParser> parsers = new ThreadLocal<XmlPullParser>() {
+        @Override
+        protected XmlPullParser initialValue() {
+            try {
+                return xmlPullParserFactory.newPullParser();
+            } catch (XmlPullParserException xppe) {
+                throw new AmazonClientException("Couldn't create XmlPullParser", xppe);
+            }
+        }
+    };
+
+    /**
+     * Parses a ListBucket response XML document from an input stream.
+     *
+     * @param inputStream XML data input stream.
+     * @return the object listing.
+     * @throws IOException on error reading from the input stream.
+     * @throws AmazonClientException on error with malformed XML, etc.
+     */
+    public ObjectListing parseListBucketObjectsResponse(InputStream inputStream)
+            throws IOException {
+        XmlPullParser xpp = begin(inputStream);
+        try {
+            ObjectListing objectListing = new ObjectListing();
+            while (nextChild(xpp)) {
+                String name = xpp.getName();
+                if (name.equals("Name")) {
+                    objectListing.setBucketName(xpp.nextText());
+                    if (log.isDebugEnabled()) {
+                        log.debug("Examining listing for bucket: "
+                                + objectListing.getBucketName());
+                    }
+                } else if (name.equals("Prefix")) {
+                    objectListing.setPrefix(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("Marker")) {
+                    objectListing.setMarker(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("NextMarker")) {
+                    objectListing.setNextMarker(xpp.nextText());
+                } else if (name.equals("MaxKeys")) {
+                    objectListing.setMaxKeys(parseInt(xpp.nextText()));
+                } else if (name.equals("Delimiter")) {
+                    objectListing.setDelimiter(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("EncodingType")) {
+                    objectListing.setEncodingType(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("IsTruncated")) {
+                    String isTruncatedStr = xpp.nextText().toLowerCase(Locale.getDefault());
+                    if (isTruncatedStr.startsWith("false")) {
+                        objectListing.setTruncated(false);
+                    } else if (isTruncatedStr.startsWith("true")) {
+                        objectListing.setTruncated(true);
+                    } else {
+                        throw new IllegalStateException(
+                                "Invalid value for IsTruncated field: " + isTruncatedStr);
+                    }
+                } else if (name.equals("Contents")) {
+                    objectListing.getObjectSummaries().add(
+                            parseObjectSummary(xpp, objectListing.getBucketName()));
+                } else if (name.equals("CommonPrefixes")) {
+                    parseCommonPrefixes(xpp, objectListing.getCommonPrefixes(), false);
+                } else {
+                    skip(xpp);
+                }
+            }
+
+            /*
+             * S3 only includes the NextMarker XML element if the request
+             * specified a delimiter, but for consistency we'd like to always
+             * give easy access to the next marker if we're returning a list of
+             * results that's truncated.
+             */
+            if (objectListing.isTruncated() && objectListing.getNextMarker() == null) {
+                String nextMarker = null;
+                if (!objectListing.getObjectSummaries().isEmpty()) {
+                    nextMarker = objectListing.getObjectSummaries()
+                            .get(objectListing.getObjectSummaries().size() - 1).getKey();
+                } else if (!objectListing.getCommonPrefixes().isEmpty()) {
+                    nextMarker = objectListing.getCommonPrefixes()
+                            .get(objectListing.getCommonPrefixes().size() - 1);
+                } else {
+                    log.error("S3 response indicates truncated results, "
+                            + "but contains no object summaries or common prefixes.");
+                }
+                objectListing.setNextMarker(nextMarker);
+            }
+            return objectListing;
+        } catch (XmlPullParserException e) {
+            throw parseFailure(inputStream, "ListBucketResult", e);
+        } catch (RuntimeException e) {
+            throw parseFailure(inputStream, "ListBucketResult", e);
+        } finally {
+            end(xpp);
+        }
+    }
+
+    /**
+     * Parses a ListVersions response XML document from an input stream.
+     *
+     * @param inputStream XML data input stream.
+     * @return the version listing.
+     * @throws IOException on error reading from the input stream.
+     * @throws AmazonClientException on error with malformed XML, etc.
+     */
+    public VersionListing parseListVersionsResponse(InputStream inputStream)
+            throws IOException {
+        XmlPullParser xpp = begin(inputStream);
+        try {
+            VersionListing versionListing = new VersionListing();
+            while (nextChild(xpp)) {
+                String name = xpp.getName();
+                if (name.equals("Name")) {
+                    versionListing.setBucketName(xpp.nextText());
+                } else if (name.equals("Prefix")) {
+                    versionListing.setPrefix(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("KeyMarker")) {
+                    versionListing.setKeyMarker(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("VersionIdMarker")) {
+                    versionListing.setVersionIdMarker(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("MaxKeys")) {
+                    versionListing.setMaxKeys(Integer.parseInt(xpp.nextText()));
+                } else if (name.equals("Delimiter")) {
+                    versionListing.setDelimiter(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("EncodingType")) {
+                    versionListing.setEncodingType(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("NextKeyMarker")) {
+                    versionListing.setNextKeyMarker(xpp.nextText());
+                } else if (name.equals("NextVersionIdMarker")) {
+                    versionListing.setNextVersionIdMarker(xpp.nextText());
+                } else if (name.equals("IsTruncated")) {
+                    versionListing.setTruncated("true".equals(xpp.nextText()));
+                } else if (name.equals("Version") || name.equals("DeleteMarker")) {
+                    versionListing.getVersionSummaries().add(
+                            parseVersionSummary(xpp, versionListing.getBucketName(),
+                                    name.equals("DeleteMarker")));
+                } else if (name.equals("CommonPrefixes")) {
+                    parseCommonPrefixes(xpp, versionListing.getCommonPrefixes(), true);
+                } else {
+                    skip(xpp);
+                }
+            }
+            return versionListing;
+        } catch (XmlPullParserException e) {
+            throw parseFailure(inputStream, "ListVersionsResult", e);
+        } catch (RuntimeException e) {
+            throw parseFailure(inputStream, "ListVersionsResult", e);
+        } finally {
+            end(xpp);
+        }
+    }
+
+    /**
+     * Parses a ListMultipartUploads response XML document from an input
+     * stream.
+     *
+     * @param inputStream XML data input stream.
+     * @return the multipart upload listing.
+     * @throws IOException on error reading from the input stream.
+     * @throws AmazonClientException on error with malformed XML, etc.
+     */
+    public MultipartUploadListing parseListMultipartUploadsResponse(InputStream inputStream)
+            throws IOException {
+        XmlPullParser xpp = begin(inputStream);
+        try {
+            MultipartUploadListing result = new MultipartUploadListing();
+            while (nextChild(xpp)) {
+                String name = xpp.getName();
+                if (name.equals("Bucket")) {
+                    result.setBucketName(xpp.nextText());
+                } else if (name.equals("KeyMarker")) {
+                    result.setKeyMarker(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("Delimiter")) {
+                    result.setDelimiter(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("Prefix")) {
+                    result.setPrefix(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("UploadIdMarker")) {
+                    result.setUploadIdMarker(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("NextKeyMarker")) {
+                    result.setNextKeyMarker(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("NextUploadIdMarker")) {
+                    result.setNextUploadIdMarker(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("MaxUploads")) {
+                    result.setMaxUploads(Integer.parseInt(xpp.nextText()));
+                } else if (name.equals("EncodingType")) {
+                    result.setEncodingType(checkForEmptyString(xpp.nextText()));
+                } else if (name.equals("IsTruncated")) {
+                    result.setTruncated(Boolean.parseBoolean(xpp.nextText()));
+                } else if (name.equals("Upload")) {
+                    result.getMultipartUploads().add(parseMultipartUpload(xpp));
+                } else if (name.equals("CommonPrefixes")) {
+                    parseCommonPrefixes(xpp, result.getCommonPrefixes(), false);
+                } else {
+                    skip(xpp);
+                }
+            }
+            return result;
+        } catch (XmlPullParserException e) {
+            throw parseFailure(inputStream, "ListMultipartUploadsResult", e);
+        } catch (RuntimeException e) {
+            throw parseFailure(inputStream, "ListMultipartUploadsResult", e);
+        } finally {
+            end(xpp);
+        }
+    }
+
+    private static S3ObjectSummary parseObjectSummary(XmlPullParser xpp, String bucketName)
+            throws XmlPullParserException, IOException {
+        S3ObjectSummary objectSummary = new S3ObjectSummary();
+        objectSummary.setBucketName(bucketName);
+        while (nextChild(xpp)) {
+            String name = xpp.getName();
+            if (name.equals("Key")) {
+                objectSummary.setKey(xpp.nextText());
+            } else if (name.equals("LastModified")) {
+                objectSummary.setLastModified(ServiceUtils.parseIso8601Date(xpp.nextText()));
+            } else if (name.equals("ETag")) {
+                objectSummary.setETag(ServiceUtils.removeQuotes(xpp.nextText()));
+            } else if (name.equals("Size")) {
+                objectSummary.setSize(parseLong(xpp.nextText()));
+            } else if (name.equals("StorageClass")) {
+                objectSummary.setStorageClass(xpp.nextText());
+            } else if (name.equals("Owner")) {
+                objectSummary.setOwner(parseOwner(xpp, false));
+            } else {
+                skip(xpp);
+            }
+        }
+        return objectSummary;
+    }
+
+    private static S3VersionSummary parseVersionSummary(XmlPullParser xpp, String bucketName,
+            boolean isDeleteMarker) throws XmlPullParserException, IOException {
+        S3VersionSummary versionSummary = new S3VersionSummary();
+        versionSummary.setBucketName(bucketName);
+        if (isDeleteMarker) {
+            versionSummary.setIsDeleteMarker(true);
+        }
+        while (nextChild(xpp)) {
+            String name = xpp.getName();
+            if (name.equals("Key")) {
+                versionSummary.setKey(xpp.nextText());
+            } else if (name.equals("VersionId")) {
+                versionSummary.setVersionId(xpp.nextText());
+            } else if (name.equals("IsLatest")) {
+                versionSummary.setIsLatest("true".equals(xpp.nextText()));
+            } else if (name.equals("LastModified")) {
+                versionSummary.setLastModified(ServiceUtils.parseIso8601Date(xpp.nextText()));
+            } else if (name.equals("ETag")) {
+                versionSummary.setETag(ServiceUtils.removeQuotes(xpp.nextText()));
+            } else if (name.equals("Size")) {
+                versionSummary.setSize(Long.parseLong(xpp.nextText()));
+            } else if (name.equals("Owner")) {
+                versionSummary.setOwner(parseOwner(xpp, false));
+            } else if (name.equals("StorageClass")) {
+                versionSummary.setStorageClass(xpp.nextText());
+            } else {
+                skip(xpp);
+            }
+        }
+        return versionSummary;
+    }
+
+    private static MultipartUpload parseMultipartUpload(XmlPullParser xpp)
+            throws XmlPullParserException, IOException {
+        MultipartUpload multipartUpload = new MultipartUpload();
+        while (nextChild(xpp)) {
+            String name = xpp.getName();
+            if (name.equals("Key")) {
+                multipartUpload.setKey(xpp.nextText());
+            } else if (name.equals("UploadId")) {
+                multipartUpload.setUploadId(xpp.nextText());
+            } else if (name.equals("Owner")) {
+                multipartUpload.setOwner(parseOwner(xpp, true));
+            } else if (name.equals("Initiator")) {
+                multipartUpload.setInitiator(parseOwner(xpp, true));
+            } else if (name.equals("StorageClass")) {
+                multipartUpload.setStorageClass(xpp.nextText());
+            } else if (name.equals("Initiated")) {
+                multipartUpload.setInitiated(ServiceUtils.parseIso8601Date(xpp.nextText()));
+            } else {
+                skip(xpp);
+            }
+        }
+        return multipartUpload;
+    }
+
+    private static Owner parseOwner(XmlPullParser xpp, boolean emptyAsNull)
+            throws XmlPullParserException, IOException {
+        Owner owner = new Owner();
+        while (nextChild(xpp)) {
+            String name = xpp.getName();
+            if (name.equals("ID")) {
+                owner.setId(emptyAsNull ? checkForEmptyString(xpp.nextText()) : xpp.nextText());
+            } else if (name.equals("DisplayName")) {
+                owner.setDisplayName(emptyAsNull ? checkForEmptyString(xpp.nextText())
+                        : xpp.nextText());
+            } else {
+                skip(xpp);
+            }
+        }
+        return owner;
+    }
+
+    private static void parseCommonPrefixes(XmlPullParser xpp, List<String> commonPrefixes,
+            boolean emptyAsNull) throws XmlPullParserException, IOException {
+        while (nextChild(xpp)) {
+            if (xpp.getName().equals("Prefix")) {
+                commonPrefixes.add(emptyAsNull ? checkForEmptyString(xpp.nextText())
+                        : xpp.nextText());
+            } else {
+                skip(xpp);
+            }
+        }
+    }
+
+    /**
+     * Sets the input of the parser of this thread and moves it to the root
+     * element of the document.
+     */
+    private static XmlPullParser begin(InputStream inputStream) throws IOException {
+        XmlPullParser xpp = parsers.get();
+        try {
+            xpp.setInput(new CarriageReturnEscapingReader(new InputStreamReader(inputStream,
+                    Constants.DEFAULT_ENCODING)));
+            xpp.nextTag();
+        } catch (XmlPullParserException e) {
+            end(xpp);
+            throw parseFailure(inputStream, "document", e);
+        } catch (IOException e) {
+            end(xpp);
+            throw e;
+        }
+        return xpp;
+    }
+
+    /**
+     * Releases the input of the parser so that the parser can be reused
+     * without holding on to the stream.
+     */
+    private static void end(XmlPullParser xpp) {
+        try {
+            xpp.setInput(null);
+        } catch (XmlPullParserException e) {
+            // a new parser will be created for the next document
+            parsers.remove();
+        }
+    }
+
+    /**
+     * Moves to the next child element of the current element.
+     *
+     * @return true if positioned on the start of the child, false if
+     *         positioned on the end of the current element.
+     */
+    private static boolean nextChild(XmlPullParser xpp) throws XmlPullParserException,
+            IOException {
+        return xpp.nextTag() == XmlPullParser.START_TAG;
+    }
+
+    /**
+     * Skips the current element and its content.
+     */
+    private static void skip(XmlPullParser xpp) throws XmlPullParserException, IOException {
+        int depth = 1;
+        while (depth != 0) {
+            switch (xpp.next()) {
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new XmlPullParserException("Unexpected end of document", xpp, null);
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static AmazonClientException parseFailure(InputStream inputStream, String document,
+            Exception cause) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Unable to close response InputStream up after XML parse failure", e);
+            }
+        }
+        return new AmazonClientException("Failed to parse XML document " + document, cause);
+    }
+
+    private static String checkForEmptyString(String s) {
+        if (s == null || s.length() == 0) {
+            return null;
+        }
+        return s;
+    }
+
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException nfe) {
+            log.error("Unable to parse integer value '" + s + "'", nfe);
+        }
+        return -1;
+    }
+
+    private static long parseLong(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException nfe) {
+            log.error("Unable to parse long value '" + s + "'", nfe);
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces any carriage return (\r) characters with explicit XML character
+     * entities as the document is read, to prevent the parser from
+     * normalizing them to line feeds in object keys.
+     */
+    private static final class CarriageReturnEscapingReader extends FilterReader {
+        private static final char[] ESCAPED_CARRIAGE_RETURN = "&#013;".toCharArray();
+
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+        /** Index of the next character of the escape to return. */
+        private int escapePosition = ESCAPED_CARRIAGE_RETURN.length;
+
+        CarriageReturnEscapingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] c = new char[1];
+            return read(c, 0, 1) == -1 ? -1 : c[0];
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int read = 0;
+            while (read < len) {
+                if (escapePosition < ESCAPED_CARRIAGE_RETURN.length) {
+                    cbuf[off + read++] = ESCAPED_CARRIAGE_RETURN[escapePosition++];
+                } else if (position < limit) {
+                    char c = buffer[position++];
+                    if (c == '\r') {
+                        escapePosition = 0;
+                    } else {
+                        cbuf[off + read++] = c;
+                    }
+                } else if (read > 0) {
+                    break;
+                } else {
+                    limit = in.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit == -1) {
+                        limit = 0;
+                        return -1;
+                    }
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            char[] skipped = new char[(int) Math.min(n, buffer.length)];
+            long remaining = n;
+            while (remaining > 0) {
+                int read = read(skipped, 0, (int) Math.min(remaining, skipped.length));
+                if (read == -1) {
+                    break;
+                }
+                remaining -= read;
+            }
+            return n - remaining;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.DownloadImpl;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.DownloadPartCallable;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class MultipartDownloadTest {
+
+    private static final String ETAG = "0123456789abcdef";
+
+    private final byte[] data = new byte[20];
+    private AmazonS3 s3;
+    private TransferManager tm;
+    private File file;
+
+    @Before
+    public void setup() throws Exception {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        s3 = mock(AmazonS3.class);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        metadata.setHeader("ETag", ETAG);
+        when(s3.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenReturn(metadata);
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) {
+                GetObjectRequest request = (GetObjectRequest) invocation.getArguments()[0];
+                long[] range = request.getRange();
+                S3Object object = new S3Object();
+                object.setObjectContent(new ByteArrayInputStream(data, (int) range[0],
+                        (int) (range[1] - range[0] + 1)));
+                return object;
+            }
+        });
+
+        tm = new TransferManager(s3, Executors.newFixedThreadPool(2));
+        TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+        configuration.setMultipartDownloadThreshold(1);
+        configuration.setMinimumDownloadPartSize(6);
+        tm.setConfiguration(configuration);
+
+        file = File.createTempFile("multipart-download", ".tmp");
+    }
+
+    @After
+    public void tearDown() {
+        tm.shutdownNow(false);
+        file.delete();
+    }
+
+    @Test
+    public void testDownloadInParts() throws Exception {
+        Download download = tm.download("bucket", "key", file);
+        download.waitForCompletion();
+
+        assertEquals(Transfer.TransferState.Completed, download.getState());
+        assertArrayEquals(data, readFile());
+
+        ArgumentCaptor<GetObjectRequest> captor = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3, times(4)).getObject(captor.capture());
+        for (GetObjectRequest request : captor.getAllValues()) {
+            assertEquals(Arrays.asList(ETAG), request.getMatchingETagConstraints());
+        }
+    }
+
+    @Test
+    public void testContentClosedWhenFileCannotBeOpened() throws Exception {
+        final boolean[] closed = new boolean[1];
+        S3Object object = new S3Object();
+        object.setObjectContent(new ByteArrayInputStream(data) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        });
+        doReturn(object).when(s3).getObject(any(GetObjectRequest.class));
+
+        // a directory can't be opened as the destination file
+        File directory = file.getParentFile();
+        try {
+            new DownloadPartCallable(s3, new GetObjectRequest("bucket", "key"), 1, directory,
+                    0, mock(DownloadImpl.class)).call();
+            fail("opened a directory");
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    public void testResumeOnlyFetchesMissingParts() throws Exception {
+        // parts 1 and 3 are in the file already, the others are garbage
+        byte[] partial = new byte[data.length];
+        System.arraycopy(data, 0, partial, 0, 6);
+        System.arraycopy(data, 12, partial, 12, 6);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(partial);
+        raf.close();
+
+        PersistableDownload paused = new PersistableDownload("bucket", "key", null, null, null,
+                false, file.getAbsolutePath(), 6, ETAG, new int[] {
+                        1, 3
+                });
+        paused = PersistableTransfer.deserializeFrom(paused.serialize());
+        Download download = tm.resumeDownload(paused);
+        download.waitForCompletion();
+
+        assertArrayEquals(data, readFile());
+        // the mock client doesn't report progress, only the resumed parts count
+        assertEquals(12, download.getProgress().getBytesTransferred());
+
+        ArgumentCaptor<GetObjectRequest> captor = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3, times(2)).getObject(captor.capture());
+        List<GetObjectRequest> requests = captor.getAllValues();
+        long[][] ranges = new long[][] {
+                requests.get(0).getRange(), requests.get(1).getRange()
+        };
+        Arrays.sort(ranges, new java.util.Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.valueOf(a[0]).compareTo(b[0]);
+            }
+        });
+        assertArrayEquals(new long[] {
+                6, 11
+        }, ranges[0]);
+        assertArrayEquals(new long[] {
+                18, 19
+        }, ranges[1]);
+    }
+
+    /**
+     * Serves the first part, and blocks reading the others until they are
+     * closed, ignoring interrupts like a socket read does.
+     */
+    private CountDownLatch blockAfterFirstPart() {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        doAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) {
+                GetObjectRequest request = (GetObjectRequest) invocation.getArguments()[0];
+                long[] range = request.getRange();
+                S3Object object = new S3Object();
+                if (range[0] == 0) {
+                    object.setObjectContent(new ByteArrayInputStream(data, 0,
+                            (int) (range[1] + 1)));
+                } else {
+                    object.setObjectContent(new BlockingInputStream(blocked));
+                }
+                return object;
+            }
+        }).when(s3).getObject(any(GetObjectRequest.class));
+        return blocked;
+    }
+
+    private TransferManager newTransferManager(ExecutorService threadPool) {
+        TransferManager transferManager = new TransferManager(s3, threadPool);
+        transferManager.setConfiguration(tm.getConfiguration());
+        return transferManager;
+    }
+
+    @Test
+    public void testAbortStopsBlockedParts() throws Exception {
+        CountDownLatch blocked = blockAfterFirstPart();
+        ExecutorService threadPool = Executors.newFixedThreadPool(2);
+        Download download = newTransferManager(threadPool).download("bucket", "key", file);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        download.abort();
+        assertEquals(Transfer.TransferState.Canceled, download.getState());
+        // both the pool thread and the download's own thread are released
+        threadPool.shutdown();
+        assertTrue(threadPool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPauseOnlyKeepsCompletedParts() throws Exception {
+        CountDownLatch blocked = blockAfterFirstPart();
+        // a single thread, so the download runs its parts itself, in order
+        ExecutorService threadPool = Executors.newFixedThreadPool(1);
+        Download download = newTransferManager(threadPool).download("bucket", "key", file);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        PersistableDownload paused = download.pause();
+        threadPool.shutdown();
+        assertTrue(threadPool.awaitTermination(5, TimeUnit.SECONDS));
+        assertArrayEquals(new int[] {
+                1
+        }, paused.getCompletedParts());
+        // the aborted part, which read to its end, isn't recorded afterwards
+        assertArrayEquals(new int[] {
+                1
+        }, download.pause().getCompletedParts());
+    }
+
+    @Test
+    public void testPersistableMultipartDownload() {
+        PersistableDownload target = new PersistableDownload("bucket", "key", null, null, null,
+                false, "file", 1024, ETAG, new int[] {
+                        2, 5
+                });
+        PersistableDownload download = PersistableTransfer.deserializeFrom(target.serialize());
+        assertEquals(1024, download.getPartSize());
+        assertEquals(ETAG, download.getETag());
+        assertArrayEquals(new int[] {
+                2, 5
+        }, download.getCompletedParts());
+
+        PersistableDownload single = PersistableTransfer.deserializeFrom(
+                new PersistableDownload("bucket", "key", null, null, null, false, "file")
+                        .serialize());
+        assertEquals(-1, single.getPartSize());
+    }
+
+    private static final class BlockingInputStream extends InputStream {
+        private final CountDownLatch blocked;
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        BlockingInputStream(CountDownLatch blocked) {
+            this.blocked = blocked;
+        }
+
+        @Override
+        public int read() {
+            blocked.countDown();
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        closed.await();
+                        // a closed connection can look like the end of the
+                        // content
+                        return -1;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    private byte[] readFile() throws Exception {
+        byte[] content = new byte[(int) file.length()];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(content);
+        } finally {
+            raf.close();
+        }
+        return content;
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * Copyright 2015-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static com.amazonaws.services.s3.internal.Constants.MB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentValues;
+
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DownloadTaskTest {
+
+    private static final String ETAG = "0123456789abcdef";
+    private static final int DOWNLOAD_ID = 1;
+
+    /** 11 MB, downloaded in parts of 5, 5 and 1 MB */
+    private final byte[] data = new byte[11 * MB];
+    /** The part records of the download, as the database would keep them */
+    private final List<TransferRecord> parts = Collections
+            .synchronizedList(new ArrayList<TransferRecord>());
+    private AmazonS3 s3;
+    private TransferDBUtil dbUtil;
+    private TransferStatusUpdater updater;
+    private TransferRecord download;
+    private File file;
+
+    @Before
+    public void setup() throws Exception {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + i / 4096);
+        }
+        s3 = mock(AmazonS3.class);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        metadata.setHeader("ETag", ETAG);
+        when(s3.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenReturn(metadata);
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) {
+                GetObjectRequest request = (GetObjectRequest) invocation.getArguments()[0];
+                long[] range = request.getRange();
+                S3Object object = new S3Object();
+                object.setObjectContent(new ByteArrayInputStream(data, (int) range[0],
+                        (int) (range[1] - range[0] + 1)));
+                return object;
+            }
+        });
+
+        dbUtil = mock(TransferDBUtil.class);
+        fakePartRecords();
+        updater = mock(TransferStatusUpdater.class);
+        when(updater.newProgressListener(anyInt(), anyLong(), anyLong())).thenReturn(
+                mock(ProgressListener.class));
+
+        file = File.createTempFile("download-task", ".tmp");
+        file.delete();
+        download = new TransferRecord(DOWNLOAD_ID);
+        download.type = TransferType.DOWNLOAD;
+        download.bucketName = "bucket";
+        download.key = "key";
+        download.file = file.getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Keeps the part records in {@link #parts} rather than in a database.
+     */
+    private void fakePartRecords() {
+        when(dbUtil.generateContentValuesForMultiPartDownload(any(String.class),
+                any(String.class), any(File.class), anyInt(), anyLong(), anyLong(), anyInt()))
+                .thenAnswer(new Answer<ContentValues>() {
+                    @Override
+                    public ContentValues answer(InvocationOnMock invocation) {
+                        Object[] args = invocation.getArguments();
+                        parts.add(part((Integer) args[3], (Long) args[4], (Long) args[5]));
+                        return null;
+                    }
+                });
+        when(dbUtil.bulkInsertPartRecords(anyInt(), any(ContentValues[].class))).thenAnswer(
+                new Answer<Integer>() {
+                    @Override
+                    public Integer answer(InvocationOnMock invocation) {
+                        return ((ContentValues[]) invocation.getArguments()[1]).length;
+                    }
+                });
+        when(dbUtil.queryPartRecordsOfDownload(DOWNLOAD_ID)).thenAnswer(
+                new Answer<List<TransferRecord>>() {
+                    @Override
+                    public List<TransferRecord> answer(InvocationOnMock invocation) {
+                        synchronized (parts) {
+                            return new ArrayList<TransferRecord>(parts);
+                        }
+                    }
+                });
+        when(dbUtil.deletePartRecords(DOWNLOAD_ID)).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                int count = parts.size();
+                parts.clear();
+                return count;
+            }
+        });
+        when(dbUtil.updateBytesTransferred(anyInt(), anyLong())).thenAnswer(
+                new Answer<Integer>() {
+                    @Override
+                    public Integer answer(InvocationOnMock invocation) {
+                        getPart((Integer) invocation.getArguments()[0]).bytesCurrent =
+                                (Long) invocation.getArguments()[1];
+                        return 1;
+                    }
+                });
+        when(dbUtil.updateState(anyInt(), any(TransferState.class))).thenAnswer(
+                new Answer<Integer>() {
+                    @Override
+                    public Integer answer(InvocationOnMock invocation) {
+                        getPart((Integer) invocation.getArguments()[0]).state =
+                                (TransferState) invocation.getArguments()[1];
+                        return 1;
+                    }
+                });
+    }
+
+    private TransferRecord part(int partNumber, long rangeStart, long rangeLast) {
+        TransferRecord part = new TransferRecord(DOWNLOAD_ID + partNumber);
+        part.mainUploadId = DOWNLOAD_ID;
+        part.type = TransferType.DOWNLOAD;
+        part.state = TransferState.WAITING;
+        part.bucketName = "bucket";
+        part.key = "key";
+        part.file = file.getAbsolutePath();
+        part.partNumber = partNumber;
+        part.rangeStart = rangeStart;
+        part.rangeLast = rangeLast;
+        part.fileOffset = rangeStart;
+        part.bytesTotal = rangeLast - rangeStart + 1;
+        return part;
+    }
+
+    private TransferRecord getPart(int id) {
+        synchronized (parts) {
+            for (TransferRecord part : parts) {
+                if (part.id == id) {
+                    return part;
+                }
+            }
+        }
+        throw new AssertionError("no part " + id);
+    }
+
+    private boolean runTask() throws Exception {
+        return new DownloadTask(download, s3, dbUtil, updater).call();
+    }
+
+    /** The ranges that were requested, in order. */
+    private List<String> requestedRanges() {
+        ArgumentCaptor<GetObjectRequest> captor = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3, atLeast(0)).getObject(captor.capture());
+        List<long[]> ranges = new ArrayList<long[]>();
+        for (GetObjectRequest request : captor.getAllValues()) {
+            assertEquals(Arrays.asList(ETAG), request.getMatchingETagConstraints());
+            ranges.add(request.getRange());
+        }
+        Collections.sort(ranges, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.valueOf(a[0]).compareTo(b[0]);
+            }
+        });
+        List<String> result = new ArrayList<String>();
+        for (long[] range : ranges) {
+            result.add(range[0] + "-" + range[1]);
+        }
+        return result;
+    }
+
+    private byte[] readFile() throws Exception {
+        byte[] content = new byte[(int) file.length()];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(content);
+        } finally {
+            raf.close();
+        }
+        return content;
+    }
+
+    @Test
+    public void testRangedDownload() throws Exception {
+        assertTrue(runTask());
+
+        assertEquals(Arrays.asList("0-" + (5 * MB - 1), 5 * MB + "-" + (10 * MB - 1),
+                10 * MB + "-" + (11 * MB - 1)), requestedRanges());
+        assertArrayEquals(data, readFile());
+        verify(dbUtil).updateETag(DOWNLOAD_ID, ETAG);
+        // the parts aren't needed once the download completes
+        assertTrue(parts.isEmpty());
+        verify(updater).updateState(DOWNLOAD_ID, TransferState.COMPLETED);
+    }
+
+    @Test
+    public void testResumeOnlyFetchesMissingBytes() throws Exception {
+        // part 1 is done, 2 MB of part 2 are in the file, part 3 is missing
+        byte[] partial = new byte[data.length];
+        System.arraycopy(data, 0, partial, 0, (int) (7 * MB));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(partial);
+        } finally {
+            raf.close();
+        }
+        download.eTag = ETAG;
+        TransferRecord part1 = part(1, 0, 5 * MB - 1);
+        part1.bytesCurrent = part1.bytesTotal;
+        part1.state = TransferState.PART_COMPLETED;
+        TransferRecord part2 = part(2, 5 * MB, 10 * MB - 1);
+        part2.bytesCurrent = 2 * MB;
+        part2.state = TransferState.FAILED;
+        parts.addAll(Arrays.asList(part1, part2, part(3, 10 * MB, 11 * MB - 1)));
+
+        assertTrue(runTask());
+
+        assertEquals(Arrays.asList(7 * MB + "-" + (10 * MB - 1),
+                10 * MB + "-" + (11 * MB - 1)), requestedRanges());
+        assertArrayEquals(data, readFile());
+        verify(updater).updateProgress(DOWNLOAD_ID, 7 * MB, data.length);
+        verify(dbUtil, never()).updateETag(anyInt(), any(String.class));
+    }
+
+    @Test
+    public void testChangedObjectStartsOver() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(data.length);
+        } finally {
+            raf.close();
+        }
+        // the parts were downloaded from an older version of the object
+        download.eTag = "fedcba9876543210";
+        TransferRecord part1 = part(1, 0, 5 * MB - 1);
+        part1.bytesCurrent = part1.bytesTotal;
+        part1.state = TransferState.PART_COMPLETED;
+        parts.addAll(Arrays.asList(part1, part(2, 5 * MB, 10 * MB - 1),
+                part(3, 10 * MB, 11 * MB - 1)));
+
+        assertTrue(runTask());
+
+        assertEquals(3, requestedRanges().size());
+        assertEquals("0-" + (5 * MB - 1), requestedRanges().get(0));
+        assertArrayEquals(data, readFile());
+        verify(dbUtil).updateETag(DOWNLOAD_ID, ETAG);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.model.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.MultipartUploadListing;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.Owner;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.S3VersionSummary;
+import com.amazonaws.services.s3.model.VersionListing;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+public class XmlResponsesPullParserTest {
+
+    private static final String LIST_BUCKET = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+            + "<Name>bucket</Name><Prefix></Prefix><Marker>m</Marker><MaxKeys>2</MaxKeys>"
+            + "<IsTruncated>true</IsTruncated>\n"
+            + "  <Contents><Key>line\r\nbreak</Key>"
+            + "<LastModified>2009-10-12T17:50:30.000Z</LastModified>"
+            + "<ETag>&quot;fba9dede5f27731c9771645a39863328&quot;</ETag><Size>434234</Size>"
+            + "<StorageClass>STANDARD</StorageClass>"
+            + "<Owner><ID>75aa57f09aa0c8caeab4f8c24e99d10f8e7faeebf76c078efc7c6caea54ba06a</ID>"
+            + "<DisplayName>mtd@amazon.com</DisplayName></Owner>"
+            + "<Unknown><Nested>x</Nested></Unknown></Contents>\n"
+            + "  <Contents><Key>k&amp;2</Key><Size>1</Size></Contents>"
+            + "<CommonPrefixes><Prefix>photos/</Prefix></CommonPrefixes>"
+            + "</ListBucketResult>";
+
+    private static final String LIST_VERSIONS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<ListVersionsResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01\">"
+            + "<Name>bucket</Name><Prefix>my</Prefix><KeyMarker/><VersionIdMarker/>"
+            + "<MaxKeys>5</MaxKeys><IsTruncated>false</IsTruncated>"
+            + "<Version><Key>my-image.jpg</Key><VersionId>3/L4kqtJl40Nr8X8gdRQBpUMLUo</VersionId>"
+            + "<IsLatest>true</IsLatest><LastModified>2009-10-12T17:50:30.000Z</LastModified>"
+            + "<ETag>&quot;fba9dede5f27731c9771645a39863328&quot;</ETag><Size>434234</Size>"
+            + "<StorageClass>STANDARD</StorageClass>"
+            + "<Owner><ID>id</ID><DisplayName>name</DisplayName></Owner></Version>"
+            + "<DeleteMarker><Key>my-second-image.jpg</Key>"
+            + "<VersionId>03jpff543dhffds434rfdsFDN943fdsFkdmqnh892</VersionId>"
+            + "<IsLatest>false</IsLatest><LastModified>2009-11-12T17:50:30.000Z</LastModified>"
+            + "</DeleteMarker>"
+            + "<CommonPrefixes><Prefix></Prefix></CommonPrefixes>"
+            + "</ListVersionsResult>";
+
+    private static final String LIST_UPLOADS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<ListMultipartUploadsResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+            + "<Bucket>bucket</Bucket><KeyMarker></KeyMarker><UploadIdMarker></UploadIdMarker>"
+            + "<NextKeyMarker>my-movie.m2ts</NextKeyMarker>"
+            + "<NextUploadIdMarker>YW55IGlkZWEgd2h5</NextUploadIdMarker>"
+            + "<MaxUploads>3</MaxUploads><IsTruncated>true</IsTruncated>"
+            + "<Upload><Key>my-divisor</Key><UploadId>XMgbGlrZSBlbHZpbmcncyBub3Q</UploadId>"
+            + "<Initiator><ID>arn:aws:iam::111122223333:user/user1</ID>"
+            + "<DisplayName></DisplayName></Initiator>"
+            + "<Owner><ID>b1d16700c70b0b05597d7acd6a3f92be</ID><DisplayName>delving"
+            + "</DisplayName></Owner><StorageClass>STANDARD</StorageClass>"
+            + "<Initiated>2010-11-10T20:48:33.000Z</Initiated></Upload>"
+            + "<CommonPrefixes><Prefix>photos/</Prefix></CommonPrefixes>"
+            + "</ListMultipartUploadsResult>";
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StringUtils.UTF8));
+    }
+
+    @Test
+    public void testListBucketMatchesSaxParser() throws Exception {
+        ObjectListing expected = new XmlResponsesSaxParser()
+                .parseListBucketObjectsResponse(stream(LIST_BUCKET)).getObjectListing();
+        // parsed twice to go through a reused parser
+        for (int i = 0; i < 2; i++) {
+            ObjectListing listing = new XmlResponsesPullParser()
+                    .parseListBucketObjectsResponse(stream(LIST_BUCKET));
+
+            assertEquals("bucket", listing.getBucketName());
+            assertNull(listing.getPrefix());
+            assertEquals(expected.getMarker(), listing.getMarker());
+            assertEquals(expected.getMaxKeys(), listing.getMaxKeys());
+            assertEquals(expected.isTruncated(), listing.isTruncated());
+            assertEquals("k&2", listing.getNextMarker());
+            assertEquals(expected.getNextMarker(), listing.getNextMarker());
+            assertEquals(expected.getCommonPrefixes(), listing.getCommonPrefixes());
+
+            assertEquals(2, listing.getObjectSummaries().size());
+            for (int j = 0; j < 2; j++) {
+                S3ObjectSummary e = expected.getObjectSummaries().get(j);
+                S3ObjectSummary a = listing.getObjectSummaries().get(j);
+                assertEquals("bucket", a.getBucketName());
+                assertEquals(e.getKey(), a.getKey());
+                assertEquals(e.getETag(), a.getETag());
+                assertEquals(e.getSize(), a.getSize());
+                assertEquals(e.getLastModified(), a.getLastModified());
+                assertEquals(e.getStorageClass(), a.getStorageClass());
+                assertOwnerEquals(e.getOwner(), a.getOwner());
+            }
+            assertEquals("line\r\nbreak", listing.getObjectSummaries().get(0).getKey());
+            assertEquals("fba9dede5f27731c9771645a39863328",
+                    listing.getObjectSummaries().get(0).getETag());
+        }
+    }
+
+    @Test
+    public void testListVersionsMatchesSaxParser() throws Exception {
+        VersionListing expected = new XmlResponsesSaxParser()
+                .parseListVersionsResponse(stream(LIST_VERSIONS)).getListing();
+        VersionListing listing = new XmlResponsesPullParser()
+                .parseListVersionsResponse(stream(LIST_VERSIONS));
+
+        assertEquals(expected.getBucketName(), listing.getBucketName());
+        assertEquals("my", listing.getPrefix());
+        assertNull(listing.getKeyMarker());
+        assertNull(listing.getVersionIdMarker());
+        assertEquals(5, listing.getMaxKeys());
+        assertEquals(expected.isTruncated(), listing.isTruncated());
+        assertEquals(expected.getCommonPrefixes(), listing.getCommonPrefixes());
+
+        assertEquals(2, listing.getVersionSummaries().size());
+        for (int i = 0; i < 2; i++) {
+            S3VersionSummary e = expected.getVersionSummaries().get(i);
+            S3VersionSummary a = listing.getVersionSummaries().get(i);
+            assertEquals("bucket", a.getBucketName());
+            assertEquals(e.getKey(), a.getKey());
+            assertEquals(e.getVersionId(), a.getVersionId());
+            assertEquals(e.isLatest(), a.isLatest());
+            assertEquals(e.isDeleteMarker(), a.isDeleteMarker());
+            assertEquals(e.getETag(), a.getETag());
+            assertEquals(e.getSize(), a.getSize());
+            assertEquals(e.getLastModified(), a.getLastModified());
+            assertEquals(e.getStorageClass(), a.getStorageClass());
+            assertOwnerEquals(e.getOwner(), a.getOwner());
+        }
+        assertTrue(listing.getVersionSummaries().get(1).isDeleteMarker());
+    }
+
+    @Test
+    public void testListMultipartUploadsMatchesSaxParser() throws Exception {
+        MultipartUploadListing expected = new XmlResponsesSaxParser()
+                .parseListMultipartUploadsResponse(stream(LIST_UPLOADS))
+                .getListMultipartUploadsResult();
+        MultipartUploadListing listing = new XmlResponsesPullParser()
+                .parseListMultipartUploadsResponse(stream(LIST_UPLOADS));
+
+        assertEquals("bucket", listing.getBucketName());
+        assertNull(listing.getKeyMarker());
+        assertNull(listing.getUploadIdMarker());
+        assertEquals(expected.getNextKeyMarker(), listing.getNextKeyMarker());
+        assertEquals(expected.getNextUploadIdMarker(), listing.getNextUploadIdMarker());
+        assertEquals(3, listing.getMaxUploads());
+        assertTrue(listing.isTruncated());
+        assertEquals(expected.getCommonPrefixes(), listing.getCommonPrefixes());
+
+        assertEquals(1, listing.getMultipartUploads().size());
+        MultipartUpload e = expected.getMultipartUploads().get(0);
+        MultipartUpload a = listing.getMultipartUploads().get(0);
+        assertEquals(e.getKey(), a.getKey());
+        assertEquals(e.getUploadId(), a.getUploadId());
+        assertEquals(e.getStorageClass(), a.getStorageClass());
+        assertEquals(e.getInitiated(), a.getInitiated());
+        assertOwnerEquals(e.getOwner(), a.getOwner());
+        assertOwnerEquals(e.getInitiator(), a.getInitiator());
+        assertNull(a.getInitiator().getDisplayName());
+    }
+
+    @Test
+    public void testMalformedDocument() throws Exception {
+        try {
+            new XmlResponsesPullParser().parseListBucketObjectsResponse(
+                    stream("<ListBucketResult><Name>bucket</ListBucketResult>"));
+            fail("malformed document parsed");
+        } catch (AmazonClientException e) {
+            // expected
+        }
+
+        // the parser of the thread is still usable
+        ObjectListing listing = new XmlResponsesPullParser()
+                .parseListBucketObjectsResponse(stream(LIST_BUCKET));
+        assertEquals(2, listing.getObjectSummaries().size());
+    }
+
+    private static void assertOwnerEquals(Owner expected, Owner actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getDisplayName(), actual.getDisplayName());
+    }
+}
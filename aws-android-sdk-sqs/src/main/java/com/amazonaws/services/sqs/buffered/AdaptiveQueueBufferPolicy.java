@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.sqs.buffered;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link QueueBufferPolicy} that tunes batching to the load of the queue.
+ * The values of the {@link QueueBufferConfig} become upper bounds.
+ * <p>
+ * It keeps moving averages of the rate at which messages are requested, of
+ * the number of messages per batch and of the latency of the batch calls, and
+ * derives from them:
+ * <ul>
+ * <li>the batch open time: the time it takes for the batch to fill up at the
+ * current rate, or no time at all if the next message isn't expected within
+ * {@link QueueBufferConfig#getMaxBatchOpenMs()}. A lone message is sent right
+ * away instead of waiting for messages that won't come.</li>
+ * <li>the number of batches in flight: enough batches to carry the current
+ * rate for the duration of a call (Little's law), plus one. Outbound batches
+ * are sized by the fill ratio observed, so batches that stay small get more
+ * concurrency.</li>
+ * <li>the number of received batches pre-fetched: the batches the consumers
+ * are expected to take during a receive call, plus one. Pre-fetching less
+ * keeps fewer messages invisible to other consumers of the queue.</li>
+ * </ul>
+ * As the rate drops when requests stop coming, an idle buffer falls back to
+ * one batch at a time.
+ */
+public class AdaptiveQueueBufferPolicy implements QueueBufferPolicy {
+
+    /** Creates {@code AdaptiveQueueBufferPolicy}s */
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public QueueBufferPolicy newPolicy(QueueBufferConfig config) {
+            return new AdaptiveQueueBufferPolicy(config);
+        }
+    };
+
+    /** Weight of a new sample in the moving averages of the batches */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * Time constant of the moving average of the message rate: a sample
+     * covering this much time weighs about 63%.
+     */
+    private static final double RATE_TIME_CONSTANT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Lower bound of the fill ratio used to size outbound batches */
+    private static final double MIN_FILL_RATIO = 0.5;
+
+    private final QueueBufferConfig config;
+
+    /**
+     * Messages requested so far. Counted without locking, as every request
+     * does it, and sampled when the rate is needed.
+     */
+    private final AtomicLong requestedMessages = new AtomicLong();
+    /** When requestedMessages was last sampled, and its value then */
+    private long sampleNanos = System.nanoTime();
+    private long sampledMessages = 0;
+    /** Average messages per nanosecond */
+    private double messageRate = 0;
+    /** Average number of messages per batch, -1 if unknown */
+    private double messagesPerBatch = -1;
+    /** Average latency of the batch calls, -1 if unknown */
+    private double batchLatencyNanos = -1;
+
+    public AdaptiveQueueBufferPolicy(QueueBufferConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public void onRequest(int messages) {
+        requestedMessages.addAndGet(messages);
+    }
+
+    @Override
+    public synchronized void onBatchCompleted(int messages, long latencyNanos) {
+        messagesPerBatch = average(messagesPerBatch, messages);
+        batchLatencyNanos = average(batchLatencyNanos, latencyNanos);
+    }
+
+    @Override
+    public synchronized long getMaxBatchOpenMs() {
+        long maxBatchOpenMs = config.getMaxBatchOpenMs();
+        double rate = messageRate();
+        if (rate <= 0) {
+            return 0;
+        }
+        double messageIntervalMs = 1 / rate / TimeUnit.MILLISECONDS.toNanos(1);
+        if (messageIntervalMs >= maxBatchOpenMs) {
+            // the batch would go out with this message only anyway
+            return 0;
+        }
+        double fillMs = (config.getMaxBatchSize() - 1) * messageIntervalMs;
+        return Math.min(maxBatchOpenMs, (long) Math.ceil(fillMs));
+    }
+
+    @Override
+    public synchronized int getMaxInflightOutboundBatches() {
+        int max = Math.max(1, config.getMaxInflightOutboundBatches());
+        if (batchLatencyNanos < 0) {
+            return max;
+        }
+        double fillRatio = messagesPerBatch / Math.max(1, config.getMaxBatchSize());
+        double batchSize = Math.max(1,
+                config.getMaxBatchSize() * Math.max(MIN_FILL_RATIO, fillRatio));
+        return batchesFor(batchSize, max);
+    }
+
+    @Override
+    public synchronized int getMaxInflightReceiveBatches() {
+        int max = Math.max(1, config.getMaxInflightReceiveBatches());
+        if (batchLatencyNanos < 0) {
+            return max;
+        }
+        return batchesFor(Math.max(1, messagesPerBatch), max);
+    }
+
+    @Override
+    public synchronized int getMaxDoneReceiveBatches() {
+        int max = Math.max(1, config.getMaxDoneReceiveBatches());
+        if (batchLatencyNanos < 0) {
+            return 1;
+        }
+        return batchesFor(Math.max(1, messagesPerBatch), max);
+    }
+
+    /**
+     * @return the number of batches of the given size that carry the current
+     *         message rate during a batch call, plus one, capped at max
+     */
+    private int batchesFor(double batchSize, int max) {
+        double batches = messageRate() * batchLatencyNanos / batchSize;
+        return (int) Math.min(max, Math.ceil(batches) + 1);
+    }
+
+    /**
+     * @return messages per nanosecond. The rate of the messages requested
+     *         since the last call is averaged in with a weight that grows with
+     *         the time it covers, so the rate drops quickly once requests
+     *         stop.
+     */
+    private double messageRate() {
+        long now = System.nanoTime();
+        long elapsed = now - sampleNanos;
+        if (elapsed > 0) {
+            long messages = requestedMessages.get();
+            double weight = 1 - Math.exp(-elapsed / RATE_TIME_CONSTANT_NANOS);
+            messageRate += weight * ((double) (messages - sampledMessages) / elapsed - messageRate);
+            sampleNanos = now;
+            sampledMessages = messages;
+        }
+        return messageRate;
+    }
+
+    private static double average(double average, double sample) {
+        return average < 0 ? sample : average + ALPHA * (sample - average);
+    }
+}
@@ -81,6 +81,10 @@ import java.util.concurrent.Future;
  * the buffer is empty will the calling thread have to wait for the messages to
  * be fetched. The size of the buffer and the maximum number of threads used for
  * prefetching are configurable. <br>
+ * With {@link AdaptiveQueueBufferPolicy#FACTORY} as the policy factory of the
+ * {@link QueueBufferConfig}, the batching timeout, the number of concurrent
+ * batches and the size of the pre-fetch buffer are tuned to the load of each
+ * queue instead, with the configured values as upper bounds. <br>
  * AmazonSQSBufferedAsyncClient is thread-safe.<br>
  */
 public class AmazonSQSBufferedAsyncClient implements AmazonSQSAsync {
@@ -460,6 +464,24 @@ public class AmazonSQSBufferedAsyncClient implements AmazonSQSAsync {
         return buffer.receiveMessage(receiveMessageRequest, asyncHandler);
     }
 
+    /**
+     * Sets a handler that is pushed the messages of a queue as the buffer
+     * receives them, once the pending receive requests for the queue are
+     * satisfied. While a handler is set, the buffer keeps receiving messages
+     * from the queue. The handler is called on the threads of the buffer,
+     * possibly concurrently, and receive errors are reported to its
+     * {@code onError} method.
+     *
+     * @param queueUrl the URL of the queue
+     * @param handler the handler, or null to stop pushing the messages of the
+     *            queue
+     */
+    public void setMessageHandler(String queueUrl,
+            AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> handler) {
+        QueueBuffer buffer = getQBuffer(queueUrl);
+        buffer.setMessageHandler(handler);
+    }
+
     @Override
     public Future<Void> deleteMessageAsync(
             DeleteMessageRequest deleteMessageRequest,
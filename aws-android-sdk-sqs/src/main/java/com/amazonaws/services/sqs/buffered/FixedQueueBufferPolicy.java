@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.sqs.buffered;
+
+/**
+ * The default {@link QueueBufferPolicy}, which uses the values of the
+ * {@link QueueBufferConfig} whatever the load.
+ */
+public class FixedQueueBufferPolicy implements QueueBufferPolicy {
+
+    /** Creates {@code FixedQueueBufferPolicy}s */
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public QueueBufferPolicy newPolicy(QueueBufferConfig config) {
+            return new FixedQueueBufferPolicy(config);
+        }
+    };
+
+    private final QueueBufferConfig config;
+
+    public FixedQueueBufferPolicy(QueueBufferConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public void onRequest(int messages) {
+    }
+
+    @Override
+    public void onBatchCompleted(int messages, long latencyNanos) {
+    }
+
+    @Override
+    public long getMaxBatchOpenMs() {
+        return config.getMaxBatchOpenMs();
+    }
+
+    @Override
+    public int getMaxInflightOutboundBatches() {
+        return Math.max(1, config.getMaxInflightOutboundBatches());
+    }
+
+    @Override
+    public int getMaxInflightReceiveBatches() {
+        return Math.max(1, config.getMaxInflightReceiveBatches());
+    }
+
+    @Override
+    public int getMaxDoneReceiveBatches() {
+        return Math.max(1, config.getMaxDoneReceiveBatches());
+    }
+}
@@ -29,6 +29,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -65,11 +66,18 @@ class QueueBuffer {
      */
     static ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory());;
 
+    /**
+     * The timer shared among all queue buffers, used to hand pre-fetched
+     * messages back to their queue before their visibility timeout expires.
+     */
+    static ScheduledExecutorService scheduler = Executors
+            .newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+
     QueueBuffer(QueueBufferConfig paramConfig, String url, AmazonSQSAsync sqs) {
         realSqs = sqs;
         config = paramConfig;
         sendBuffer = new SendQueueBuffer(sqs, executor, paramConfig, url);
-        receiveBuffer = new ReceiveQueueBuffer(sqs, executor, paramConfig, url);
+        receiveBuffer = new ReceiveQueueBuffer(sqs, executor, scheduler, paramConfig, url);
     }
 
     /**
@@ -195,6 +203,15 @@ class QueueBuffer {
         }
     }
 
+    /**
+     * Sets a handler that is pushed the messages of the queue as they are
+     * received, or removes it if null.
+     */
+    public void setMessageHandler(
+            AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> handler) {
+        receiveBuffer.setMessageHandler(handler);
+    }
+
     /**
      * Retrieves messages from an SQS queue.
      *
@@ -117,6 +117,12 @@ public class QueueBufferConfig {
 
     public static final int LONGPOLL_WAIT_TIMEOUT_SECONDS_DEFAULT = 20;
 
+    /**
+     * Creates the policies that decide the batch open time, the number of
+     * batches in flight and the number of batches pre-fetched.
+     */
+    private QueueBufferPolicy.Factory policyFactory = FixedQueueBufferPolicy.FACTORY;
+
     public QueueBufferConfig(long maxBatchOpenMs,
             int maxInflightOutboundBatches,
             int maxInflightReceiveBatches,
@@ -161,6 +167,7 @@ public class QueueBufferConfig {
         maxInflightOutboundBatches = other.maxInflightOutboundBatches;
         maxInflightReceiveBatches = other.maxInflightReceiveBatches;
         visibilityTimeoutSeconds = other.visibilityTimeoutSeconds;
+        policyFactory = other.policyFactory;
     }
 
     @Override
@@ -173,7 +180,8 @@ public class QueueBufferConfig {
                 + maxDoneReceiveBatches + ", maxBatchSizeBytes="
                 + maxBatchSizeBytes + ", visibilityTimeoutSeconds="
                 + visibilityTimeoutSeconds + ", longPollWaitTimeoutSeconds="
-                + longPollWaitTimeoutSeconds + "]";
+                + longPollWaitTimeoutSeconds + ", policyFactory="
+                + policyFactory + "]";
     }
 
     /**
@@ -427,6 +435,33 @@ public class QueueBufferConfig {
         return this;
     }
 
+    /**
+     * Creates the policies that decide the batch open time, the number of
+     * batches in flight and the number of batches pre-fetched. The default,
+     * {@link FixedQueueBufferPolicy#FACTORY}, uses the values of this config.
+     * {@link AdaptiveQueueBufferPolicy#FACTORY} tunes them to the load, using
+     * the values of this config as upper bounds.
+     */
+    public QueueBufferPolicy.Factory getPolicyFactory() {
+        return policyFactory;
+    }
+
+    /**
+     * Creates the policies that decide the batch open time, the number of
+     * batches in flight and the number of batches pre-fetched. The default,
+     * {@link FixedQueueBufferPolicy#FACTORY}, uses the values of this config.
+     * {@link AdaptiveQueueBufferPolicy#FACTORY} tunes them to the load, using
+     * the values of this config as upper bounds.
+     */
+    public void setPolicyFactory(QueueBufferPolicy.Factory policyFactory) {
+        this.policyFactory = policyFactory;
+    }
+
+    public QueueBufferConfig withPolicyFactory(QueueBufferPolicy.Factory policyFactory) {
+        this.policyFactory = policyFactory;
+        return this;
+    }
+
     /**
      * this method checks the config for validity. If the config is deemed to be
      * invalid, an informative exception is thrown.
@@ -438,6 +473,9 @@ public class QueueBufferConfig {
         if (visibilityTimeoutSeconds == 0) {
             throw new AmazonClientException("Visibility timeout value may not be equal to zero ");
         }
+        if (policyFactory == null) {
+            throw new AmazonClientException("Policy factory may not be null");
+        }
     }
 
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.sqs.buffered;
+
+/**
+ * Decides how a queue buffer batches one type of request: how long an
+ * outbound batch is held open, how many batches may be in flight and how many
+ * received batches are pre-fetched. The buffer reports what it observes to the
+ * policy, so a policy can tune these values to the load of the queue.
+ * <p>
+ * A queue buffer creates a policy, through the
+ * {@link QueueBufferConfig#getPolicyFactory() factory} of its config, for
+ * each type of request it batches: {@code SendMessage}, {@code DeleteMessage},
+ * {@code ChangeMessageVisibility} and {@code ReceiveMessage}. Policies are
+ * called concurrently and must be thread-safe.
+ *
+ * @see FixedQueueBufferPolicy
+ * @see AdaptiveQueueBufferPolicy
+ */
+public interface QueueBufferPolicy {
+
+    /**
+     * Creates the policies of a queue buffer.
+     */
+    interface Factory {
+        /**
+         * @param config the config of the queue buffer
+         * @return a new policy, never null
+         */
+        QueueBufferPolicy newPolicy(QueueBufferConfig config);
+    }
+
+    /**
+     * Called when a request arrives at the buffer.
+     *
+     * @param messages the number of messages of the request: 1 for an
+     *            outbound request, the number of messages asked for by a
+     *            receive request
+     */
+    void onRequest(int messages);
+
+    /**
+     * Called when a batch call to SQS succeeded.
+     *
+     * @param messages the number of messages in the batch
+     * @param latencyNanos how long the call took
+     */
+    void onBatchCompleted(int messages, long latencyNanos);
+
+    /**
+     * @return the time (milliseconds) a new outbound batch is held open for
+     *         more requests
+     */
+    long getMaxBatchOpenMs();
+
+    /**
+     * @return the max number of outbound batches in flight, at least 1
+     */
+    int getMaxInflightOutboundBatches();
+
+    /**
+     * @return the max number of receive batches in flight, at least 1
+     */
+    int getMaxInflightReceiveBatches();
+
+    /**
+     * @return the max number of received batches kept in the buffer, at least
+     *         1
+     */
+    int getMaxDoneReceiveBatches();
+}
@@ -16,6 +16,7 @@
 package com.amazonaws.services.sqs.buffered;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
 import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
@@ -27,12 +28,17 @@ import com.amazonaws.services.sqs.model.ReceiveMessageResult;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The ReceiveQueueBuffer class is responsible for dequeueing of messages from a
@@ -42,63 +48,117 @@ import java.util.concurrent.TimeUnit;
  * as the maximum number of threads used to retrieve the messages are
  * configurable.
  * <p>
- * Synchronization strategy: - Threads must hold the TaskSpawnSyncPoint object
- * monitor to spawn a new task or modify the number of inflight tasks - Threads
- * must hold the monitor of the "futures" list to modify the list - Threads must
- * hold the monitor of the "finishedTasks" list to modify the list - If you need
- * to lock both futures and finishedTasks, lock futures first and finishedTasks
- * second
+ * Everything happens in response to an event: a receive request, a receive
+ * batch coming back from SQS or a pre-fetched message getting close to the end
+ * of its visibility timeout. Nothing sleeps. Without long polling an empty
+ * receive returns right away, so the next receive is delayed, longer after
+ * each empty receive in a row, and isn't made at all while nothing waits for
+ * messages. An empty receive completes the oldest pending request with no
+ * messages, so requests don't wait on an empty queue.
+ * <p>
+ * Pre-fetched messages are handed back to the queue with a
+ * {@code ChangeMessageVisibility} call once less than a quarter of their
+ * visibility timeout remains, so other consumers get them right away instead
+ * of once the timeout expires, and this buffer never hands out a message that
+ * is about to be visible again.
+ * <p>
+ * Synchronization strategy: all the state of the buffer is guarded by a single
+ * lock, which is never held while calling SQS or consumer code.
  */
 public class ReceiveQueueBuffer {
 
     private static Log log = LogFactory.getLog(ReceiveQueueBuffer.class);
 
+    /**
+     * A pre-fetched message is handed back to the queue when less than
+     * 1/RELEASE_FRACTION of its visibility timeout remains.
+     */
+    private static final int RELEASE_FRACTION = 4;
+
+    /** Max number of entries of a ChangeMessageVisibilityBatch call */
+    private static final int MAX_RELEASE_BATCH_SIZE = 10;
+
+    /** Delay of the receive following an empty short poll receive */
+    private static final long MIN_EMPTY_RECEIVE_BACKOFF_MS = 100;
+
+    /** Max delay between short poll receives while the queue is empty */
+    private static final long MAX_EMPTY_RECEIVE_BACKOFF_MS = 5000;
+
     private final QueueBufferConfig config;
 
     private final String qUrl;
 
     private final Executor executor;
 
+    /** Runs the release of pre-fetched messages nearing their timeout */
+    private final ScheduledExecutorService scheduler;
+
     private final AmazonSQS sqsClient;
 
-    private long bufferCounter = 0;
+    /** Decides how many batches are in flight and pre-fetched */
+    private final QueueBufferPolicy policy;
 
     /**
      * This buffer's queue visibility timeout. Used to detect expired message
-     * that should not be returned by the {@code receiveMessage} call.
-     * Synchronized by {@code receiveMessageLock}. -1 indicates that the time is
-     * uninitialized.
+     * that should not be returned by the {@code receiveMessage} call. -1
+     * indicates that the time is uninitialized.
      */
     private volatile long visibilityTimeoutNanos = -1;
 
+    /** shutdown buffer does not retrieve any more messages from sqs */
+    volatile boolean shutDown = false;
+
+    /** Guards the state below */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when the last in flight receive batch has finished */
+    private final Condition noInflightBatches = lock.newCondition();
+
+    private long bufferCounter = 0;
+
+    /** Number of receive batches in flight */
+    private int inflightReceiveMessageBatches;
+
+    /** message delivery futures we gave out */
+    private final ArrayDeque<ReceiveMessageFuture> futures = new ArrayDeque<ReceiveMessageFuture>();
+
     /**
-     * Used as permits controlling the number of in flight receive batches.
-     * Synchronized by {@code taskSpawnSyncPoint}.
+     * Pre-fetched messages, oldest first. Bounded by the pre-fetch depth of
+     * the policy: no batch is spawned that could take it over.
      */
-    private volatile int inflightReceiveMessageBatches;
+    private final ArrayDeque<PrefetchedMessage> messages = new ArrayDeque<PrefetchedMessage>();
 
     /**
-     * synchronize on this object to create new receive batches or modify
-     * inflight message count
+     * The error of the last failed receive batch, reported to the next
+     * request the buffer can't satisfy with messages. No more batches are
+     * spawned until then.
      */
-    private final Object taskSpawnSyncPoint = new Object();
+    private Exception exception;
 
-    /** shutdown buffer does not retrieve any more messages from sqs */
-    volatile boolean shutDown = false;
+    /** Handler pushed the messages, if any */
+    private AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> messageHandler;
 
-    /** message delivery futures we gave out */
-    private final LinkedList<ReceiveMessageFuture> futures = new LinkedList<ReceiveMessageFuture>();
+    /** Scheduled release of pre-fetched messages, and when it runs */
+    private ScheduledFuture<?> releaseTask;
+    private long releaseTaskNanos;
+
+    /** Number of receive batches in a row which came back empty */
+    private int emptyReceives;
+
+    /** No receive batch is spawned before then after an empty receive */
+    private long nextReceiveNanos;
 
-    /** finished batches are stored in this list. */
-    private LinkedList<ReceiveMessageBatchTask> finishedTasks = new LinkedList<ReceiveMessageBatchTask>();
+    /** Scheduled spawn of receive batches at nextReceiveNanos */
+    private ScheduledFuture<?> backoffTask;
 
-    ReceiveQueueBuffer(AmazonSQS paramSQS, Executor paramExecutor, QueueBufferConfig paramConfig,
-            String url) {
+    ReceiveQueueBuffer(AmazonSQS paramSQS, Executor paramExecutor,
+            ScheduledExecutorService paramScheduler, QueueBufferConfig paramConfig, String url) {
         config = paramConfig;
         executor = paramExecutor;
+        scheduler = paramScheduler;
         sqsClient = paramSQS;
         qUrl = url;
-
+        policy = config.getPolicyFactory().newPolicy(config);
     }
 
     /**
@@ -107,11 +167,17 @@ public class ReceiveQueueBuffer {
      */
     public void shutdown() {
         shutDown = true;
+        lock.lock();
         try {
-            while (inflightReceiveMessageBatches > 0)
-                Thread.sleep(100);
+            while (inflightReceiveMessageBatches > 0) {
+                noInflightBatches.await();
+            }
+            cancelReleaseTask();
+            cancelBackoffTask();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -135,11 +201,22 @@ public class ReceiveQueueBuffer {
         if (rq.getMaxNumberOfMessages() != null) {
             numMessages = rq.getMaxNumberOfMessages();
         }
-        QueueBufferFuture<ReceiveMessageRequest, ReceiveMessageResult> toReturn = issueFuture(
-                numMessages, callback);
+        policy.onRequest(numMessages);
+        ReceiveMessageFuture toReturn = new ReceiveMessageFuture(callback, numMessages);
 
         // attempt to satisfy it right away...
-        satisfyFuturesFromBuffer();
+        lock.lock();
+        try {
+            futures.addLast(toReturn);
+            deliver();
+            if (!futures.isEmpty()) {
+                // a new request is worth a receive right away
+                emptyReceives = 0;
+                cancelBackoffTask();
+            }
+        } finally {
+            lock.unlock();
+        }
 
         // spawn more receive tasks if we need them...
         spawnMoreReceiveTasks();
@@ -148,178 +225,326 @@ public class ReceiveQueueBuffer {
     }
 
     /**
-     * Creates and returns a new future object. Sleeps if the list of
-     * already-issued but as yet unsatisfied futures is over a throttle limit.
+     * Sets a handler that is pushed the messages of the queue as they arrive,
+     * once the pending receive requests are satisfied. While a handler is set
+     * the buffer keeps receiving messages, backing off while the queue is
+     * empty unless long polling is enabled. The handler is called on the
+     * threads of the executor, possibly concurrently.
      *
-     * @return never null
+     * @param handler the handler, or null to stop pushing messages
      */
-    private ReceiveMessageFuture issueFuture(int size,
-            QueueBufferCallback<ReceiveMessageRequest, ReceiveMessageResult> callback) {
-        synchronized (futures) {
-            ReceiveMessageFuture theFuture = new ReceiveMessageFuture(callback, size);
-            futures.addLast(theFuture);
-            return theFuture;
+    public void setMessageHandler(AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> handler) {
+        if (shutDown && handler != null) {
+            throw new AmazonClientException("The client has been shut down.");
         }
+        lock.lock();
+        try {
+            messageHandler = handler;
+            deliver();
+        } finally {
+            lock.unlock();
+        }
+        spawnMoreReceiveTasks();
     }
 
     /**
-     * Attempts to satisfy some or all of the already-issued futures from the
-     * local buffer. If the buffer is empty or there are no futures, this method
-     * won't do anything.
+     * Satisfies the issued futures, then the message handler, from the
+     * pre-fetched messages. Must hold the lock.
      */
-    private void satisfyFuturesFromBuffer() {
-        synchronized (futures) {
-            synchronized (finishedTasks) {
-                // attempt to satisfy futures until we run out of either futures
-                // or
-                // finished tasks
-                while ((!futures.isEmpty()) && (!finishedTasks.isEmpty())) {
-                    ReceiveMessageFuture currentFuture = futures.poll();
-                    fillFuture(currentFuture);
-                }
+    private void deliver() {
+        releaseExpiringMessages();
+
+        while (!futures.isEmpty() && (!messages.isEmpty() || exception != null)) {
+            ReceiveMessageFuture future = futures.poll();
+            if (messages.isEmpty()) {
+                future.setFailure(exception);
+                exception = null;
+            } else {
+                future.setSuccess(takeMessages(future.getRequestedSize()));
             }
         }
+
+        final AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> handler = messageHandler;
+        if (handler == null) {
+            return;
+        }
+        final ReceiveMessageRequest request = new ReceiveMessageRequest(qUrl);
+        while (!messages.isEmpty()) {
+            final ReceiveMessageResult result = takeMessages(config.getMaxBatchSize());
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handler.onSuccess(request, result);
+                }
+            });
+        }
+        if (exception != null) {
+            final Exception e = exception;
+            exception = null;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handler.onError(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Takes up to the given number of pre-fetched messages. Must hold the
+     * lock.
+     */
+    private ReceiveMessageResult takeMessages(int max) {
+        List<Message> taken = new ArrayList<Message>(Math.min(max, messages.size()));
+        while (taken.size() < max && !messages.isEmpty()) {
+            taken.add(messages.poll().message);
+        }
+        return new ReceiveMessageResult().withMessages(taken);
     }
 
     /**
-     * Fills the future with whatever results were received by the full batch
-     * currently at the head of the completed batch queue. Those results may be
-     * retrieved messages, or an exception. this method assumes that you are
-     * holding the finished tasks lock locks when invoking it. violate this
-     * assumption at your own peril
+     * Removes the pre-fetched messages that are close to the end of their
+     * visibility timeout, hands them back to the queue in the background and
+     * schedules the next release. Must hold the lock.
      */
-    private void fillFuture(ReceiveMessageFuture f) {
-        ReceiveMessageResult r = new ReceiveMessageResult();
-        LinkedList<Message> messages = new LinkedList<Message>();
-        r.setMessages(messages);
-        Exception exception = null;
-
-        if (!finishedTasks.isEmpty()) {
-            ReceiveMessageBatchTask t = finishedTasks.getFirst();
-
-            exception = t.getException();
-            int retrieved = 0;
-            boolean batchDone = false;
-            while (retrieved < f.getRequestedSize())
-            {
-                Message m = t.removeMessage();
-                // a non-empty batch can still give back a null
-                // message if the message expired.
-                if (null != m) {
-                    messages.add(m);
-                    ++retrieved;
+    private void releaseExpiringMessages() {
+        long now = System.nanoTime();
+        final List<PrefetchedMessage> expiring = new ArrayList<PrefetchedMessage>();
+        PrefetchedMessage next = null;
+        for (Iterator<PrefetchedMessage> it = messages.iterator(); it.hasNext();) {
+            PrefetchedMessage m = it.next();
+            if (m.releaseNanos - now <= 0) {
+                it.remove();
+                expiring.add(m);
+            } else if (next == null || m.releaseNanos - next.releaseNanos < 0) {
+                next = m;
+            }
+        }
+
+        if (!expiring.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Queue " + qUrl + " releasing " + expiring.size()
+                        + " pre-fetched messages before their visibility timeout");
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    release(expiring);
                 }
-                else {
-                    batchDone = true;
-                    break;
+            });
+        }
+
+        if (next == null) {
+            cancelReleaseTask();
+        } else if (releaseTask == null || next.releaseNanos - releaseTaskNanos < 0) {
+            cancelReleaseTask();
+            releaseTaskNanos = next.releaseNanos;
+            releaseTask = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    lock.lock();
+                    try {
+                        releaseTask = null;
+                        releaseExpiringMessages();
+                    } finally {
+                        lock.unlock();
+                    }
                 }
+            }, next.releaseNanos - now, TimeUnit.NANOSECONDS);
+        }
+    }
 
+    private void cancelReleaseTask() {
+        if (releaseTask != null) {
+            releaseTask.cancel(false);
+            releaseTask = null;
+        }
+    }
+
+    /**
+     * Spawns the receive batches once the back off after an empty receive is
+     * over. Must hold the lock.
+     */
+    private void scheduleBackoffTask(long delayNanos) {
+        if (backoffTask != null) {
+            return;
+        }
+        backoffTask = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                lock.lock();
+                try {
+                    backoffTask = null;
+                } finally {
+                    lock.unlock();
+                }
+                spawnMoreReceiveTasks();
             }
-            // we may have just drained the batch.
-            batchDone = batchDone || t.isEmpty() || (exception != null);
-            if (batchDone) {
-                finishedTasks.removeFirst();
-            }
-            r.setMessages(messages);
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void cancelBackoffTask() {
+        if (backoffTask != null) {
+            backoffTask.cancel(false);
+            backoffTask = null;
         }
+    }
 
-        // if after the above runs the exception is not null,
-        // the finished batch has encountered an error, and we will
-        // report that in the Future. Otherwise, we will fill
-        // the future with the receive result
-        if (exception != null)
-            f.setFailure(exception);
-        else
-            f.setSuccess(r);
-
-        // now, a bit of maintenance. remove empty non-exception-bearing
-        // batches so we can get new ones.
-        while (!finishedTasks.isEmpty()) {
-            ReceiveMessageBatchTask t = finishedTasks.getFirst();
-            if ((!t.isEmpty()) || (t.getException() != null)) {
-                // if we found a finished task that has useful content,
-                // our cleanup is done
-                break;
+    /**
+     * @return whether an empty receive waits for messages on the server side.
+     */
+    private boolean isLongPolling() {
+        return config.isLongPoll() && config.getLongPollWaitTimeoutSeconds() > 0;
+    }
+
+    /**
+     * Makes the given messages visible again, those that still are invisible.
+     */
+    private void release(List<PrefetchedMessage> toRelease) {
+        long now = System.nanoTime();
+        List<ChangeMessageVisibilityBatchRequestEntry> entries =
+                new ArrayList<ChangeMessageVisibilityBatchRequestEntry>(MAX_RELEASE_BATCH_SIZE);
+        for (int i = 0; i < toRelease.size(); i++) {
+            PrefetchedMessage m = toRelease.get(i);
+            if (m.visibilityDeadlineNanos - now > 0) {
+                entries.add(new ChangeMessageVisibilityBatchRequestEntry()
+                        .withId(Integer.toString(entries.size()))
+                        .withReceiptHandle(m.message.getReceiptHandle())
+                        .withVisibilityTimeout(0));
+            }
+            if (entries.size() == MAX_RELEASE_BATCH_SIZE
+                    || (i == toRelease.size() - 1 && !entries.isEmpty())) {
+                ChangeMessageVisibilityBatchRequest batchRequest = new ChangeMessageVisibilityBatchRequest()
+                        .withQueueUrl(qUrl)
+                        .withEntries(entries);
+                ResultConverter.appendUserAgent(batchRequest,
+                        AmazonSQSBufferedAsyncClient.USER_AGENT);
+                try {
+                    sqsClient.changeMessageVisibilityBatch(batchRequest);
+                } catch (AmazonClientException e) {
+                    // Log and ignore.
+                    log.warn("ReceiveQueueBuffer: changeMessageVisibility failed " + e);
+                }
+                entries = new ArrayList<ChangeMessageVisibilityBatchRequestEntry>(
+                        MAX_RELEASE_BATCH_SIZE);
             }
-            // throw away the empty batch.
-            finishedTasks.removeFirst();
         }
     }
 
     /**
      * maybe create more receive tasks. extra receive tasks won't be created if
-     * we are already at the maximum number of receive tasks, or if we are at
-     * the maximum number of prefetched buffers
+     * we are already at the maximum number of receive tasks, or if the
+     * messages pre-fetched and being received may take the buffer over the
+     * pre-fetch depth
      */
     private void spawnMoreReceiveTasks() {
 
         if (shutDown)
             return;
 
-        int desiredBatches = config.getMaxDoneReceiveBatches();
-        desiredBatches = desiredBatches < 1 ? 1 : desiredBatches;
+        if (visibilityTimeoutNanos == -1) {
+            GetQueueAttributesRequest request = new GetQueueAttributesRequest().
+                    withQueueUrl(qUrl).
+                    withAttributeNames("VisibilityTimeout");
+            ResultConverter.appendUserAgent(request, AmazonSQSBufferedAsyncClient.USER_AGENT);
+            long visibilityTimeoutSeconds = Long.parseLong(sqsClient
+                    .getQueueAttributes(request).getAttributes().get("VisibilityTimeout"));
+            visibilityTimeoutNanos = TimeUnit.NANOSECONDS.convert(visibilityTimeoutSeconds,
+                    TimeUnit.SECONDS);
+        }
 
-        synchronized (finishedTasks) {
-            if (finishedTasks.size() >= desiredBatches)
+        int max;
+        lock.lock();
+        try {
+            if (exception != null) {
+                // wait for a consumer to see the error before trying again
                 return;
+            }
+
+            if (emptyReceives > 0) {
+                // the queue was empty, receive again only for someone
+                if (futures.isEmpty() && messageHandler == null) {
+                    return;
+                }
+                long delayNanos = nextReceiveNanos - System.nanoTime();
+                if (delayNanos > 0) {
+                    scheduleBackoffTask(delayNanos);
+                    return;
+                }
+            }
 
-            // if we have some finished batches already, and
-            // existing inflight batches will bring us to the limit,
-            // don't spawn more. if our finished tasks cache is empty, we will
-            // always spawn a thread.
-            if (finishedTasks.size() > 0
-                    && (finishedTasks.size() + inflightReceiveMessageBatches) >= desiredBatches)
+            // the policy allows at least one inflight receive task, or receive
+            // won't work at all.
+            max = policy.getMaxInflightReceiveBatches();
+            if (inflightReceiveMessageBatches >= max) {
                 return;
-        }
+            }
 
-        synchronized (taskSpawnSyncPoint) {
-            if (visibilityTimeoutNanos == -1) {
-                GetQueueAttributesRequest request = new GetQueueAttributesRequest().
-                        withQueueUrl(qUrl).
-                        withAttributeNames("VisibilityTimeout");
-                ResultConverter.appendUserAgent(request, AmazonSQSBufferedAsyncClient.USER_AGENT);
-                long visibilityTimeoutSeconds = Long.parseLong(sqsClient
-                        .getQueueAttributes(request).getAttributes().get("VisibilityTimeout"));
-                visibilityTimeoutNanos = TimeUnit.NANOSECONDS.convert(visibilityTimeoutSeconds,
-                        TimeUnit.SECONDS);
+            // if we have some messages already, and existing inflight batches
+            // may bring us to the limit, don't spawn more. if the buffer is
+            // empty, we will always spawn a batch.
+            int capacity = policy.getMaxDoneReceiveBatches() * config.getMaxBatchSize();
+            if (!messages.isEmpty()
+                    && messages.size() + inflightReceiveMessageBatches
+                            * config.getMaxBatchSize() >= capacity) {
+                return;
             }
 
-            int max = config.getMaxInflightReceiveBatches();
-            // must allow at least one inflight receive task, or receive won't
-            // work at all.
-            max = max > 0 ? max : 1;
-            int toSpawn = max - inflightReceiveMessageBatches;
-            if (toSpawn > 0) {
-                ReceiveMessageBatchTask task = new ReceiveMessageBatchTask(this);
-                ++inflightReceiveMessageBatches;
-                ++bufferCounter;
-                if (log.isTraceEnabled()) {
-                    log.trace("Spawned receive batch #" + bufferCounter + " ("
-                            + inflightReceiveMessageBatches
-                            + " of " + max + " inflight) for queue " + qUrl);
-                }
-                executor.execute(task);
+            ++inflightReceiveMessageBatches;
+            ++bufferCounter;
+            if (log.isTraceEnabled()) {
+                log.trace("Spawned receive batch #" + bufferCounter + " ("
+                        + inflightReceiveMessageBatches
+                        + " of " + max + " inflight) for queue " + qUrl);
             }
+        } finally {
+            lock.unlock();
         }
+        executor.execute(new ReceiveMessageBatchTask());
     }
 
     /**
      * This method is called by the batches after they have finished retrieving
      * the messages.
      */
-    void reportBatchFinished(ReceiveMessageBatchTask batch)
-    {
-        synchronized (finishedTasks) {
-            finishedTasks.addLast(batch);
+    void reportBatchFinished(List<Message> received, long visibilityDeadlineNanos,
+            Exception batchException) {
+        lock.lock();
+        try {
+            long releaseNanos = visibilityDeadlineNanos
+                    - (visibilityDeadlineNanos - System.nanoTime()) / RELEASE_FRACTION;
+            for (Message m : received) {
+                messages.addLast(new PrefetchedMessage(m, visibilityDeadlineNanos, releaseNanos));
+            }
+            if (batchException != null) {
+                exception = batchException;
+            } else if (!received.isEmpty()) {
+                emptyReceives = 0;
+            } else {
+                emptyReceives++;
+                if (!isLongPolling()) {
+                    // doubles the delay after each empty receive in a row
+                    long backoffMs = Math.min(MAX_EMPTY_RECEIVE_BACKOFF_MS,
+                            MIN_EMPTY_RECEIVE_BACKOFF_MS << Math.min(emptyReceives - 1, 16));
+                    nextReceiveNanos = System.nanoTime()
+                            + TimeUnit.NANOSECONDS.convert(backoffMs, TimeUnit.MILLISECONDS);
+                }
+            }
             if (log.isTraceEnabled()) {
-                log.info("Queue " + qUrl + " now has " + finishedTasks.size()
-                        + " receive results cached ");
+                log.trace("Queue " + qUrl + " now has " + messages.size()
+                        + " messages cached ");
             }
+            if (--inflightReceiveMessageBatches == 0) {
+                noInflightBatches.signalAll();
+            }
+            deliver();
+            if (batchException == null && received.isEmpty() && !futures.isEmpty()) {
+                // the queue is empty, don't keep the oldest request waiting
+                futures.poll().setSuccess(new ReceiveMessageResult());
+            }
+        } finally {
+            lock.unlock();
         }
-        synchronized (taskSpawnSyncPoint) {
-            --inflightReceiveMessageBatches;
-        }
-        satisfyFuturesFromBuffer();
         spawnMoreReceiveTasks();
     }
 
@@ -327,19 +552,32 @@ public class ReceiveQueueBuffer {
      * Clears and nacks any pre-fetched messages in this buffer.
      */
     public void clear() {
-        boolean done = false;
-        while (!done) {
-            ReceiveMessageBatchTask currentBatch = null;
-            synchronized (finishedTasks) {
-                currentBatch = finishedTasks.poll();
-            }
+        List<PrefetchedMessage> toRelease;
+        lock.lock();
+        try {
+            toRelease = new ArrayList<PrefetchedMessage>(messages);
+            messages.clear();
+            cancelReleaseTask();
+        } finally {
+            lock.unlock();
+        }
+        release(toRelease);
+    }
 
-            if (currentBatch != null) {
-                currentBatch.clear();
-            } else {
-                // ran out of batches to clear
-                done = true;
-            }
+    /**
+     * A pre-fetched message.
+     */
+    private static final class PrefetchedMessage {
+        final Message message;
+        /** When the message becomes visible to other consumers again */
+        final long visibilityDeadlineNanos;
+        /** When the message is handed back to the queue if still here */
+        final long releaseNanos;
+
+        PrefetchedMessage(Message message, long visibilityDeadlineNanos, long releaseNanos) {
+            this.message = message;
+            this.visibilityDeadlineNanos = visibilityDeadlineNanos;
+            this.releaseNanos = releaseNanos;
         }
     }
 
@@ -368,123 +606,21 @@ public class ReceiveQueueBuffer {
     /**
      * Task to receive messages from SQS.
      * <p>
-     * The batch task is constructed {@code !open} until the
-     * {@code ReceiveMessage} completes. At that point, the batch opens and its
-     * messages (if any) become available to read.
+     * Upon completion, successful or not, the received messages or the error
+     * are reported to the buffer.
      */
     private class ReceiveMessageBatchTask implements Runnable {
-        private Exception exception = null;
-        private List<Message> messages;
-        private long visibilityDeadlineNano;
-        private boolean open = false;
-        private ReceiveQueueBuffer parentBuffer;
-
-        /**
-         * Constructs a receive task waiting the specified time before calling
-         * SQS.
-         *
-         * @param waitTimeMs the time to wait before calling SQS
-         */
-        ReceiveMessageBatchTask(ReceiveQueueBuffer paramParentBuffer) {
-            parentBuffer = paramParentBuffer;
-            messages = Collections.emptyList();
-        }
-
-        synchronized int getSize() {
-            if (!open)
-                throw new IllegalStateException("batch is not open");
-
-            return messages.size();
-
-        }
-
-        synchronized boolean isEmpty() {
-            if (!open)
-                throw new IllegalStateException("batch is not open");
-
-            return messages.isEmpty();
-        }
-
-        /**
-         * @return the exception that was thrown during execution, or null if
-         *         there was no exception
-         */
-        synchronized Exception getException() {
-            if (!open)
-                throw new IllegalStateException("batch is not open");
-
-            return exception;
-        }
-
-        /**
-         * Returns a message if one is available.
-         * <p>
-         * The call adjusts the message count.
-         *
-         * @return a message or {@code null} if none is available
-         */
-        synchronized Message removeMessage() {
-            if (!open)
-                throw new IllegalStateException("batch is not open");
-
-            // our messages expired.
-            if (System.nanoTime() > visibilityDeadlineNano) {
-                messages.clear();
-                return null;
-            }
-
-            if (messages.isEmpty())
-                return null;
-            else
-                return messages.remove(messages.size() - 1);
-        }
-
-        /**
-         * Nacks and clears all messages remaining in the batch.
-         */
-        synchronized void clear() {
-            if (!open)
-                throw new IllegalStateException("batch is not open");
-
-            if (System.nanoTime() < visibilityDeadlineNano) {
-                ChangeMessageVisibilityBatchRequest batchRequest = new ChangeMessageVisibilityBatchRequest()
-                        .withQueueUrl(qUrl);
-                ResultConverter.appendUserAgent(batchRequest,
-                        AmazonSQSBufferedAsyncClient.USER_AGENT);
-
-                List<ChangeMessageVisibilityBatchRequestEntry> entries =
-                        new ArrayList<ChangeMessageVisibilityBatchRequestEntry>(messages.size());
-
-                int i = 0;
-                for (Message m : messages) {
-
-                    entries.add(new ChangeMessageVisibilityBatchRequestEntry()
-                            .withId(Integer.toString(i))
-                            .withReceiptHandle(m.getReceiptHandle())
-                            .withVisibilityTimeout(0));
-                    ++i;
-                }
-
-                try {
-                    batchRequest.setEntries(entries);
-                    sqsClient.changeMessageVisibilityBatch(batchRequest);
-                } catch (AmazonClientException e) {
-                    // Log and ignore.
-                    log.warn("ReceiveMessageBatchTask: changeMessageVisibility failed " + e);
-                }
-            }
-            messages.clear();
-        }
 
         /**
          * Attempts to retrieve messages from SQS and upon completion
-         * (successful or unsuccessful) reports the batch as complete and open
+         * (successful or unsuccessful) reports the batch as finished
          */
         @Override
         public void run() {
-
+            List<Message> received = Collections.emptyList();
+            Exception batchException = null;
+            long visibilityDeadlineNano = System.nanoTime() + visibilityTimeoutNanos;
             try {
-                visibilityDeadlineNano = System.nanoTime() + visibilityTimeoutNanos;
                 ReceiveMessageRequest request = new ReceiveMessageRequest(qUrl)
                         .withMaxNumberOfMessages(config.getMaxBatchSize());
                 ResultConverter.appendUserAgent(request, AmazonSQSBufferedAsyncClient.USER_AGENT);
@@ -500,13 +636,14 @@ public class ReceiveQueueBuffer {
                     request.withWaitTimeSeconds(config.getLongPollWaitTimeoutSeconds());
                 }
 
-                messages = sqsClient.receiveMessage(request).getMessages();
+                long start = System.nanoTime();
+                received = sqsClient.receiveMessage(request).getMessages();
+                policy.onBatchCompleted(received.size(), System.nanoTime() - start);
             } catch (AmazonClientException e) {
-                exception = e;
+                batchException = e;
             } finally {
-                // whatever happened, we are done and can be considered open
-                open = true;
-                parentBuffer.reportBatchFinished(this);
+                // whatever happened, we are done
+                reportBatchFinished(received, visibilityDeadlineNano, batchException);
             }
 
         }
@@ -40,11 +40,18 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class is responsible for buffering outgoing SQS requests, i.e. requests
@@ -82,54 +89,19 @@ public class SendQueueBuffer {
     private final Executor executor;
 
     /**
-     * Object used to serialize sendMessage calls.
+     * State of the sendMessage calls.
      */
-    private final Object sendMessageLock = new Object();
+    private final OutboundOperation<SendMessageRequest, SendMessageResult> sendMessageOperation;
 
     /**
-     * Object used to serialize deleteMessage calls.
+     * State of the deleteMessage calls.
      */
-    private final Object deleteMessageLock = new Object();
+    private final OutboundOperation<DeleteMessageRequest, Void> deleteMessageOperation;
 
     /**
-     * Object used to serialize changeMessageVisibility calls.
+     * State of the changeMessageVisibility calls.
      */
-    private final Object changeMessageVisibilityLock = new Object();
-
-    /**
-     * Current batching task for sendMessage. Using a size 1 array to allow
-     * "passing by reference". Synchronized by {@code sendMessageLock}.
-     */
-    private final SendMessageBatchTask[] openSendMessageBatchTask = new SendMessageBatchTask[1];
-
-    /**
-     * Current batching task for deleteMessage. Using a size 1 array to allow
-     * "passing by reference". Synchronized by {@code deleteMessageLock}.
-     */
-    private final DeleteMessageBatchTask[] openDeleteMessageBatchTask = new DeleteMessageBatchTask[1];
-
-    /**
-     * Current batching task for changeMessageVisibility. Using a size 1 array
-     * to allow "passing by reference". Synchronized by
-     * {@code changeMessageVisibilityLock}.
-     */
-    private final ChangeMessageVisibilityBatchTask[] openChangeMessageVisibilityBatchTask = new ChangeMessageVisibilityBatchTask[1];
-
-    /**
-     * Permits controlling the number of in flight SendMessage batches.
-     */
-    private final Semaphore inflightSendMessageBatches;
-
-    /**
-     * Permits controlling the number of in flight DeleteMessage batches.
-     */
-    private final Semaphore inflightDeleteMessageBatches;
-
-    /**
-     * Permits controlling the number of in flight ChangeMessageVisibility
-     * batches.
-     */
-    private final Semaphore inflightChangeMessageVisibilityBatches;
+    private final OutboundOperation<ChangeMessageVisibilityRequest, Void> changeMessageVisibilityOperation;
 
     SendQueueBuffer(AmazonSQS sqsClient, Executor executor, QueueBufferConfig paramConfig,
             String url) {
@@ -137,13 +109,12 @@ public class SendQueueBuffer {
         this.executor = executor;
         this.config = paramConfig;
         qUrl = url;
-        int maxBatch = config.getMaxInflightOutboundBatches();
-
-        // must allow at least one outbound batch.
-        maxBatch = maxBatch > 0 ? maxBatch : 1;
-        this.inflightSendMessageBatches = new Semaphore(maxBatch);
-        this.inflightDeleteMessageBatches = new Semaphore(maxBatch);
-        this.inflightChangeMessageVisibilityBatches = new Semaphore(maxBatch);
+        this.sendMessageOperation = new OutboundOperation<SendMessageRequest, SendMessageResult>(
+                config.getPolicyFactory().newPolicy(config));
+        this.deleteMessageOperation = new OutboundOperation<DeleteMessageRequest, Void>(
+                config.getPolicyFactory().newPolicy(config));
+        this.changeMessageVisibilityOperation = new OutboundOperation<ChangeMessageVisibilityRequest, Void>(
+                config.getPolicyFactory().newPolicy(config));
     }
 
     public QueueBufferConfig getConfig() {
@@ -158,8 +129,7 @@ public class SendQueueBuffer {
             QueueBufferCallback<SendMessageRequest, SendMessageResult> callback)
     {
         QueueBufferFuture<SendMessageRequest, SendMessageResult> result =
-                submitOutboundRequest(sendMessageLock, openSendMessageBatchTask, request,
-                        inflightSendMessageBatches, callback);
+                submitOutboundRequest(sendMessageOperation, request, callback);
         return result;
     }
 
@@ -168,11 +138,7 @@ public class SendQueueBuffer {
      */
     public QueueBufferFuture<DeleteMessageRequest, Void> deleteMessage(
             DeleteMessageRequest request, QueueBufferCallback<DeleteMessageRequest, Void> callback) {
-        return submitOutboundRequest(deleteMessageLock,
-                openDeleteMessageBatchTask,
-                request,
-                inflightDeleteMessageBatches,
-                callback);
+        return submitOutboundRequest(deleteMessageOperation, request, callback);
     }
 
     /**
@@ -181,12 +147,7 @@ public class SendQueueBuffer {
     public QueueBufferFuture<ChangeMessageVisibilityRequest, Void> changeMessageVisibility(
             ChangeMessageVisibilityRequest request,
             QueueBufferCallback<ChangeMessageVisibilityRequest, Void> callback) {
-        return submitOutboundRequest(
-                changeMessageVisibilityLock,
-                openChangeMessageVisibilityBatchTask,
-                request,
-                inflightChangeMessageVisibilityBatches,
-                callback);
+        return submitOutboundRequest(changeMessageVisibilityOperation, request, callback);
     }
 
     /**
@@ -194,13 +155,13 @@ public class SendQueueBuffer {
      */
     @SuppressWarnings("unchecked")
     private <R extends AmazonWebServiceRequest, Result> OutboundBatchTask<R, Result> newOutboundBatchTask(
-            R request) {
+            R request, QueueBufferPolicy policy) {
         if (request instanceof SendMessageRequest)
-            return (OutboundBatchTask<R, Result>) new SendMessageBatchTask();
+            return (OutboundBatchTask<R, Result>) new SendMessageBatchTask(policy);
         else if (request instanceof DeleteMessageRequest)
-            return (OutboundBatchTask<R, Result>) new DeleteMessageBatchTask();
+            return (OutboundBatchTask<R, Result>) new DeleteMessageBatchTask(policy);
         else if (request instanceof ChangeMessageVisibilityRequest)
-            return (OutboundBatchTask<R, Result>) new ChangeMessageVisibilityBatchTask();
+            return (OutboundBatchTask<R, Result>) new ChangeMessageVisibilityBatchTask(policy);
         else
             // this should never happen
             throw new IllegalArgumentException("Unsupported request type "
@@ -217,24 +178,9 @@ public class SendQueueBuffer {
     public void flush() {
 
         try {
-            synchronized (sendMessageLock) {
-                inflightSendMessageBatches
-                        .acquire(config.getMaxInflightOutboundBatches());
-                inflightSendMessageBatches
-                        .release(config.getMaxInflightOutboundBatches());
-            }
-            synchronized (deleteMessageLock) {
-                inflightDeleteMessageBatches
-                        .acquire(config.getMaxInflightOutboundBatches());
-                inflightDeleteMessageBatches
-                        .release(config.getMaxInflightOutboundBatches());
-            }
-            synchronized (changeMessageVisibilityLock) {
-                inflightChangeMessageVisibilityBatches
-                        .acquire(config.getMaxInflightOutboundBatches());
-                inflightChangeMessageVisibilityBatches
-                        .release(config.getMaxInflightOutboundBatches());
-            }
+            sendMessageOperation.awaitPendingBatches();
+            deleteMessageOperation.awaitPendingBatches();
+            changeMessageVisibilityOperation.awaitPendingBatches();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -245,84 +191,126 @@ public class SendQueueBuffer {
      * this buffer.
      * <p>
      *
-     * @param operationLock the lock synchronizing calls for the call type (
-     *            {@code sendMessage}, {@code deleteMessage},
-     *            {@code changeMessageVisibility} )
-     * @param openOutboundBatchTask the open batch task for this call type
+     * @param operation the state of the call type ( {@code sendMessage},
+     *            {@code deleteMessage}, {@code changeMessageVisibility} )
      * @param request the request to submit
-     * @param inflightOperationBatches the permits controlling the batches for
-     *            this type of request
      * @return never null
      * @throws AmazonClientException (see the various outbound calls for
      *             details)
      */
-    @SuppressWarnings("unchecked")
-    <OBT extends OutboundBatchTask<R, Result>, R extends AmazonWebServiceRequest, Result> QueueBufferFuture<R, Result> submitOutboundRequest(
-            Object operationLock,
-            OBT[] openOutboundBatchTask,
+    <R extends AmazonWebServiceRequest, Result> QueueBufferFuture<R, Result> submitOutboundRequest(
+            final OutboundOperation<R, Result> operation,
             R request,
-            final Semaphore inflightOperationBatches,
             QueueBufferCallback<R, Result> callback) {
         /*
-         * Callers add requests to a single batch task (openOutboundBatchTask)
-         * until it is full or maxBatchOpenMs elapses. The total number of batch
-         * task in flight is controlled by the inflightOperationBatch semaphore
-         * capped at maxInflightOutboundBatches.
+         * Callers add requests to a single batch task (openBatch) until it is
+         * full or the batch open time of the policy elapses. Adding a request
+         * reserves a slot of the batch with a compare-and-set, so callers
+         * don't wait for each other. A caller that finds the open batch full
+         * publishes a new one, which others can fill right away, and then
+         * waits for one of the inflightBatches permits before running it.
+         * Those permits are sized by the policy every time a batch is
+         * created.
          */
-        QueueBufferFuture<R, Result> theFuture = null;
-        try {
-            synchronized (operationLock) {
-                if (openOutboundBatchTask[0] == null
-                        || ((theFuture = openOutboundBatchTask[0].addRequest(request, callback))) == null) {
-                    OBT obt = (OBT) newOutboundBatchTask(request);
-                    inflightOperationBatches.acquire();
-                    openOutboundBatchTask[0] = obt;
-                    // Register a listener for the event signaling that the
-                    // batch task has completed (successfully or not).
-                    openOutboundBatchTask[0].onCompleted = new Listener<OutboundBatchTask<R, Result>>() {
-                        @Override
-                        public void invoke(OutboundBatchTask<R, Result> task) {
-                            inflightOperationBatches.release();
-                        }
-                    };
-
-                    if (log.isTraceEnabled()) {
-                        log.trace("Queue " + qUrl + " created new batch for "
-                                + request.getClass().toString()
-                                + " " + inflightOperationBatches.availablePermits()
-                                + " free slots remain");
-                    }
+        operation.policy.onRequest(1);
+        while (true) {
+            OutboundBatchTask<R, Result> current = operation.openBatch.get();
+            if (current != null) {
+                QueueBufferFuture<R, Result> theFuture = current.addRequest(request, callback);
+                if (theFuture != null) {
+                    return theFuture;
+                }
+            }
 
-                    theFuture = openOutboundBatchTask[0].addRequest(request, callback);
-                    executor.execute(openOutboundBatchTask[0]);
-                    if (null == theFuture) {
-                        // this can happen only if the request itself is flawed,
-                        // so that it can't be added to any batch, even a brand
-                        // new one
-                        throw new AmazonClientException("Failed to schedule request " + request
-                                + " for execution");
-                    }
+            final OutboundBatchTask<R, Result> obt = newOutboundBatchTask(request, operation.policy);
+            QueueBufferFuture<R, Result> theFuture = obt.addRequest(request, callback);
+            if (null == theFuture) {
+                // this can happen only if the request itself is flawed, so
+                // that it can't be added to any batch, even a brand new one
+                throw new AmazonClientException("Failed to schedule request " + request
+                        + " for execution");
+            }
+            // pending before it's published, so flush() can't miss requests
+            // added to it by other callers
+            operation.pendingBatches.add(obt);
+            if (!operation.openBatch.compareAndSet(current, obt)) {
+                // another caller published a batch first, add to that one.
+                // The abandoned batch never runs, release any flush() that
+                // saw it pending.
+                operation.pendingBatches.remove(obt);
+                obt.completed.countDown();
+                continue;
+            }
+            // Register a listener for the event signaling that the batch task
+            // has completed (successfully or not).
+            obt.onCompleted = new Listener<OutboundBatchTask<R, Result>>() {
+                @Override
+                public void invoke(OutboundBatchTask<R, Result> task) {
+                    operation.inflightBatches.release();
+                    operation.pendingBatches.remove(task);
                 }
+            };
+
+            operation.inflightBatches.resize(operation.policy.getMaxInflightOutboundBatches());
+            // the batch is published, it has to run even if this thread is
+            // interrupted. The interrupt status is kept.
+            operation.inflightBatches.acquireUninterruptibly();
+            if (log.isTraceEnabled()) {
+                log.trace("Queue " + qUrl + " created new batch for "
+                        + request.getClass().toString()
+                        + " " + operation.inflightBatches.availablePermits()
+                        + " free slots remain");
             }
+            executor.execute(obt);
+            return theFuture;
+        }
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            AmazonClientException toThrow = new AmazonClientException(
-                    "Interrupted while waiting for lock.");
-            toThrow.initCause(e);
-            throw toThrow;
+    /**
+     * The state of one type of outbound request.
+     */
+    private static final class OutboundOperation<R extends AmazonWebServiceRequest, Result> {
+        /** The batch requests are added to */
+        final AtomicReference<OutboundBatchTask<R, Result>> openBatch =
+                new AtomicReference<OutboundBatchTask<R, Result>>();
+        /** The batches published and not completed yet */
+        final Set<OutboundBatchTask<R, Result>> pendingBatches = Collections
+                .newSetFromMap(new ConcurrentHashMap<OutboundBatchTask<R, Result>, Boolean>());
+        /** Permits controlling the number of batches in flight */
+        final ResizableSemaphore inflightBatches;
+        /** The policy deciding how the requests are batched */
+        final QueueBufferPolicy policy;
+
+        OutboundOperation(QueueBufferPolicy policy) {
+            this.policy = policy;
+            // the policy allows at least one outbound batch.
+            this.inflightBatches = new ResizableSemaphore(policy.getMaxInflightOutboundBatches());
         }
 
-        return theFuture;
+        /**
+         * Waits for the batches published so far to complete.
+         */
+        void awaitPendingBatches() throws InterruptedException {
+            for (OutboundBatchTask<R, Result> batch : new ArrayList<OutboundBatchTask<R, Result>>(
+                    pendingBatches)) {
+                batch.completed.await();
+            }
+        }
     }
 
     /**
      * Task to send a batch of outbound requests to SQS.
      * <p>
      * The batch task is constructed open and accepts requests until full, or
-     * until {@code maxBatchOpenMs} elapses. At that point, the batch closes and
-     * the collected requests are assembled into a single batch request to SQS.
-     * Specialized for each type of outbound request.
+     * until the batch open time of its policy elapses. At that point, the
+     * batch closes and the collected requests are assembled into a single
+     * batch request to SQS. Specialized for each type of outbound request.
+     * <p>
+     * Requests are added without locking. The count of requests and their
+     * size in bytes are packed in a single {@code long} with a closed flag, so
+     * reserving a slot within the limits of the batch is one compare-and-set.
+     * The request is written to its slot afterwards, and the task waits for
+     * all reserved slots to be written before processing them.
      * <p>
      * Instances of this class (and subclasses) are thread-safe.
      *
@@ -332,12 +320,41 @@ public class SendQueueBuffer {
      */
     private abstract class OutboundBatchTask<R extends AmazonWebServiceRequest, Result> implements
             Runnable {
+        /** Flag of the state set once the batch is closed */
+        private static final long CLOSED = 1L << 62;
+        /** Bits of the state holding the size in bytes */
+        private static final int BYTES_BITS = 40;
+        private static final long BYTES_MASK = (1L << BYTES_BITS) - 1;
+
+        /** closed flag | request count | size in bytes */
+        private final AtomicLong state = new AtomicLong();
+        /**
+         * Reserved slots not written yet once the batch is closed. Writers
+         * decrement it as they write their slot and the closing task adds the
+         * final count, so it only reaches 0 from above once every reserved
+         * slot has been written.
+         */
+        private final AtomicInteger unwritten = new AtomicInteger();
+        /** Counted down when every reserved slot of the closed batch is written */
+        private final CountDownLatch written = new CountDownLatch(1);
+        private final AtomicReferenceArray<R> requestSlots;
+        private final AtomicReferenceArray<QueueBufferFuture<R, Result>> futureSlots;
+        /** Counted down when the batch is closed by a request */
+        private final CountDownLatch closed = new CountDownLatch(1);
+        /** Counted down when the batch has completed */
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        /** The requests of the closed batch, in the order they were added */
         final List<R> requests;
         final ArrayList<QueueBufferFuture<R, Result>> futures;
-        AtomicBoolean open = new AtomicBoolean(true);
+        final QueueBufferPolicy policy;
         volatile Listener<OutboundBatchTask<R, Result>> onCompleted = null;
 
-        OutboundBatchTask() {
+        OutboundBatchTask(QueueBufferPolicy policy) {
+            this.policy = policy;
+            requestSlots = new AtomicReferenceArray<R>(config.getMaxBatchSize());
+            futureSlots = new AtomicReferenceArray<QueueBufferFuture<R, Result>>(
+                    config.getMaxBatchSize());
             requests = new ArrayList<R>(config.getMaxBatchSize());
             futures = new ArrayList<QueueBufferFuture<R, Result>>(config.getMaxBatchSize());
         }
@@ -348,62 +365,95 @@ public class SendQueueBuffer {
          * @return the future that can be used to get the results of the
          *         execution, or null if the addition failed.
          */
-        synchronized QueueBufferFuture<R, Result> addRequest(R request,
+        QueueBufferFuture<R, Result> addRequest(R request,
                 QueueBufferCallback<R, Result> callback) {
-            if (!open.get())
-                return null;
-
-            QueueBufferFuture<R, Result> theFuture = addIfAllowed(request, callback);
+            long size = sizeOf(request);
+            int index;
+            boolean full;
+            while (true) {
+                long current = state.get();
+                if ((current & CLOSED) != 0) {
+                    return null;
+                }
+                int count = (int) ((current & ~CLOSED) >>> BYTES_BITS);
+                long bytes = current & BYTES_MASK;
+                if (count >= config.getMaxBatchSize()
+                        || bytes + size >= config.getMaxBatchSizeBytes()) {
+                    // the addition did not work, we can close the batch
+                    if (state.compareAndSet(current, current | CLOSED)) {
+                        closed.countDown();
+                        return null;
+                    }
+                    continue;
+                }
+                long next = ((long) (count + 1) << BYTES_BITS) | (bytes + size);
+                // if this addition makes us full, we can close the batch
+                full = count + 1 >= config.getMaxBatchSize();
+                if (full) {
+                    next |= CLOSED;
+                }
+                if (state.compareAndSet(current, next)) {
+                    index = count;
+                    break;
+                }
+            }
 
-            // if the addition did not work, or this addition made us full,
-            // we can close the request
-            if ((null == theFuture) || isFull()) {
-                open.set(false);
+            QueueBufferFuture<R, Result> theFuture = new QueueBufferFuture<R, Result>(callback);
+            requestSlots.set(index, request);
+            futureSlots.set(index, theFuture);
+            if (unwritten.decrementAndGet() == 0) {
+                // the batch was closed while this slot was being written
+                written.countDown();
             }
 
             // the batch request is as full as it will ever be. no need to wait
             // for the timeout, we can run it now.
-            if (!open.get())
-                notify();
-
+            if (full) {
+                closed.countDown();
+            }
             return theFuture;
         }
 
         /**
-         * Adds the request to the batch if capacity allows it.
-         *
-         * @param request
-         * @return the future that will be signaled when the request is
-         *         completed and can be used to retrieve the result. Can be null
-         *         if the addition could not be done
+         * @return the size of the request counted against
+         *         {@link QueueBufferConfig#getMaxBatchSizeBytes()}
          */
-        synchronized QueueBufferFuture<R, Result> addIfAllowed(R request,
-                QueueBufferCallback<R, Result> callback) {
-            if (isOkToAdd(request)) {
-                requests.add(request);
-
-                QueueBufferFuture<R, Result> theFuture = new QueueBufferFuture<R, Result>(callback);
-
-                futures.add(theFuture);
-                onRequestAdded(request);
-                return theFuture;
-            } else
-                return null;
-        }
-
-        protected synchronized boolean isOkToAdd(R request) {
-            return requests.size() < config.getMaxBatchSize();
-        }
-
-        protected synchronized void onRequestAdded(R request) {
+        protected long sizeOf(R request) {
             // to be overridden by subclasses
+            return 0;
         }
 
         /**
-         * @return whether the buffer is filled to capacity
+         * Closes the batch and collects its requests once every reserved slot
+         * has been written.
          */
-        synchronized boolean isFull() {
-            return requests.size() >= config.getMaxBatchSize();
+        private void closeAndCollect() {
+            long current;
+            do {
+                current = state.get();
+            } while ((current & CLOSED) == 0 && !state.compareAndSet(current, current | CLOSED));
+
+            int count = (int) ((current & ~CLOSED) >>> BYTES_BITS);
+            if (unwritten.addAndGet(count) > 0) {
+                // callers are between reserving and writing their slots,
+                // which they do without blocking
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        written.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                requests.add(requestSlots.get(i));
+                futures.add(futureSlots.get(i));
+            }
         }
 
         /**
@@ -412,22 +462,18 @@ public class SendQueueBuffer {
         abstract void process();
 
         @Override
-        public synchronized void run() {
+        public void run() {
             try {
-                long deadlineMs = TimeUnit.MILLISECONDS.convert(System.nanoTime(),
-                        TimeUnit.NANOSECONDS) +
-                        config.getMaxBatchOpenMs() + 1;
-                long t = TimeUnit.MILLISECONDS.convert(System.nanoTime(), TimeUnit.NANOSECONDS);
-                while (open.get() && (t < deadlineMs)) {
-                    t = TimeUnit.MILLISECONDS.convert(System.nanoTime(), TimeUnit.NANOSECONDS);
-
-                    // zero means "wait forever", can't have that.
-                    long toWait = Math.max(1, deadlineMs - t);
-                    wait(toWait);
+                try {
+                    closed.await(policy.getMaxBatchOpenMs() + 1, TimeUnit.MILLISECONDS);
+                } finally {
+                    closeAndCollect();
                 }
-
-                open.set(false);
+                long start = System.nanoTime();
                 process();
+                if (!requests.isEmpty()) {
+                    policy.onBatchCompleted(requests.size(), System.nanoTime() - start);
+                }
             } catch (InterruptedException e) {
                 failAll(e);
             } catch (AmazonClientException e) {
@@ -439,6 +485,7 @@ public class SendQueueBuffer {
                 failAll(new AmazonClientException("Error encountered", e));
                 throw e;
             } finally {
+                completed.countDown();
                 // make a copy of the listener since it can be modified from
                 // outside
                 Listener<OutboundBatchTask<R, Result>> completionListener = onCompleted;
@@ -456,25 +503,14 @@ public class SendQueueBuffer {
 
     private class SendMessageBatchTask extends
             OutboundBatchTask<SendMessageRequest, SendMessageResult> {
-        int batchSizeBytes = 0;
 
-        @Override
-        protected synchronized boolean isOkToAdd(SendMessageRequest request) {
-            return (requests.size() < config.getMaxBatchSize())
-                    &&
-                    ((request.getMessageBody().getBytes().length + batchSizeBytes) < config
-                            .getMaxBatchSizeBytes());
+        SendMessageBatchTask(QueueBufferPolicy policy) {
+            super(policy);
         }
 
         @Override
-        protected void onRequestAdded(SendMessageRequest request) {
-            batchSizeBytes += request.getMessageBody().getBytes().length;
-        }
-
-        @Override
-        synchronized boolean isFull() {
-            return (requests.size() >= config.getMaxBatchSize()) ||
-                    (batchSizeBytes >= config.getMaxBatchSizeBytes());
+        protected long sizeOf(SendMessageRequest request) {
+            return request.getMessageBody().getBytes().length;
         }
 
         @Override
@@ -527,6 +563,10 @@ public class SendQueueBuffer {
     private class DeleteMessageBatchTask extends
             OutboundBatchTask<DeleteMessageRequest, Void> {
 
+        DeleteMessageBatchTask(QueueBufferPolicy policy) {
+            super(policy);
+        }
+
         @Override
         void process() {
             if (requests.isEmpty())
@@ -573,6 +613,10 @@ public class SendQueueBuffer {
     private class ChangeMessageVisibilityBatchTask extends
             OutboundBatchTask<ChangeMessageVisibilityRequest, Void> {
 
+        ChangeMessageVisibilityBatchTask(QueueBufferPolicy policy) {
+            super(policy);
+        }
+
         @Override
         void process() {
             if (requests.isEmpty())
@@ -619,4 +663,32 @@ public class SendQueueBuffer {
         }
     }
 
+    /**
+     * A semaphore whose number of permits can change. Fair, so a caller
+     * waiting to run its batch isn't overtaken by every later one. It doesn't
+     * order the batches: a caller may reach the semaphore after another one
+     * that published its batch later.
+     */
+    static final class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        private int permits;
+
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+            this.permits = permits;
+        }
+
+        synchronized void resize(int newPermits) {
+            if (newPermits > permits) {
+                release(newPermits - permits);
+            } else if (newPermits < permits) {
+                // batches in flight keep their permits, new ones wait until
+                // enough of them have completed
+                reducePermits(permits - newPermits);
+            }
+            permits = newPermits;
+        }
+    }
+
 }
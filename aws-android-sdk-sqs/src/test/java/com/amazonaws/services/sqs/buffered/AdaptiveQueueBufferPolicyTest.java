@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.sqs.buffered;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveQueueBufferPolicyTest {
+
+    private final QueueBufferConfig config = new QueueBufferConfig()
+            .withMaxBatchSize(10)
+            .withMaxBatchOpenMs(200)
+            .withMaxInflightOutboundBatches(8)
+            .withMaxInflightReceiveBatches(6)
+            .withMaxDoneReceiveBatches(4);
+    private final AdaptiveQueueBufferPolicy policy = new AdaptiveQueueBufferPolicy(config);
+
+    /** Requests messages at about the given rate for the given time */
+    private void load(int messagesPerSecond, long millis) throws InterruptedException {
+        policy.onRequest((int) (messagesPerSecond * millis / 1000));
+        Thread.sleep(millis);
+    }
+
+    @Test
+    public void testBeforeAnyBatch() {
+        // nothing to go by: the configured concurrency, no pre-fetching
+        assertEquals(8, policy.getMaxInflightOutboundBatches());
+        assertEquals(6, policy.getMaxInflightReceiveBatches());
+        assertEquals(1, policy.getMaxDoneReceiveBatches());
+        assertEquals(0, policy.getMaxBatchOpenMs());
+    }
+
+    @Test
+    public void testIdleQueueUsesOneBatch() {
+        policy.onBatchCompleted(1, TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, policy.getMaxInflightOutboundBatches());
+        assertEquals(1, policy.getMaxInflightReceiveBatches());
+        assertEquals(1, policy.getMaxDoneReceiveBatches());
+        assertEquals(0, policy.getMaxBatchOpenMs());
+    }
+
+    @Test
+    public void testBusyQueueIsCappedAtConfig() throws InterruptedException {
+        load(1000000, 100);
+        policy.onBatchCompleted(10, TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(8, policy.getMaxInflightOutboundBatches());
+        assertEquals(6, policy.getMaxInflightReceiveBatches());
+        assertEquals(4, policy.getMaxDoneReceiveBatches());
+        long openMs = policy.getMaxBatchOpenMs();
+        assertTrue("batch open for " + openMs + " ms", openMs >= 0 && openMs <= 200);
+    }
+
+    @Test
+    public void testBatchOpenTimeFollowsRate() throws InterruptedException {
+        // a message every few microseconds: the batch fills right away
+        load(1000000, 100);
+        long openMs = policy.getMaxBatchOpenMs();
+        assertTrue("batch open for " + openMs + " ms", openMs <= 1);
+
+        // a message every few tens of ms: long enough to fill the batch
+        AdaptiveQueueBufferPolicy steady = new AdaptiveQueueBufferPolicy(config);
+        steady.onRequest(100);
+        Thread.sleep(1000);
+        openMs = steady.getMaxBatchOpenMs();
+        assertTrue("batch open for " + openMs + " ms", openMs > 0 && openMs < 200);
+
+        // a message now and then: no use waiting for the next one
+        AdaptiveQueueBufferPolicy trickle = new AdaptiveQueueBufferPolicy(config);
+        trickle.onRequest(1);
+        Thread.sleep(100);
+        assertEquals(0, trickle.getMaxBatchOpenMs());
+    }
+
+    @Test
+    public void testShrinksWhenRequestsStop() throws InterruptedException {
+        load(100000, 100);
+        policy.onBatchCompleted(10, TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(8, policy.getMaxInflightOutboundBatches());
+        assertEquals(6, policy.getMaxInflightReceiveBatches());
+
+        Thread.sleep(2000);
+        int outbound = policy.getMaxInflightOutboundBatches();
+        assertTrue("outbound batches: " + outbound, outbound >= 1 && outbound < 8);
+        int receive = policy.getMaxInflightReceiveBatches();
+        assertTrue("receive batches: " + receive, receive >= 1 && receive < 6);
+
+        // and grows back with the load
+        load(100000, 100);
+        assertEquals(8, policy.getMaxInflightOutboundBatches());
+    }
+
+    @Test
+    public void testSmallBatchesGetMoreConcurrency() throws InterruptedException {
+        load(2000, 200);
+        policy.onBatchCompleted(10, TimeUnit.MILLISECONDS.toNanos(100));
+        int fullBatches = policy.getMaxInflightOutboundBatches();
+        for (int i = 0; i < 50; i++) {
+            policy.onBatchCompleted(1, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        // batches a tenth full count as half full
+        int smallBatches = policy.getMaxInflightOutboundBatches();
+        assertTrue(fullBatches + " then " + smallBatches, smallBatches > fullBatches);
+        assertTrue(fullBatches + " then " + smallBatches, smallBatches <= 8);
+    }
+}
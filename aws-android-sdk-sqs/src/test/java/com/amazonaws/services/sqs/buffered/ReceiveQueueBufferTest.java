@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.sqs.buffered;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReceiveQueueBufferTest {
+
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/1234/queue";
+
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+    private AmazonSQS sqs;
+    private ReceiveQueueBuffer buffer;
+    /** The results of the next receive calls, empty once they are used */
+    private final ConcurrentLinkedQueue<ReceiveMessageResult> batches =
+            new ConcurrentLinkedQueue<ReceiveMessageResult>();
+    private final AtomicInteger receiveCalls = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        sqs = mock(AmazonSQS.class);
+        when(sqs.getQueueAttributes(any(GetQueueAttributesRequest.class))).thenReturn(
+                new GetQueueAttributesResult().addAttributesEntry("VisibilityTimeout", "30"));
+        when(sqs.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(
+                new Answer<ReceiveMessageResult>() {
+                    @Override
+                    public ReceiveMessageResult answer(InvocationOnMock invocation)
+                            throws Throwable {
+                        receiveCalls.incrementAndGet();
+                        ReceiveMessageResult result = batches.poll();
+                        return result != null ? result : new ReceiveMessageResult();
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        if (buffer != null) {
+            buffer.shutdown();
+        }
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private ReceiveQueueBuffer newBuffer(QueueBufferConfig config) {
+        buffer = new ReceiveQueueBuffer(sqs, executor, scheduler, config, QUEUE_URL);
+        return buffer;
+    }
+
+    private void addBatch(String... bodies) {
+        List<Message> messages = new ArrayList<Message>();
+        for (String body : bodies) {
+            messages.add(new Message().withBody(body).withReceiptHandle("handle-" + body));
+        }
+        batches.add(new ReceiveMessageResult().withMessages(messages));
+    }
+
+    private QueueBufferFuture<ReceiveMessageRequest, ReceiveMessageResult> receiveOne() {
+        return buffer.receiveMessageAsync(new ReceiveMessageRequest(QUEUE_URL)
+                .withMaxNumberOfMessages(1), null);
+    }
+
+    @Test
+    public void testPrefetchedMessagesSatisfyLaterRequests() throws Exception {
+        newBuffer(new QueueBufferConfig().withLongPoll(false));
+        addBatch("m0", "m1", "m2");
+
+        assertEquals("m0", receiveOne().get(5, TimeUnit.SECONDS).getMessages().get(0)
+                .getBody());
+        // the rest of the batch was kept
+        QueueBufferFuture<ReceiveMessageRequest, ReceiveMessageResult> second = receiveOne();
+        assertTrue(second.isDone());
+        assertEquals("m1", second.get().getMessages().get(0).getBody());
+        assertEquals("m2", receiveOne().get().getMessages().get(0).getBody());
+
+        // the empty queue isn't polled while nothing waits for messages
+        Thread.sleep(300);
+        int calls = receiveCalls.get();
+        Thread.sleep(300);
+        assertEquals(calls, receiveCalls.get());
+    }
+
+    @Test
+    public void testEmptyQueue() throws Exception {
+        newBuffer(new QueueBufferConfig().withLongPoll(false));
+        assertTrue(receiveOne().get(5, TimeUnit.SECONDS).getMessages().isEmpty());
+        // a later request doesn't wait for the back off either
+        assertTrue(receiveOne().get(5, TimeUnit.SECONDS).getMessages().isEmpty());
+
+        addBatch("m0");
+        assertEquals("m0", receiveOne().get(5, TimeUnit.SECONDS).getMessages().get(0)
+                .getBody());
+    }
+
+    @Test
+    public void testEmptyQueueWithLongPolling() throws Exception {
+        newBuffer(new QueueBufferConfig().withLongPoll(true));
+        assertTrue(receiveOne().get(5, TimeUnit.SECONDS).getMessages().isEmpty());
+        assertTrue(receiveOne().get(5, TimeUnit.SECONDS).getMessages().isEmpty());
+    }
+
+    @Test
+    public void testExpiringMessagesAreReleased() throws Exception {
+        newBuffer(new QueueBufferConfig().withLongPoll(false).withVisibilityTimeoutSeconds(1));
+        addBatch("m0", "m1");
+
+        assertEquals("m0", receiveOne().get(5, TimeUnit.SECONDS).getMessages().get(0)
+                .getBody());
+
+        // m1 is handed back to the queue before its visibility timeout
+        ArgumentCaptor<ChangeMessageVisibilityBatchRequest> captor = ArgumentCaptor
+                .forClass(ChangeMessageVisibilityBatchRequest.class);
+        verify(sqs, timeout(5000)).changeMessageVisibilityBatch(captor.capture());
+        assertEquals(QUEUE_URL, captor.getValue().getQueueUrl());
+        List<ChangeMessageVisibilityBatchRequestEntry> entries = captor.getValue().getEntries();
+        assertEquals(1, entries.size());
+        assertEquals("handle-m1", entries.get(0).getReceiptHandle());
+        assertEquals(Integer.valueOf(0), entries.get(0).getVisibilityTimeout());
+
+        // and no longer handed out
+        assertTrue(receiveOne().get(5, TimeUnit.SECONDS).getMessages().isEmpty());
+    }
+
+    @Test
+    public void testHandlerIsPushedMessages() throws Exception {
+        newBuffer(new QueueBufferConfig().withLongPoll(false));
+        addBatch("m0", "m1");
+        addBatch("m2");
+
+        final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch received = new CountDownLatch(3);
+        buffer.setMessageHandler(new AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult>() {
+            @Override
+            public void onSuccess(ReceiveMessageRequest request, ReceiveMessageResult result) {
+                for (Message message : result.getMessages()) {
+                    bodies.add(message.getBody());
+                    received.countDown();
+                }
+            }
+
+            @Override
+            public void onError(Exception exception) {
+            }
+        });
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        Collections.sort(bodies);
+        assertEquals(3, bodies.size());
+        assertEquals("[m0, m1, m2]", bodies.toString());
+
+        // the empty queue is polled less and less often
+        int calls = receiveCalls.get();
+        Thread.sleep(1000);
+        assertTrue("receive calls: " + (receiveCalls.get() - calls),
+                receiveCalls.get() - calls <= 5);
+
+        // stops receiving without a handler
+        buffer.setMessageHandler(null);
+        Thread.sleep(1600);
+        calls = receiveCalls.get();
+        Thread.sleep(1600);
+        assertEquals(calls, receiveCalls.get());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.sqs.buffered;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.sqs.buffered.SendQueueBuffer.ResizableSemaphore;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResizableSemaphoreTest {
+
+    @Test
+    public void testGrowReleasesWaiters() throws InterruptedException {
+        final ResizableSemaphore semaphore = new ResizableSemaphore(1);
+        semaphore.acquire();
+        final CountDownLatch acquired = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    semaphore.acquireUninterruptibly();
+                    acquired.countDown();
+                }
+            }.start();
+        }
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        semaphore.resize(4);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, semaphore.availablePermits());
+    }
+
+    @Test
+    public void testShrinkWaitsForHolders() {
+        ResizableSemaphore semaphore = new ResizableSemaphore(4);
+        semaphore.acquireUninterruptibly(4);
+
+        // the holders keep their permits
+        semaphore.resize(2);
+        assertEquals(-2, semaphore.availablePermits());
+        semaphore.release(2);
+        assertFalse(semaphore.tryAcquire());
+        semaphore.release();
+        assertTrue(semaphore.tryAcquire());
+        assertFalse(semaphore.tryAcquire());
+
+        semaphore.release(2);
+        assertEquals(2, semaphore.availablePermits());
+    }
+
+    @Test(timeout = 60000)
+    public void testResizeUnderContention() throws InterruptedException {
+        final ResizableSemaphore semaphore = new ResizableSemaphore(4);
+        final int max = 8;
+        final AtomicInteger holders = new AtomicInteger();
+        final AtomicInteger maxHolders = new AtomicInteger();
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 16; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        semaphore.acquireUninterruptibly();
+                        int current = holders.incrementAndGet();
+                        int seen;
+                        while (current > (seen = maxHolders.get())
+                                && !maxHolders.compareAndSet(seen, current)) {
+                            // retry
+                        }
+                        Thread.yield();
+                        holders.decrementAndGet();
+                        semaphore.release();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        Thread resizer = new Thread() {
+            @Override
+            public void run() {
+                Random random = new Random(42);
+                while (running.get()) {
+                    semaphore.resize(1 + random.nextInt(max));
+                }
+            }
+        };
+        resizer.start();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        running.set(false);
+        resizer.join();
+
+        assertTrue("holders: " + maxHolders.get(), maxHolders.get() <= max);
+        // no permit was lost or made up along the way
+        semaphore.resize(3);
+        assertEquals(3, semaphore.availablePermits());
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.sqs.buffered;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SendQueueBufferTest {
+
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/1234/queue";
+
+    private ExecutorService executor;
+    private AmazonSQS sqs;
+    private final Set<String> sent = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /** Every entry sent, counting those sent more than once */
+    private final AtomicInteger sentEntries = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        sqs = mock(AmazonSQS.class);
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(
+                new Answer<SendMessageBatchResult>() {
+                    @Override
+                    public SendMessageBatchResult answer(InvocationOnMock invocation)
+                            throws Throwable {
+                        SendMessageBatchRequest request = (SendMessageBatchRequest) invocation
+                                .getArguments()[0];
+                        List<SendMessageBatchResultEntry> successful =
+                                new ArrayList<SendMessageBatchResultEntry>();
+                        for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+                            sentEntries.incrementAndGet();
+                            assertTrue("sent twice: " + entry.getMessageBody(),
+                                    sent.add(entry.getMessageBody()));
+                            successful.add(new SendMessageBatchResultEntry()
+                                    .withId(entry.getId())
+                                    .withMessageId(entry.getMessageBody()));
+                        }
+                        return new SendMessageBatchResult().withSuccessful(successful);
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSendSingleMessage() throws Exception {
+        SendQueueBuffer buffer = new SendQueueBuffer(sqs, executor, new QueueBufferConfig(),
+                QUEUE_URL);
+        QueueBufferFuture<SendMessageRequest, SendMessageResult> future = buffer.sendMessage(
+                new SendMessageRequest(QUEUE_URL, "body"), null);
+        assertEquals("body", future.get(5, TimeUnit.SECONDS).getMessageId());
+    }
+
+    @Test(timeout = 60000)
+    public void testFlushRacingWithSendMessage() throws Exception {
+        final SendQueueBuffer buffer = new SendQueueBuffer(sqs, executor,
+                new QueueBufferConfig().withMaxBatchOpenMs(5).withMaxBatchSize(2), QUEUE_URL);
+        final int senders = 8;
+        final int messagesPerSender = 200;
+        final AtomicBoolean sending = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        // flushes all the time, racing with the senders publishing batches
+        Thread flusher = new Thread() {
+            @Override
+            public void run() {
+                while (sending.get()) {
+                    buffer.flush();
+                }
+            }
+        };
+        flusher.start();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < senders; t++) {
+            final int sender = t;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < messagesPerSender; i++) {
+                            QueueBufferFuture<SendMessageRequest, SendMessageResult> future =
+                                    buffer.sendMessage(new SendMessageRequest(QUEUE_URL,
+                                            sender + "-" + i), null);
+                            if (i % 10 == 0) {
+                                // requests submitted before flush() are done
+                                // when it returns
+                                buffer.flush();
+                                assertTrue(future.isDone());
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        buffer.flush();
+        sending.set(false);
+        flusher.join();
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(senders * messagesPerSender, sent.size());
+    }
+
+    @Test(timeout = 60000)
+    public void testManyProducersWithFixedPolicy() throws Exception {
+        sendFromManyProducers(FixedQueueBufferPolicy.FACTORY);
+    }
+
+    @Test(timeout = 60000)
+    public void testManyProducersWithAdaptivePolicy() throws Exception {
+        sendFromManyProducers(AdaptiveQueueBufferPolicy.FACTORY);
+    }
+
+    /**
+     * Sends from many threads into batches that close when full, when too
+     * large, when their open time elapses and on flush(), and checks that
+     * every message is sent exactly once and completes its own future.
+     */
+    private void sendFromManyProducers(QueueBufferPolicy.Factory policyFactory)
+            throws Exception {
+        final SendQueueBuffer buffer = new SendQueueBuffer(sqs, executor,
+                new QueueBufferConfig().withMaxBatchSize(5).withMaxBatchSizeBytes(1024)
+                        .withMaxBatchOpenMs(2).withMaxInflightOutboundBatches(3)
+                        .withPolicyFactory(policyFactory), QUEUE_URL);
+        final int producers = 16;
+        final int messagesPerProducer = 500;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            padding.append('x');
+        }
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < producers; t++) {
+            final int producer = t;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        List<QueueBufferFuture<SendMessageRequest, SendMessageResult>> futures =
+                                new ArrayList<QueueBufferFuture<SendMessageRequest,
+                                SendMessageResult>>();
+                        List<String> bodies = new ArrayList<String>();
+                        for (int i = 0; i < messagesPerProducer; i++) {
+                            // some messages fill the batch bytes before its slots
+                            String body = producer + "-" + i
+                                    + (i % 7 == 0 ? "-" + padding : "");
+                            bodies.add(body);
+                            futures.add(buffer.sendMessage(new SendMessageRequest(QUEUE_URL,
+                                    body), null));
+                            if (i % 50 == 49) {
+                                buffer.flush();
+                            }
+                        }
+                        for (int i = 0; i < futures.size(); i++) {
+                            assertEquals(bodies.get(i), futures.get(i).get(10, TimeUnit.SECONDS)
+                                    .getMessageId());
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(producers * messagesPerProducer, sent.size());
+        assertEquals(producers * messagesPerProducer, sentEntries.get());
+    }
+}